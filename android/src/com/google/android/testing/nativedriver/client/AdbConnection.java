@@ -17,16 +17,20 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.client;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -40,6 +44,11 @@ import javax.annotation.Nullable;
  * by {@code adb}. (See {@link #AdbConnection(File, Integer, Integer, Integer)}
  * for more information).
  *
+ * <p>By default, every command starts a new {@code adb} process. If an
+ * {@link AdbHostClient} is given, commands are instead sent directly to the
+ * ADB server over its host protocol. In that case {@link #close} should be
+ * called when the connection is no longer needed.
+ *
  * <p>For readability purposes, the configuration and construction of instances
  * of this class are performed with {@code AdbConnectionBuilder}.
  *
@@ -49,12 +58,20 @@ import javax.annotation.Nullable;
 public class AdbConnection {
   public static final String IOCTL_RETURNBUFFERHEADER = "return buf: ";
 
+  private static final String SERVER_INSTRUMENTATION_CLASS
+      = "com.google.android.testing.nativedriver.server.ServerInstrumentation";
+
+  // Appended to shell commands run through the AdbHostClient, since the
+  // shell service does not report the exit value of the command.
+  private static final String ECHO_EXIT_VALUE = "; echo $?";
+
   private final String adbPath;
   @Nullable private String packagePath;
   @Nullable private String SerialNo;
   @Nullable private final Integer adbServerPort;
   @Nullable private final Integer emulatorConsolePort;
   @Nullable private final Integer emulatorAdbPort;
+  @Nullable private final AdbHostClient hostClient;
 
   public String getAdbPath() {
     return adbPath;
@@ -83,6 +100,15 @@ public class AdbConnection {
     return emulatorAdbPort;
   }
 
+  /**
+   * Returns the client used to talk to the ADB server directly, or
+   * {@code null} if every command starts a new {@code adb} process.
+   */
+  @Nullable
+  public AdbHostClient getHostClient() {
+    return hostClient;
+  }
+
   /**
    * Performs the {@code ioctl} command on device corresponding to the given
    * filename. This is equivalent to
@@ -97,12 +123,19 @@ public class AdbConnection {
   public byte[] doIoctlForReading(
       String filename, int requestCode, int length) {
     byte[] buffer = new byte[length];
-    Process adbProcess = runAdb("shell",
-        "ioctl", "-rl", "" + buffer.length, filename, "" + requestCode);
-
-    String rawOutput = outputAsString(adbProcess);
-    Closeables.closeQuietly(adbProcess.getInputStream());
-    confirmExitValueIs(0, adbProcess);
+    String rawOutput;
+
+    if (hostClient != null) {
+      rawOutput = runShellChecked(
+          "ioctl", "-rl", "" + buffer.length, filename, "" + requestCode);
+    } else {
+      Process adbProcess = runAdb("shell",
+          "ioctl", "-rl", "" + buffer.length, filename, "" + requestCode);
+
+      rawOutput = outputAsString(adbProcess);
+      Closeables.closeQuietly(adbProcess.getInputStream());
+      confirmExitValueIs(0, adbProcess);
+    }
 
     int returnedDataIndex = rawOutput.indexOf(IOCTL_RETURNBUFFERHEADER);
     if (returnedDataIndex == -1) {
@@ -139,6 +172,37 @@ public class AdbConnection {
     return runAdb("pull", filename, "/dev/stdout");
   }
 
+  /**
+   * Returns a stream of the contents of a file or device on the Android
+   * device. If an {@code AdbHostClient} is used, the file is read with the
+   * file synchronization service of the ADB server. Otherwise this reads the
+   * output of {@link #pullFile}, and closing the stream discards the rest of
+   * the output and confirms that {@code adb} succeeded.
+   *
+   * @param filename the path to the file to read from
+   */
+  public InputStream openFile(String filename) {
+    if (hostClient != null) {
+      return hostClient.pull(filename);
+    }
+
+    final Process process = pullFile(filename);
+    return new FilterInputStream(process.getInputStream()) {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        exhaustProcessOutput(in);
+        super.close();
+        confirmExitValueIs(0, process);
+      }
+    };
+  }
+
   /**
    * Sends key events to the Android device/emulator. This is equivalent to
    * running {@code adb shell input keyevent (KEYCODE)} on the command line.
@@ -148,6 +212,10 @@ public class AdbConnection {
    * .html#KEYCODE_0">KEYCODE_ constants</a>
    */
   public void sendKeyEvent(int keyCode) {
+    if (hostClient != null) {
+      runShellChecked("input", "keyevent", String.valueOf(keyCode));
+      return;
+    }
     Process adbProcess = runAdb(
         "shell", "input", "keyevent", String.valueOf(keyCode));
     confirmExitValueIs(0, adbProcess);
@@ -160,10 +228,48 @@ public class AdbConnection {
    * @param text to send to the device/emulator
    */
   public void sendText(String text) {
+    if (hostClient != null) {
+      runShellChecked("input", "text", text);
+      return;
+    }
     Process adbProcess = runAdb("shell", "input", "text", text);
     confirmExitValueIs(0, adbProcess);
   }
 
+  /**
+   * Runs a shell command on the device through the {@code AdbHostClient}. The
+   * arguments are joined with spaces, as {@code adb shell} does.
+   *
+   * @return the output of the command
+   */
+  private String runShell(String... arguments) {
+    return new String(hostClient.executeShell(Joiner.on(' ').join(arguments)),
+        Charsets.UTF_8);
+  }
+
+  /**
+   * Runs a shell command on the device through the {@code AdbHostClient}, and
+   * confirms that it exits with {@code 0}, as {@link #confirmExitValueIs}
+   * does for an {@code adb} process.
+   *
+   * @return the output of the command, without its exit value
+   * @throws AdbException if the command exited with another value
+   */
+  private String runShellChecked(String... arguments) {
+    String output = new String(hostClient.executeShell(
+        Joiner.on(' ').join(arguments) + ECHO_EXIT_VALUE), Charsets.UTF_8);
+    // The exit value is the last line; older devices end lines with CRLF.
+    String trimmed = output.trim();
+    int lineStart = Math.max(
+        trimmed.lastIndexOf('\n'), trimmed.lastIndexOf('\r')) + 1;
+    String exitValue = trimmed.substring(lineStart);
+    if (!exitValue.equals("0")) {
+      throw new AdbException("Exit value of shell command was " + exitValue
+          + " but expected 0");
+    }
+    return trimmed.substring(0, lineStart);
+  }
+
   /**
    * Runs {@code adb} using the given arguments and under the configuration
    * values passed to the constructor.
@@ -287,31 +393,79 @@ public class AdbConnection {
       @Nullable Integer emulatorAdbPort,
       @Nullable String packagePath,
       @Nullable String serialNo ) {
+    this(adbPath, adbServerPort, emulatorConsolePort, emulatorAdbPort,
+        packagePath, serialNo, null);
+  }
+
+  /**
+   * Constructs a new instance which sends commands to the ADB server through
+   * the given {@code AdbHostClient} instead of starting {@code adb}, if it is
+   * not {@code null}.
+   *
+   * @see #AdbConnection(String, Integer, Integer, Integer, String, String)
+   */
+  protected AdbConnection(
+      String adbPath,
+      @Nullable Integer adbServerPort,
+      @Nullable Integer emulatorConsolePort,
+      @Nullable Integer emulatorAdbPort,
+      @Nullable String packagePath,
+      @Nullable String serialNo,
+      @Nullable AdbHostClient hostClient) {
     this.adbPath = Preconditions.checkNotNull(adbPath);
     this.adbServerPort = adbServerPort;
     this.emulatorConsolePort = emulatorConsolePort;
     this.emulatorAdbPort = emulatorAdbPort;
     this.packagePath = packagePath;
     this.SerialNo = serialNo;
+    this.hostClient = hostClient;
   }
   
   public String instrument() {
+    return instrument(Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * Starts the server instrumentation with the given arguments, which are
+   * passed with the {@code -e} option of {@code am instrument}. The server
+   * reads its configuration from them.
+   */
+  public String instrument(Map<String, String> arguments) {
     if (getPackageInfo() == null) {
       System.err.println("instrument Failed!!\npackageInfo is null");
     }
+    List<String> extras = Lists.newArrayList();
+    for (Map.Entry<String, String> argument : arguments.entrySet()) {
+      extras.add("-e");
+      extras.add(argument.getKey());
+      extras.add(argument.getValue());
+    }
+    if (hostClient != null) {
+      List<String> shell = Lists.newArrayList("am", "instrument");
+      shell.addAll(extras);
+      shell.add(getPackageInfo() + "/" + SERVER_INSTRUMENTATION_CLASS);
+      return hostCommandResult(runShell(shell.toArray(new String[0])));
+    }
     StringBuilder command = new StringBuilder();
     command.append(getAdbPath() + " ");
     if (this.SerialNo != null) {
       command.append("-s " + this.SerialNo + " ");
     }
     command.append("shell am instrument ");
+    for (String extra : extras) {
+      command.append(extra + " ");
+    }
     command.append(getPackageInfo());
-    command.append("/com.google.android.testing.nativedriver.server.ServerInstrumentation");
+    command.append("/" + SERVER_INSTRUMENTATION_CLASS);
     String result = exeCommand(command.toString());
     return result;
 }
 
   public String forward(int localPort, int RemotePort) {
+    if (hostClient != null) {
+      hostClient.forward(localPort, RemotePort);
+      return "";
+    }
     StringBuilder command = new StringBuilder();
     command.append(getAdbPath() + " ");
     if (this.SerialNo != null) {
@@ -326,6 +480,9 @@ public class AdbConnection {
     if (getPackageInfo() == null) {
       System.err.println("dropData Failed!!\npackageInfo is null");
     }
+    if (hostClient != null) {
+      return hostCommandResult(runShell("pm", "clear", getPackageInfo()));
+    }
     StringBuilder command = new StringBuilder();
     command.append(getAdbPath() + " ");
     if (this.SerialNo != null) {
@@ -337,6 +494,24 @@ public class AdbConnection {
     return result;
   }
 
+  /**
+   * Releases the sockets kept by the {@code AdbHostClient}, if any. Commands
+   * must not be run after this.
+   */
+  public void close() {
+    if (hostClient != null) {
+      hostClient.close();
+    }
+  }
+
+  /**
+   * Formats the output of a command run through the {@code AdbHostClient} like
+   * {@link #exeCommand} does: the lines are concatenated without separators.
+   */
+  private static String hostCommandResult(String output) {
+    return output.replace("\r", "").replace("\n", "");
+  }
+
   private String exeCommand(String command) {
     StringBuilder result = new StringBuilder();
     try {
@@ -40,6 +40,7 @@ public class AdbConnectionBuilder {
   @Nullable private Integer emulatorAdbPort;
   @Nullable private String packagePath;
   @Nullable private String serialNo;
+  private boolean useHostProtocol;
 
   public AdbConnectionBuilder withAdbPath(String adbPath) {
     this.adbPath = Preconditions.checkNotNull(adbPath);
@@ -104,12 +105,28 @@ public class AdbConnectionBuilder {
     return this;
   }
 
+  /**
+   * Makes the built connection talk to the ADB server directly over its host
+   * protocol, rather than starting the {@code adb} utility for every command.
+   * The ADB server port and serial number of this builder are used.
+   *
+   * @return this instance
+   * @see AdbHostClient
+   */
+  public AdbConnectionBuilder withHostProtocol() {
+    this.useHostProtocol = true;
+    return this;
+  }
+
   // note: if you want methods to set default ports explicitly - for instance
   // withDefaultAdbServerPort() - feel free to add them.
 
   public AdbConnection build() {
+    AdbHostClient hostClient = useHostProtocol
+        ? new AdbHostClient(adbServerPort, serialNo) : null;
     return new AdbConnection(Preconditions.checkNotNull(adbPath),
-        adbServerPort, emulatorConsolePort, emulatorAdbPort, packagePath, serialNo);
+        adbServerPort, emulatorConsolePort, emulatorAdbPort, packagePath,
+        serialNo, hostClient);
   }
 
   @VisibleForTesting
@@ -0,0 +1,566 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+
+/**
+ * A client for the host protocol of the ADB server. This is the protocol the
+ * {@code adb} utility itself uses to talk to the server, which listens on port
+ * 5037 by default. Talking to the server directly avoids starting a new
+ * {@code adb} process for every command.
+ *
+ * <p>Each request is sent as a four-digit hexadecimal length followed by the
+ * request string, and is answered with {@code OKAY}, or with {@code FAIL} and
+ * an error message. A connection is first switched to a device with
+ * {@code host:transport:<serial>} (or {@code host:transport-any}), and then a
+ * device service such as {@code shell:<command>} or {@code sync:} is started
+ * on it.
+ *
+ * <p>The server closes the connection when the service finishes, so a
+ * connection can only be used for a single command. To save the cost of
+ * connecting, a few connected sockets are kept ready in a pool and refilled in
+ * the background. Sockets which have been idle for too long are discarded.
+ *
+ * @see AdbConnectionBuilder#withHostProtocol()
+ */
+public class AdbHostClient {
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 5037;
+
+  private static final int DEFAULT_POOL_SIZE = 2;
+  private static final long DEFAULT_MAX_IDLE_MILLIS = 10000;
+  private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+  private static final String OKAY = "OKAY";
+  private static final String FAIL = "FAIL";
+
+  private static final String SYNC_RECV = "RECV";
+  private static final String SYNC_DATA = "DATA";
+  private static final String SYNC_DONE = "DONE";
+  private static final String SYNC_FAIL = "FAIL";
+  private static final String SYNC_QUIT = "QUIT";
+  private static final int SYNC_MAX_DATA = 64 * 1024;
+
+  private final String host;
+  private final int port;
+  @Nullable private final String serialNo;
+  private final int poolSize;
+  private final long maxIdleMillis;
+
+  // Guarded by "this".
+  private final LinkedList<IdleSocket> idleSockets = Lists.newLinkedList();
+  @Nullable private ExecutorService poolFiller;
+  private boolean closed;
+
+  private static class IdleSocket {
+    private final Socket socket;
+    private final long connectedAt;
+
+    private IdleSocket(Socket socket, long connectedAt) {
+      this.socket = socket;
+      this.connectedAt = connectedAt;
+    }
+  }
+
+  /**
+   * Constructs a client for the ADB server on the local host.
+   *
+   * @param port the port of the ADB server, or {@code null} for the default
+   *        port, 5037
+   * @param serialNo the serial number of the device to talk to, or
+   *        {@code null} to talk to the only connected device
+   */
+  public AdbHostClient(@Nullable Integer port, @Nullable String serialNo) {
+    this(DEFAULT_HOST, (port == null) ? DEFAULT_PORT : port, serialNo,
+        DEFAULT_POOL_SIZE, DEFAULT_MAX_IDLE_MILLIS);
+  }
+
+  /**
+   * @param host the host name of the ADB server
+   * @param port the port of the ADB server
+   * @param serialNo the serial number of the device to talk to, or
+   *        {@code null} to talk to the only connected device
+   * @param poolSize the number of connected sockets to keep ready, or
+   *        {@code 0} to connect for every command
+   * @param maxIdleMillis the time after which an unused socket in the pool is
+   *        discarded
+   */
+  public AdbHostClient(String host, int port, @Nullable String serialNo,
+      int poolSize, long maxIdleMillis) {
+    Preconditions.checkArgument(poolSize >= 0);
+    this.host = Preconditions.checkNotNull(host);
+    this.port = port;
+    this.serialNo = serialNo;
+    this.poolSize = poolSize;
+    this.maxIdleMillis = maxIdleMillis;
+  }
+
+  @Nullable
+  public String getSerialNo() {
+    return serialNo;
+  }
+
+  /**
+   * Returns the internal version of the ADB server. This is equivalent to the
+   * {@code host:version} request.
+   */
+  public int getServerVersion() {
+    Socket socket = takeSocket();
+    try {
+      sendRequest(socket, "host:version");
+      return Integer.parseInt(readLengthPrefixedString(socket), 16);
+    } catch (IOException exception) {
+      throw new AdbException(
+          "IOException when requesting the ADB server version.", exception);
+    } finally {
+      closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Runs a shell command on the device and returns a stream of its output. The
+   * stream ends when the command finishes. Closing the stream closes the
+   * connection, which stops the command if it is still running.
+   *
+   * @param command the command line to run, such as
+   *        {@code input keyevent 4}
+   */
+  public InputStream openShell(String command) {
+    Socket socket = openDeviceService("shell:" + command);
+    try {
+      return new SocketInputStream(socket);
+    } catch (IOException exception) {
+      closeQuietly(socket);
+      throw new AdbException(
+          "IOException when running shell command: " + command, exception);
+    }
+  }
+
+  /**
+   * Runs a shell command on the device, waits until it finishes and returns
+   * all of its output.
+   *
+   * @param command the command line to run
+   */
+  public byte[] executeShell(String command) {
+    InputStream output = openShell(command);
+    try {
+      return ByteStreams.toByteArray(output);
+    } catch (IOException exception) {
+      throw new AdbException(
+          "IOException when reading output of shell command: " + command,
+          exception);
+    } finally {
+      Closeables.closeQuietly(output);
+    }
+  }
+
+  /**
+   * Returns a stream of the contents of a file or device on the device, using
+   * the file synchronization service. This is equivalent to
+   * {@code adb pull (FILENAME)}, but without a temporary file. Closing the
+   * stream before its end aborts the transfer.
+   *
+   * @param remotePath the path of the file on the device
+   */
+  public InputStream pull(String remotePath) {
+    Socket socket = openDeviceService("sync:");
+    try {
+      byte[] path = remotePath.getBytes(Charsets.UTF_8);
+      OutputStream output = socket.getOutputStream();
+      output.write(syncHeader(SYNC_RECV, path.length));
+      output.write(path);
+      output.flush();
+      return new SyncInputStream(socket);
+    } catch (IOException exception) {
+      closeQuietly(socket);
+      throw new AdbException(
+          "IOException when pulling file: " + remotePath, exception);
+    }
+  }
+
+  /**
+   * Forwards a port on the local host to a port on the device. This is
+   * equivalent to {@code adb forward tcp:(LOCALPORT) tcp:(REMOTEPORT)}.
+   */
+  public void forward(int localPort, int remotePort) {
+    String prefix
+        = (serialNo == null) ? "host:" : "host-serial:" + serialNo + ":";
+    Socket socket = takeSocket();
+    try {
+      sendRequest(socket,
+          prefix + "forward:tcp:" + localPort + ";tcp:" + remotePort);
+      // Newer servers confirm a second time once the forward is set up.
+      byte[] status = new byte[4];
+      int read = ByteStreams.read(socket.getInputStream(), status, 0, 4);
+      if (read == 4 && FAIL.equals(new String(status, Charsets.US_ASCII))) {
+        throw new AdbException("ADB server could not forward port "
+            + localPort + ": " + readLengthPrefixedString(socket));
+      }
+    } catch (IOException exception) {
+      throw new AdbException(
+          "IOException when forwarding port " + localPort, exception);
+    } finally {
+      closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Closes all sockets in the pool. Commands which are still running are not
+   * affected, but no more sockets will be pooled.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      for (IdleSocket idleSocket : idleSockets) {
+        closeQuietly(idleSocket.socket);
+      }
+      idleSockets.clear();
+      if (poolFiller != null) {
+        poolFiller.shutdown();
+        poolFiller = null;
+      }
+    }
+  }
+
+  /**
+   * Connects to the device and starts the given service on it.
+   *
+   * @return the socket, which is now connected to the service
+   */
+  protected Socket openDeviceService(String service) {
+    Socket socket = takeSocket();
+    try {
+      sendRequest(socket, (serialNo == null)
+          ? "host:transport-any" : "host:transport:" + serialNo);
+      sendRequest(socket, service);
+      return socket;
+    } catch (IOException exception) {
+      closeQuietly(socket);
+      throw new AdbException(
+          "IOException when starting ADB service: " + service, exception);
+    }
+  }
+
+  /**
+   * Returns a connected socket, either from the pool or a new one, and
+   * schedules the pool to be refilled.
+   */
+  protected Socket takeSocket() {
+    Socket socket = null;
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      while (socket == null && !idleSockets.isEmpty()) {
+        IdleSocket idleSocket = idleSockets.removeFirst();
+        if (now - idleSocket.connectedAt < maxIdleMillis
+            && !idleSocket.socket.isClosed()) {
+          socket = idleSocket.socket;
+        } else {
+          closeQuietly(idleSocket.socket);
+        }
+      }
+      scheduleFillPool();
+    }
+
+    if (socket == null) {
+      try {
+        socket = connect();
+      } catch (IOException exception) {
+        throw new AdbException(String.format(
+            "Could not connect to the ADB server at %s:%d.", host, port),
+            exception);
+      }
+    }
+    return socket;
+  }
+
+  protected Socket connect() throws IOException {
+    Socket socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+    return socket;
+  }
+
+  // Must be called while holding the lock on "this".
+  private void scheduleFillPool() {
+    if (closed || poolSize == 0 || idleSockets.size() >= poolSize) {
+      return;
+    }
+    if (poolFiller == null) {
+      poolFiller = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("AdbHostClient-pool-%d")
+          .build());
+    }
+    poolFiller.execute(new Runnable() {
+      @Override
+      public void run() {
+        fillPool();
+      }
+    });
+  }
+
+  private void fillPool() {
+    while (true) {
+      synchronized (this) {
+        if (closed || idleSockets.size() >= poolSize) {
+          return;
+        }
+      }
+
+      Socket socket;
+      try {
+        socket = connect();
+      } catch (IOException exception) {
+        // The server is not reachable right now; takeSocket will report the
+        // error when the socket is really needed.
+        return;
+      }
+
+      synchronized (this) {
+        if (closed || idleSockets.size() >= poolSize) {
+          closeQuietly(socket);
+          return;
+        }
+        idleSockets.addLast(
+            new IdleSocket(socket, System.currentTimeMillis()));
+      }
+    }
+  }
+
+  /**
+   * Sends a request and reads the status of the reply.
+   *
+   * @throws AdbException if the server replies with {@code FAIL}
+   */
+  private static void sendRequest(Socket socket, String request)
+      throws IOException {
+    byte[] payload = request.getBytes(Charsets.UTF_8);
+    OutputStream output = socket.getOutputStream();
+    output.write(String.format("%04x", payload.length)
+        .getBytes(Charsets.US_ASCII));
+    output.write(payload);
+    output.flush();
+
+    String status = readString(socket.getInputStream(), 4);
+    if (FAIL.equals(status)) {
+      throw new AdbException(String.format(
+          "ADB server refused request '%s': %s",
+          request, readLengthPrefixedString(socket)));
+    } else if (!OKAY.equals(status)) {
+      throw new AdbException(String.format(
+          "Unexpected reply from ADB server to request '%s': %s",
+          request, status));
+    }
+  }
+
+  private static String readLengthPrefixedString(Socket socket)
+      throws IOException {
+    InputStream input = socket.getInputStream();
+    int length = Integer.parseInt(readString(input, 4), 16);
+    return readString(input, length);
+  }
+
+  private static String readString(InputStream input, int length)
+      throws IOException {
+    byte[] buffer = new byte[length];
+    ByteStreams.readFully(input, buffer);
+    return new String(buffer, Charsets.UTF_8);
+  }
+
+  // Socket does not implement Closeable before Java 7.
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException exception) {
+      // Nothing to do; the socket is discarded anyway.
+    }
+  }
+
+  private static byte[] syncHeader(String id, int length) {
+    byte[] header = new byte[8];
+    System.arraycopy(id.getBytes(Charsets.US_ASCII), 0, header, 0, 4);
+    writeLittleEndianInt(header, 4, length);
+    return header;
+  }
+
+  private static void writeLittleEndianInt(byte[] buffer, int offset,
+      int value) {
+    buffer[offset] = (byte) value;
+    buffer[offset + 1] = (byte) (value >>> 8);
+    buffer[offset + 2] = (byte) (value >>> 16);
+    buffer[offset + 3] = (byte) (value >>> 24);
+  }
+
+  private static int readLittleEndianInt(byte[] buffer, int offset) {
+    return (buffer[offset] & 0xff)
+        | ((buffer[offset + 1] & 0xff) << 8)
+        | ((buffer[offset + 2] & 0xff) << 16)
+        | ((buffer[offset + 3] & 0xff) << 24);
+  }
+
+  /**
+   * The output of a shell command, which closes the socket when closed.
+   */
+  private static class SocketInputStream extends InputStream {
+    private final Socket socket;
+    private final InputStream input;
+
+    private SocketInputStream(Socket socket) throws IOException {
+      this.socket = socket;
+      this.input = socket.getInputStream();
+    }
+
+    @Override
+    public int read() throws IOException {
+      return input.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return input.read(buffer, offset, length);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return input.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  /**
+   * The contents of a file received with the sync {@code RECV} request. The
+   * data arrive in {@code DATA} chunks of at most 64 KiB, terminated by
+   * {@code DONE}, or by {@code FAIL} and an error message.
+   */
+  private static class SyncInputStream extends InputStream {
+    private final Socket socket;
+    private final DataInputStream input;
+    private final byte[] header = new byte[8];
+    private int remainingInChunk;
+    private boolean done;
+
+    private SyncInputStream(Socket socket) throws IOException {
+      this.socket = socket;
+      this.input = new DataInputStream(socket.getInputStream());
+    }
+
+    /**
+     * Reads chunk headers until there is data to read or the transfer ends.
+     *
+     * @return {@code false} if the transfer has ended
+     */
+    private boolean nextChunk() throws IOException {
+      while (remainingInChunk == 0) {
+        if (done) {
+          return false;
+        }
+        try {
+          input.readFully(header);
+        } catch (EOFException exception) {
+          throw new AdbException(
+              "Connection closed during file transfer.", exception);
+        }
+        String id = new String(header, 0, 4, Charsets.US_ASCII);
+        int length = readLittleEndianInt(header, 4);
+
+        if (SYNC_DATA.equals(id)) {
+          if (length < 0 || length > SYNC_MAX_DATA) {
+            throw new AdbException("Invalid sync chunk length: " + length);
+          }
+          remainingInChunk = length;
+        } else if (SYNC_DONE.equals(id)) {
+          done = true;
+          quit();
+        } else if (SYNC_FAIL.equals(id)) {
+          done = true;
+          throw new AdbException("File transfer failed: "
+              + readString(input, length));
+        } else {
+          done = true;
+          throw new AdbException("Unexpected sync reply: " + id);
+        }
+      }
+      return true;
+    }
+
+    private void quit() throws IOException {
+      socket.getOutputStream().write(syncHeader(SYNC_QUIT, 0));
+      socket.getOutputStream().flush();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextChunk()) {
+        return -1;
+      }
+      remainingInChunk--;
+      return input.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!nextChunk()) {
+        return -1;
+      }
+      int read = input.read(
+          buffer, offset, Math.min(length, remainingInChunk));
+      if (read == -1) {
+        throw new AdbException("Connection closed during file transfer.");
+      }
+      remainingInChunk -= read;
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return remainingInChunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * An event reported by the server, such as an activity transition or a layout
+ * change.
+ *
+ * @see ServerEvents
+ * @see AndroidEventStream
+ */
+public class AndroidEvent {
+  private final long sequence;
+  private final String type;
+  private final long time;
+  private final Map<String, Object> fields;
+
+  private AndroidEvent(long sequence, String type, long time,
+      Map<String, Object> fields) {
+    this.sequence = sequence;
+    this.type = Preconditions.checkNotNull(type);
+    this.time = time;
+    this.fields = fields;
+  }
+
+  /**
+   * Creates an event from its fields, as returned by the server.
+   */
+  static AndroidEvent fromMap(Map<String, ?> fields) {
+    ImmutableMap.Builder<String, Object> copy = ImmutableMap.builder();
+    for (Map.Entry<String, ?> field : fields.entrySet()) {
+      if (field.getValue() != null) {
+        copy.put(field.getKey(), field.getValue());
+      }
+    }
+    return new AndroidEvent(
+        ((Number) fields.get(ServerEvents.SEQUENCE)).longValue(),
+        (String) fields.get(ServerEvents.TYPE),
+        ((Number) fields.get(ServerEvents.TIME)).longValue(),
+        copy.build());
+  }
+
+  /**
+   * Returns the sequence number of the event. Later events have larger
+   * numbers.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Returns the type of the event, one of the types in {@link ServerEvents}.
+   */
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Returns the time of the event on the device, in milliseconds since the
+   * epoch.
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the class name of the activity of an activity event, or
+   * {@code null} for other events.
+   */
+  @Nullable
+  public String getActivityClass() {
+    return (String) fields.get(ServerEvents.ACTIVITY);
+  }
+
+  /**
+   * Returns all fields of the event, including those which have getters.
+   */
+  public Map<String, Object> getFields() {
+    return fields;
+  }
+
+  @Override
+  public String toString() {
+    return fields.toString();
+  }
+
+  /**
+   * Returns a predicate matching events of the given type.
+   */
+  public static Predicate<AndroidEvent> ofType(final String type) {
+    Preconditions.checkNotNull(type);
+    return new Predicate<AndroidEvent>() {
+      @Override
+      public boolean apply(AndroidEvent event) {
+        return type.equals(event.getType());
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate matching activity events of the given type whose
+   * activity has the given class name.
+   */
+  public static Predicate<AndroidEvent> ofActivity(
+      final String type, final String activityClass) {
+    Preconditions.checkNotNull(type);
+    Preconditions.checkNotNull(activityClass);
+    return new Predicate<AndroidEvent>() {
+      @Override
+      public boolean apply(AndroidEvent event) {
+        return type.equals(event.getType())
+            && activityClass.equals(event.getActivityClass());
+      }
+    };
+  }
+}
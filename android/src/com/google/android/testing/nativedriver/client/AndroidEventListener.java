@@ -0,0 +1,37 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+/**
+ * Receives the events reported by the server.
+ *
+ * @see AndroidEventStream#addListener
+ */
+public interface AndroidEventListener {
+  /**
+   * Called on the polling thread of the {@link AndroidEventStream} for each
+   * event, in order.
+   */
+  void onEvent(AndroidEvent event);
+
+  /**
+   * Called on the polling thread when the server dropped events from its log
+   * before the client received them.
+   */
+  void onEventsMissed();
+}
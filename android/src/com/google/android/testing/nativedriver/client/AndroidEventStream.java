@@ -0,0 +1,223 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+/**
+ * Delivers the events reported by the server, such as activity transitions,
+ * without polling the state of the application. While there are listeners or
+ * pending futures, a background thread keeps one request open to the server,
+ * which answers as soon as an event is recorded. The thread stops when the
+ * last listener is removed and no future is pending.
+ *
+ * <pre>
+ * Future&lt;AndroidEvent&gt; resumed
+ *     = driver.events().activityResumed("com.example.DetailActivity");
+ * driver.findElement(By.id("open")).click();
+ * resumed.get(10, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * <p>Only events recorded after a listener or future was registered are
+ * delivered to it. If a poll fails, for instance because the session ended,
+ * the pending futures fail with the exception and the thread stops; it is
+ * started again when another listener or future is registered.
+ *
+ * <p>This class is thread-safe.
+ */
+public class AndroidEventStream {
+  /** The time a poll waits for events on the server, in milliseconds. */
+  static final long POLL_TIMEOUT = 20000;
+
+  private static class Waiter {
+    final Predicate<? super AndroidEvent> condition;
+    final SettableFuture<AndroidEvent> future = SettableFuture.create();
+
+    Waiter(Predicate<? super AndroidEvent> condition) {
+      this.condition = Preconditions.checkNotNull(condition);
+    }
+  }
+
+  private final AndroidNativeDriver driver;
+  private final List<AndroidEventListener> listeners
+      = new CopyOnWriteArrayList<AndroidEventListener>();
+  private final List<Waiter> waiters = Lists.newLinkedList();
+  private long next = -1;
+  @Nullable private Thread thread;
+  private boolean closed;
+
+  AndroidEventStream(AndroidNativeDriver driver) {
+    this.driver = Preconditions.checkNotNull(driver);
+  }
+
+  public synchronized void addListener(AndroidEventListener listener) {
+    listeners.add(Preconditions.checkNotNull(listener));
+    start();
+  }
+
+  public synchronized void removeListener(AndroidEventListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns a future which completes with the first event matching the
+   * condition.
+   */
+  public synchronized Future<AndroidEvent> next(
+      Predicate<? super AndroidEvent> condition) {
+    Waiter waiter = new Waiter(condition);
+    waiters.add(waiter);
+    start();
+    return waiter.future;
+  }
+
+  /**
+   * Returns a future which completes when an activity of the given class is
+   * resumed.
+   */
+  public Future<AndroidEvent> activityResumed(String activityClass) {
+    return next(AndroidEvent.ofActivity(
+        ServerEvents.ACTIVITY_RESUMED, activityClass));
+  }
+
+  /**
+   * Stops delivering events and cancels the pending futures.
+   */
+  public synchronized void close() {
+    closed = true;
+    for (Waiter waiter : waiters) {
+      waiter.future.cancel(false);
+    }
+    waiters.clear();
+    listeners.clear();
+  }
+
+  private void start() {
+    Preconditions.checkState(!closed, "The event stream is closed.");
+    if (thread != null) {
+      return;
+    }
+    if (next < 0) {
+      // Only later events are delivered, so start after the newest one.
+      next = getNext(poll(-1, 0));
+    }
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        pollUntilIdle();
+      }
+    }, "AndroidEventStream");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void pollUntilIdle() {
+    while (true) {
+      long since;
+      synchronized (this) {
+        if (closed || (listeners.isEmpty() && waiters.isEmpty())) {
+          stopped();
+          return;
+        }
+        since = next;
+      }
+
+      Map<String, Object> value;
+      try {
+        value = poll(since, POLL_TIMEOUT);
+      } catch (RuntimeException exception) {
+        failed(exception);
+        return;
+      }
+      dispatch(value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dispatch(Map<String, Object> value) {
+    if (Boolean.TRUE.equals(value.get(ServerEvents.MISSED))) {
+      for (AndroidEventListener listener : listeners) {
+        listener.onEventsMissed();
+      }
+    }
+
+    List<Map<String, Object>> events
+        = (List<Map<String, Object>>) value.get(ServerEvents.EVENTS);
+    for (Map<String, Object> fields : events) {
+      AndroidEvent event = AndroidEvent.fromMap(fields);
+      for (AndroidEventListener listener : listeners) {
+        listener.onEvent(event);
+      }
+      synchronized (this) {
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+          Waiter waiter = iterator.next();
+          if (waiter.future.isDone()) {
+            iterator.remove();
+          } else if (waiter.condition.apply(event)) {
+            waiter.future.set(event);
+            iterator.remove();
+          }
+        }
+      }
+    }
+
+    synchronized (this) {
+      next = getNext(value);
+    }
+  }
+
+  private synchronized void failed(RuntimeException exception) {
+    for (Waiter waiter : waiters) {
+      waiter.future.setException(exception);
+    }
+    waiters.clear();
+    stopped();
+  }
+
+  private void stopped() {
+    thread = null;
+    // Events recorded while nobody listens are skipped on restart.
+    next = -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> poll(long since, long timeout) {
+    Map<String, Object> parameters = Maps.newHashMap();
+    parameters.put(ServerEvents.SINCE, since);
+    parameters.put(ServerEvents.TIMEOUT, timeout);
+    return (Map<String, Object>) driver.pollEvents(parameters).getValue();
+  }
+
+  private static long getNext(Map<String, Object> value) {
+    return ((Number) value.get(ServerEvents.NEXT)).longValue();
+  }
+}
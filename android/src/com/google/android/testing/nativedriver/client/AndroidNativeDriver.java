@@ -18,12 +18,19 @@ limitations under the License.
 package com.google.android.testing.nativedriver.client;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,11 +59,21 @@ import com.google.android.testing.nativedriver.client.util.JSONUtil;
 import com.google.android.testing.nativedriver.common.AndroidCapabilities;
 import com.google.android.testing.nativedriver.common.AndroidNativeBy;
 import com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand;
+import com.google.android.testing.nativedriver.common.DumpOptions;
+import com.google.android.testing.nativedriver.common.FindsByListItem;
+import com.google.android.testing.nativedriver.common.FindsBySelector;
 import com.google.android.testing.nativedriver.common.FindsByText;
+import com.google.android.testing.nativedriver.common.FindsByTextPattern;
 import com.google.android.testing.nativedriver.common.FindsByUID;
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.android.testing.nativedriver.common.PerformsGestures;
+import com.google.android.testing.nativedriver.common.TakesViewScreenshot;
+import com.google.android.testing.nativedriver.common.ViewScreenshotOptions;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 
 
@@ -70,7 +87,10 @@ import com.google.common.io.Closeables;
  * @author Kazuhiro Yamada
  */
 public class AndroidNativeDriver
-    extends RemoteWebDriver implements FindsByText, FindsByUID, Rotatable, HasInputDevices, TakesScreenshot, AndroidNativeDriverCommand {
+    extends RemoteWebDriver implements FindsByText, FindsByTextPattern,
+        FindsByListItem, FindsByUID, FindsBySelector, Rotatable,
+        HasInputDevices, TakesScreenshot, TakesViewScreenshot,
+        PerformsGestures, AndroidNativeDriverCommand {
   private class AndroidKeyboard implements Keyboard {
     @Override
     public void sendKeys(CharSequence... keysToSend) {
@@ -94,6 +114,12 @@ public class AndroidNativeDriver
   @Nullable
   private final AdbConnection adbConnection;
   private final AndroidKeyboard androidKeyboard = new AndroidKeyboard();
+  @Nullable private FrameBufferConverter frameBufferConverter;
+  @Nullable private AndroidEventStream eventStream;
+  @Nullable private ExecutorService screenshotExecutor;
+  private int screenshotParallelism = 1;
+  private ScreenshotFormat pngScreenshotFormat
+      = ScreenshotFormat.png(Deflater.BEST_SPEED);
 
   /**
    * A {@code Navigation} class for native Android applications. Provides
@@ -243,6 +269,56 @@ public class AndroidNativeDriver
     return findElements(USING_TEXT, using);
   }
 
+  @Override
+  public WebElement findElementByTextMatching(String using) {
+    return findElement(USING_TEXT_MATCHING, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByTextMatching(String using) {
+    return findElements(USING_TEXT_MATCHING, using);
+  }
+
+  @Override
+  public WebElement findElementByTextIgnoringCase(String using) {
+    return findElement(USING_TEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByTextIgnoringCase(String using) {
+    return findElements(USING_TEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public WebElement findElementByPartialTextIgnoringCase(String using) {
+    return findElement(USING_PARTIALTEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByPartialTextIgnoringCase(String using) {
+    return findElements(USING_PARTIALTEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public WebElement findElementByListItemText(String using) {
+    return findElement(USING_LISTITEM_TEXT, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByListItemText(String using) {
+    return findElements(USING_LISTITEM_TEXT, using);
+  }
+
+  @Override
+  public WebElement findElementByListItemId(String using) {
+    return findElement(USING_LISTITEM_ID, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByListItemId(String using) {
+    return findElements(USING_LISTITEM_ID, using);
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public List<AndroidNativeElement> findAndroidNativeElements(By by) {
     return (List) findElements(by);
@@ -258,6 +334,16 @@ public class AndroidNativeDriver
     return findElement(USING_UID, using);
   }
 
+  @Override
+  public WebElement findElementBySelector(String using) {
+    return findElement(USING_SELECTOR, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsBySelector(String using) {
+    return findElements(USING_SELECTOR, using);
+  }
+
   @Override
   public void rotate(ScreenOrientation orientation) {
     // Refers to org.openqa.selenium.android.AndroidDriver
@@ -286,6 +372,49 @@ public class AndroidNativeDriver
     return adbConnection;
   }
 
+  /**
+   * Makes screenshots convert the frame buffer in parallel on the given
+   * executor. By default, the frame buffer is converted on the calling thread.
+   *
+   * @param executor the executor to use, or {@code null} to convert on the
+   *        calling thread
+   * @param parallelism the maximum number of parts into which to split each
+   *        frame, usually the number of threads of {@code executor}
+   */
+  public synchronized void setScreenshotExecutor(
+      @Nullable ExecutorService executor, int parallelism) {
+    Preconditions.checkArgument(parallelism >= 1);
+    this.screenshotExecutor = executor;
+    this.screenshotParallelism = parallelism;
+    this.frameBufferConverter = null;
+  }
+
+  /**
+   * Sets the compression level of the PNG files returned by
+   * {@link #getScreenshotAs} for {@link OutputType#BYTES} and
+   * {@link OutputType#FILE}. The default is {@link Deflater#BEST_SPEED}.
+   *
+   * @param compressionLevel the compression level, from
+   *        {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}
+   */
+  public synchronized void setScreenshotCompressionLevel(int compressionLevel) {
+    this.pngScreenshotFormat = ScreenshotFormat.png(compressionLevel);
+  }
+
+  /**
+   * Returns a converter for the given frame buffer format. The converter is
+   * kept as long as the format does not change, so that its buffer is reused.
+   */
+  protected synchronized FrameBufferConverter getFrameBufferConverter(
+      FrameBufferFormat format) {
+    if (frameBufferConverter == null
+        || !frameBufferConverter.getFormat().equals(format)) {
+      frameBufferConverter = new FrameBufferConverter(
+          format, screenshotExecutor, screenshotParallelism);
+    }
+    return frameBufferConverter;
+  }
+
   /**
    * @return {@code false} if PNG-writing is not supported, {@code true}
    *         otherwise
@@ -316,13 +445,123 @@ public class AndroidNativeDriver
    *
    * <p>Unlike most {@link RemoteWebDriver} operations, this implementation
    * does not send a request to the remote server. The screenshot is taken by
-   * using ADB on the driver client side to query the device.
+   * using ADB on the driver client side to query the device. If this driver
+   * has no {@code AdbConnection}, the screenshot is drawn on the device with
+   * {@link #takeViewScreenshot} instead.
+   *
+   * <p>For {@link OutputType#BYTES} and {@link OutputType#FILE}, the PNG file
+   * is written directly to a byte array or file, without the Base64 round
+   * trip, using the level set with {@link #setScreenshotCompressionLevel}.
    *
    * @throws AdbException if an error occurred while driving the device through
    *         the {@code adb} tool
    */
   @Override
   public <X> X getScreenshotAs(OutputType<X> target) throws AdbException {
+    if (target == OutputType.BYTES) {
+      return castOutput(target, getScreenshotBytes(getPngScreenshotFormat()));
+    }
+    if (target == OutputType.FILE) {
+      return castOutput(target, getScreenshotFile(getPngScreenshotFormat()));
+    }
+
+    String base64Png = imageToBase64Png(captureScreenImage());
+
+    return target.convertFromBase64Png(base64Png);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <X> X castOutput(OutputType<X> target, Object output) {
+    // Only called for BYTES and FILE, whose type parameters are byte[] and
+    // File respectively.
+    return (X) output;
+  }
+
+  private synchronized ScreenshotFormat getPngScreenshotFormat() {
+    return pngScreenshotFormat;
+  }
+
+  /**
+   * Takes a screenshot and writes it to the given stream in the given format.
+   * The stream is not closed.
+   *
+   * @throws AdbException if an error occurred while driving the device through
+   *         the {@code adb} tool
+   */
+  public void writeScreenshot(ScreenshotFormat format, OutputStream destination)
+      throws IOException {
+    format.write(captureScreenImage(), destination);
+  }
+
+  /**
+   * Takes a screenshot and returns it in the given format.
+   *
+   * @throws AdbException if an error occurred while driving the device through
+   *         the {@code adb} tool
+   */
+  public byte[] getScreenshotBytes(ScreenshotFormat format) {
+    BufferedImage image = captureScreenImage();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+        image.getWidth() * image.getHeight());
+    try {
+      format.write(image, bytes);
+    } catch (IOException exception) {
+      // This should never happen because bytes is an in-memory stream.
+      throw Throwables.propagate(exception);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Takes a screenshot and writes it in the given format to a new temporary
+   * file, which is deleted when the virtual machine exits.
+   *
+   * @throws AdbException if an error occurred while driving the device through
+   *         the {@code adb} tool
+   */
+  public File getScreenshotFile(ScreenshotFormat format) {
+    BufferedImage image = captureScreenImage();
+    OutputStream output = null;
+    try {
+      File file = File.createTempFile("screenshot", format.getFileSuffix());
+      file.deleteOnExit();
+      output = new BufferedOutputStream(new FileOutputStream(file));
+      format.write(image, output);
+      output.close();
+      return file;
+    } catch (IOException exception) {
+      throw new RuntimeException(
+          "Could not write screenshot to a temporary file.", exception);
+    } finally {
+      Closeables.closeQuietly(output);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Unlike {@link #getScreenshotAs}, this does not need ADB. The
+   * {@code View}s of the application are drawn into a bitmap on the device,
+   * which is compressed there and sent back in the response.
+   */
+  @Override
+  public byte[] takeViewScreenshot(ViewScreenshotOptions options) {
+    Response response = execute(AndroidNativeDriverCommand.TAKE_VIEW_SCREENSHOT,
+        options.toParameters());
+    return new Base64Encoder().decode((String) response.getValue());
+  }
+
+  /**
+   * Reads the frame buffer of the device into a new image. If this driver has
+   * no {@code AdbConnection}, the image is drawn on the device instead.
+   *
+   * @throws AdbException if an error occurred while driving the device through
+   *         the {@code adb} tool
+   */
+  protected BufferedImage captureScreenImage() {
+    if (adbConnection == null) {
+      return captureViewScreenImage();
+    }
     AdbConnection adb = validateAdbConnection();
     FrameBufferFormat format = FrameBufferFormat.ofDevice(adb);
 
@@ -330,17 +569,38 @@ public class AndroidNativeDriver
         format.getXResolution(), format.getYResolution(),
         BufferedImage.TYPE_INT_ARGB);
 
-    Process pullFrameBuffer = adb.pullFile(FrameBufferFormat.FB_DEVICEFILE);
-    InputStream frameBufferStream = pullFrameBuffer.getInputStream();
-    format.copyFrameBufferToImage(frameBufferStream, screenImage);
-
-    AdbConnection.exhaustProcessOutput(frameBufferStream);
-    Closeables.closeQuietly(frameBufferStream);
-    AdbConnection.confirmExitValueIs(0, pullFrameBuffer);
+    InputStream frameBufferStream
+        = adb.openFile(FrameBufferFormat.FB_DEVICEFILE);
+    try {
+      FrameBufferConverter converter = getFrameBufferConverter(format);
+      synchronized (converter) {
+        converter.convert(frameBufferStream, screenImage);
+      }
+      frameBufferStream.close();
+    } catch (IOException exception) {
+      throw new AdbException(
+          "IOException when reading the frame buffer.", exception);
+    } finally {
+      Closeables.closeQuietly(frameBufferStream);
+    }
 
-    String base64Png = imageToBase64Png(screenImage);
+    return screenImage;
+  }
 
-    return target.convertFromBase64Png(base64Png);
+  private BufferedImage captureViewScreenImage() {
+    byte[] png = takeViewScreenshot(
+        ViewScreenshotOptions.png().withAllWindows());
+    try {
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+      if (image == null) {
+        throw new RuntimeException(
+            "This Java environment does not support reading PNG.");
+      }
+      return image;
+    } catch (IOException exception) {
+      // This should never happen because png is an in-memory array.
+      throw Throwables.propagate(exception);
+    }
   }
 
   /**
@@ -381,26 +641,113 @@ public class AndroidNativeDriver
   }
 
   public void dump() {
-    Response response = execute(DriverCommand.GET_JSON,
-         ImmutableMap.of("url", DUMP_CURRENT_ACTIVITY + "://-"));
-    String json = JSONUtil.toJSON(response.getValue());
-    System.out.println(json);
+    System.out.println(getDump());
   }
 
   public String getDump() {
-    Response response = execute(DriverCommand.GET_JSON,
-         ImmutableMap.of("url", DUMP_CURRENT_ACTIVITY + "://-"));
+    return getDump(DumpOptions.all());
+  }
+
+  /**
+   * Returns the dump of the current activity as JSON. The server writes the
+   * dump element by element, only querying the selected fields, so limiting
+   * the fields, the depth or the subtree with the options makes large dumps
+   * much faster.
+   */
+  public String getDump(DumpOptions options) {
+    Response response = execute(AndroidNativeDriverCommand.DUMP_VIEW_HIERARCHY,
+        options.toParameters());
     String json = JSONUtil.toJSON(response.getValue());
     return json;
   }
 
+  /**
+   * Writes the dump of the current activity as UTF-8 encoded JSON to the
+   * given stream. The stream is left open. The dump can be read back with
+   * {@link JSONUtil#readJSON}.
+   *
+   * <p>The command executor still reads and parses the whole response before
+   * the dump is written, so this only saves the {@code String} which
+   * {@link #getDump(DumpOptions)} would build from the parsed dump.
+   */
+  public void writeDump(DumpOptions options, OutputStream output)
+      throws IOException {
+    Response response = execute(AndroidNativeDriverCommand.DUMP_VIEW_HIERARCHY,
+        options.toParameters());
+    JSONUtil.writeJSON(response.getValue(), output);
+  }
+
+  /**
+   * Brings the local copy of the dump up to date. Only the elements which
+   * changed since the last update of the same copy are sent by the server, as
+   * long as no other copy was updated in between with this driver.
+   *
+   * @return {@code dump}, for chaining
+   */
+  @SuppressWarnings("unchecked")
+  public HierarchyDump updateDump(HierarchyDump dump) {
+    Map<String, Object> parameters = Maps.newHashMap();
+    parameters.put(HierarchyDiff.BASE_VERSION, dump.getVersion());
+    Response response = execute(
+        AndroidNativeDriverCommand.DUMP_VIEW_HIERARCHY_DIFF, parameters);
+    dump.applyDiff((Map<String, Object>) response.getValue());
+    return dump;
+  }
+
+  /**
+   * Returns a new, empty batch of commands which are executed in a single
+   * request to the server.
+   */
+  public CommandBatch newBatch() {
+    return new CommandBatch(this);
+  }
+
+  Response executeBatch(Map<String, ?> parameters) {
+    return execute(AndroidNativeDriverCommand.BATCH, parameters);
+  }
+
+  /**
+   * Returns the stream of the events reported by the server, such as
+   * activity transitions. The stream is closed when the session ends.
+   */
+  public synchronized AndroidEventStream events() {
+    if (eventStream == null) {
+      eventStream = new AndroidEventStream(this);
+    }
+    return eventStream;
+  }
+
+  Response pollEvents(Map<String, ?> parameters) {
+    return execute(AndroidNativeDriverCommand.POLL_EVENTS, parameters);
+  }
+
+  private synchronized void closeEventStream() {
+    if (eventStream != null) {
+      eventStream.close();
+      eventStream = null;
+    }
+  }
+
   public void quitWithInit() {
+    closeEventStream();
     super.quit();
     if (adbConnection != null) {
         adbConnection.dropData();
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The whole gesture is sent in a single request. The server injects the
+   * touch events itself, at the pace given by the durations of the paths.
+   */
+  @Override
+  public void perform(Gesture gesture) {
+    execute(AndroidNativeDriverCommand.PERFORM_GESTURE,
+        gesture.toParameters());
+  }
+
   public void flick(int x1, int y1, int x2, int y2) {
     execute("get", ImmutableMap.of("url", "flick://-?x1=" + x1 + "&y1=" + y1 + "&x2=" + x2 + "&y2=" + y2)) ;
   }
@@ -415,6 +762,7 @@ public class AndroidNativeDriver
 
   @Override
   public void quit() {
+    closeEventStream();
     try {
       super.quit();
     } catch (UnreachableBrowserException ignored) {
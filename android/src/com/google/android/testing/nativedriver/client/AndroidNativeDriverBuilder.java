@@ -19,6 +19,7 @@ package com.google.android.testing.nativedriver.client;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -26,6 +27,7 @@ import org.openqa.selenium.remote.CommandExecutor;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
 
 /**
  * Configures and creates {@link AndroidNativeDriver} instances.
@@ -38,6 +40,8 @@ public class AndroidNativeDriverBuilder {
   private static final int DEFAULT_LOCAL_PORT = 54129;
   private static final int DEFAULT_REMOTE_PORT = 54129;
   private int localPort = DEFAULT_LOCAL_PORT;
+  private int remotePort = DEFAULT_REMOTE_PORT;
+  private final Map<String, String> serverArguments = Maps.newLinkedHashMap();
 
   /**
    * The URL used to connect to the server when using a constructor that does
@@ -74,6 +78,28 @@ public class AndroidNativeDriverBuilder {
     return this;
   }
   
+  /**
+   * Sets the port on which the server listens on the device, and passes it to
+   * the server as its {@code port} argument. The default is 54129.
+   */
+  public AndroidNativeDriverBuilder withRemotePort(int remotePort) {
+    this.remotePort = remotePort;
+    return withServerArgument("port", String.valueOf(remotePort));
+  }
+
+  /**
+   * Adds an argument of the server instrumentation, such as
+   * {@code connector} or {@code maxThreads}. The arguments are only used
+   * when the server is started by this builder through an
+   * {@code AdbConnection}.
+   */
+  public AndroidNativeDriverBuilder withServerArgument(
+      String name, String value) {
+    serverArguments.put(Preconditions.checkNotNull(name),
+        Preconditions.checkNotNull(value));
+    return this;
+  }
+
   public AndroidNativeDriverBuilder
       withCommandExecutor(CommandExecutor commandExecutor) {
     this.commandExecutor = Preconditions.checkNotNull(commandExecutor);
@@ -91,8 +117,8 @@ public class AndroidNativeDriverBuilder {
   public AndroidNativeDriver build() {
     if (adbConnection != null) {
       // Connection establishment with NativeDriver
-      this.adbConnection.instrument();
-      this.adbConnection.forward(localPort, DEFAULT_REMOTE_PORT);
+      this.adbConnection.instrument(serverArguments);
+      this.adbConnection.forward(localPort, remotePort);
     }
     try {
       return new AndroidNativeDriver(
@@ -24,22 +24,28 @@ import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebElement;
 
 import com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand;
+import com.google.android.testing.nativedriver.common.FindsByListItem;
+import com.google.android.testing.nativedriver.common.FindsBySelector;
 import com.google.android.testing.nativedriver.common.FindsByText;
+import com.google.android.testing.nativedriver.common.FindsByTextPattern;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 
 /**
  * Represents an element on the client side. Objects of this type are identical
  * to {@code RemoteWebElement} objects, but in addition support finding by
- * text. The code in this class intercepts calls to the methods on
- * {@code FindsByText} and causes the correct JSON commands to be sent to the
- * remote session.
+ * text, by list item and by selector. The code in this class intercepts calls
+ * to the methods on {@code FindsByText}, {@code FindsByTextPattern},
+ * {@code FindsByListItem} and {@code FindsBySelector} and causes the correct
+ * JSON commands to be sent to the remote session.
  *
  * @author Matt DeVore
  * @author Kazuhiro Yamada
  */
 public class AndroidNativeElement
-    extends RemoteWebElement implements FindsByText, AndroidNativeDriverCommand {
+    extends RemoteWebElement
+    implements FindsByText, FindsByTextPattern, FindsByListItem,
+        FindsBySelector, AndroidNativeDriverCommand {
   /**
    * Constructs a new instance and sets the parent WebDriver object.
    *
@@ -68,6 +74,66 @@ public class AndroidNativeElement
   public List<WebElement> findElementsByText(String using) {
     return findElements(USING_TEXT, using);
   }
+
+  @Override
+  public WebElement findElementByTextMatching(String using) {
+    return findElement(USING_TEXT_MATCHING, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByTextMatching(String using) {
+    return findElements(USING_TEXT_MATCHING, using);
+  }
+
+  @Override
+  public WebElement findElementByTextIgnoringCase(String using) {
+    return findElement(USING_TEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByTextIgnoringCase(String using) {
+    return findElements(USING_TEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public WebElement findElementByPartialTextIgnoringCase(String using) {
+    return findElement(USING_PARTIALTEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByPartialTextIgnoringCase(String using) {
+    return findElements(USING_PARTIALTEXT_IGNORING_CASE, using);
+  }
+
+  @Override
+  public WebElement findElementByListItemText(String using) {
+    return findElement(USING_LISTITEM_TEXT, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByListItemText(String using) {
+    return findElements(USING_LISTITEM_TEXT, using);
+  }
+
+  @Override
+  public WebElement findElementByListItemId(String using) {
+    return findElement(USING_LISTITEM_ID, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsByListItemId(String using) {
+    return findElements(USING_LISTITEM_ID, using);
+  }
+
+  @Override
+  public WebElement findElementBySelector(String using) {
+    return findElement(USING_SELECTOR, using);
+  }
+
+  @Override
+  public List<WebElement> findElementsBySelector(String using) {
+    return findElements(USING_SELECTOR, using);
+  }
   
   public void setText(String value) {
     execute("get", ImmutableMap.of("url", "setText://?elementId=" + this.getId() + "&value=" + IDN.toASCII(value))); 
@@ -16,6 +16,13 @@ public class AndroidNativeHttpCommandExecutor extends HttpCommandExecutor implem
   public Map<String, CommandInfo> getNameToUrlMap() { 
     Map<String, CommandInfo> map = super.getNameToUrlMap();
     map.put(DRAG_ELEMENT, post("/session/:sessionId/element/:id/dragElement"));
+    map.put(TAKE_VIEW_SCREENSHOT, post("/session/:sessionId/viewScreenshot"));
+    map.put(DUMP_VIEW_HIERARCHY, post("/session/:sessionId/viewHierarchy"));
+    map.put(DUMP_VIEW_HIERARCHY_DIFF,
+        post("/session/:sessionId/viewHierarchy/diff"));
+    map.put(BATCH, post("/session/:sessionId/batch"));
+    map.put(POLL_EVENTS, post("/session/:sessionId/events"));
+    map.put(PERFORM_GESTURE, post("/session/:sessionId/gesture"));
     return map;
   }
   
@@ -0,0 +1,220 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.remote.ErrorHandler;
+import org.openqa.selenium.remote.Response;
+
+/**
+ * Builds a list of commands which are sent to the server in a single request
+ * and executed there in order. A command may act on an element found by an
+ * earlier command of the same batch, through the {@link Ref} returned when
+ * the earlier command was added:
+ *
+ * <pre>
+ * CommandBatch batch = driver.newBatch();
+ * CommandBatch.Ref field = batch.findElement(USING_ID, "name");
+ * batch.clear(field);
+ * batch.sendKeys(field, "NativeDriver");
+ * batch.click(batch.findElement(USING_TEXT, "OK"));
+ * List&lt;Object&gt; values = batch.execute();
+ * </pre>
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class CommandBatch {
+  /**
+   * Refers to the value returned by a command of the batch, or to an item of
+   * the list returned by a command.
+   */
+  public static final class Ref {
+    private final int index;
+    private final int item;
+
+    private Ref(int index, int item) {
+      this.index = index;
+      this.item = item;
+    }
+
+    /**
+     * Returns the index of the command in the batch, which is also the index
+     * of its value in the list returned by {@link CommandBatch#execute}.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Returns a reference to an item of the list returned by the command, such
+     * as an element found by {@link CommandBatch#findElements}.
+     */
+    public Ref item(int item) {
+      Preconditions.checkState(this.item < 0, "%s is already an item", this);
+      Preconditions.checkArgument(item >= 0);
+      return new Ref(index, item);
+    }
+
+    @Override
+    public String toString() {
+      return (item < 0) ? "@" + index : "@" + index + "." + item;
+    }
+  }
+
+  private final AndroidNativeDriver driver;
+  private final List<Map<String, Object>> commands = Lists.newArrayList();
+  private boolean stopOnError = true;
+
+  CommandBatch(AndroidNativeDriver driver) {
+    this.driver = Preconditions.checkNotNull(driver);
+  }
+
+  /**
+   * Sets whether the server stops executing the batch after the first command
+   * which fails. The default is {@code true}.
+   */
+  public CommandBatch withStopOnError(boolean stopOnError) {
+    this.stopOnError = stopOnError;
+    return this;
+  }
+
+  /**
+   * Returns the number of commands added so far.
+   */
+  public int size() {
+    return commands.size();
+  }
+
+  /**
+   * Adds a command.
+   *
+   * @param method the HTTP method of the command, such as {@code "POST"}
+   * @param path the path of the command relative to the server's root, such
+   *        as {@code "/session/:sessionId/element/:id/click"}. Each
+   *        {@code :name} segment is replaced with the parameter of that name.
+   * @param parameters the parameters of the command. The value of the
+   *        {@code id} or {@code element} parameter may be a {@link Ref}.
+   */
+  public Ref add(String method, String path, Map<String, ?> parameters) {
+    Map<String, Object> encoded = Maps.newLinkedHashMap();
+    for (Map.Entry<String, ?> parameter : parameters.entrySet()) {
+      Object value = parameter.getValue();
+      encoded.put(parameter.getKey(),
+          (value instanceof Ref) ? value.toString() : value);
+    }
+    Map<String, Object> command = Maps.newLinkedHashMap();
+    command.put("method", method);
+    command.put("path", path);
+    command.put("parameters", encoded);
+    commands.add(command);
+    return new Ref(commands.size() - 1, -1);
+  }
+
+  public Ref findElement(String using, String value) {
+    return add("POST", "/session/:sessionId/element",
+        ImmutableMap.of("using", using, "value", value));
+  }
+
+  public Ref findElements(String using, String value) {
+    return add("POST", "/session/:sessionId/elements",
+        ImmutableMap.of("using", using, "value", value));
+  }
+
+  public Ref findElement(Ref parent, String using, String value) {
+    return add("POST", "/session/:sessionId/element/:id/element",
+        ImmutableMap.of("id", parent, "using", using, "value", value));
+  }
+
+  public Ref findElements(Ref parent, String using, String value) {
+    return add("POST", "/session/:sessionId/element/:id/elements",
+        ImmutableMap.of("id", parent, "using", using, "value", value));
+  }
+
+  public Ref click(Ref element) {
+    return add("POST", "/session/:sessionId/element/:id/click",
+        ImmutableMap.of("id", element));
+  }
+
+  public Ref clear(Ref element) {
+    return add("POST", "/session/:sessionId/element/:id/clear",
+        ImmutableMap.of("id", element));
+  }
+
+  public Ref sendKeys(Ref element, CharSequence... keysToSend) {
+    List<String> keys = Lists.newArrayList();
+    for (CharSequence key : keysToSend) {
+      keys.add(key.toString());
+    }
+    return add("POST", "/session/:sessionId/element/:id/value",
+        ImmutableMap.of("id", element, "value", keys));
+  }
+
+  public Ref getText(Ref element) {
+    return add("GET", "/session/:sessionId/element/:id/text",
+        ImmutableMap.of("id", element));
+  }
+
+  public Ref isDisplayed(Ref element) {
+    return add("GET", "/session/:sessionId/element/:id/displayed",
+        ImmutableMap.of("id", element));
+  }
+
+  public Ref perform(Gesture gesture) {
+    return add("POST", "/session/:sessionId/gesture", gesture.toParameters());
+  }
+
+  /**
+   * Sends the commands to the server and returns their values, in the order
+   * the commands were added. Elements are returned as
+   * {@link AndroidNativeElement}s.
+   *
+   * @throws org.openqa.selenium.WebDriverException if a command failed. The
+   *         commands before it have been executed.
+   */
+  @SuppressWarnings("unchecked")
+  public List<Object> execute() {
+    if (commands.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Response batchResponse = driver.executeBatch(
+        ImmutableMap.of("commands", commands, "stopOnError", stopOnError));
+    List<Map<String, Object>> results
+        = (List<Map<String, Object>>) batchResponse.getValue();
+
+    ErrorHandler errorHandler = new ErrorHandler(true);
+    List<Object> values = Lists.newArrayListWithCapacity(results.size());
+    for (Map<String, Object> result : results) {
+      Response response = new Response();
+      response.setSessionId(batchResponse.getSessionId());
+      response.setStatus(((Number) result.get("status")).intValue());
+      response.setValue(result.get("value"));
+      errorHandler.throwIfResponseFailed(response, 0);
+      values.add(response.getValue());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,274 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+/**
+ * Converts raw frame buffer data to 32-bit ARGB pixels in bulk. The data are
+ * read from the stream in large chunks into a buffer which is kept between
+ * conversions, and each row is converted with a loop over the raw bytes. If
+ * the destination image is backed by an {@code int} array, the pixels are
+ * written directly into that array rather than through
+ * {@link BufferedImage#setRGB}.
+ *
+ * <p>If an {@code ExecutorService} is given, the whole frame is read first and
+ * then its rows are split among several tasks on that executor.
+ *
+ * <p>The colors are converted exactly like
+ * {@link FrameBufferFormat#convertToRgba32}. Instances are not thread-safe.
+ */
+public class FrameBufferConverter {
+  /** The approximate number of bytes read from the stream at once. */
+  private static final int CHUNK_SIZE = 256 * 1024;
+
+  /** The minimum number of rows converted by one task of the executor. */
+  private static final int MIN_ROWS_PER_TASK = 64;
+
+  private final FrameBufferFormat format;
+  @Nullable private final ExecutorService executor;
+  private final int parallelism;
+  private final int bytesPerPixel;
+  private final int bytesPerRow;
+  @Nullable private byte[] buffer;
+
+  /**
+   * Constructs a converter which converts on the calling thread.
+   */
+  public FrameBufferConverter(FrameBufferFormat format) {
+    this(format, null, 1);
+  }
+
+  /**
+   * @param format the format of the frame buffer data
+   * @param executor the executor on which to convert parts of the frame, or
+   *        {@code null} to convert on the calling thread
+   * @param parallelism the maximum number of parts into which to split the
+   *        frame, usually the number of threads of {@code executor}
+   */
+  public FrameBufferConverter(FrameBufferFormat format,
+      @Nullable ExecutorService executor, int parallelism) {
+    Preconditions.checkArgument(parallelism >= 1);
+    this.format = Preconditions.checkNotNull(format);
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.bytesPerPixel = (format.getBitsPerPixel() == 32) ? 4 : 2;
+    this.bytesPerRow = format.getXResolution() * bytesPerPixel;
+  }
+
+  public FrameBufferFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Reads one frame from the stream and writes it to the image. The image must
+   * be at least as large as the frame.
+   *
+   * @param source the stream to read the raw frame buffer data from
+   * @param destination the image to write the converted pixels to
+   * @throws AdbException if reading from {@code source} fails
+   */
+  public void convert(InputStream source, BufferedImage destination) {
+    int width = format.getXResolution();
+    int height = format.getYResolution();
+    Preconditions.checkArgument(destination.getWidth() >= width
+        && destination.getHeight() >= height);
+
+    WritableRaster raster = destination.getRaster();
+    int[] pixels;
+    int offset;
+    int stride;
+    if (isDirectlyWritable(destination)) {
+      DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+      pixels = dataBuffer.getData();
+      offset = dataBuffer.getOffset();
+      stride = ((SinglePixelPackedSampleModel) raster.getSampleModel())
+          .getScanlineStride();
+    } else {
+      pixels = new int[width * height];
+      offset = 0;
+      stride = width;
+    }
+
+    try {
+      if (executor != null && parallelism > 1
+          && height >= 2 * MIN_ROWS_PER_TASK) {
+        convertInParallel(source, pixels, offset, stride);
+      } else {
+        convertInChunks(source, pixels, offset, stride);
+      }
+    } catch (IOException exception) {
+      throw new AdbException(
+          "IOException when reading screenshot data over adb.", exception);
+    }
+
+    if (!isDirectlyWritable(destination)) {
+      destination.setRGB(0, 0, width, height, pixels, 0, width);
+    }
+  }
+
+  private static boolean isDirectlyWritable(BufferedImage image) {
+    // Other int-based types (such as premultiplied alpha or BGR) store the
+    // pixels differently.
+    WritableRaster raster = image.getRaster();
+    return (image.getType() == BufferedImage.TYPE_INT_ARGB
+        || image.getType() == BufferedImage.TYPE_INT_RGB)
+        && raster.getParent() == null
+        && raster.getDataBuffer() instanceof DataBufferInt
+        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel;
+  }
+
+  private byte[] getBuffer(int minimumSize) {
+    if (buffer == null || buffer.length < minimumSize) {
+      buffer = new byte[minimumSize];
+    }
+    return buffer;
+  }
+
+  private void convertInChunks(
+      InputStream source, int[] pixels, int offset, int stride)
+      throws IOException {
+    int height = format.getYResolution();
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(1, bytesPerRow));
+    byte[] chunk = getBuffer(rowsPerChunk * bytesPerRow);
+
+    for (int y = 0; y < height; y += rowsPerChunk) {
+      int rows = Math.min(rowsPerChunk, height - y);
+      ByteStreams.readFully(source, chunk, 0, rows * bytesPerRow);
+      convertRows(chunk, 0, rows, pixels, offset + y * stride, stride);
+    }
+  }
+
+  private void convertInParallel(final InputStream source, final int[] pixels,
+      final int offset, final int stride) throws IOException {
+    int height = format.getYResolution();
+    final byte[] frame = getBuffer(height * bytesPerRow);
+    ByteStreams.readFully(source, frame, 0, height * bytesPerRow);
+
+    int parts = Math.min(parallelism, height / MIN_ROWS_PER_TASK);
+    int rowsPerPart = (height + parts - 1) / parts;
+    List<Future<?>> futures = Lists.newArrayListWithCapacity(parts);
+
+    for (int firstRow = 0; firstRow < height; firstRow += rowsPerPart) {
+      final int startRow = firstRow;
+      final int rows = Math.min(rowsPerPart, height - firstRow);
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          convertRows(frame, startRow * bytesPerRow, rows,
+              pixels, offset + startRow * stride, stride);
+        }
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new AdbException(
+            "Interrupted while converting the screenshot.", exception);
+      } catch (ExecutionException exception) {
+        throw Throwables.propagate(exception.getCause());
+      }
+    }
+  }
+
+  /**
+   * Converts consecutive rows of raw data.
+   *
+   * @param source the raw frame buffer data
+   * @param sourceIndex the index of the first byte of the first row
+   * @param rows the number of rows to convert
+   * @param into the pixel array of the destination
+   * @param intoIndex the index of the first pixel of the first row
+   * @param stride the distance between two rows in {@code into}
+   */
+  private void convertRows(byte[] source, int sourceIndex, int rows,
+      int[] into, int intoIndex, int stride) {
+    int width = format.getXResolution();
+    for (int row = 0; row < rows; row++) {
+      switch (format.getBitsPerPixel()) {
+        case 15:
+          convertRow15(source, sourceIndex, into, intoIndex, width);
+          break;
+        case 16:
+          convertRow16(source, sourceIndex, into, intoIndex, width);
+          break;
+        default:
+          convertRow32(source, sourceIndex, into, intoIndex, width);
+      }
+      sourceIndex += bytesPerRow;
+      intoIndex += stride;
+    }
+  }
+
+  private static void convertRow15(
+      byte[] source, int s, int[] into, int d, int width) {
+    for (int end = d + width; d < end; d++, s += 2) {
+      int rgb = ((source[s] & 0xff) | (source[s + 1] << 8)) & 0x7fff;
+      int red = rgb >> 10;
+      int green = (rgb >> 5) & 31;
+      int blue = rgb & 31;
+      into[d] = 0xff000000
+          | (((red << 3) | (red >> 2)) << 16)
+          | (((green << 3) | (green >> 2)) << 8)
+          | ((blue << 3) | (blue >> 2));
+    }
+  }
+
+  private static void convertRow16(
+      byte[] source, int s, int[] into, int d, int width) {
+    for (int end = d + width; d < end; d++, s += 2) {
+      int rgb = (source[s] & 0xff) | ((source[s + 1] & 0xff) << 8);
+      int red = rgb >> 11;
+      int green = (rgb >> 5) & 63;
+      int blue = rgb & 31;
+      into[d] = 0xff000000
+          | (((red << 3) | (red >> 2)) << 16)
+          | (((green << 2) | (green >> 4)) << 8)
+          | ((blue << 3) | (blue >> 2));
+    }
+  }
+
+  private static void convertRow32(
+      byte[] source, int s, int[] into, int d, int width) {
+    for (int end = d + width; d < end; d++, s += 4) {
+      into[d] = (source[s] & 0xff)
+          | ((source[s + 1] & 0xff) << 8)
+          | ((source[s + 2] & 0xff) << 16)
+          | (source[s + 3] << 24);
+    }
+  }
+}
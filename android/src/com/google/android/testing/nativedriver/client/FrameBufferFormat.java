@@ -17,6 +17,7 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.client;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.primitives.Ints;
@@ -26,6 +27,8 @@ import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.annotation.Nullable;
+
 /**
  * Contains information describing the format of an Android device's frame
  * buffer. This includes the x and y resolution, and the number of bits per
@@ -175,7 +178,9 @@ public class FrameBufferFormat {
 
   /**
    * Copies the frame buffer data from an {@code InputStream] to a given
-   * location in a {@code BufferedImage}.
+   * location in a {@code BufferedImage}. The data are converted in bulk by a
+   * new {@link FrameBufferConverter}; use one directly to reuse its buffer
+   * across screenshots or to convert in parallel.
    *
    * @param source the source to read the raw frame buffer data from. The format
    *        of the data should correspond to the format represented by this
@@ -184,6 +189,15 @@ public class FrameBufferFormat {
    */
   public void copyFrameBufferToImage(
       InputStream source, BufferedImage destination) {
+    new FrameBufferConverter(this).convert(source, destination);
+  }
+
+  /**
+   * Copies the frame buffer data like {@link #copyFrameBufferToImage}, but
+   * reads and converts one pixel at a time with {@link #convertToRgba32}.
+   */
+  protected void copyFrameBufferToImagePerPixel(
+      InputStream source, BufferedImage destination) {
     DataInput sourceDataStream
         = new LittleEndianDataInputStream(source);
     int[] oneLine = new int[getXResolution()];
@@ -194,6 +208,22 @@ public class FrameBufferFormat {
     }
   }
 
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (!(object instanceof FrameBufferFormat)) {
+      return false;
+    }
+    FrameBufferFormat other = (FrameBufferFormat) object;
+    return xResolution == other.xResolution
+        && yResolution == other.yResolution
+        && bitsPerPixel == other.bitsPerPixel;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(xResolution, yResolution, bitsPerPixel);
+  }
+
   @Override
   public String toString() {
     return String.format("{FrameBufferFormat xres: %d, yres: %d, bpp: %d}",
@@ -0,0 +1,145 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A local copy of the element hierarchy dump of the server, which is kept up
+ * to date by applying the diffs returned by
+ * {@link AndroidNativeDriver#updateDump}. Only the elements which changed
+ * since the last update are sent by the server.
+ *
+ * <p>The copy is kept as a map from UIDs to the fields of the elements, and
+ * {@link #toTree} rebuilds the nested structure returned by
+ * {@link AndroidNativeDriver#getDump}. Instances are not thread-safe.
+ */
+public class HierarchyDump {
+  /** Orders sibling UIDs by the index after their last slash. */
+  private static final Comparator<String> BY_INDEX = new Comparator<String>() {
+    @Override
+    public int compare(String first, String second) {
+      int firstIndex = indexOf(first);
+      int secondIndex = indexOf(second);
+      return (firstIndex < secondIndex) ? -1
+          : ((firstIndex == secondIndex) ? 0 : 1);
+    }
+
+    private int indexOf(String uid) {
+      return Integer.parseInt(uid.substring(uid.lastIndexOf('/') + 1));
+    }
+  };
+
+  @Nullable private String version;
+  private final Map<String, Map<String, Object>> nodes = Maps.newHashMap();
+
+  /**
+   * Returns the version of the server's dump this copy corresponds to, or
+   * {@code null} if no diff has been applied yet.
+   */
+  @Nullable
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the fields of each element, keyed by UID.
+   */
+  public Map<String, Map<String, Object>> getNodes() {
+    return Collections.unmodifiableMap(nodes);
+  }
+
+  /**
+   * Applies a diff returned by the server.
+   *
+   * @see HierarchyDiff
+   */
+  @SuppressWarnings("unchecked")
+  public void applyDiff(Map<String, Object> diff) {
+    if (Boolean.TRUE.equals(diff.get(HierarchyDiff.FULL))) {
+      nodes.clear();
+    }
+    for (Object uid : (List<Object>) diff.get(HierarchyDiff.REMOVED)) {
+      nodes.remove(uid.toString());
+    }
+    putNodes((List<Map<String, Object>>) diff.get(HierarchyDiff.ADDED));
+    putNodes((List<Map<String, Object>>) diff.get(HierarchyDiff.CHANGED));
+    version = (String) diff.get(HierarchyDiff.VERSION);
+  }
+
+  private void putNodes(List<Map<String, Object>> updates) {
+    for (Map<String, Object> update : updates) {
+      Map<String, Object> fields = Maps.newHashMap(update);
+      String uid = fields.remove(HierarchyDiff.UID).toString();
+      if ("uid".equals(fields.get("m"))) {
+        // Elements found by UID have it as one of their fields.
+        fields.put("uid", uid);
+      }
+      nodes.put(uid, fields);
+    }
+  }
+
+  /**
+   * Returns the dump as nested maps, in the same format as
+   * {@link AndroidNativeDriver#getDump}, or {@code null} if the copy is
+   * empty.
+   */
+  @Nullable
+  public Map<String, Object> toTree() {
+    Map<String, Map<String, Map<String, Object>>> childrenByParent
+        = Maps.newHashMap();
+    for (String uid : nodes.keySet()) {
+      if (uid.length() == 0) {
+        continue;
+      }
+      int slash = uid.lastIndexOf('/');
+      String parent = uid.substring(0, slash);
+      Map<String, Map<String, Object>> children = childrenByParent.get(parent);
+      if (children == null) {
+        children = new TreeMap<String, Map<String, Object>>(BY_INDEX);
+        childrenByParent.put(parent, children);
+      }
+      children.put(uid, nodes.get(uid));
+    }
+    return nodes.containsKey("") ? buildTree("", childrenByParent) : null;
+  }
+
+  private Map<String, Object> buildTree(String uid,
+      Map<String, Map<String, Map<String, Object>>> childrenByParent) {
+    Map<String, Object> tree = Maps.newHashMap(nodes.get(uid));
+    List<Map<String, Object>> childTrees = Lists.newArrayList();
+    Map<String, Map<String, Object>> children = childrenByParent.get(uid);
+    if (children != null) {
+      for (String childUid : children.keySet()) {
+        childTrees.add(buildTree(childUid, childrenByParent));
+      }
+    }
+    tree.put("children", childTrees);
+    return tree;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PNG encoder for screenshots. It writes 8-bit RGBA images with no
+ * row filtering, and lets the caller choose the compression level of the
+ * {@code Deflater}. Low levels, such as {@link Deflater#BEST_SPEED}, are much
+ * faster than the default level used by {@code ImageIO}, at the cost of larger
+ * files.
+ */
+public class PngEncoder {
+  private static final byte[] SIGNATURE
+      = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  private static final byte COLOR_TYPE_RGBA = 6;
+  private static final byte FILTER_NONE = 0;
+
+  private final int compressionLevel;
+
+  /**
+   * @param compressionLevel the compression level, from
+   *        {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION},
+   *        or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public PngEncoder(int compressionLevel) {
+    Preconditions.checkArgument(
+        compressionLevel == Deflater.DEFAULT_COMPRESSION
+        || (compressionLevel >= Deflater.NO_COMPRESSION
+            && compressionLevel <= Deflater.BEST_COMPRESSION),
+        "Invalid compression level: %s", compressionLevel);
+    this.compressionLevel = compressionLevel;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Writes the image as a PNG file to the given stream. The stream is not
+   * closed.
+   */
+  public void encode(BufferedImage image, OutputStream destination)
+      throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    DataOutputStream output = new DataOutputStream(destination);
+    output.write(SIGNATURE);
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+    DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    headerData.writeByte(8); // bit depth
+    headerData.writeByte(COLOR_TYPE_RGBA);
+    headerData.writeByte(0); // compression method: deflate
+    headerData.writeByte(0); // filter method: adaptive
+    headerData.writeByte(0); // interlace method: none
+    writeChunk(output, "IHDR", header.toByteArray(), header.size());
+
+    ChunkOutputStream imageData = new ChunkOutputStream(output, "IDAT");
+    Deflater deflater = new Deflater(compressionLevel);
+    try {
+      DeflaterOutputStream compressed
+          = new DeflaterOutputStream(imageData, deflater, 64 * 1024);
+      int[] pixels = new int[width];
+      byte[] row = new byte[1 + width * 4];
+      row[0] = FILTER_NONE;
+      for (int y = 0; y < height; y++) {
+        image.getRGB(0, y, width, 1, pixels, 0, width);
+        for (int x = 0, i = 1; x < width; x++, i += 4) {
+          int argb = pixels[x];
+          row[i] = (byte) (argb >> 16);
+          row[i + 1] = (byte) (argb >> 8);
+          row[i + 2] = (byte) argb;
+          row[i + 3] = (byte) (argb >>> 24);
+        }
+        compressed.write(row);
+      }
+      compressed.finish();
+      imageData.flush();
+    } finally {
+      deflater.end();
+    }
+
+    writeChunk(output, "IEND", new byte[0], 0);
+    output.flush();
+  }
+
+  /**
+   * Returns the image as the bytes of a PNG file.
+   */
+  public byte[] encode(BufferedImage image) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      encode(image, bytes);
+    } catch (IOException exception) {
+      // This should never happen because bytes is an in-memory stream.
+      throw new RuntimeException(exception);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeChunk(DataOutputStream output, String type,
+      byte[] data, int length) throws IOException {
+    byte[] typeBytes = type.getBytes(Charsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+
+    output.writeInt(length);
+    output.write(typeBytes);
+    output.write(data, 0, length);
+    output.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Buffers the compressed image data and writes it out as chunks of the
+   * given type.
+   */
+  private static class ChunkOutputStream extends OutputStream {
+    private final DataOutputStream output;
+    private final String type;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int length;
+
+    private ChunkOutputStream(DataOutputStream output, String type) {
+      this.output = output;
+      this.type = type;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (length == buffer.length) {
+        flush();
+      }
+      buffer[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int count) throws IOException {
+      while (count > 0) {
+        if (length == buffer.length) {
+          flush();
+        }
+        int copied = Math.min(count, buffer.length - length);
+        System.arraycopy(data, offset, buffer, length, copied);
+        length += copied;
+        offset += copied;
+        count -= copied;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (length > 0) {
+        writeChunk(output, type, buffer, length);
+        length = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * The format in which {@link AndroidNativeDriver#writeScreenshot} writes a
+ * screenshot.
+ *
+ * <ul>
+ *   <li>{@link #png(int)} writes a PNG file compressed at the given level
+ *   <li>{@link #raw()} writes the uncompressed pixels, which is the fastest
+ *   format for tools which compare screenshots pixel by pixel
+ * </ul>
+ */
+public abstract class ScreenshotFormat {
+  /**
+   * Writes the image to the given stream. The stream is not closed.
+   */
+  public abstract void write(BufferedImage image, OutputStream destination)
+      throws IOException;
+
+  /**
+   * Returns the suffix, including the dot, of files in this format.
+   */
+  public abstract String getFileSuffix();
+
+  /**
+   * Returns a PNG format using the default compression level.
+   */
+  public static ScreenshotFormat png() {
+    return png(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Returns a PNG format using the given compression level, from
+   * {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}.
+   * {@link Deflater#BEST_SPEED} is usually several times faster than the
+   * default level.
+   */
+  public static ScreenshotFormat png(int compressionLevel) {
+    final PngEncoder encoder = new PngEncoder(compressionLevel);
+    return new ScreenshotFormat() {
+      @Override
+      public void write(BufferedImage image, OutputStream destination)
+          throws IOException {
+        encoder.encode(image, destination);
+      }
+
+      @Override
+      public String getFileSuffix() {
+        return ".png";
+      }
+
+      @Override
+      public String toString() {
+        return "png(" + encoder.getCompressionLevel() + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns the raw format. The image is written as its width and height,
+   * followed by every pixel in row-major order, each as an ARGB value. All
+   * values are 32-bit big-endian integers.
+   */
+  public static ScreenshotFormat raw() {
+    return RAW;
+  }
+
+  private static final ScreenshotFormat RAW = new ScreenshotFormat() {
+    @Override
+    public void write(BufferedImage image, OutputStream destination)
+        throws IOException {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      DataOutputStream output = new DataOutputStream(destination);
+      output.writeInt(width);
+      output.writeInt(height);
+
+      int[] pixels = new int[width];
+      byte[] row = new byte[width * 4];
+      for (int y = 0; y < height; y++) {
+        image.getRGB(0, y, width, 1, pixels, 0, width);
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+          int argb = pixels[x];
+          row[i] = (byte) (argb >>> 24);
+          row[i + 1] = (byte) (argb >> 16);
+          row[i + 2] = (byte) (argb >> 8);
+          row[i + 3] = (byte) argb;
+        }
+        output.write(row);
+      }
+      output.flush();
+    }
+
+    @Override
+    public String getFileSuffix() {
+      return ".raw";
+    }
+
+    @Override
+    public String toString() {
+      return "raw";
+    }
+  };
+}
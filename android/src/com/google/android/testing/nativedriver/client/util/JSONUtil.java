@@ -1,18 +1,54 @@
 package com.google.android.testing.nativedriver.client.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 
+/**
+ * The {@code ObjectMapper} and {@code JsonFactory} shared by the client.
+ *
+ * <p>Building an {@code ObjectMapper} is expensive, and it caches the
+ * serializers it finds for each class. A mapper is thread-safe once
+ * configured, so a single instance is used everywhere. Methods which write
+ * to or read from a stream leave it open; the caller owns it.
+ */
 public class JSONUtil {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    MAPPER.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    MAPPER.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+  }
+
+  /**
+   * Returns the shared mapper. It must not be reconfigured.
+   */
+  public static ObjectMapper getObjectMapper() {
+    return MAPPER;
+  }
+
+  /**
+   * Returns the factory of the shared mapper, for writing or reading JSON
+   * one token at a time.
+   */
+  public static JsonFactory getJsonFactory() {
+    return MAPPER.getJsonFactory();
+  }
+
   public static String toJSON(Object obj) {
 //    String json = JSON.encode(obj);
-    ObjectMapper objectMapper = new ObjectMapper();
     String json = "";
     try {
-      json = objectMapper.writeValueAsString(obj);
+      json = MAPPER.writeValueAsString(obj);
     } catch (JsonGenerationException e) {
       e.printStackTrace();
     } catch (JsonMappingException e) {
@@ -22,4 +58,54 @@ public class JSONUtil {
     }
     return json;
   }
+
+  /**
+   * Writes the given value as UTF-8 encoded JSON, without building it as a
+   * {@code String} first.
+   */
+  public static void writeJSON(Object obj, OutputStream output)
+      throws IOException {
+    MAPPER.writeValue(output, obj);
+  }
+
+  /**
+   * Writes the given value as JSON, without building it as a {@code String}
+   * first.
+   */
+  public static void writeJSON(Object obj, Writer writer) throws IOException {
+    MAPPER.writeValue(writer, obj);
+  }
+
+  /**
+   * Reads a value of the given type from UTF-8 encoded JSON, such as a dump
+   * written by {@code AndroidNativeDriver.writeDump}. Objects are read as
+   * {@code Map}s when the type is {@code Object} or {@code Map}.
+   */
+  public static <T> T readJSON(InputStream input, Class<T> type)
+      throws IOException {
+    return MAPPER.readValue(input, type);
+  }
+
+  /**
+   * Reads a value of the given type from JSON. Objects are read as
+   * {@code Map}s when the type is {@code Object} or {@code Map}.
+   */
+  public static <T> T readJSON(Reader reader, Class<T> type)
+      throws IOException {
+    return MAPPER.readValue(reader, type);
+  }
+
+  /**
+   * Reads a value of the given type from a JSON {@code String}.
+   *
+   * @throws IllegalArgumentException if the string is not valid JSON for the
+   *         type
+   */
+  public static <T> T fromJSON(String json, Class<T> type) {
+    try {
+      return MAPPER.readValue(json, type);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid JSON", e);
+    }
+  }
 }
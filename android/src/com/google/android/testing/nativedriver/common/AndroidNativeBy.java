@@ -90,7 +90,152 @@ public abstract class AndroidNativeBy extends By {
       }
     };
   }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which matches all elements
+   * whose whole text matches the given regular expression, as with
+   * {@link java.util.regex.Matcher#matches}. Use {@code (?i)} for case
+   * insensitive matching.
+   */
+  public static AndroidNativeBy textMatching(final String regex) {
+    Preconditions.checkNotNull(regex);
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsByTextPattern) context).findElementByTextMatching(regex);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsByTextPattern) context)
+            .findElementsByTextMatching(regex);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.textMatching: " + regex;
+      }
+    };
+  }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which matches all elements
+   * whose text equals the given value, ignoring case.
+   */
+  public static AndroidNativeBy textIgnoringCase(final String text) {
+    Preconditions.checkNotNull(text);
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsByTextPattern) context)
+            .findElementByTextIgnoringCase(text);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsByTextPattern) context)
+            .findElementsByTextIgnoringCase(text);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.textIgnoringCase: " + text;
+      }
+    };
+  }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which matches all elements
+   * whose text contains the given string, ignoring case.
+   */
+  public static AndroidNativeBy partialTextIgnoringCase(final String text) {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(text),
+        "text argument must be a non-empty, non-null String.");
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsByTextPattern) context)
+            .findElementByPartialTextIgnoringCase(text);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsByTextPattern) context)
+            .findElementsByPartialTextIgnoringCase(text);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.partialTextIgnoringCase: " + text;
+      }
+    };
+  }
   
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which finds the row of a
+   * {@code ListView} item whose adapter data has the given text, even if the
+   * item is not shown. The adapter data is searched without creating any
+   * views, and the list then jumps directly to the item. Searching from a
+   * {@code ListView} element searches that list; otherwise, each
+   * {@code ListView} in the search context is searched in turn.
+   *
+   * <p>The data of an item has the text if it is equal to the text, if one
+   * of the columns of its {@code Cursor} row or the values of its
+   * {@code Map} are, or otherwise if its {@code toString} value is. At most
+   * one row, of the first matching item, is found.
+   */
+  public static AndroidNativeBy listItemText(final String text) {
+    Preconditions.checkNotNull(text);
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsByListItem) context).findElementByListItemText(text);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsByListItem) context).findElementsByListItemText(text);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.listItemText: " + text;
+      }
+    };
+  }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which finds the row of a
+   * {@code ListView} item with the given ID, as returned by
+   * {@code ListAdapter.getItemId}, even if the item is not shown.
+   *
+   * @see #listItemText(String)
+   */
+  public static AndroidNativeBy listItemId(long itemId) {
+    final String id = String.valueOf(itemId);
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsByListItem) context).findElementByListItemId(id);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsByListItem) context).findElementsByListItemId(id);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.listItemId: " + id;
+      }
+    };
+  }
+
   /**
    * Creates an instance of {@code AndroidNativeBy} which matches all elements
    * whose {@code getText} method return the given value.
@@ -116,4 +261,41 @@ public abstract class AndroidNativeBy extends By {
 
     };
   }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which matches all elements
+   * the given selector matches. The whole selector is evaluated by the server
+   * in one search.
+   */
+  public static AndroidNativeBy selector(ElementSelector selector) {
+    return selector(selector.toJson());
+  }
+
+  /**
+   * Creates an instance of {@code AndroidNativeBy} which matches all elements
+   * the given selector, in its JSON form, matches.
+   *
+   * @see ElementSelector
+   */
+  public static AndroidNativeBy selector(final String selectorJson) {
+    Preconditions.checkNotNull(selectorJson);
+
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        return ((FindsBySelector) context).findElementBySelector(selectorJson);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ((FindsBySelector) context)
+            .findElementsBySelector(selectorJson);
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.selector: " + selectorJson;
+      }
+    };
+  }
 }
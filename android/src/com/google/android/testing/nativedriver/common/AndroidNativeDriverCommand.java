@@ -32,4 +32,10 @@ public interface AndroidNativeDriverCommand extends DriverCommand {
   String DUMP = "dump";
   String DRAG_ELEMENT  = "dragElement";
   String FLICK_ELEMENT = "flickElement";
+  String TAKE_VIEW_SCREENSHOT = "takeViewScreenshot";
+  String DUMP_VIEW_HIERARCHY = "dumpViewHierarchy";
+  String DUMP_VIEW_HIERARCHY_DIFF = "dumpViewHierarchyDiff";
+  String BATCH = "batch";
+  String POLL_EVENTS = "pollEvents";
+  String PERFORM_GESTURE = "performGesture";
 }
@@ -0,0 +1,196 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Options of a view hierarchy dump requested with the
+ * {@link AndroidNativeDriverCommand#DUMP_VIEW_HIERARCHY} command.
+ *
+ * <p>By default, every field of every element of the current
+ * {@code Activity} is dumped. The dump can be limited to some fields, to a
+ * maximum depth, and to the subtree of the element with a given UID or
+ * Android id.
+ */
+public class DumpOptions {
+  public static final String FIELD_ID = "id";
+  public static final String FIELD_TEXT = "text";
+  public static final String FIELD_TAG = "tag";
+  public static final String FIELD_X = "x";
+  public static final String FIELD_Y = "y";
+  public static final String FIELD_WIDTH = "w";
+  public static final String FIELD_HEIGHT = "h";
+  public static final String FIELD_METHOD = "m";
+  public static final String FIELD_UID = "uid";
+
+  /** All fields, in the order in which they are written. */
+  public static final Set<String> ALL_FIELDS = ImmutableSet.of(
+      FIELD_ID, FIELD_TEXT, FIELD_TAG, FIELD_X, FIELD_Y, FIELD_WIDTH,
+      FIELD_HEIGHT, FIELD_METHOD, FIELD_UID);
+
+  /** The depth meaning that the whole hierarchy is dumped. */
+  public static final int UNLIMITED_DEPTH = -1;
+
+  private static final String FIELDS = "fields";
+  private static final String MAX_DEPTH = "maxDepth";
+  private static final String ROOT_UID = "rootUid";
+  private static final String ROOT_ID = "rootId";
+
+  private Set<String> fields = ALL_FIELDS;
+  private int maxDepth = UNLIMITED_DEPTH;
+  @Nullable private String rootUid;
+  @Nullable private String rootId;
+
+  public static DumpOptions all() {
+    return new DumpOptions();
+  }
+
+  /**
+   * Only dumps the given fields, which must be members of
+   * {@link #ALL_FIELDS}. The {@code children} of each element are always
+   * dumped, up to the maximum depth.
+   */
+  public DumpOptions withFields(String... fields) {
+    return withFields(ImmutableSet.copyOf(fields));
+  }
+
+  public DumpOptions withFields(Collection<String> fields) {
+    Preconditions.checkArgument(ALL_FIELDS.containsAll(fields),
+        "Unknown fields in %s", fields);
+    this.fields = ImmutableSet.copyOf(fields);
+    return this;
+  }
+
+  /**
+   * Only dumps elements up to the given depth below the root of the dump. A
+   * depth of {@code 0} dumps the root alone.
+   */
+  public DumpOptions withMaxDepth(int maxDepth) {
+    Preconditions.checkArgument(maxDepth >= 0);
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * Only dumps the subtree of the element with the given UID, such as
+   * {@code "/0/2"}.
+   */
+  public DumpOptions withRootUid(String uid) {
+    this.rootUid = Preconditions.checkNotNull(uid);
+    this.rootId = null;
+    return this;
+  }
+
+  /**
+   * Only dumps the subtree of the first element with the given Android id
+   * name, in depth-first order.
+   */
+  public DumpOptions withRootId(String id) {
+    this.rootId = Preconditions.checkNotNull(id);
+    this.rootUid = null;
+    return this;
+  }
+
+  public Set<String> getFields() {
+    return fields;
+  }
+
+  public boolean hasField(String field) {
+    return fields.contains(field);
+  }
+
+  /**
+   * Returns the maximum depth, or {@link #UNLIMITED_DEPTH}.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  @Nullable
+  public String getRootUid() {
+    return rootUid;
+  }
+
+  @Nullable
+  public String getRootId() {
+    return rootId;
+  }
+
+  /**
+   * Returns these options as the parameters of the command.
+   */
+  public Map<String, Object> toParameters() {
+    Map<String, Object> parameters = Maps.newHashMap();
+    parameters.put(FIELDS, Lists.newArrayList(fields));
+    parameters.put(MAX_DEPTH, maxDepth);
+    if (rootUid != null) {
+      parameters.put(ROOT_UID, rootUid);
+    }
+    if (rootId != null) {
+      parameters.put(ROOT_ID, rootId);
+    }
+    return parameters;
+  }
+
+  /**
+   * Reads options from the parameters of the command. Missing parameters keep
+   * their default values.
+   */
+  public static DumpOptions fromParameters(Map<String, Object> parameters) {
+    DumpOptions options = new DumpOptions();
+    Object fields = parameters.get(FIELDS);
+    if (fields instanceof List<?>) {
+      List<String> names = Lists.newArrayList();
+      for (Object field : (List<?>) fields) {
+        names.add(field.toString());
+      }
+      options.withFields(names);
+    }
+    Object maxDepth = parameters.get(MAX_DEPTH);
+    if (maxDepth != null) {
+      int depth = (maxDepth instanceof Number)
+          ? ((Number) maxDepth).intValue()
+          : Integer.parseInt(maxDepth.toString());
+      if (depth != UNLIMITED_DEPTH) {
+        options.withMaxDepth(depth);
+      }
+    }
+    if (parameters.get(ROOT_UID) != null) {
+      options.withRootUid(parameters.get(ROOT_UID).toString());
+    } else if (parameters.get(ROOT_ID) != null) {
+      options.withRootId(parameters.get(ROOT_ID).toString());
+    }
+    return options;
+  }
+
+  @Override
+  public String toString() {
+    return toParameters().toString();
+  }
+}
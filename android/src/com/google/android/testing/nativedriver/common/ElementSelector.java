@@ -0,0 +1,224 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.openqa.selenium.remote.BeanToJsonConverter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A composite condition on elements, which is sent to the server as a whole
+ * and evaluated there in a single walk of the hierarchy. The following finds
+ * the second button with the text "OK" inside the element with the ID
+ * "dialog":
+ *
+ * <pre>
+ * driver.findElement(AndroidNativeBy.selector(
+ *     ElementSelector.className(ClassNames.BUTTON)
+ *         .and(ElementSelector.text("OK"))
+ *         .inside(ElementSelector.id("dialog"))
+ *         .nth(1)));
+ * </pre>
+ *
+ * <p>The basic conditions use the same strategies as single searches, such
+ * as {@code By.id} or {@link AndroidNativeBy#text}. Parent and ancestor
+ * conditions only consider elements within the searched scope.
+ *
+ * <p>The JSON form is an object with one of these keys:
+ * <ul>
+ *   <li>{@code using} and {@code value}: a basic condition, such as
+ *   {@code {"using": "text", "value": "OK"}}
+ *   <li>{@code and} or {@code or}: a list of conditions
+ *   <li>{@code not}: a condition which must not hold
+ *   <li>{@code parent} or {@code ancestor}: a condition on the parent, or on
+ *   any ancestor, of the element
+ * </ul>
+ * The root object may be {@code {"nth": n, "of": condition}} to select only
+ * the {@code n}th matching element, counting from 0.
+ *
+ * <p>Instances are immutable.
+ */
+public final class ElementSelector {
+  public static final String USING = "using";
+  public static final String VALUE = "value";
+  public static final String AND = "and";
+  public static final String OR = "or";
+  public static final String NOT = "not";
+  public static final String PARENT = "parent";
+  public static final String ANCESTOR = "ancestor";
+  public static final String NTH = "nth";
+  public static final String OF = "of";
+
+  private static final int ANY = -1;
+
+  private final Map<String, Object> condition;
+  private final int nth;
+
+  private ElementSelector(Map<String, Object> condition, int nth) {
+    this.condition = condition;
+    this.nth = nth;
+  }
+
+  private static ElementSelector of(String key, Object value) {
+    return new ElementSelector(ImmutableMap.of(key, value), ANY);
+  }
+
+  /**
+   * Returns a selector matching the elements found by the given strategy of
+   * the JSON protocol, such as {@code "id"} or {@link FindsByText#USING_TEXT}.
+   */
+  public static ElementSelector by(String using, String value) {
+    Preconditions.checkNotNull(using);
+    Preconditions.checkNotNull(value);
+    return new ElementSelector(
+        ImmutableMap.<String, Object>of(USING, using, VALUE, value), ANY);
+  }
+
+  public static ElementSelector id(String id) {
+    return by("id", id);
+  }
+
+  public static ElementSelector text(String text) {
+    return by(FindsByText.USING_TEXT, text);
+  }
+
+  public static ElementSelector partialText(String text) {
+    return by(FindsByText.USING_PARTIALTEXT, text);
+  }
+
+  public static ElementSelector textMatching(String regex) {
+    return by(FindsByTextPattern.USING_TEXT_MATCHING, regex);
+  }
+
+  public static ElementSelector textIgnoringCase(String text) {
+    return by(FindsByTextPattern.USING_TEXT_IGNORING_CASE, text);
+  }
+
+  public static ElementSelector partialTextIgnoringCase(String text) {
+    return by(FindsByTextPattern.USING_PARTIALTEXT_IGNORING_CASE, text);
+  }
+
+  public static ElementSelector className(String className) {
+    return by("class name", className);
+  }
+
+  /**
+   * Returns a selector matching the elements which all the given selectors
+   * match.
+   */
+  public static ElementSelector allOf(ElementSelector... selectors) {
+    return of(AND, conditionsOf(selectors));
+  }
+
+  /**
+   * Returns a selector matching the elements which any of the given selectors
+   * match.
+   */
+  public static ElementSelector anyOf(ElementSelector... selectors) {
+    return of(OR, conditionsOf(selectors));
+  }
+
+  /**
+   * Returns a selector matching the elements which the given selector does
+   * not match.
+   */
+  public static ElementSelector not(ElementSelector selector) {
+    return of(NOT, selector.getCondition());
+  }
+
+  public ElementSelector and(ElementSelector other) {
+    return allOf(this, other);
+  }
+
+  public ElementSelector or(ElementSelector other) {
+    return anyOf(this, other);
+  }
+
+  /**
+   * Returns a selector matching the elements which this selector matches and
+   * whose parent the given selector matches.
+   */
+  public ElementSelector childOf(ElementSelector parent) {
+    return allOf(this, of(PARENT, parent.getCondition()));
+  }
+
+  /**
+   * Returns a selector matching the elements which this selector matches and
+   * which have an ancestor the given selector matches.
+   */
+  public ElementSelector inside(ElementSelector ancestor) {
+    return allOf(this, of(ANCESTOR, ancestor.getCondition()));
+  }
+
+  /**
+   * Returns a selector matching only the {@code n}th element, counting from
+   * 0, which this selector matches. The elements are counted in the order of
+   * the search.
+   */
+  public ElementSelector nth(int n) {
+    Preconditions.checkArgument(n >= 0, "n must not be negative: %s", n);
+    return new ElementSelector(getCondition(), n);
+  }
+
+  /**
+   * Returns the condition of this selector, without the {@link #nth} index.
+   *
+   * @throws IllegalStateException if an index was selected with
+   *         {@link #nth}, since only the outermost selector may have one
+   */
+  private Map<String, Object> getCondition() {
+    Preconditions.checkState(nth == ANY,
+        "Only the outermost selector may select the nth element: %s", this);
+    return condition;
+  }
+
+  private static List<Map<String, Object>> conditionsOf(
+      ElementSelector[] selectors) {
+    Preconditions.checkArgument(selectors.length > 0);
+    List<Map<String, Object>> conditions = Lists.newArrayList();
+    for (ElementSelector selector : selectors) {
+      conditions.add(selector.getCondition());
+    }
+    return conditions;
+  }
+
+  /**
+   * Returns the JSON form of this selector as a tree of maps and lists.
+   */
+  public Map<String, Object> toMap() {
+    return (nth == ANY) ? condition
+        : ImmutableMap.<String, Object>of(NTH, nth, OF, condition);
+  }
+
+  /**
+   * Returns the JSON form of this selector.
+   */
+  public String toJson() {
+    return new BeanToJsonConverter().convert(toMap());
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+
+/**
+ * An interface implemented by {@link org.openqa.selenium.SearchContext}s which
+ * represents the ability to find the row of a list item by the data of the
+ * list's adapter, including items which are not shown. For the semantics of
+ * these strategies, see {@link AndroidNativeBy#listItemText(String)} and
+ * {@link AndroidNativeBy#listItemId(long)}.
+ */
+public interface FindsByListItem {
+  /**
+   * The name of the find-by-list-item-text strategy as used in the JSON
+   * protocol.
+   */
+  String USING_LISTITEM_TEXT = "list item text";
+
+  /**
+   * The name of the find-by-list-item-ID strategy as used in the JSON
+   * protocol. The value is the decimal item ID.
+   */
+  String USING_LISTITEM_ID = "list item id";
+
+  WebElement findElementByListItemText(String using);
+  List<WebElement> findElementsByListItemText(String using);
+  WebElement findElementByListItemId(String using);
+  List<WebElement> findElementsByListItemId(String using);
+}
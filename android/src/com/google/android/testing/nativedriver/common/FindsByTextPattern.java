@@ -0,0 +1,57 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+import org.openqa.selenium.WebElement;
+
+import java.util.List;
+
+/**
+ * An interface implemented by {@link org.openqa.selenium.SearchContext}s which
+ * represents the ability to find elements by a regular expression matching
+ * their text, and by text ignoring case. For the semantics of these
+ * strategies, see {@link AndroidNativeBy#textMatching(String)},
+ * {@link AndroidNativeBy#textIgnoringCase(String)} and
+ * {@link AndroidNativeBy#partialTextIgnoringCase(String)}.
+ */
+public interface FindsByTextPattern {
+  /**
+   * The name of the find-by-text-matching strategy as used in the JSON
+   * protocol.
+   */
+  String USING_TEXT_MATCHING = "text matching";
+
+  /**
+   * The name of the find-by-text-ignoring-case strategy as used in the JSON
+   * protocol.
+   */
+  String USING_TEXT_IGNORING_CASE = "text ignoring case";
+
+  /**
+   * The name of the find-by-partial-text-ignoring-case strategy as used in the
+   * JSON protocol.
+   */
+  String USING_PARTIALTEXT_IGNORING_CASE = "partial text ignoring case";
+
+  WebElement findElementByTextMatching(String using);
+  List<WebElement> findElementsByTextMatching(String using);
+  WebElement findElementByTextIgnoringCase(String using);
+  List<WebElement> findElementsByTextIgnoringCase(String using);
+  WebElement findElementByPartialTextIgnoringCase(String using);
+  List<WebElement> findElementsByPartialTextIgnoringCase(String using);
+}
@@ -0,0 +1,309 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A touch gesture made of the paths of one or more pointers, which is sent to
+ * the server as the parameters of the
+ * {@link AndroidNativeDriverCommand#PERFORM_GESTURE} command and performed
+ * there as a whole. The following zooms in with two fingers while a third
+ * one holds still:
+ *
+ * <pre>
+ * driver.perform(Gesture.of(
+ *     Gesture.path(200, 400).moveTo(100, 400, 300),
+ *     Gesture.path(280, 400).moveTo(380, 400, 300),
+ *     Gesture.path(240, 700).after(50).hold(200)));
+ * </pre>
+ *
+ * <p>Each path starts with its pointer going down, optionally after a delay
+ * from the start of the gesture, and ends with the pointer going up at its
+ * last point. Between the points of a path the pointer moves in a straight
+ * line at a constant speed, so a path moving a long way in a short time is
+ * recognized as a fling. Coordinates are screen coordinates.
+ *
+ * <p>The JSON form is {@code {"pointers": [pointer, ...]}}, where each pointer
+ * is {@code {"delay": ms, "x": x, "y": y, "moves": [move, ...]}} and each
+ * move is {@code {"x": x, "y": y, "duration": ms}}.
+ */
+public final class Gesture {
+  /**
+   * The maximum number of pointers in a gesture.
+   */
+  public static final int MAX_POINTERS = 10;
+
+  private static final String POINTERS = "pointers";
+  private static final String DELAY = "delay";
+  private static final String X = "x";
+  private static final String Y = "y";
+  private static final String MOVES = "moves";
+  private static final String DURATION = "duration";
+
+  /**
+   * The path of a single pointer. Paths are built by chaining calls, starting
+   * with {@link Gesture#path}.
+   */
+  public static final class Path {
+    private final List<Waypoint> waypoints = Lists.newArrayList();
+    private long delay;
+
+    private Path(int x, int y) {
+      waypoints.add(new Waypoint(x, y, 0));
+    }
+
+    /**
+     * Puts the pointer down the given time after the start of the gesture,
+     * instead of at the start.
+     */
+    public Path after(long delayMillis) {
+      Preconditions.checkArgument(delayMillis >= 0);
+      this.delay = delayMillis;
+      return this;
+    }
+
+    /**
+     * Moves the pointer to the given point in the given time.
+     */
+    public Path moveTo(int x, int y, long durationMillis) {
+      Preconditions.checkArgument(durationMillis >= 0);
+      waypoints.add(new Waypoint(x, y, getDuration() + durationMillis));
+      return this;
+    }
+
+    /**
+     * Keeps the pointer still for the given time, as for a long press or to
+     * stop a drag without a fling.
+     */
+    public Path hold(long durationMillis) {
+      Waypoint last = getLast();
+      return moveTo(last.x, last.y, durationMillis);
+    }
+
+    /**
+     * Returns the time from the start of the gesture until the pointer goes
+     * down.
+     */
+    public long getDelay() {
+      return delay;
+    }
+
+    /**
+     * Returns the time from the pointer going down until it goes up.
+     */
+    public long getDuration() {
+      return getLast().time;
+    }
+
+    /**
+     * Returns the position of the pointer as {@code {x, y}}, the given time
+     * after it went down. Times outside the path give its first or last
+     * point.
+     */
+    public float[] getPositionAt(long elapsedMillis) {
+      // Finds the last waypoint reached at the given time.
+      int low = 0;
+      int high = waypoints.size() - 1;
+      while (low < high) {
+        int middle = (low + high + 1) >>> 1;
+        if (waypoints.get(middle).time <= elapsedMillis) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      Waypoint from = waypoints.get(low);
+      if (low == waypoints.size() - 1 || elapsedMillis <= from.time) {
+        return new float[] {from.x, from.y};
+      }
+      Waypoint to = waypoints.get(low + 1);
+      float fraction
+          = (float) (elapsedMillis - from.time) / (to.time - from.time);
+      return new float[] {
+          from.x + (to.x - from.x) * fraction,
+          from.y + (to.y - from.y) * fraction};
+    }
+
+    private Waypoint getLast() {
+      return waypoints.get(waypoints.size() - 1);
+    }
+
+    private Map<String, Object> toParameters() {
+      List<Object> moves = Lists.newArrayList();
+      for (int i = 1; i < waypoints.size(); i++) {
+        Waypoint waypoint = waypoints.get(i);
+        moves.add(ImmutableMap.of(X, waypoint.x, Y, waypoint.y,
+            DURATION, waypoint.time - waypoints.get(i - 1).time));
+      }
+      Waypoint first = waypoints.get(0);
+      return ImmutableMap.<String, Object>of(
+          DELAY, delay, X, first.x, Y, first.y, MOVES, moves);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Path fromParameters(Map<String, Object> parameters) {
+      Path path = new Path(toInt(parameters.get(X)), toInt(parameters.get(Y)));
+      if (parameters.containsKey(DELAY)) {
+        path.after(toNumber(parameters.get(DELAY)).longValue());
+      }
+      Object moves = parameters.get(MOVES);
+      if (moves != null) {
+        for (Map<String, Object> move : (List<Map<String, Object>>) moves) {
+          path.moveTo(toInt(move.get(X)), toInt(move.get(Y)),
+              toNumber(move.get(DURATION)).longValue());
+        }
+      }
+      return path;
+    }
+  }
+
+  private static final class Waypoint {
+    final int x;
+    final int y;
+    // Time since the pointer went down.
+    final long time;
+
+    Waypoint(int x, int y, long time) {
+      this.x = x;
+      this.y = y;
+      this.time = time;
+    }
+  }
+
+  private final List<Path> paths;
+
+  private Gesture(List<Path> paths) {
+    Preconditions.checkArgument(
+        !paths.isEmpty() && paths.size() <= MAX_POINTERS,
+        "A gesture needs 1 to %s pointers: %s", MAX_POINTERS, paths.size());
+    this.paths = paths;
+  }
+
+  /**
+   * Returns a new path whose pointer goes down at the given point.
+   */
+  public static Path path(int x, int y) {
+    return new Path(x, y);
+  }
+
+  /**
+   * Returns a gesture made of the given paths. The first path is the first
+   * pointer of the {@code MotionEvent}s.
+   */
+  public static Gesture of(Path... paths) {
+    return new Gesture(ImmutableList.copyOf(paths));
+  }
+
+  /**
+   * Returns a gesture moving a single pointer from one point to another in
+   * the given time.
+   */
+  public static Gesture swipe(
+      int x1, int y1, int x2, int y2, long durationMillis) {
+    return of(path(x1, y1).moveTo(x2, y2, durationMillis));
+  }
+
+  /**
+   * Returns a gesture moving two pointers apart or together horizontally
+   * around the given center, as for zooming in or out.
+   *
+   * @param fromDistance the distance between the pointers when they go down
+   * @param toDistance the distance between the pointers when they go up
+   */
+  public static Gesture pinch(int centerX, int centerY, int fromDistance,
+      int toDistance, long durationMillis) {
+    return of(
+        path(centerX - fromDistance / 2, centerY)
+            .moveTo(centerX - toDistance / 2, centerY, durationMillis),
+        path(centerX + fromDistance / 2, centerY)
+            .moveTo(centerX + toDistance / 2, centerY, durationMillis));
+  }
+
+  public List<Path> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Returns the time from the start of the gesture until the last pointer
+   * goes up.
+   */
+  public long getDuration() {
+    long duration = 0;
+    for (Path path : paths) {
+      duration = Math.max(duration, path.getDelay() + path.getDuration());
+    }
+    return duration;
+  }
+
+  /**
+   * Returns this gesture as the parameters of the command.
+   */
+  public Map<String, Object> toParameters() {
+    List<Object> pointers = Lists.newArrayList();
+    for (Path path : paths) {
+      pointers.add(path.toParameters());
+    }
+    return ImmutableMap.<String, Object>of(POINTERS, pointers);
+  }
+
+  /**
+   * Reads a gesture from the parameters of the command.
+   *
+   * @throws IllegalArgumentException if the parameters do not describe a
+   *         valid gesture
+   */
+  @SuppressWarnings("unchecked")
+  public static Gesture fromParameters(Map<String, Object> parameters) {
+    Object pointers = parameters.get(POINTERS);
+    Preconditions.checkArgument(pointers instanceof List,
+        "Missing pointers: %s", parameters);
+    List<Path> paths = Lists.newArrayList();
+    try {
+      for (Map<String, Object> pointer
+          : (List<Map<String, Object>>) pointers) {
+        paths.add(Path.fromParameters(pointer));
+      }
+    } catch (RuntimeException exception) {
+      throw new IllegalArgumentException(
+          "Invalid gesture: " + parameters, exception);
+    }
+    return new Gesture(paths);
+  }
+
+  private static int toInt(Object value) {
+    return toNumber(value).intValue();
+  }
+
+  private static Number toNumber(Object value) {
+    Preconditions.checkNotNull(value);
+    return (value instanceof Number)
+        ? (Number) value : Double.valueOf(value.toString());
+  }
+
+  @Override
+  public String toString() {
+    return toParameters().toString();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+/**
+ * Keys of the response of the
+ * {@link AndroidNativeDriverCommand#DUMP_VIEW_HIERARCHY_DIFF} command.
+ *
+ * <p>The server keeps the last dump of each session as a flat map from UIDs
+ * to the fields of the elements, and identifies it with a version token. If
+ * the client sends the version of its copy as {@link #BASE_VERSION}, and it
+ * is still the last dump of the server, only the elements which were added,
+ * changed or removed since then are sent. Otherwise, every element is sent as
+ * added and {@link #FULL} is {@code true}.
+ */
+public interface HierarchyDiff {
+  /** The parameter holding the version of the client's copy, if any. */
+  String BASE_VERSION = "baseVersion";
+
+  /** The version of the new dump. */
+  String VERSION = "version";
+
+  /** Whether the client must discard its copy before applying the diff. */
+  String FULL = "full";
+
+  /**
+   * The added elements, in depth-first order. Each is a map of its fields,
+   * including {@link #UID}.
+   */
+  String ADDED = "added";
+
+  /** The elements whose fields changed, with all their new fields. */
+  String CHANGED = "changed";
+
+  /** The UIDs of the removed elements. */
+  String REMOVED = "removed";
+
+  /**
+   * The key of the UID of an element in {@link #ADDED} and {@link #CHANGED}.
+   * It is present even for elements whose dump has no {@code uid} field.
+   */
+  String UID = "uid";
+}
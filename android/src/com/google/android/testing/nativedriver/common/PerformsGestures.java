@@ -0,0 +1,31 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+/**
+ * Interface for drivers which can perform a {@link Gesture} as a whole,
+ * instead of one touch event per command.
+ */
+public interface PerformsGestures {
+  /**
+   * Performs the given gesture and returns when its last pointer went up.
+   *
+   * @throws IllegalStateException if a pointer is already down
+   */
+  void perform(Gesture gesture);
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.common;
+
+/**
+ * Keys and event types of the {@link AndroidNativeDriverCommand#POLL_EVENTS}
+ * command.
+ *
+ * <p>The server records activity transitions, focus changes and layout
+ * changes in a bounded log, numbering them with increasing sequence numbers.
+ * The client sends the sequence number of the last event it has seen as
+ * {@link #SINCE}, and the server answers as soon as a later event is
+ * recorded, or with no events when {@link #TIMEOUT} elapses. Layout changes
+ * which follow each other before the client polls are merged into one event.
+ */
+public interface ServerEvents {
+  /**
+   * The parameter holding the sequence number of the last event seen by the
+   * client. If negative, the server answers at once with no events, and
+   * {@link #NEXT} is the starting point for later polls.
+   */
+  String SINCE = "since";
+
+  /** The parameter holding the maximum time to wait, in milliseconds. */
+  String TIMEOUT = "timeout";
+
+  /** The parameter holding the maximum number of events to return. */
+  String MAX_EVENTS = "maxEvents";
+
+  /** The events, oldest first. */
+  String EVENTS = "events";
+
+  /** The sequence number to send as {@link #SINCE} in the next poll. */
+  String NEXT = "next";
+
+  /**
+   * Whether events after {@link #SINCE} were dropped from the log before the
+   * client polled for them.
+   */
+  String MISSED = "missed";
+
+  /** The key of the sequence number of an event. */
+  String SEQUENCE = "seq";
+
+  /** The key of the type of an event. */
+  String TYPE = "type";
+
+  /** The key of the server time of an event, in milliseconds. */
+  String TIME = "time";
+
+  /** The key of the class name of the activity of an activity event. */
+  String ACTIVITY = "activity";
+
+  /** The key of the ID of the activity of an activity event. */
+  String ACTIVITY_ID = "activityId";
+
+  /**
+   * The key of the class name of the newly focused view of a
+   * {@link #FOCUS_CHANGED} event, absent if no view has focus.
+   */
+  String VIEW = "view";
+
+  /** The key of the number of layout passes merged into one event. */
+  String COUNT = "count";
+
+  String ACTIVITY_CREATED = "activityCreated";
+  String ACTIVITY_RESUMED = "activityResumed";
+  String ACTIVITY_STOPPED = "activityStopped";
+  String ACTIVITY_DESTROYED = "activityDestroyed";
+  String FOCUS_CHANGED = "focusChanged";
+  String WINDOWS_CHANGED = "windowsChanged";
+  String LAYOUT_CHANGED = "layoutChanged";
+}
@@ -0,0 +1,32 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.google.android.testing.nativedriver.common;
+
+/**
+ * Interface for drivers which can take a screenshot by drawing the
+ * {@code View}s of the application on the device, without using ADB.
+ */
+public interface TakesViewScreenshot {
+  /**
+   * Draws the windows of the application and returns the image, compressed
+   * according to the given options.
+   *
+   * @param options the area, size and format of the screenshot
+   * @return the bytes of the compressed image
+   */
+  byte[] takeViewScreenshot(ViewScreenshotOptions options);
+}
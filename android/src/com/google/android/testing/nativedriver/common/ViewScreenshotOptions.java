@@ -0,0 +1,185 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.google.android.testing.nativedriver.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Options of a screenshot taken with {@link TakesViewScreenshot}. These are
+ * sent from the client to the server as the parameters of the
+ * {@link AndroidNativeDriverCommand#TAKE_VIEW_SCREENSHOT} command.
+ *
+ * <p>By default, the decor view of the current {@code Activity} is drawn at
+ * full size and compressed as PNG.
+ */
+public class ViewScreenshotOptions {
+  /**
+   * The image formats supported by the server.
+   */
+  public enum Format { PNG, JPEG }
+
+  private static final String FORMAT = "format";
+  private static final String QUALITY = "quality";
+  private static final String SCALE = "scale";
+  private static final String ALL_WINDOWS = "allWindows";
+  private static final String CROP_X = "cropX";
+  private static final String CROP_Y = "cropY";
+  private static final String CROP_WIDTH = "cropWidth";
+  private static final String CROP_HEIGHT = "cropHeight";
+
+  private Format format = Format.PNG;
+  private int quality = 90;
+  private double scale = 1.0;
+  private boolean allWindows;
+  @Nullable private int[] crop;
+
+  public static ViewScreenshotOptions png() {
+    return new ViewScreenshotOptions();
+  }
+
+  public static ViewScreenshotOptions jpeg(int quality) {
+    return new ViewScreenshotOptions().withFormat(Format.JPEG, quality);
+  }
+
+  /**
+   * @param format the format of the image
+   * @param quality the quality from 0 to 100. It is ignored by lossless
+   *        formats such as PNG.
+   */
+  public ViewScreenshotOptions withFormat(Format format, int quality) {
+    Preconditions.checkArgument(quality >= 0 && quality <= 100);
+    this.format = Preconditions.checkNotNull(format);
+    this.quality = quality;
+    return this;
+  }
+
+  /**
+   * Scales the image down by the given factor, which must be greater than 0
+   * and at most 1.
+   */
+  public ViewScreenshotOptions withScale(double scale) {
+    Preconditions.checkArgument(scale > 0 && scale <= 1.0);
+    this.scale = scale;
+    return this;
+  }
+
+  /**
+   * Only draws the given rectangle of the screen. The coordinates are screen
+   * coordinates before scaling.
+   */
+  public ViewScreenshotOptions withCrop(int x, int y, int width, int height) {
+    Preconditions.checkArgument(width > 0 && height > 0);
+    this.crop = new int[] {x, y, width, height};
+    return this;
+  }
+
+  /**
+   * Draws all top-level windows, such as dialogs and menus, instead of only
+   * the decor view of the current {@code Activity}.
+   */
+  public ViewScreenshotOptions withAllWindows() {
+    this.allWindows = true;
+    return this;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public int getQuality() {
+    return quality;
+  }
+
+  public double getScale() {
+    return scale;
+  }
+
+  public boolean isAllWindows() {
+    return allWindows;
+  }
+
+  /**
+   * Returns the crop rectangle as {@code {x, y, width, height}}, or
+   * {@code null} if the whole screen is drawn.
+   */
+  @Nullable
+  public int[] getCrop() {
+    return (crop == null) ? null : crop.clone();
+  }
+
+  /**
+   * Returns these options as the parameters of the command.
+   */
+  public Map<String, Object> toParameters() {
+    Map<String, Object> parameters = Maps.newHashMap();
+    parameters.put(FORMAT, format.name());
+    parameters.put(QUALITY, quality);
+    parameters.put(SCALE, scale);
+    parameters.put(ALL_WINDOWS, allWindows);
+    if (crop != null) {
+      parameters.put(CROP_X, crop[0]);
+      parameters.put(CROP_Y, crop[1]);
+      parameters.put(CROP_WIDTH, crop[2]);
+      parameters.put(CROP_HEIGHT, crop[3]);
+    }
+    return parameters;
+  }
+
+  /**
+   * Reads options from the parameters of the command. Missing parameters keep
+   * their default values.
+   */
+  public static ViewScreenshotOptions fromParameters(
+      Map<String, Object> parameters) {
+    ViewScreenshotOptions options = new ViewScreenshotOptions();
+    if (parameters.containsKey(FORMAT)) {
+      options.withFormat(
+          Format.valueOf(parameters.get(FORMAT).toString()),
+          parameters.containsKey(QUALITY)
+              ? toNumber(parameters.get(QUALITY)).intValue()
+              : options.quality);
+    }
+    if (parameters.containsKey(SCALE)) {
+      options.withScale(toNumber(parameters.get(SCALE)).doubleValue());
+    }
+    if (Boolean.TRUE.equals(parameters.get(ALL_WINDOWS))) {
+      options.withAllWindows();
+    }
+    if (parameters.containsKey(CROP_X)) {
+      options.withCrop(toNumber(parameters.get(CROP_X)).intValue(),
+          toNumber(parameters.get(CROP_Y)).intValue(),
+          toNumber(parameters.get(CROP_WIDTH)).intValue(),
+          toNumber(parameters.get(CROP_HEIGHT)).intValue());
+    }
+    return options;
+  }
+
+  private static Number toNumber(Object value) {
+    return (value instanceof Number)
+        ? (Number) value : Double.valueOf(value.toString());
+  }
+
+  @Override
+  public String toString() {
+    return toParameters().toString();
+  }
+}
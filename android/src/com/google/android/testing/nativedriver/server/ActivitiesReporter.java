@@ -17,8 +17,10 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.server;
 
+import com.google.android.testing.nativedriver.common.ServerEvents;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 import android.app.Activity;
@@ -41,6 +43,8 @@ public class ActivitiesReporter {
   @Nullable private Activities activities;
   @Nullable private Activity currentActivity;
   private final Map<Activity, Integer> liveActivities;
+  private final ViewTreeChangeMonitor changeMonitor;
+  @Nullable private final EventLog eventLog;
   private int lastAssignedId;
 
   private class ActivitiesImpl implements Activities {
@@ -76,6 +80,26 @@ public class ActivitiesReporter {
   }
 
   public ActivitiesReporter() {
+    this(new ViewTreeChangeMonitor());
+  }
+
+  /**
+   * Constructs an instance which reports every {@code Activity} transition to
+   * the given monitor, so that waits on the monitor wake up when the focused
+   * {@code Activity} changes.
+   */
+  public ActivitiesReporter(ViewTreeChangeMonitor changeMonitor) {
+    this(changeMonitor, null);
+  }
+
+  /**
+   * Constructs an instance which also records every {@code Activity}
+   * transition in the given event log, if it is not {@code null}.
+   */
+  public ActivitiesReporter(ViewTreeChangeMonitor changeMonitor,
+      @Nullable EventLog eventLog) {
+    this.changeMonitor = Preconditions.checkNotNull(changeMonitor);
+    this.eventLog = eventLog;
     liveActivities = Maps.newIdentityHashMap();
   }
 
@@ -94,6 +118,8 @@ public class ActivitiesReporter {
     Preconditions.checkNotNull(activity);
 
     liveActivities.put(activity, ++lastAssignedId);
+    record(ServerEvents.ACTIVITY_CREATED, activity);
+    changeMonitor.notifyChanged();
   }
 
   /**
@@ -104,13 +130,18 @@ public class ActivitiesReporter {
         + activity.getClass().getName());
 
     currentActivity = activity;
+    record(ServerEvents.ACTIVITY_RESUMED, activity);
+    changeMonitor.notifyChanged();
   }
 
   /**
    * Records the given {@code Activity} as being stopped.
    */
   public void wasStopped(Activity activity) {
-    this.wasDestroyed(activity);
+    Preconditions.checkNotNull(activity);
+
+    record(ServerEvents.ACTIVITY_STOPPED, activity);
+    forget(activity);
   }
 
   /**
@@ -119,10 +150,24 @@ public class ActivitiesReporter {
   public void wasDestroyed(Activity activity) {
     Preconditions.checkNotNull(activity);
 
+    record(ServerEvents.ACTIVITY_DESTROYED, activity);
+    forget(activity);
+  }
+
+  private void forget(Activity activity) {
     liveActivities.remove(activity);
 
     if (currentActivity == activity) {
       currentActivity = null;
     }
+    changeMonitor.notifyChanged();
+  }
+
+  private void record(String type, Activity activity) {
+    if (eventLog != null) {
+      eventLog.record(type, ImmutableMap.of(
+          ServerEvents.ACTIVITY, activity.getClass().getName(),
+          ServerEvents.ACTIVITY_ID, getActivities().idOf(activity)));
+    }
   }
 }
@@ -1,16 +1,47 @@
 package com.google.android.testing.nativedriver.server;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.Point;
+
+import com.google.android.testing.nativedriver.common.DumpOptions;
+
 /**
+ * Dumps the element hierarchy of an {@code Activity}.
+ *
+ * <p>{@link #writeTo} streams the dump to a {@code JsonGenerator} element by
+ * element, only querying the fields selected by the {@code DumpOptions}. The
+ * {@code Map}-based {@link #dumpActivity} builds the whole tree in memory and
+ * is kept for the {@code dumpCurrentActivity} URL of {@code getJson}.
+ *
+ * <p>The sequence numbers appended to ids and texts count from the root of the
+ * dump, so a new instance must be used for each dump.
  *
  * @author Kazuhiro Yamada
  *
  */
 public class ActivityDumper {
+  private final DumpOptions options;
+  @Nullable private AndroidNativeElement root;
+  private String rootUid = "";
+
+  public ActivityDumper() {
+    this(DumpOptions.all());
+  }
+
+  public ActivityDumper(DumpOptions options) {
+    this.options = options;
+  }
+
   public Map<String, Object> dumpActivity(AndroidNativeElement activityElement) {
     return getElementMap(activityElement, null, "");
   }
@@ -34,9 +65,9 @@ public class ActivityDumper {
   }
 
   public String getMethod(String id, String text, String parentTagName) {
-    if (text != "") {
+    if (!"".equals(text)) {
       return "text";
-    } else if (id != "") {
+    } else if (!"".equals(id)) {
       return "id";
     } else {
       return "uid";
@@ -45,39 +76,215 @@ public class ActivityDumper {
 
   public Map<String, Object> getElementMap(AndroidNativeElement el,
       String parentTagName, String uid) {
-    Map<String, Object> map = new HashMap<String, Object>();
-    String id = "";
-    try {
-      id = el.getResourceEntryName() == null ? "" : el
-        .getResourceEntryName();
-    } catch (Exception ignored) {
+    Map<String, Object> map = getElementFields(el, parentTagName, uid);
+    map.put("children", getElementChildrenMap(el, uid));
+    return map;
+  }
+
+  /**
+   * Adds the fields of the element and all its descendants to {@code nodes},
+   * keyed by UID, in depth-first order. The fields of each element are those
+   * of {@link #getElementMap}, without the children.
+   */
+  public void collectElements(AndroidNativeElement el, String uid,
+      Map<String, Map<String, Object>> nodes) {
+    nodes.put(uid, getElementFields(el, null, uid));
+    int i = 0;
+    for (AndroidNativeElement child : el.getChildren()) {
+      collectElements(child, uid + "/" + i, nodes);
+      i++;
     }
-    if (id != "") {
-      if (!idSeqMap.containsKey(id)) {
-        idSeqMap.put(id, 0);
-      }
-      map.put("id", id + "(" + idSeqMap.get(id) + ")");
-      idSeqMap.put(id, idSeqMap.get(id) + 1);
+  }
+
+  private Map<String, Object> getElementFields(AndroidNativeElement el,
+      String parentTagName, String uid) {
+    Map<String, Object> map = new HashMap<String, Object>();
+    String id = getId(el);
+    if (!"".equals(id)) {
+      map.put("id", nextSequence(idSeqMap, id));
     }
     String text = el.getText();
-    if (text != "") {
-      if (!textSeqMap.containsKey(text)) {
-        textSeqMap.put(text, 0);
-      }
-      map.put("text", text + "(" + textSeqMap.get(text) + ")");
-      textSeqMap.put(text, textSeqMap.get(text) + 1);
+    if (!"".equals(text)) {
+      map.put("text", nextSequence(textSeqMap, text));
     }
     map.put("tag", el.getTagName());
-    map.put("x", el.getLocation().x);
-    map.put("y", el.getLocation().y);
-    map.put("h", el.getSize().height);
-    map.put("w", el.getSize().width);
-    String method = getMethod(id, el.getText(), parentTagName);
+    Point location = el.getLocation();
+    map.put("x", location.x);
+    map.put("y", location.y);
+    Dimension size = el.getSize();
+    map.put("h", size.height);
+    map.put("w", size.width);
+    String method = getMethod(id, text, parentTagName);
     map.put("m", method);
     if ("uid".equals(method)) {
       map.put("uid", uid);
     }
-    map.put("children", getElementChildrenMap(el, uid));
     return map;
   }
+
+  private static String getId(AndroidNativeElement el) {
+    try {
+      String id = el.getResourceEntryName();
+      return (id == null) ? "" : id;
+    } catch (Exception ignored) {
+      return "";
+    }
+  }
+
+  private static String nextSequence(Map<String, Integer> seqMap, String key) {
+    Integer seq = seqMap.get(key);
+    if (seq == null) {
+      seq = 0;
+    }
+    seqMap.put(key, seq + 1);
+    return key + "(" + seq + ")";
+  }
+
+  /**
+   * Selects the root of the dump in the hierarchy of the given
+   * {@code Activity}, as specified by the options: the element with the root
+   * UID or the root id, or the {@code Activity} element itself.
+   *
+   * @return this dumper
+   * @throws NoSuchElementException if the root element does not exist
+   */
+  public ActivityDumper selectRoot(AndroidNativeElement activityElement) {
+    root = activityElement;
+    rootUid = "";
+    if (options.getRootUid() != null) {
+      String uid = options.getRootUid();
+      root = findByUid(activityElement, uid);
+      rootUid = uid;
+      if (root == null) {
+        throw new NoSuchElementException("UID:" + uid);
+      }
+    } else if (options.getRootId() != null
+        && !findById(activityElement, "", options.getRootId())) {
+      throw new NoSuchElementException(
+          "Could not find element with id: " + options.getRootId());
+    }
+    return this;
+  }
+
+  @Nullable
+  private static AndroidNativeElement findByUid(
+      AndroidNativeElement element, String uid) {
+    for (String index : uid.substring(uid.startsWith("/") ? 1 : 0)
+        .split("/")) {
+      if (index.length() == 0) {
+        continue;
+      }
+      AndroidNativeElement child = null;
+      int i = 0;
+      for (AndroidNativeElement el : element.getChildren()) {
+        if (Integer.toString(i).equals(index)) {
+          child = el;
+          break;
+        }
+        i++;
+      }
+      if (child == null) {
+        return null;
+      }
+      element = child;
+    }
+    return element;
+  }
+
+  /**
+   * Searches depth-first for the element with the given id, and selects it
+   * with its UID as the root.
+   */
+  private boolean findById(AndroidNativeElement element, String uid,
+      String id) {
+    if (id.equals(getId(element))) {
+      root = element;
+      rootUid = uid;
+      return true;
+    }
+    int i = 0;
+    for (AndroidNativeElement el : element.getChildren()) {
+      if (findById(el, uid + "/" + i, id)) {
+        return true;
+      }
+      i++;
+    }
+    return false;
+  }
+
+  /**
+   * Writes the dump of the selected root as a JSON object. The fields of each
+   * element are the same as in {@link #getElementMap}, limited to the fields
+   * and depth of the options.
+   */
+  public void writeTo(JsonGenerator generator) throws IOException {
+    if (root == null) {
+      generator.writeNull();
+    } else {
+      writeElement(generator, root, rootUid, 0);
+    }
+  }
+
+  private void writeElement(JsonGenerator generator, AndroidNativeElement el,
+      String uid, int depth) throws IOException {
+    boolean needsMethod = options.hasField(DumpOptions.FIELD_METHOD)
+        || options.hasField(DumpOptions.FIELD_UID);
+    String id = (needsMethod || options.hasField(DumpOptions.FIELD_ID))
+        ? getId(el) : "";
+    String text = (needsMethod || options.hasField(DumpOptions.FIELD_TEXT))
+        ? el.getText() : "";
+
+    generator.writeStartObject();
+    if (options.hasField(DumpOptions.FIELD_ID) && !"".equals(id)) {
+      generator.writeStringField(
+          DumpOptions.FIELD_ID, nextSequence(idSeqMap, id));
+    }
+    if (options.hasField(DumpOptions.FIELD_TEXT) && !"".equals(text)) {
+      generator.writeStringField(
+          DumpOptions.FIELD_TEXT, nextSequence(textSeqMap, text));
+    }
+    if (options.hasField(DumpOptions.FIELD_TAG)) {
+      generator.writeStringField(DumpOptions.FIELD_TAG, el.getTagName());
+    }
+    if (options.hasField(DumpOptions.FIELD_X)
+        || options.hasField(DumpOptions.FIELD_Y)) {
+      Point location = el.getLocation();
+      writeNumberField(generator, DumpOptions.FIELD_X, location.x);
+      writeNumberField(generator, DumpOptions.FIELD_Y, location.y);
+    }
+    if (options.hasField(DumpOptions.FIELD_WIDTH)
+        || options.hasField(DumpOptions.FIELD_HEIGHT)) {
+      Dimension size = el.getSize();
+      writeNumberField(generator, DumpOptions.FIELD_HEIGHT, size.height);
+      writeNumberField(generator, DumpOptions.FIELD_WIDTH, size.width);
+    }
+    if (needsMethod) {
+      String method = getMethod(id, text, null);
+      if (options.hasField(DumpOptions.FIELD_METHOD)) {
+        generator.writeStringField(DumpOptions.FIELD_METHOD, method);
+      }
+      if (options.hasField(DumpOptions.FIELD_UID) && "uid".equals(method)) {
+        generator.writeStringField(DumpOptions.FIELD_UID, uid);
+      }
+    }
+
+    if (options.getMaxDepth() == DumpOptions.UNLIMITED_DEPTH
+        || depth < options.getMaxDepth()) {
+      generator.writeArrayFieldStart("children");
+      int i = 0;
+      for (AndroidNativeElement child : el.getChildren()) {
+        writeElement(generator, child, uid + "/" + i, depth + 1);
+        i++;
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeNumberField(JsonGenerator generator, String field,
+      int value) throws IOException {
+    if (options.hasField(field)) {
+      generator.writeNumberField(field, value);
+    }
+  }
 }
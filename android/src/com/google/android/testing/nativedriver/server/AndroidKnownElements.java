@@ -1,25 +1,139 @@
 package com.google.android.testing.nativedriver.server;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+import android.view.View;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.MapMaker.RemovalListener;
+import com.google.common.collect.MapMaker.RemovalNotification;
 
 /**
- * 
+ * Remembers how each element returned to the client was found, so that the
+ * element can be found again from its id.
+ *
+ * <p>Each {@code AndroidNativeDriver}, and therefore each session, has its own
+ * instance, which is cleared when the session quits. The number of entries is
+ * bounded: when the maximum size is reached, the least recently used entries
+ * are evicted. Instances are thread-safe, and count the hits, misses and
+ * evictions so that the maximum size can be tuned.
+ *
+ * <p>This is the only place where the elements are kept: the
+ * {@code KnownElements} of the session, which are never cleared before the
+ * session is deleted, only get a {@link KnownElementHandle} for each id. See
+ * {@link AndroidNativeDriver#addKnownElement}.
+ *
  * @author Kazuhiro Yamada
  *
  */
-public class AndroidKnownElements{
-  private static final Map<String, ByWithIndex> elements = new HashMap<String, ByWithIndex>();
+public class AndroidKnownElements {
+  /** The default maximum number of entries. */
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private final int maximumSize;
+  private final ConcurrentMap<String, ByWithIndex> elements;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
 
-  public static void add(String elementId, By by, int index)
-  {
+  public AndroidKnownElements() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public AndroidKnownElements(int maximumSize) {
+    Preconditions.checkArgument(maximumSize > 0);
+    this.maximumSize = maximumSize;
+    this.elements = new MapMaker()
+        .maximumSize(maximumSize)
+        .removalListener(new RemovalListener<String, ByWithIndex>() {
+          @Override
+          public void onRemoval(
+              RemovalNotification<String, ByWithIndex> notification) {
+            if (notification.wasEvicted()) {
+              evictionCount.incrementAndGet();
+            }
+          }
+        })
+        .makeMap();
+  }
+
+  public void add(String elementId, By by, int index) {
     elements.put(elementId, new ByWithIndex(by, index));
   }
 
-  public static ByWithIndex get(String elementId) {
-    return ((ByWithIndex)elements.get(elementId));
+  /**
+   * Adds an element together with a weak reference to its {@code View},
+   * which is used as long as it stays attached to a window.
+   *
+   * @param element the element returned by the query, possibly wrapped
+   * @param parentId the id of the element the query was run on, or
+   *        {@code null} if it was run on the driver
+   */
+  public void add(String elementId, By by, int index, WebElement element,
+      @Nullable String parentId) {
+    while (element instanceof WrapsElement) {
+      element = ((WrapsElement) element).getWrappedElement();
+    }
+    View view = (element instanceof ViewElement<?>)
+        ? ((ViewElement<?>) element).getView() : null;
+    elements.put(elementId, new ByWithIndex(by, index, view, parentId));
+  }
+
+  /**
+   * Returns how the element with the given id was found, or {@code null} if
+   * the id is unknown or its entry was evicted.
+   */
+  @Nullable
+  public ByWithIndex get(String elementId) {
+    ByWithIndex byWithIndex = elements.get(elementId);
+    if (byWithIndex == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return byWithIndex;
   }
-}
 
+  /**
+   * Removes all entries. The counters are kept.
+   */
+  public void clear() {
+    elements.clear();
+  }
+
+  public int size() {
+    return elements.size();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "[known elements: size(%d/%d) hits(%d) misses(%d) evictions(%d)]",
+        size(), maximumSize, getHitCount(), getMissCount(),
+        getEvictionCount());
+  }
+}
@@ -17,6 +17,9 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.server;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.IDN;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -42,10 +45,12 @@ import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.Rotatable;
 import org.openqa.selenium.ScreenOrientation;
 import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.logging.Logs;
+import org.openqa.selenium.remote.server.KnownElements;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -53,10 +58,19 @@ import android.content.pm.ActivityInfo;
 import android.view.Display;
 import android.view.KeyEvent;
 import android.view.Surface;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.AdapterView;
 
 import com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand;
+import com.google.android.testing.nativedriver.common.DumpOptions;
+import com.google.android.testing.nativedriver.common.Gesture;
 import com.google.android.testing.nativedriver.common.HasTouchScreen;
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.android.testing.nativedriver.common.PerformsGestures;
+import com.google.android.testing.nativedriver.common.TakesViewScreenshot;
 import com.google.android.testing.nativedriver.common.Touch;
+import com.google.android.testing.nativedriver.common.ViewScreenshotOptions;
 import com.google.android.testing.nativedriver.common.util.URIUtil;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
@@ -73,10 +87,14 @@ import com.google.common.base.Strings;
  * @param <E>
  */
 public class AndroidNativeDriver<E>
-    implements WebDriver, Rotatable, HasTouchScreen, HasInputDevices, AndroidNativeDriverCommand {
+    implements WebDriver, Rotatable, HasTouchScreen, HasInputDevices,
+        PerformsGestures, TakesViewScreenshot, AndroidNativeDriverCommand {
   private final ElementContext context;
   private SearchContext rootSearchContext;
   private RootSearchScope rootSearchScope;
+  private ViewScreenshooter viewScreenshooter;
+  private final HierarchyDiffer hierarchyDiffer = new HierarchyDiffer();
+  private final AndroidKnownElements knownElements = new AndroidKnownElements();
 
   /**
    * Allows configuration of this instance of the driver. Only
@@ -226,6 +244,15 @@ public class AndroidNativeDriver<E>
     return this.rootSearchScope;
   }
 
+  /**
+   * Starts observing the windows currently shown, so that their layout and
+   * focus changes are recorded in the event log before any element is
+   * searched for.
+   */
+  public void observeWindows() {
+    getRootSearchScope().observeWindows();
+  }
+
   protected SearchContext getRootSearchContext() {
     if (rootSearchContext == null) {
       rootSearchContext = context.getElementFinder()
@@ -247,6 +274,9 @@ public class AndroidNativeDriver<E>
   @Override
   public void close() {
     context.getActivities().finishAll();
+    hierarchyDiffer.reset();
+    knownElements.clear();
+    releaseViewScreenshooter();
   }
 
   @Override
@@ -267,6 +297,15 @@ public class AndroidNativeDriver<E>
    * <ul>
    * <li>{@code and-activity://<Activity class name>}<br>
    * start specified activity
+   * <li>{@code searchOrder://depthFirst} or {@code searchOrder://breadthFirst}
+   * <br>
+   * set the order in which element searches of this session visit the
+   * hierarchy. With {@code breadthFirst}, the shallowest match is found first.
+   * <li>{@code textEntryMode://direct} or {@code textEntryMode://keyEvents}
+   * <br>
+   * set whether text typed into text field elements is entered into them
+   * directly, or sent as one key event per character for fields which need
+   * them. Keys sent through the keyboard are always sent as key events.
    * </ul>
    */
   @Override
@@ -289,6 +328,10 @@ public class AndroidNativeDriver<E>
       setText(params);
     } else if ("flick".equals(dest.getScheme())) {
       flick(params);
+    } else if ("searchOrder".equals(dest.getScheme())) {
+      searchOrder(dest);
+    } else if ("textEntryMode".equals(dest.getScheme())) {
+      textEntryMode(dest);
     } else if (!Strings.isNullOrEmpty(dest.getPath())) {
       throw new WebDriverException("Unrecognized scheme in URI: "
           + dest.toString());
@@ -341,9 +384,104 @@ public class AndroidNativeDriver<E>
     startActivity(clazz);
   }
 
+  /**
+   * Returns how the elements returned to the client of this driver were
+   * found. The entries are released when the driver is closed.
+   */
+  public AndroidKnownElements getAndroidKnownElements() {
+    return knownElements;
+  }
+
+  /**
+   * Adds an element found by a query of the client to the given
+   * {@code KnownElements} of the session, and remembers how it was found.
+   * The {@code KnownElements} only get a handle which looks the element up
+   * through {@link #getKnownElement}, because they keep their entries until
+   * the session is deleted; the element itself is only kept, weakly, by
+   * {@link #getAndroidKnownElements}.
+   *
+   * @param parent the element the query was run on, or {@code null} if it
+   *        was run on the driver
+   * @return the id of the element
+   */
+  public String addKnownElement(KnownElements sessionElements, By by,
+      int index, WebElement element, @Nullable WebElement parent) {
+    KnownElementHandle handle = new KnownElementHandle(this);
+    String elementId = sessionElements.add(handle);
+    handle.setElementId(elementId);
+    knownElements.add(
+        elementId, by, index, element, KnownElementHandle.getId(parent));
+    return elementId;
+  }
+
+  /**
+   * Returns the element with the given id, as long as its {@code View} is
+   * still attached to a window.
+   *
+   * @throws StaleElementReferenceException if the id is unknown, or if the
+   *         {@code View} has been detached or garbage collected
+   */
+  protected AndroidNativeElement getKnownElement(String elementId) {
+    ByWithIndex byWithIdx = knownElements.get(elementId);
+    if (byWithIdx == null) {
+      throw new StaleElementReferenceException(
+          "Element is no longer known: " + elementId);
+    }
+    View view = byWithIdx.getView();
+    if (view == null || view.getWindowToken() == null) {
+      throw new StaleElementReferenceException(
+          "Element is no longer attached to a window: " + elementId);
+    }
+    return context.newViewElement(view);
+  }
+
+  /**
+   * Returns the element with the given id for {@code setText}. If its
+   * {@code View} is still attached to a window, it is wrapped directly;
+   * otherwise the query which found the element is run again on the same
+   * element or the driver, and the new {@code View} is remembered. The query
+   * is always run again for the {@code View}s inside an {@code AdapterView},
+   * because they are recycled to show other items.
+   *
+   * @throws StaleElementReferenceException if the id is unknown, or if the
+   *         query no longer finds the element
+   */
+  private AndroidNativeElement resolveKnownElement(String elementId) {
+    ByWithIndex byWithIdx = knownElements.get(elementId);
+    if (byWithIdx == null) {
+      throw new StaleElementReferenceException(
+          "Element is no longer known: " + elementId);
+    }
+    View view = byWithIdx.getView();
+    if (view != null && view.getWindowToken() != null
+        && !isInAdapterView(view)) {
+      return context.newViewElement(view);
+    }
+    SearchContext searchContext = (byWithIdx.parentId == null)
+        ? getRootSearchContext() : resolveKnownElement(byWithIdx.parentId);
+    List<WebElement> found = searchContext.findElements(byWithIdx.by);
+    if (byWithIdx.index >= found.size()) {
+      throw new StaleElementReferenceException(
+          "Element is no longer found by " + byWithIdx);
+    }
+    WebElement element = found.get(byWithIdx.index);
+    knownElements.add(elementId, byWithIdx.by, byWithIdx.index, element,
+        byWithIdx.parentId);
+    return (AndroidNativeElement) element;
+  }
+
+  private static boolean isInAdapterView(View view) {
+    for (ViewParent parent = view.getParent(); parent instanceof View;
+        parent = parent.getParent()) {
+      if (parent instanceof AdapterView<?>) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void setText(Map<String, String> params) {
-    ByWithIndex byWithIdx = AndroidKnownElements.get(params.get("elementId"));
-    AndroidNativeElement el = (AndroidNativeElement)getRootSearchContext().findElements(byWithIdx.by).get(byWithIdx.index);
+    AndroidNativeElement el = resolveKnownElement(params.get("elementId"));
     el.setText(IDN.toUnicode(params.get("value")));
   }
 
@@ -357,6 +495,32 @@ public class AndroidNativeDriver<E>
      );
   }
 
+  private void searchOrder(URI dest) {
+    ViewTraversal.Order order;
+    if ("depthFirst".equals(dest.getAuthority())) {
+      order = ViewTraversal.Order.DEPTH_FIRST;
+    } else if ("breadthFirst".equals(dest.getAuthority())) {
+      order = ViewTraversal.Order.BREADTH_FIRST;
+    } else {
+      throw new WebDriverException("Unrecognized search order: "
+          + dest.getAuthority());
+    }
+    context.getElementFinder().setTraversalOrder(order);
+  }
+
+  private void textEntryMode(URI dest) {
+    KeySender.TextEntryMode mode;
+    if ("direct".equals(dest.getAuthority())) {
+      mode = KeySender.TextEntryMode.DIRECT;
+    } else if ("keyEvents".equals(dest.getAuthority())) {
+      mode = KeySender.TextEntryMode.KEY_EVENTS;
+    } else {
+      throw new WebDriverException("Unrecognized text entry mode: "
+          + dest.getAuthority());
+    }
+    context.getKeySender().setTextEntryMode(mode);
+  }
+
   public Activity getCurrentActivity() {
     return context.getActivities().current();
   }
@@ -379,9 +543,29 @@ public class AndroidNativeDriver<E>
     return "and-activity://" + activity.getLocalClassName() + "?id=" + id;
   }
 
+  /**
+   * Returns an XML rendering of the element hierarchy, which is the node model
+   * XPath searches are evaluated against.
+   *
+   * @see XPathDocument
+   */
   @Override
   public String getPageSource() {
-    throw new UnsupportedOperationException();
+    StringWriter writer = new StringWriter();
+    try {
+      writePageSource(writer);
+    } catch (IOException exception) {
+      throw new WebDriverException(exception);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Writes the XML rendering returned by {@link #getPageSource} to the given
+   * writer one node at a time.
+   */
+  public void writePageSource(Writer writer) throws IOException {
+    getRootSearchScope().getSnapshot().getDocument().writeXml(writer);
   }
 
   /**
@@ -437,6 +621,29 @@ public class AndroidNativeDriver<E>
     return context.getTouch();
   }
 
+  @Override
+  public void perform(Gesture gesture) {
+    ((PerformsGestures) context.getTouch()).perform(gesture);
+  }
+
+  @Override
+  public byte[] takeViewScreenshot(ViewScreenshotOptions options) {
+    return getViewScreenshooter().takeScreenshot(options);
+  }
+
+  protected synchronized ViewScreenshooter getViewScreenshooter() {
+    if (viewScreenshooter == null) {
+      viewScreenshooter = new ViewScreenshooter(context, getRootSearchScope());
+    }
+    return viewScreenshooter;
+  }
+
+  private synchronized void releaseViewScreenshooter() {
+    if (viewScreenshooter != null) {
+      viewScreenshooter.release();
+    }
+  }
+
   @Override
   public ScreenOrientation getOrientation() {
     int orientation = context.getOnMainSyncRunner().run(doGetOrientation());
@@ -527,6 +734,41 @@ public class AndroidNativeDriver<E>
 	  return this.context;
   }
 
+  /**
+   * Creates a dumper for the hierarchy of the current {@code Activity}, with
+   * its root selected according to the options.
+   *
+   * @throws NoSuchElementException if the root of the dump does not exist
+   */
+  public ActivityDumper newActivityDumper(DumpOptions options) {
+    AndroidNativeElement activityElement
+        = getRootSearchScope().getCurrentActivityElement();
+    if (activityElement == null) {
+      throw new WebDriverException(
+          "Current focused activity does not exist.");
+    }
+    return new ActivityDumper(options).selectRoot(activityElement);
+  }
+
+  /**
+   * Dumps the hierarchy of the current {@code Activity} as a diff against the
+   * last dump of this driver.
+   *
+   * @param baseVersion the version of the client's copy of the last dump, or
+   *        {@code null} to request a full dump
+   * @see HierarchyDiff
+   */
+  public Map<String, Object> dumpViewHierarchyDiff(
+      @Nullable String baseVersion) {
+    AndroidNativeElement activityElement
+        = getRootSearchScope().getCurrentActivityElement();
+    if (activityElement == null) {
+      throw new WebDriverException(
+          "Current focused activity does not exist.");
+    }
+    return hierarchyDiffer.dump(activityElement, baseVersion);
+  }
+
   @Override
   public Object getJson(String url) {
     Object obj = null;
@@ -17,12 +17,16 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.server;
 
+import java.io.IOException;
+
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.openqa.selenium.remote.server.DefaultDriverSessions;
 import org.openqa.selenium.remote.server.DriverServlet;
+import org.openqa.selenium.remote.server.DriverSessions;
 import org.openqa.selenium.remote.server.renderer.EmptyResult;
 import org.openqa.selenium.remote.server.renderer.JsonResult;
 import org.openqa.selenium.remote.server.rest.ResultType;
@@ -37,7 +41,11 @@ import com.google.android.testing.nativedriver.server.handler.AndroidNativeSendK
 import com.google.android.testing.nativedriver.server.handler.Click;
 import com.google.android.testing.nativedriver.server.handler.DoubleTap;
 import com.google.android.testing.nativedriver.server.handler.DragElement;
+import com.google.android.testing.nativedriver.server.handler.DumpViewHierarchy;
+import com.google.android.testing.nativedriver.server.handler.DumpViewHierarchyDiff;
 import com.google.android.testing.nativedriver.server.handler.GetJSON;
+import com.google.android.testing.nativedriver.server.handler.PerformGesture;
+import com.google.android.testing.nativedriver.server.handler.TakeViewScreenshot;
 import com.google.android.testing.nativedriver.server.handler.TouchDown;
 import com.google.android.testing.nativedriver.server.handler.TouchMove;
 import com.google.android.testing.nativedriver.server.handler.TouchUp;
@@ -59,6 +67,17 @@ public class AndroidNativeDriverServlet extends DriverServlet {
   
   protected static final String SESSION_PATH = "/session/:sessionId/";
 
+  private final BatchRequestHandler batchRequestHandler
+      = new BatchRequestHandler(new BatchRequestHandler.Dispatcher() {
+        @Override
+        public void dispatch(HttpServletRequest request,
+            HttpServletResponse response)
+            throws ServletException, IOException {
+          service(request, response);
+        }
+      });
+  @Nullable private EventRequestHandler eventRequestHandler;
+
   /**
    * Registers the AND WebDriver implementation with the Jetty server so AND
    * will start when the corresponding Capabilities are requested. Then it calls
@@ -108,15 +127,58 @@ public class AndroidNativeDriverServlet extends DriverServlet {
       
       addNewPostMapping(SESSION_PATH + "element/:id/dragElement", DragElement.class)
           .on(ResultType.SUCCESS, newEmptyResult());
+      addNewPostMapping(SESSION_PATH + "gesture", PerformGesture.class)
+          .on(ResultType.SUCCESS, newEmptyResult());
       
       addNewPostMapping(SESSION_PATH + "json", GetJSON.class)
           .on(ResultType.SUCCESS, newJsonResult());
+
+      addNewPostMapping(SESSION_PATH + "viewScreenshot",
+          TakeViewScreenshot.class)
+          .on(ResultType.SUCCESS, newJsonResult());
+
+      addNewPostMapping(SESSION_PATH + "viewHierarchy",
+          DumpViewHierarchy.class)
+          .on(ResultType.SUCCESS, new BufferedJsonResult());
+      addNewPostMapping(SESSION_PATH + "viewHierarchy/diff",
+          DumpViewHierarchyDiff.class)
+          .on(ResultType.SUCCESS, newJsonResult());
       
     } catch (Exception exception) {
       throw new ServletException(exception);
     }
   }
 
+  /**
+   * Handles {@code /session/:sessionId/batch} requests with
+   * {@link BatchRequestHandler}, {@code /session/:sessionId/events} requests
+   * with {@link EventRequestHandler}, and all other requests with the base
+   * class.
+   */
+  @Override
+  protected void doPost(HttpServletRequest request,
+      HttpServletResponse response) throws ServletException, IOException {
+    String batchSessionId = BatchRequestHandler.getBatchSessionId(request);
+    String eventsSessionId = EventRequestHandler.getEventsSessionId(request);
+    if (batchSessionId != null) {
+      batchRequestHandler.handle(request, response, batchSessionId);
+    } else if (eventsSessionId != null) {
+      getEventRequestHandler().handle(request, response, eventsSessionId);
+    } else {
+      super.doPost(request, response);
+    }
+  }
+
+  // The instrumentation is only available once the server has started.
+  private synchronized EventRequestHandler getEventRequestHandler() {
+    if (eventRequestHandler == null) {
+      eventRequestHandler = new EventRequestHandler(
+          ServerInstrumentation.getInstance().getEventLog(),
+          (DriverSessions) getServletContext().getAttribute(SESSIONS_KEY));
+    }
+    return eventRequestHandler;
+  }
+
   protected JsonResult newJsonResult() {
     return new JsonResult(":response");
   }
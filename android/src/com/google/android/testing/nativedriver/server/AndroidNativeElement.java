@@ -189,6 +189,17 @@ public abstract class AndroidNativeElement
     return "";
   }
 
+  /**
+   * Returns the text of this element, as returned by {@link #getText}, without
+   * copying it into a {@code String} if possible. Text searches match against
+   * this value.
+   *
+   * This default implementation returns {@code getText()}.
+   */
+  public CharSequence getTextSequence() {
+    return getText();
+  }
+
   /**
    * {@inheritDoc}
    *
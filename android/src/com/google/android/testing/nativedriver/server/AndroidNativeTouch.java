@@ -28,15 +28,18 @@ import android.app.Instrumentation;
 import android.view.MotionEvent;
 import android.view.ViewConfiguration;
 
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.android.testing.nativedriver.common.PerformsGestures;
 import com.google.android.testing.nativedriver.common.Touch;
 import com.google.common.base.Preconditions;
 
 /**
- * {@code Touch} interface implementation.
+ * {@code Touch} interface implementation. Drags, flicks and other
+ * {@link Gesture}s are performed by a {@link GestureEngine}.
  *
  * @author Dezheng Xu
  */
-public class AndroidNativeTouch implements Touch {
+public class AndroidNativeTouch implements Touch, PerformsGestures {
   // Use as the last argument for creating MotionEvent instance
   protected static final int DEFAULT_META_STATE = 0;
 
@@ -51,10 +54,19 @@ public class AndroidNativeTouch implements Touch {
   protected static final long DURATION_BETWEEN_DOUBLE_TAP
       = (long) (ViewConfiguration.getDoubleTapTimeout() / 1.5f);
 
+  // The time in milliseconds a drag takes to move, and to hold still at its
+  // destination so that it does not end in a fling.
+  protected static final long DURATION_OF_DRAG = 500;
+  protected static final long DURATION_OF_DRAG_HOLD = 250;
+
+  // The time in milliseconds a flick takes to move.
+  protected static final long DURATION_OF_FLICK = 100;
+
   private static final long UNDEFINED_TIME = Long.MIN_VALUE;
 
   private final Instrumentation instrumentation;
   private final Clock clock;
+  private final GestureEngine gestureEngine;
   private Coordinates currentActiveCoordinates;
 
   // We are only accessing downTime in synchronized blocks
@@ -63,6 +75,7 @@ public class AndroidNativeTouch implements Touch {
   public AndroidNativeTouch(Clock clock, Instrumentation instrumentation) {
     this.clock = clock;
     this.instrumentation = instrumentation;
+    this.gestureEngine = new GestureEngine(clock, instrumentation);
   }
 
   public static AndroidNativeTouch withDefaults(
@@ -145,6 +158,15 @@ public class AndroidNativeTouch implements Touch {
     longClick(point.getX(), point.getY());
   }
 
+  @Override
+  public synchronized void perform(Gesture gesture) {
+    if (!isTouchStateReleased()) {
+      throw new IllegalStateException(
+          "Attempt to perform a gesture when touch state is already down");
+    }
+    gestureEngine.perform(gesture);
+  }
+
   protected void touchDown(int x, int y) {
     downTime = clock.now();
     MotionEvent motionEvent = MotionEvent.obtain(downTime, clock.now(),
@@ -174,10 +196,13 @@ public class AndroidNativeTouch implements Touch {
   }
 
   protected void drag(int x1, int y1, int x2, int y2) {
-    touchDown(x1, y1);
-    //int scaledTouchSlopAdjustment = getScaledTouchSlopAdjustment();
-    touchMove(x2 , y2);
-    touchUp(x2, y2);
+    perform(Gesture.of(Gesture.path(x1, y1)
+        .moveTo(x2, y2, DURATION_OF_DRAG)
+        .hold(DURATION_OF_DRAG_HOLD)));
+  }
+
+  protected void flick(int x1, int y1, int x2, int y2) {
+    perform(Gesture.swipe(x1, y1, x2, y2, DURATION_OF_FLICK));
   }
 
   protected void longClick(int x, int y) {
@@ -25,12 +25,24 @@ import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.support.ui.Clock;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Function;
 
 /**
  * An implementation of the Wait interface that makes use of Android Native
  * WebDriver.
  *
+ * <p>If a {@link ViewTreeChangeMonitor} is given, the condition is evaluated
+ * again as soon as the monitor reports a change to the {@code View} hierarchy
+ * (or an {@code Activity} transition), rather than after a fixed sleep. The
+ * sleep interval then only bounds the time between two evaluations, in case a
+ * change happens in a window which is not observed yet. In this mode the
+ * timeout is measured with the given clock instead of by counting sleeps,
+ * and the condition is evaluated at most once every
+ * {@value #MIN_REEVALUATION_INTERVAL} ms, so that a burst of layout passes,
+ * such as during an animation, does not turn the wait into a busy loop.
+ *
  * @author Tomohiro Kaizu
  * @author Kazuhiro Yamada
  * 
@@ -38,8 +50,11 @@ import com.google.common.base.Function;
 public class AndroidWait { //implements Wait<Void> {
   private static final long DEFAULT_TIMEOUT = 2000;
   private static final long DEFAULT_SLEEP_INTERVAL = 100;
+  private static final long MIN_REEVALUATION_INTERVAL = 50;
 
+  private final Clock clock;
   private final long sleepIntervalInMillis;
+  @Nullable private final ViewTreeChangeMonitor changeMonitor;
 
   private long timeoutInMillis;
 
@@ -51,6 +66,18 @@ public class AndroidWait { //implements Wait<Void> {
     this(new AndroidProcessClock(), DEFAULT_SLEEP_INTERVAL, DEFAULT_TIMEOUT);
   }
 
+  /**
+   * Constructs an instance which evaluates the condition whenever the given
+   * monitor reports a change, using {@link AndroidSystemClock} for the timeout
+   * and the default settings otherwise.
+   *
+   * @param changeMonitor monitor which reports changes to the hierarchy
+   */
+  public AndroidWait(ViewTreeChangeMonitor changeMonitor) {
+    this(new AndroidSystemClock(), DEFAULT_SLEEP_INTERVAL, DEFAULT_TIMEOUT,
+        changeMonitor);
+  }
+
   /**
    * @param clock clock to use when measuring the timeout
    * @param sleepIntervalInMillis amount of time to sleep between attempts in
@@ -59,8 +86,24 @@ public class AndroidWait { //implements Wait<Void> {
    */
   protected AndroidWait(Clock clock, long sleepIntervalInMillis,
         long timeoutInMillis) {
+    this(clock, sleepIntervalInMillis, timeoutInMillis, null);
+  }
+
+  /**
+   * @param clock clock to use when measuring the timeout
+   * @param sleepIntervalInMillis maximum amount of time to wait between
+   *     attempts in milliseconds
+   * @param timeoutInMillis timeout in milliseconds
+   * @param changeMonitor monitor which wakes up the wait when the hierarchy
+   *     changes, or {@code null} to sleep for a fixed interval between
+   *     attempts
+   */
+  protected AndroidWait(Clock clock, long sleepIntervalInMillis,
+        long timeoutInMillis, @Nullable ViewTreeChangeMonitor changeMonitor) {
+    this.clock = clock;
     this.sleepIntervalInMillis = sleepIntervalInMillis;
     this.timeoutInMillis = timeoutInMillis;
+    this.changeMonitor = changeMonitor;
     
     System.out.println("interval:" + sleepIntervalInMillis);
     System.out.println("timeout :" + timeoutInMillis);
@@ -72,6 +115,10 @@ public class AndroidWait { //implements Wait<Void> {
    * by Kazuhiro Yamada
    */
   public <T> T until(Function<Void, T> isTrue) {
+    if (changeMonitor != null) {
+      return untilChanged(isTrue);
+    }
+
     //long end = clock.laterBy(timeoutInMillis);
     long sleepedMillis = 0;
     NotFoundException lastException = null;
@@ -96,12 +143,61 @@ public class AndroidWait { //implements Wait<Void> {
         SECONDS.convert(timeoutInMillis, MILLISECONDS)), lastException);
   }
 
+  private <T> T untilChanged(Function<Void, T> isTrue) {
+    long end = clock.laterBy(timeoutInMillis);
+    NotFoundException lastException = null;
+    while (true) {
+      // Read the generation before evaluating, so that a change which
+      // happens during the evaluation wakes up the wait immediately.
+      long generation = changeMonitor.getGeneration();
+      long evaluated = clock.now();
+      try {
+        T value = isTrue.apply(null);
+
+        if (value != null && !Boolean.FALSE.equals(value)) {
+          return value;
+        }
+      } catch (NotFoundException exception) {
+        lastException = exception;
+      }
+
+      long remaining = end - clock.now();
+      if (remaining <= 0) {
+        break;
+      }
+      awaitChange(generation, Math.min(remaining, sleepIntervalInMillis));
+
+      // Lets further changes accumulate before evaluating again.
+      long throttle = Math.min(
+          evaluated + MIN_REEVALUATION_INTERVAL, end) - clock.now();
+      if (throttle > 0) {
+        sleep(throttle);
+      }
+    }
+
+    throw new TimeoutException(String.format("Timed out after %d seconds",
+        SECONDS.convert(timeoutInMillis, MILLISECONDS)), lastException);
+  }
+
+  private void awaitChange(long generation, long maxWaitInMillis) {
+    try {
+      changeMonitor.awaitChange(generation, maxWaitInMillis, clock);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(exception);
+    }
+  }
+
   /**
    * Sleeps for a few milliseconds.
    */
   protected void sleep() {
+    sleep(sleepIntervalInMillis);
+  }
+
+  private void sleep(long millis) {
     try {
-      Thread.sleep(sleepIntervalInMillis);
+      Thread.sleep(millis);
     } catch (InterruptedException exception) {
       Thread.currentThread().interrupt();
       throw new WebDriverException(exception);
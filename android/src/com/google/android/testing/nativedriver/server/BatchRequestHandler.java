@@ -0,0 +1,493 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openqa.selenium.remote.ErrorCodes;
+
+import com.google.android.testing.nativedriver.server.util.JSONUtil;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Executes the commands of a {@code /session/:sessionId/batch} request in
+ * order, and responds with the responses of all of them.
+ *
+ * <p>The body of the request has a {@code commands} list. Each command has the
+ * HTTP {@code method} and {@code path} it would be sent to, such as
+ * {@code "/session/:sessionId/element/:id/click"}, and its
+ * {@code parameters}. Each {@code :name} segment of the path is replaced by the
+ * parameter of that name, and {@code :sessionId} by the id of the batch's
+ * session. The {@code id} and {@code element} parameters may refer to an
+ * element returned earlier in the same batch: {@code "@N"} is the element
+ * returned by the {@code N}th command, and {@code "@N.M"} the {@code M}th
+ * element of a list returned by the {@code N}th command.
+ *
+ * <p>Each command is dispatched through the servlet exactly as if it were a
+ * separate request, so every command supported by the servlet can be
+ * batched. Unless {@code stopOnError} is {@code false}, the batch stops after
+ * the first command which fails, and the responses end with that failure.
+ *
+ * <p>The batch is handled on the servlet thread rather than by a
+ * {@code Handler}, because handlers run on the session's single thread, on
+ * which the handlers of the batched commands must also run.
+ */
+class BatchRequestHandler {
+  /**
+   * Dispatches a request to the servlet.
+   */
+  interface Dispatcher {
+    void dispatch(HttpServletRequest request, HttpServletResponse response)
+        throws ServletException, IOException;
+  }
+
+  private static final Pattern BATCH_PATH
+      = Pattern.compile("/session/([^/]+)/batch/?");
+  private static final Pattern PATH_PARAMETER = Pattern.compile(":(\\w+)");
+  private static final Pattern REFERENCE
+      = Pattern.compile("@(\\d+)(?:\\.(\\d+))?");
+  private static final ObjectMapper MAPPER = JSONUtil.getObjectMapper();
+
+  private final Dispatcher dispatcher;
+
+  BatchRequestHandler(Dispatcher dispatcher) {
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * Returns the session id if the request is a batch request, or
+   * {@code null} otherwise.
+   */
+  @Nullable
+  static String getBatchSessionId(HttpServletRequest request) {
+    String path = request.getPathInfo();
+    if (path == null) {
+      return null;
+    }
+    Matcher matcher = BATCH_PATH.matcher(path);
+    return matcher.matches() ? matcher.group(1) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  void handle(HttpServletRequest request, HttpServletResponse response,
+      String sessionId) throws ServletException, IOException {
+    Map<String, Object> batch
+        = MAPPER.readValue(request.getReader(), Map.class);
+    List<Map<String, Object>> commands
+        = (List<Map<String, Object>>) batch.get("commands");
+    boolean stopOnError = !Boolean.FALSE.equals(batch.get("stopOnError"));
+
+    List<Map<String, Object>> responses = Lists.newArrayList();
+    if (commands != null) {
+      for (Map<String, Object> command : commands) {
+        Map<String, Object> result
+            = execute(request, response, sessionId, command, responses);
+        responses.add(result);
+        if (stopOnError && !isSuccess(result)) {
+          break;
+        }
+      }
+    }
+
+    Map<String, Object> body = Maps.newLinkedHashMap();
+    body.put("sessionId", sessionId);
+    body.put("status", 0);
+    body.put("value", responses);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    MAPPER.writeValue(response.getOutputStream(), body);
+  }
+
+  private static boolean isSuccess(Map<String, Object> result) {
+    Object status = result.get("status");
+    return (status instanceof Number) && ((Number) status).intValue() == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> execute(HttpServletRequest request,
+      HttpServletResponse response, String sessionId,
+      Map<String, Object> command,
+      List<Map<String, Object>> previous) throws ServletException, IOException {
+    String method = String.valueOf(command.get("method"));
+    Map<String, Object> parameters = Maps.newLinkedHashMap();
+    if (command.get("parameters") instanceof Map<?, ?>) {
+      parameters.putAll((Map<String, Object>) command.get("parameters"));
+    }
+
+    String path;
+    try {
+      resolveReference(parameters, "id", previous);
+      resolveReference(parameters, "element", previous);
+      path = substitutePath(
+          String.valueOf(command.get("path")), sessionId, parameters);
+    } catch (IllegalArgumentException exception) {
+      return failure(sessionId, exception.getMessage());
+    }
+    CommandRequest commandRequest = new CommandRequest(request, method, path,
+        "GET".equals(method) ? null : MAPPER.writeValueAsBytes(parameters));
+    if (getBatchSessionId(commandRequest) != null) {
+      return failure(sessionId, "Batches cannot be nested.");
+    }
+
+    CommandResponse commandResponse = new CommandResponse(response);
+    dispatcher.dispatch(commandRequest, commandResponse);
+    return commandResponse.getResult(sessionId);
+  }
+
+  private static Map<String, Object> failure(String sessionId,
+      String message) {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+    result.put("sessionId", sessionId);
+    result.put("status", ErrorCodes.UNHANDLED_ERROR);
+    result.put("value", Collections.singletonMap("message", message));
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void resolveReference(Map<String, Object> parameters,
+      String name, List<Map<String, Object>> previous) {
+    Object value = parameters.get(name);
+    if (!(value instanceof String)) {
+      return;
+    }
+    Matcher matcher = REFERENCE.matcher((String) value);
+    if (!matcher.matches()) {
+      return;
+    }
+
+    int index = Integer.parseInt(matcher.group(1));
+    if (index >= previous.size()) {
+      throw new IllegalArgumentException("Invalid reference " + value
+          + ": only " + previous.size() + " commands were executed.");
+    }
+    Object referenced = previous.get(index).get("value");
+    if (matcher.group(2) != null) {
+      int item = Integer.parseInt(matcher.group(2));
+      if (!(referenced instanceof List<?>)
+          || item >= ((List<?>) referenced).size()) {
+        throw new IllegalArgumentException("Invalid reference " + value
+            + ": command " + index + " did not return enough elements.");
+      }
+      referenced = ((List<?>) referenced).get(item);
+    }
+    if (!(referenced instanceof Map<?, ?>)
+        || ((Map<String, Object>) referenced).get("ELEMENT") == null) {
+      throw new IllegalArgumentException("Invalid reference " + value
+          + ": command " + index + " did not return an element.");
+    }
+    parameters.put(name,
+        String.valueOf(((Map<String, Object>) referenced).get("ELEMENT")));
+  }
+
+  private static String substitutePath(String path, String sessionId,
+      Map<String, Object> parameters) {
+    Matcher matcher = PATH_PARAMETER.matcher(path);
+    StringBuffer result = new StringBuffer();
+    while (matcher.find()) {
+      String name = matcher.group(1);
+      Object value
+          = "sessionId".equals(name) ? sessionId : parameters.get(name);
+      if (value == null) {
+        throw new IllegalArgumentException(
+            "Missing parameter " + name + " of path " + path);
+      }
+      matcher.appendReplacement(result,
+          Matcher.quoteReplacement(String.valueOf(value)));
+    }
+    matcher.appendTail(result);
+    return result.toString();
+  }
+
+  /**
+   * A request for one command of the batch. The attributes are kept apart
+   * from those of the batch request, since handlers store their results in
+   * them.
+   */
+  private static class CommandRequest extends HttpServletRequestWrapper {
+    private final String method;
+    private final String path;
+    @Nullable private final byte[] body;
+    private final Map<String, Object> attributes = Maps.newHashMap();
+
+    CommandRequest(HttpServletRequest request, String method, String path,
+        @Nullable byte[] body) {
+      super(request);
+      this.method = method;
+      this.path = path;
+      this.body = body;
+    }
+
+    @Override
+    public String getMethod() {
+      return method;
+    }
+
+    @Override
+    public String getPathInfo() {
+      return path;
+    }
+
+    @Override
+    public String getRequestURI() {
+      return getContextPath() + getServletPath() + path;
+    }
+
+    @Override
+    public String getQueryString() {
+      return null;
+    }
+
+    @Override
+    public int getContentLength() {
+      return (body == null) ? 0 : body.length;
+    }
+
+    @Override
+    public String getContentType() {
+      return "application/json;charset=UTF-8";
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+      return "UTF-8";
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+      final ByteArrayInputStream input
+          = new ByteArrayInputStream((body == null) ? new byte[0] : body);
+      return new ServletInputStream() {
+        @Override
+        public int read() {
+          return input.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+          return input.read(buffer, offset, length);
+        }
+      };
+    }
+
+    @Override
+    public BufferedReader getReader() {
+      return new BufferedReader(
+          new InputStreamReader(getInputStream(), Charsets.UTF_8));
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+      return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<?> getAttributeNames() {
+      return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+      attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+      attributes.remove(name);
+    }
+  }
+
+  /**
+   * A response for one command of the batch, which captures the body instead
+   * of sending it.
+   */
+  private static class CommandResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final ServletOutputStream output = new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+
+      @Override
+      public void write(byte[] buffer, int offset, int length) {
+        body.write(buffer, offset, length);
+      }
+    };
+    @Nullable private PrintWriter writer;
+    private int status = SC_OK;
+    @Nullable private String errorMessage;
+
+    CommandResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> getResult(String sessionId) throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (body.size() == 0) {
+        if (status >= 400) {
+          return failure(sessionId, (errorMessage != null) ? errorMessage
+              : "The command failed with HTTP status " + status);
+        }
+        Map<String, Object> result = Maps.newLinkedHashMap();
+        result.put("sessionId", sessionId);
+        result.put("status", 0);
+        result.put("value", null);
+        return result;
+      }
+      // The servlet container may answer with a non-JSON page, for example
+      // an HTML error page, which only fails this command.
+      Map<String, Object> result;
+      try {
+        result = MAPPER.readValue(body.toByteArray(), Map.class);
+      } catch (JsonProcessingException exception) {
+        result = null;
+      }
+      if (result == null) {
+        return failure(sessionId, "The command returned a response which is "
+            + "not a JSON object, with HTTP status " + status);
+      }
+      return result;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      return output;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      if (writer == null) {
+        writer = new PrintWriter(
+            new OutputStreamWriter(output, Charsets.UTF_8));
+      }
+      return writer;
+    }
+
+    @Override
+    public void setStatus(int status) {
+      this.status = status;
+    }
+
+    @Override
+    public void sendError(int status) {
+      this.status = status;
+    }
+
+    @Override
+    public void sendError(int status, String message) {
+      this.status = status;
+      this.errorMessage = message;
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+      errorMessage = "Unexpected redirect to " + location;
+      status = SC_INTERNAL_SERVER_ERROR;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void setDateHeader(String name, long value) {
+    }
+
+    @Override
+    public void addDateHeader(String name, long value) {
+    }
+
+    @Override
+    public void setContentType(String type) {
+    }
+
+    @Override
+    public void setContentLength(int length) {
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+    }
+
+    @Override
+    public void flushBuffer() {
+    }
+
+    @Override
+    public void reset() {
+      resetBuffer();
+      status = SC_OK;
+      errorMessage = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+      body.reset();
+    }
+
+    @Override
+    public boolean isCommitted() {
+      return false;
+    }
+  }
+}
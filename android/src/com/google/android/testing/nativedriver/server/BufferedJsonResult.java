@@ -0,0 +1,102 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.rest.Handler;
+import org.openqa.selenium.remote.server.rest.Renderer;
+
+import com.google.android.testing.nativedriver.server.util.JSONUtil;
+
+/**
+ * Renders the response of a handler whose value is written with a
+ * {@code JsonGenerator}. Unlike {@code JsonResult}, the value is never built as
+ * an object tree or a {@code String}, which matters for large values such as
+ * view hierarchy dumps. The encoded response is buffered once in memory.
+ *
+ * <p>The handler must implement {@link Source}, and encode its response with
+ * {@link #encode} while the command is executed, on the session thread. If
+ * writing the value fails, the command fails with the usual error response
+ * instead of a truncated body after a successful status. The response has the
+ * same {@code sessionId}, {@code status} and {@code value} fields as the
+ * responses rendered by {@code JsonResult}.
+ */
+public class BufferedJsonResult implements Renderer {
+  /**
+   * Writes the value of a response.
+   */
+  public interface ValueWriter {
+    /**
+     * Writes the value of the response as a single JSON value.
+     */
+    void writeValue(JsonGenerator generator) throws IOException;
+  }
+
+  /**
+   * A handler whose response is rendered by this renderer.
+   */
+  public interface Source {
+    /**
+     * Returns the response returned by {@link #encode}.
+     */
+    ByteArrayOutputStream getEncodedResponse();
+  }
+
+  private static final JsonFactory JSON_FACTORY = JSONUtil.getJsonFactory();
+
+  /**
+   * Returns the given response as UTF-8 encoded JSON, with the value written
+   * by the given writer.
+   *
+   * @throws IOException if the writer fails
+   */
+  public static ByteArrayOutputStream encode(
+      Response response, ValueWriter writer) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+    JsonGenerator generator
+        = JSON_FACTORY.createJsonGenerator(bytes, JsonEncoding.UTF8);
+    generator.writeStartObject();
+    generator.writeStringField("sessionId", response.getSessionId());
+    generator.writeNumberField("status", response.getStatus());
+    generator.writeFieldName("value");
+    writer.writeValue(generator);
+    generator.writeEndObject();
+    generator.close();
+    return bytes;
+  }
+
+  @Override
+  public void render(HttpServletRequest request, HttpServletResponse response,
+      Handler handler) throws Exception {
+    ByteArrayOutputStream encoded = ((Source) handler).getEncodedResponse();
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setContentLength(encoded.size());
+    encoded.writeTo(response.getOutputStream());
+  }
+}
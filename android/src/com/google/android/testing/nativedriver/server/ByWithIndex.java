@@ -1,16 +1,47 @@
 package com.google.android.testing.nativedriver.server;
 
+import java.lang.ref.WeakReference;
+
+import javax.annotation.Nullable;
+
 import org.openqa.selenium.By;
 
+import android.view.View;
+
 public class ByWithIndex {
  By by;
  int index;
- 
+ @Nullable final WeakReference<View> view;
+ // The id of the element the query was run on, or null for the root.
+ @Nullable final String parentId;
+
  public ByWithIndex(By by, int index){
+   this(by, index, null, null);
+ }
+
+ /**
+  * @param view the {@code View} of the element found by the query, which is
+  *        only weakly referenced so that it can still be garbage collected
+  * @param parentId the id of the element the query was run on, or
+  *        {@code null} if it was run on the driver
+  */
+ public ByWithIndex(By by, int index, @Nullable View view,
+     @Nullable String parentId){
    this.by = by;
    this.index = index;
+   this.view = (view == null) ? null : new WeakReference<View>(view);
+   this.parentId = parentId;
+ }
+
+ /**
+  * Returns the {@code View} of the element, or {@code null} if it is unknown
+  * or has been garbage collected.
+  */
+ @Nullable
+ public View getView() {
+   return (view == null) ? null : view.get();
  }
- 
+
  public String toString() {
   return "by:" + by + "/ index:" + index;
  }
@@ -0,0 +1,89 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Caches the results of {@code Class.forName}, including failed lookups, and
+ * of checking whether a class with a given name is assignable from a
+ * {@code View} class. Class name searches ask the same questions for every
+ * element of the hierarchy, and looking up a class by name is much slower
+ * than a map lookup.
+ *
+ * <p>Classes are held weakly, so that caching does not keep them loaded. This
+ * class is thread-safe.
+ */
+final class ClassLookup {
+  /** Stands for a class name which could not be resolved. */
+  private static final class NotFound {}
+
+  private static final ConcurrentMap<String, Class<?>> classesByName
+      = new MapMaker().weakValues().makeMap();
+
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Boolean>>
+      assignabilityByClass = new MapMaker().weakKeys().makeMap();
+
+  private ClassLookup() {}
+
+  /**
+   * Returns the class with the given name, or {@code null} if there is none.
+   */
+  @Nullable
+  static Class<?> forName(String className) {
+    Class<?> found = classesByName.get(className);
+    if (found == null) {
+      try {
+        found = Class.forName(className);
+      } catch (ClassNotFoundException exception) {
+        found = NotFound.class;
+      }
+      classesByName.put(className, found);
+    }
+    return (found == NotFound.class) ? null : found;
+  }
+
+  /**
+   * Returns whether the class with the given name exists and is the given
+   * class or one of its superclasses or interfaces.
+   */
+  static boolean isAssignableFrom(String className, Class<?> subclass) {
+    ConcurrentMap<String, Boolean> assignability
+        = assignabilityByClass.get(subclass);
+    if (assignability == null) {
+      assignability = new MapMaker().makeMap();
+      ConcurrentMap<String, Boolean> existing
+          = assignabilityByClass.putIfAbsent(subclass, assignability);
+      if (existing != null) {
+        assignability = existing;
+      }
+    }
+
+    Boolean assignable = assignability.get(className);
+    if (assignable == null) {
+      Class<?> found = forName(className);
+      assignable = (found != null) && found.isAssignableFrom(subclass);
+      assignability.put(className, assignable);
+    }
+    return assignable;
+  }
+}
@@ -0,0 +1,406 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import com.google.android.testing.nativedriver.common.AndroidNativeBy;
+import com.google.android.testing.nativedriver.common.ElementSelector;
+import com.google.android.testing.nativedriver.server.util.JSONUtil;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * A composite selector sent in the JSON form described in
+ * {@link ElementSelector}, parsed once into a tree of conditions. The tree is
+ * evaluated on each element in a single walk of the hierarchy, which keeps
+ * track of the ancestors of the visited element so that parent and ancestor
+ * conditions do not need another search.
+ *
+ * <p>The basic conditions are resolved by the {@link ConditionFactory} of the
+ * search context the selector is used with, so that, for instance, string IDs
+ * are read from the {@code R} class of the application under test.
+ */
+public final class CompiledSelector {
+  private static final ObjectMapper MAPPER = JSONUtil.getObjectMapper();
+
+  /**
+   * Creates the predicates for the basic conditions of selectors.
+   */
+  public interface ConditionFactory {
+    /**
+     * Returns a predicate matching the elements found by the given strategy
+     * of the JSON protocol.
+     *
+     * @throws InvalidSelectorException if the strategy is not supported in
+     *         selectors
+     */
+    Predicate<AndroidNativeElement> newCondition(String using, String value);
+  }
+
+  /**
+   * Implemented by search contexts which can evaluate compiled selectors.
+   */
+  public interface FindsByCompiledSelector {
+    /**
+     * Returns the elements in the search context which the given selector
+     * matches, up to {@code maxResults}. This method does not wait for
+     * elements to appear.
+     */
+    List<WebElement> findElementsByCompiledSelector(
+        CompiledSelector selector, int maxResults);
+  }
+
+  /**
+   * An element visited by the search, with a link to the visited entry of its
+   * parent.
+   */
+  private static class Entry {
+    final AndroidNativeElement element;
+    @Nullable final Entry parent;
+
+    Entry(AndroidNativeElement element, @Nullable Entry parent) {
+      this.element = element;
+      this.parent = parent;
+    }
+  }
+
+  /**
+   * A condition of the parsed selector, which is bound to a
+   * {@code ConditionFactory} before each search.
+   */
+  private interface Node {
+    Matcher bind(ConditionFactory factory);
+  }
+
+  private interface Matcher {
+    boolean matches(Entry entry);
+  }
+
+  private final String json;
+  private final Node root;
+  private final int nth;
+
+  private CompiledSelector(String json, Node root, int nth) {
+    this.json = json;
+    this.root = root;
+    this.nth = nth;
+  }
+
+  /**
+   * Parses a selector in the JSON form described in {@link ElementSelector}.
+   *
+   * @throws InvalidSelectorException if the selector is malformed
+   */
+  public static CompiledSelector parse(String json) {
+    Object tree;
+    try {
+      tree = MAPPER.readValue(json, Object.class);
+    } catch (IOException exception) {
+      throw new InvalidSelectorException(
+          "Selector is not valid JSON: " + json);
+    }
+
+    Map<?, ?> map = asMap(tree);
+    if (map.containsKey(ElementSelector.NTH)) {
+      Object nth = map.get(ElementSelector.NTH);
+      if (!(nth instanceof Integer) || (Integer) nth < 0
+          || map.size() != 2) {
+        throw new InvalidSelectorException(
+            "Expected {\"nth\": index, \"of\": selector}: " + json);
+      }
+      return new CompiledSelector(
+          json, parseNode(map.get(ElementSelector.OF)), (Integer) nth);
+    }
+    return new CompiledSelector(json, parseNode(map), -1);
+  }
+
+  private static Map<?, ?> asMap(Object tree) {
+    if (!(tree instanceof Map) || ((Map<?, ?>) tree).isEmpty()) {
+      throw new InvalidSelectorException(
+          "Expected a selector object but got: " + tree);
+    }
+    return (Map<?, ?>) tree;
+  }
+
+  private static Node parseNode(Object tree) {
+    Map<?, ?> map = asMap(tree);
+
+    if (map.containsKey(ElementSelector.USING)) {
+      Object using = map.get(ElementSelector.USING);
+      Object value = map.get(ElementSelector.VALUE);
+      if (!(using instanceof String) || !(value instanceof String)
+          || map.size() != 2) {
+        throw new InvalidSelectorException(
+            "Expected {\"using\": strategy, \"value\": string}: " + map);
+      }
+      return condition((String) using, (String) value);
+    }
+
+    if (map.size() != 1) {
+      throw new InvalidSelectorException(
+          "Expected exactly one operator in: " + map);
+    }
+    Map.Entry<?, ?> operator = map.entrySet().iterator().next();
+    Object key = operator.getKey();
+    if (ElementSelector.AND.equals(key)) {
+      return allOf(parseNodes(operator.getValue()));
+    } else if (ElementSelector.OR.equals(key)) {
+      return anyOf(parseNodes(operator.getValue()));
+    } else if (ElementSelector.NOT.equals(key)) {
+      return not(parseNode(operator.getValue()));
+    } else if (ElementSelector.PARENT.equals(key)) {
+      return parent(parseNode(operator.getValue()));
+    } else if (ElementSelector.ANCESTOR.equals(key)) {
+      return ancestor(parseNode(operator.getValue()));
+    }
+    throw new InvalidSelectorException("Unknown selector operator: " + key);
+  }
+
+  private static List<Node> parseNodes(Object trees) {
+    if (!(trees instanceof List) || ((List<?>) trees).isEmpty()) {
+      throw new InvalidSelectorException(
+          "Expected a non-empty list of selectors but got: " + trees);
+    }
+    List<Node> nodes = Lists.newArrayList();
+    for (Object tree : (List<?>) trees) {
+      nodes.add(parseNode(tree));
+    }
+    return nodes;
+  }
+
+  private static List<Matcher> bindAll(
+      List<Node> nodes, ConditionFactory factory) {
+    List<Matcher> matchers = Lists.newArrayListWithCapacity(nodes.size());
+    for (Node node : nodes) {
+      matchers.add(node.bind(factory));
+    }
+    return matchers;
+  }
+
+  private static Node condition(final String using, final String value) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final Predicate<AndroidNativeElement> predicate
+            = factory.newCondition(using, value);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            return predicate.apply(entry.element);
+          }
+        };
+      }
+    };
+  }
+
+  private static Node allOf(final List<Node> nodes) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final List<Matcher> matchers = bindAll(nodes, factory);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            for (Matcher matcher : matchers) {
+              if (!matcher.matches(entry)) {
+                return false;
+              }
+            }
+            return true;
+          }
+        };
+      }
+    };
+  }
+
+  private static Node anyOf(final List<Node> nodes) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final List<Matcher> matchers = bindAll(nodes, factory);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            for (Matcher matcher : matchers) {
+              if (matcher.matches(entry)) {
+                return true;
+              }
+            }
+            return false;
+          }
+        };
+      }
+    };
+  }
+
+  private static Node not(final Node node) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final Matcher matcher = node.bind(factory);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            return !matcher.matches(entry);
+          }
+        };
+      }
+    };
+  }
+
+  private static Node parent(final Node node) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final Matcher matcher = node.bind(factory);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            return (entry.parent != null) && matcher.matches(entry.parent);
+          }
+        };
+      }
+    };
+  }
+
+  private static Node ancestor(final Node node) {
+    return new Node() {
+      @Override
+      public Matcher bind(ConditionFactory factory) {
+        final Matcher matcher = node.bind(factory);
+        return new Matcher() {
+          @Override
+          public boolean matches(Entry entry) {
+            for (Entry ancestor = entry.parent; ancestor != null;
+                ancestor = ancestor.parent) {
+              if (matcher.matches(ancestor)) {
+                return true;
+              }
+            }
+            return false;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Walks the given elements and their descendants in the given order and
+   * adds the elements this selector matches to {@code destination}. Elements
+   * which should be omitted from find results are skipped, but their
+   * descendants are still searched and may use them as parent or ancestor.
+   * Parent and ancestor conditions only consider the given elements and their
+   * descendants.
+   *
+   * @return {@code destination}
+   */
+  public List<WebElement> addMatches(List<WebElement> destination,
+      Iterable<? extends AndroidNativeElement> topLevelElements,
+      int maxResults, ViewTraversal.Order order, ConditionFactory factory) {
+    Matcher matcher = root.bind(factory);
+    int toSkip = Math.max(nth, 0);
+    if (nth >= 0) {
+      maxResults = Math.min(maxResults, 1);
+    }
+
+    Deque<Entry> pending = new ArrayDeque<Entry>();
+    for (AndroidNativeElement element : topLevelElements) {
+      pending.addLast(new Entry(element, null));
+    }
+    // Depth-first order takes from the front, so children are pushed there
+    // in reverse to be visited in order.
+    boolean depthFirst = (order == ViewTraversal.Order.DEPTH_FIRST);
+    List<Entry> children = Lists.newArrayList();
+
+    while (!pending.isEmpty() && destination.size() < maxResults) {
+      Entry entry = pending.removeFirst();
+      if (!entry.element.shouldOmitFromFindResults()
+          && matcher.matches(entry)) {
+        if (toSkip > 0) {
+          toSkip--;
+        } else {
+          destination.add(entry.element);
+        }
+      }
+
+      children.clear();
+      for (AndroidNativeElement child : entry.element.getChildren()) {
+        children.add(new Entry(child, entry));
+      }
+      if (depthFirst) {
+        for (int i = children.size() - 1; i >= 0; i--) {
+          pending.addFirst(children.get(i));
+        }
+      } else {
+        pending.addAll(children);
+      }
+    }
+
+    return destination;
+  }
+
+  /**
+   * Returns an {@code AndroidNativeBy} which finds the elements this selector
+   * matches in a {@link FindsByCompiledSelector} search context.
+   */
+  public AndroidNativeBy toBy() {
+    return new AndroidNativeBy() {
+      @Override
+      public WebElement findElement(SearchContext context) {
+        List<WebElement> found = ((FindsByCompiledSelector) context)
+            .findElementsByCompiledSelector(CompiledSelector.this, 1);
+        if (found.isEmpty()) {
+          throw new NoSuchElementException(
+              "Could not find element matching selector: " + json);
+        }
+        return found.get(0);
+      }
+
+      @Override
+      public List<WebElement> findElements(SearchContext context) {
+        return ImmutableList.copyOf(((FindsByCompiledSelector) context)
+            .findElementsByCompiledSelector(
+                CompiledSelector.this, Integer.MAX_VALUE));
+      }
+
+      @Override
+      public String toString() {
+        return "AndroidNativeBy.selector: " + json;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return json;
+  }
+}
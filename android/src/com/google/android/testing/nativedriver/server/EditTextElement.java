@@ -44,6 +44,21 @@ public class EditTextElement<V extends EditText> extends TextViewElement<V> {
     super(context, view);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>In {@link KeySender.TextEntryMode#DIRECT} mode, the text is entered
+   * into this field directly rather than typed, which is much faster for long
+   * text.
+   */
+  @Override
+  public void sendKeys(CharSequence... keysToSend) {
+    requestFocus();
+    for (CharSequence keySubSequence : keysToSend) {
+      context.getKeySender().send(keySubSequence, getView());
+    }
+  }
+
   @Override
   public void clear() {
     if (isEnabled() && (getView().getInputType() != InputType.TYPE_NULL)) {
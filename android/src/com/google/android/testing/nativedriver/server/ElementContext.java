@@ -46,6 +46,7 @@ public class ElementContext {
   private final Touch touch;
   private final ViewElementFactory viewElementFactory;
   private final ViewHierarchyAnalyzer viewHierarchyAnalyzer;
+  private final ViewTreeChangeMonitor viewTreeChangeMonitor;
 
   public ElementContext(
       Activities activities,
@@ -55,7 +56,8 @@ public class ElementContext {
       Runner onMainSyncRunner,
       Touch touch,
       ViewElementFactory viewElementFactory,
-      ViewHierarchyAnalyzer viewHierarchyAnalyzer) {
+      ViewHierarchyAnalyzer viewHierarchyAnalyzer,
+      ViewTreeChangeMonitor viewTreeChangeMonitor) {
     this.activities = activities;
     this.elementFinder = elementFinder;
     this.instrumentation = instrumentation;
@@ -64,6 +66,7 @@ public class ElementContext {
     this.touch = touch;
     this.viewElementFactory = viewElementFactory;
     this.viewHierarchyAnalyzer = viewHierarchyAnalyzer;
+    this.viewTreeChangeMonitor = viewTreeChangeMonitor;
   }
 
   public static ElementContext withDefaults(
@@ -76,15 +79,20 @@ public class ElementContext {
       rClassReader = new RClassReader("android.R");
     }
 
+    ViewTreeChangeMonitor viewTreeChangeMonitor
+        = instrumentation.getViewTreeChangeMonitor();
+    Runner onMainSyncRunner = new OnMainSyncRunner(instrumentation);
+
     return new ElementContext(
         instrumentation.getActivities(),
-        new ElementFinder(rClassReader, new AndroidWait()),
+        new ElementFinder(rClassReader, new AndroidWait(viewTreeChangeMonitor)),
         instrumentation,
-        new KeySender(instrumentation),
-        new OnMainSyncRunner(instrumentation),
+        new KeySender(instrumentation, onMainSyncRunner),
+        onMainSyncRunner,
         AndroidNativeTouch.withDefaults(instrumentation),
         ViewElementFactory.getDefaultInstance(),
-        ViewHierarchyAnalyzer.getDefaultInstance());
+        ViewHierarchyAnalyzer.getDefaultInstance(),
+        viewTreeChangeMonitor);
   }
 
   public Activities getActivities() {
@@ -124,6 +132,15 @@ public class ElementContext {
     return viewHierarchyAnalyzer;
   }
 
+  /**
+   * Returns the {@code ViewTreeChangeMonitor} which reports changes to the
+   * {@code View} hierarchy. It is used to tell whether a
+   * {@code ViewHierarchySnapshot} is still current.
+   */
+  public ViewTreeChangeMonitor getViewTreeChangeMonitor() {
+    return viewTreeChangeMonitor;
+  }
+
   /**
    * Wraps a {@code View} in a new instance of {@code ViewElement} using the
    * most appropriate wrapper class available. This is accomplished by using the
@@ -24,6 +24,7 @@ import java.util.List;
 import javax.annotation.Nullable;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
 import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.TimeoutException;
@@ -31,12 +32,21 @@ import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.internal.FindsByClassName;
 import org.openqa.selenium.internal.FindsById;
+import org.openqa.selenium.internal.FindsByXPath;
 
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.google.android.testing.nativedriver.common.FindsByListItem;
+import com.google.android.testing.nativedriver.common.FindsBySelector;
 import com.google.android.testing.nativedriver.common.FindsByText;
+import com.google.android.testing.nativedriver.common.FindsByTextPattern;
 import com.google.android.testing.nativedriver.common.FindsByUID;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
@@ -86,11 +96,37 @@ import com.google.common.collect.Lists;
 public class ElementFinder {
   private final RClassReader rClassReader;
   private final AndroidWait wait;
+  private volatile ViewTraversal.Order traversalOrder
+      = ViewTraversal.Order.DEPTH_FIRST;
   private static enum IdType {LITERAL, ANDROID}
 
   private static interface FilterCondition
       extends Predicate<AndroidNativeElement> {
     String notFoundExceptionMessage();
+
+    /**
+     * Returns the elements of the snapshot which may satisfy this condition, in
+     * depth-first order. The returned elements must still be checked with
+     * {@link #apply}.
+     */
+    Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot);
+
+    /**
+     * Returns the condition evaluated on a raw {@code View} which is
+     * equivalent to {@link #apply} for the built-in {@code ViewElement}
+     * types, or {@code null} if there is none.
+     */
+    @Nullable
+    Predicate<View> viewFilter();
+  }
+
+  /**
+   * Returns the text of a {@code View} the way the built-in
+   * {@code ViewElement} types return it from {@code getTextSequence}.
+   */
+  private static CharSequence textOf(View view) {
+    return (view instanceof TextView) ? ((TextView) view).getText() : "";
   }
 
   private static class ByAndroidIdFilterCondition implements FilterCondition {
@@ -114,6 +150,23 @@ public class ElementFinder {
           "Could not find element with Android ID %d (string ID is '%s')",
           androidId, stringAndroidId);
     }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      return snapshot.getElementsByAndroidId(androidId);
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      return new Predicate<View>() {
+        @Override
+        public boolean apply(View view) {
+          int id = view.getId();
+          return id != View.NO_ID && id == androidId;
+        }
+      };
+    }
   }
 
   private static class ByLiteralIdFilterCondition implements FilterCondition {
@@ -133,42 +186,137 @@ public class ElementFinder {
       return String.format(
           "Could not find element with literal ID '%s'", literalId);
     }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      return snapshot.getTopLevelElements();
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      // The literal ID of a View depends on the current Activity.
+      return null;
+    }
   }
 
   private static class ByTextFilterCondition implements FilterCondition {
     private final String text;
+    private final boolean ignoreCase;
 
-    public ByTextFilterCondition(String text) {
+    public ByTextFilterCondition(String text, boolean ignoreCase) {
       this.text = text;
+      this.ignoreCase = ignoreCase;
     }
 
     @Override
     public boolean apply(AndroidNativeElement input) {
-      return text.equals(input.getText());
+      CharSequence elementText = input.getTextSequence();
+      return (elementText != null)
+          && TextMatching.equals(elementText, text, ignoreCase);
     }
 
     @Override
     public String notFoundExceptionMessage() {
-      return "Could not find element with exact text: '" + text + "'";
+      return "Could not find element with exact text"
+          + (ignoreCase ? " ignoring case" : "") + ": '" + text + "'";
+    }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      if (!ignoreCase || text.length() == 0) {
+        return snapshot.getElementsByText(text);
+      }
+      return snapshot.getElementsWithText();
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      return new Predicate<View>() {
+        @Override
+        public boolean apply(View view) {
+          return TextMatching.equals(textOf(view), text, ignoreCase);
+        }
+      };
     }
   }
 
   private static class ByPartialTextFilterCondition implements FilterCondition {
     private final String text;
+    private final boolean ignoreCase;
 
-    public ByPartialTextFilterCondition(String text) {
+    public ByPartialTextFilterCondition(String text, boolean ignoreCase) {
       this.text = text;
+      this.ignoreCase = ignoreCase;
+    }
+
+    @Override
+    public boolean apply(AndroidNativeElement input) {
+      CharSequence elementText = input.getTextSequence();
+      return (elementText != null)
+          && TextMatching.contains(elementText, text, ignoreCase);
+    }
+
+    @Override
+    public String notFoundExceptionMessage() {
+      return "Could not find element containing text"
+          + (ignoreCase ? " ignoring case" : "") + ": '" + text + "'";
+    }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      if (!ignoreCase || text.length() == 0) {
+        return snapshot.getElementsByPartialText(text);
+      }
+      return snapshot.getElementsWithText();
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      return new Predicate<View>() {
+        @Override
+        public boolean apply(View view) {
+          return TextMatching.contains(textOf(view), text, ignoreCase);
+        }
+      };
+    }
+  }
+
+  private static class ByTextMatchingFilterCondition
+      implements FilterCondition {
+    private final TextMatching.TextPattern pattern;
+
+    public ByTextMatchingFilterCondition(String regex) {
+      this.pattern = TextMatching.compile(regex);
     }
 
     @Override
     public boolean apply(AndroidNativeElement input) {
-      String elementText = input.getText();
-      return (elementText != null) && (elementText.indexOf(text) != -1);
+      CharSequence elementText = input.getTextSequence();
+      return (elementText != null) && pattern.matches(elementText);
     }
 
     @Override
     public String notFoundExceptionMessage() {
-      return "Could not find element containing text: '" + text + "'";
+      return "Could not find element with text matching: '" + pattern + "'";
+    }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      return snapshot.getElements();
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      return new Predicate<View>() {
+        @Override
+        public boolean apply(View view) {
+          return pattern.matches(textOf(view));
+        }
+      };
     }
   }
 
@@ -190,10 +338,28 @@ public class ElementFinder {
           + "Be sure to use the class' full name (including package) and "
           + "consider using one of the constants in client.ClassNames.";
     }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> candidatesFrom(
+        ViewHierarchySnapshot snapshot) {
+      return snapshot.getElementsByClassName(className);
+    }
+
+    @Override
+    public Predicate<View> viewFilter() {
+      return new Predicate<View>() {
+        @Override
+        public boolean apply(View view) {
+          return ClassLookup.isAssignableFrom(className, view.getClass());
+        }
+      };
+    }
   }
 
   private class SearchContextImpl
-      implements SearchContext, FindsById, FindsByText, FindsByClassName, FindsByUID {
+      implements SearchContext, FindsById, FindsByText, FindsByTextPattern,
+          FindsByListItem, FindsByClassName, FindsByUID, FindsBySelector,
+          CompiledSelector.FindsByCompiledSelector, FindsByXPath {
     private final ElementSearchScope scope;
 
     private SearchContextImpl(ElementSearchScope scope) {
@@ -279,18 +445,16 @@ public class ElementFinder {
         if (id == null) {
           id = -1;
         }
-        return findElementFromHierarchy(
-            scope.getChildren(), new ByAndroidIdFilterCondition(using, id));
+        return findElementInScope(new ByAndroidIdFilterCondition(using, id));
       } else {
-        return findElementFromHierarchy(
-            scope.getChildren(), new ByLiteralIdFilterCondition(using));
+        return findElementInScope(new ByLiteralIdFilterCondition(using));
       }
     }
 
     @Override
     public List<WebElement> findElementsById(String using) {
       Preconditions.checkNotNull(using);
-      Predicate<AndroidNativeElement> filter;
+      FilterCondition filter;
 
       if (idType(using) == IdType.LITERAL) {
         filter = new ByLiteralIdFilterCondition(using);
@@ -304,52 +468,170 @@ public class ElementFinder {
         filter = new ByAndroidIdFilterCondition(using, androidId);
       }
 
-      return addElementsFromHierarchy(Lists.<WebElement>newArrayList(),
-          scope.getChildren(), filter, Integer.MAX_VALUE /* maxResults */);
+      return findElementsInScope(filter);
     }
 
     @Override
     public WebElement findElementByText(String using) {
       Preconditions.checkNotNull(using);
-      FilterCondition filter = new ByTextFilterCondition(using);
-      return findElementFromHierarchy(scope.getChildren(), filter);
+      FilterCondition filter = new ByTextFilterCondition(using, false);
+      return findElementInScope(filter);
     }
 
     @Override
     public WebElement findElementByPartialText(String using) {
       Preconditions.checkNotNull(using);
-      FilterCondition filter = new ByPartialTextFilterCondition(using);
-      return findElementFromHierarchy(scope.getChildren(), filter);
+      FilterCondition filter = new ByPartialTextFilterCondition(using, false);
+      return findElementInScope(filter);
     }
 
     @Override
     public List<WebElement> findElementsByText(String using) {
       Preconditions.checkNotNull(using);
-      return addElementsFromHierarchy(Lists.<WebElement>newArrayList(),
-          scope.getChildren(), new ByTextFilterCondition(using),
-          Integer.MAX_VALUE /* maxResults */);
+      return findElementsInScope(new ByTextFilterCondition(using, false));
     }
 
     @Override
     public List<WebElement> findElementsByPartialText(String using) {
       Preconditions.checkNotNull(using);
-      return addElementsFromHierarchy(Lists.<WebElement>newArrayList(),
-          scope.getChildren(), new ByPartialTextFilterCondition(using),
-          Integer.MAX_VALUE /* maxResults */);
+      return findElementsInScope(
+          new ByPartialTextFilterCondition(using, false));
+    }
+
+    @Override
+    public WebElement findElementByTextMatching(String using) {
+      Preconditions.checkNotNull(using);
+      return findElementInScope(new ByTextMatchingFilterCondition(using));
+    }
+
+    @Override
+    public List<WebElement> findElementsByTextMatching(String using) {
+      Preconditions.checkNotNull(using);
+      return findElementsInScope(new ByTextMatchingFilterCondition(using));
+    }
+
+    @Override
+    public WebElement findElementByTextIgnoringCase(String using) {
+      Preconditions.checkNotNull(using);
+      return findElementInScope(new ByTextFilterCondition(using, true));
+    }
+
+    @Override
+    public List<WebElement> findElementsByTextIgnoringCase(String using) {
+      Preconditions.checkNotNull(using);
+      return findElementsInScope(new ByTextFilterCondition(using, true));
+    }
+
+    @Override
+    public WebElement findElementByPartialTextIgnoringCase(String using) {
+      Preconditions.checkNotNull(using);
+      return findElementInScope(new ByPartialTextFilterCondition(using, true));
+    }
+
+    @Override
+    public List<WebElement> findElementsByPartialTextIgnoringCase(
+        String using) {
+      Preconditions.checkNotNull(using);
+      return findElementsInScope(
+          new ByPartialTextFilterCondition(using, true));
+    }
+
+    @Override
+    public WebElement findElementByListItemText(String using) {
+      Preconditions.checkNotNull(using);
+      return findListItem(using, null);
+    }
+
+    /**
+     * Returns the row of the first matching item only, since the rows of
+     * other items are recycled when the list jumps to that item.
+     */
+    @Override
+    public List<WebElement> findElementsByListItemText(String using) {
+      Preconditions.checkNotNull(using);
+      return findListItems(using, null);
+    }
+
+    @Override
+    public WebElement findElementByListItemId(String using) {
+      Preconditions.checkNotNull(using);
+      return findListItem(null, parseItemId(using));
+    }
+
+    /**
+     * Returns the row of the first matching item only, as
+     * {@link #findElementsByListItemText} does.
+     */
+    @Override
+    public List<WebElement> findElementsByListItemId(String using) {
+      Preconditions.checkNotNull(using);
+      return findListItems(null, parseItemId(using));
+    }
+
+    private long parseItemId(String using) {
+      try {
+        return Long.parseLong(using);
+      } catch (NumberFormatException exception) {
+        throw new InvalidSelectorException("Invalid list item ID: " + using);
+      }
+    }
+
+    private List<WebElement> findListItems(
+        @Nullable String text, @Nullable Long itemId) {
+      try {
+        return ImmutableList.of(findListItem(text, itemId));
+      } catch (NoSuchElementException exception) {
+        return ImmutableList.of();
+      }
+    }
+
+    /**
+     * Searches the adapter data of the scope, if it is a {@code ListView},
+     * or else of each {@code ListView} in the scope, and jumps to the first
+     * matching item. Throws {@code NoSuchElementException} if the row of the
+     * item is not laid out yet, so that the enclosing wait tries again.
+     */
+    private WebElement findListItem(
+        @Nullable String text, @Nullable Long itemId) {
+      List<WebElement> lists;
+      if (scope instanceof ListViewElement) {
+        lists = ImmutableList.<WebElement>of((ListViewElement<?>) scope);
+      } else {
+        lists = findElementsInScope(
+            new ByClassNameFilterCondition(ListView.class.getName()));
+      }
+
+      for (WebElement element : lists) {
+        if (!(element instanceof ListViewElement)) {
+          continue;
+        }
+        ListViewElement<?> list = (ListViewElement<?>) element;
+        int position = (text != null) ? list.findItemPositionByText(text)
+            : list.findItemPositionById(itemId);
+        if (position >= 0) {
+          ViewElement<?> row = list.showItem(position);
+          if (row == null) {
+            throw new NoSuchElementException(
+                "List item is not laid out yet at position: " + position);
+          }
+          return row;
+        }
+      }
+      throw new NoSuchElementException((text != null)
+          ? "Could not find list item with text: '" + text + "'"
+          : "Could not find list item with ID: " + itemId);
     }
 
     @Override
     public WebElement findElementByClassName(String using) {
       Preconditions.checkNotNull(using);
       FilterCondition filter = new ByClassNameFilterCondition(using);
-      return findElementFromHierarchy(scope.getChildren(), filter);
+      return findElementInScope(filter);
     }
 
     @Override
     public List<WebElement> findElementsByClassName(String using) {
-      return addElementsFromHierarchy(Lists.<WebElement>newArrayList(),
-          scope.getChildren(), new ByClassNameFilterCondition(using),
-          Integer.MAX_VALUE /* maxResults */);
+      return findElementsInScope(new ByClassNameFilterCondition(using));
     }
 
     @Override
@@ -365,6 +647,97 @@ public class ElementFinder {
       return result;
     }
 
+    @Override
+    public WebElement findElementBySelector(String using) {
+      return CompiledSelector.parse(using).toBy().findElement(this);
+    }
+
+    @Override
+    public List<WebElement> findElementsBySelector(String using) {
+      return CompiledSelector.parse(using).toBy().findElements(this);
+    }
+
+    @Override
+    public List<WebElement> findElementsByCompiledSelector(
+        CompiledSelector selector, int maxResults) {
+      return selector.addMatches(Lists.<WebElement>newArrayList(),
+          scope.getChildren(), maxResults, traversalOrder, conditionFactory);
+    }
+
+    @Override
+    public WebElement findElementByXPath(String using) {
+      List<WebElement> result = findXPathMatches(using, 1 /* maxResults */);
+      if (result.isEmpty()) {
+        throw new NoSuchElementException(
+            "Could not find element matching XPath: " + using);
+      }
+      return result.get(0);
+    }
+
+    @Override
+    public List<WebElement> findElementsByXPath(String using) {
+      return findXPathMatches(using, Integer.MAX_VALUE /* maxResults */);
+    }
+
+    /**
+     * Evaluates the XPath against the document of the root snapshot, or, when
+     * searching from an element, against a document whose document node
+     * stands for that element.
+     */
+    private List<WebElement> findXPathMatches(String xpath, int maxResults) {
+      ViewXPath expression = ViewXPath.compile(xpath);
+      XPathDocument document = (scope instanceof RootSearchScope)
+          ? ((RootSearchScope) scope).getSnapshot().getDocument()
+          : new XPathDocument(scope.getChildren());
+
+      List<WebElement> result = Lists.newArrayList();
+      for (XPathDocument.Node node
+          : expression.selectNodes(document, document.getRoot())) {
+        if (result.size() >= maxResults) {
+          break;
+        }
+        AndroidNativeElement element = node.getElement();
+        if (element != null && !element.shouldOmitFromFindResults()) {
+          result.add(element);
+        }
+      }
+      return result;
+    }
+
+    private WebElement findElementInScope(FilterCondition filter) {
+      List<WebElement> result
+          = findMatchingElements(filter, 1 /* maxResults */);
+
+      if (result.isEmpty()) {
+        throw new NoSuchElementException(filter.notFoundExceptionMessage());
+      }
+
+      return result.get(0);
+    }
+
+    private List<WebElement> findElementsInScope(FilterCondition filter) {
+      return findMatchingElements(filter, Integer.MAX_VALUE /* maxResults */);
+    }
+
+    /**
+     * Searches the children of the scope. When searching from the root in
+     * depth-first order, the candidates are taken from the indexed
+     * {@code ViewHierarchySnapshot} instead of walking the whole hierarchy.
+     */
+    private List<WebElement> findMatchingElements(
+        FilterCondition filter, int maxResults) {
+      ViewTraversal.Order order = traversalOrder;
+      if (scope instanceof RootSearchScope
+          && order == ViewTraversal.Order.DEPTH_FIRST) {
+        ViewHierarchySnapshot snapshot
+            = ((RootSearchScope) scope).getSnapshot();
+        return addMatchingElements(Lists.<WebElement>newArrayList(),
+            filter.candidatesFrom(snapshot), filter, maxResults);
+      }
+      return addElementsFromHierarchy(Lists.<WebElement>newArrayList(),
+          scope.getChildren(), filter, maxResults, order);
+    }
+
     private WebElement findByUID(AndroidNativeElement element, ArrayList<String> listUID) {
       Integer i = 0;
       for (AndroidNativeElement el : element.getChildren()) {
@@ -382,6 +755,44 @@ public class ElementFinder {
     }
   }
 
+  /**
+   * Creates the basic conditions of {@link CompiledSelector}s from the same
+   * filter conditions as single searches.
+   */
+  private final CompiledSelector.ConditionFactory conditionFactory
+      = new CompiledSelector.ConditionFactory() {
+        @Override
+        public Predicate<AndroidNativeElement> newCondition(
+            String using, String value) {
+          if ("id".equals(using)) {
+            if (idType(value) == IdType.LITERAL) {
+              return new ByLiteralIdFilterCondition(value);
+            }
+            Integer androidId = parseAsAndroidId(value);
+            if (androidId == null) {
+              return Predicates.alwaysFalse();
+            }
+            return new ByAndroidIdFilterCondition(value, androidId);
+          } else if (FindsByText.USING_TEXT.equals(using)) {
+            return new ByTextFilterCondition(value, false);
+          } else if (FindsByText.USING_PARTIALTEXT.equals(using)) {
+            return new ByPartialTextFilterCondition(value, false);
+          } else if (FindsByTextPattern.USING_TEXT_MATCHING.equals(using)) {
+            return new ByTextMatchingFilterCondition(value);
+          } else if (
+              FindsByTextPattern.USING_TEXT_IGNORING_CASE.equals(using)) {
+            return new ByTextFilterCondition(value, true);
+          } else if (FindsByTextPattern.USING_PARTIALTEXT_IGNORING_CASE
+              .equals(using)) {
+            return new ByPartialTextFilterCondition(value, true);
+          } else if ("class name".equals(using)) {
+            return new ByClassNameFilterCondition(value);
+          }
+          throw new InvalidSelectorException(
+              "Unsupported strategy in selector: " + using);
+        }
+      };
+
   public ElementFinder(RClassReader rClassReader, AndroidWait wait) {
     this.rClassReader = rClassReader;
     this.wait = wait;
@@ -395,6 +806,21 @@ public class ElementFinder {
     return wait;
   }
 
+  public ViewTraversal.Order getTraversalOrder() {
+    return traversalOrder;
+  }
+
+  /**
+   * Sets the order in which searches visit the hierarchy, and so which of
+   * several matching elements is found first. The default is
+   * {@link ViewTraversal.Order#DEPTH_FIRST}. With
+   * {@link ViewTraversal.Order#BREADTH_FIRST}, the shallowest match is found
+   * first.
+   */
+  public void setTraversalOrder(ViewTraversal.Order traversalOrder) {
+    this.traversalOrder = Preconditions.checkNotNull(traversalOrder);
+  }
+
   public SearchContext getSearchContext(ElementSearchScope scope) {
     return new SearchContextImpl(scope);
   }
@@ -408,7 +834,7 @@ public class ElementFinder {
       FilterCondition filter) {
     List<WebElement> result = addElementsFromHierarchy(
         Lists.<WebElement>newArrayList(), topLevelElements,
-        filter, 1 /* maxResults */);
+        filter, 1 /* maxResults */, ViewTraversal.Order.DEPTH_FIRST);
 
     if (result.isEmpty()) {
       throw new NoSuchElementException(filter.notFoundExceptionMessage());
@@ -420,8 +846,16 @@ public class ElementFinder {
   private static List<WebElement> addElementsFromHierarchy(
       List<WebElement> destination,
       Iterable<? extends AndroidNativeElement> topLevelElements,
+      FilterCondition filter, int maxResults, ViewTraversal.Order order) {
+    return new ViewTraversal(order, filter.viewFilter(), filter)
+        .addMatches(destination, topLevelElements, maxResults);
+  }
+
+  private static List<WebElement> addMatchingElements(
+      List<WebElement> destination,
+      Iterable<? extends AndroidNativeElement> candidates,
       Predicate<AndroidNativeElement> filter, int maxResults) {
-    for (AndroidNativeElement element : topLevelElements) {
+    for (AndroidNativeElement element : candidates) {
       if (destination.size() >= maxResults) {
         break;
       }
@@ -429,9 +863,6 @@ public class ElementFinder {
       if (filter.apply(element) && !element.shouldOmitFromFindResults()) {
         destination.add(element);
       }
-
-      addElementsFromHierarchy(
-          destination, element.getChildren(), filter, maxResults);
     }
 
     return destination;
@@ -0,0 +1,195 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A bounded log of the events reported to clients through the
+ * {@link com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand#POLL_EVENTS}
+ * command. When the log is full, the oldest event is dropped.
+ *
+ * <p>{@link #poll} blocks until an event later than the given sequence
+ * number is recorded, so clients can wait for events without repeated
+ * requests. Each client keeps its own cursor, the sequence number of the last
+ * event it has been given or has acknowledged with {@code since}, so clients
+ * polling the same log do not affect which events the others receive.
+ * Events recorded with {@link #recordCoalesced} are merged with the newest
+ * event if it has the same type and no client has received it yet, so that
+ * frequent events such as layout passes do not flood the log.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @see ServerEvents
+ */
+public class EventLog {
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private final int capacity;
+  private final ArrayDeque<Map<String, Object>> events;
+  private long lastSequence;
+  // The cursor of each client, by client id.
+  private final Map<String, Long> cursors = Maps.newHashMap();
+
+  public EventLog() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public EventLog(int capacity) {
+    Preconditions.checkArgument(capacity > 0);
+    this.capacity = capacity;
+    this.events = new ArrayDeque<Map<String, Object>>(capacity);
+  }
+
+  /**
+   * Records an event.
+   *
+   * @param type the type of the event, one of the types in
+   *        {@link ServerEvents}
+   * @param fields additional fields of the event, or {@code null}
+   */
+  public synchronized void record(
+      String type, @Nullable Map<String, ?> fields) {
+    Map<String, Object> event = Maps.newLinkedHashMap();
+    event.put(ServerEvents.SEQUENCE, ++lastSequence);
+    event.put(ServerEvents.TYPE, type);
+    event.put(ServerEvents.TIME, System.currentTimeMillis());
+    if (fields != null) {
+      event.putAll(fields);
+    }
+
+    if (events.size() == capacity) {
+      events.removeFirst();
+    }
+    events.addLast(event);
+    notifyAll();
+  }
+
+  /**
+   * Records an event, or merges it with the newest event if that has the same
+   * type and has not been returned by {@link #poll} yet. A merged event keeps
+   * its sequence number, takes the time of the new event, and counts how many
+   * events it stands for in its {@link ServerEvents#COUNT} field.
+   */
+  public synchronized void recordCoalesced(String type) {
+    Map<String, Object> newest = events.peekLast();
+    if (newest != null && type.equals(newest.get(ServerEvents.TYPE))
+        && !isDelivered((Long) newest.get(ServerEvents.SEQUENCE))) {
+      newest.put(ServerEvents.TIME, System.currentTimeMillis());
+      newest.put(ServerEvents.COUNT,
+          (Integer) newest.get(ServerEvents.COUNT) + 1);
+      return;
+    }
+    record(type, Collections.singletonMap(ServerEvents.COUNT, 1));
+  }
+
+  private boolean isDelivered(long sequence) {
+    for (long cursor : cursors.values()) {
+      if (cursor >= sequence) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets the cursors of the clients which are not in the given set, such
+   * as the sessions which have been deleted.
+   */
+  public synchronized void retainClients(Set<String> clientIds) {
+    cursors.keySet().retainAll(clientIds);
+  }
+
+  /**
+   * Returns the sequence number of the newest event, or {@code 0} if no event
+   * has been recorded.
+   */
+  public synchronized long getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Returns the events later than the given sequence number, waiting for one
+   * to be recorded if there is none yet, and moves the cursor of the client.
+   *
+   * @param clientId the id of the polling client, such as its session id
+   * @param since the sequence number of the last event seen by the caller.
+   *        If negative, returns at once with no events.
+   * @param maxEvents the maximum number of events to return
+   * @param timeoutInMillis the maximum time to wait
+   * @return the response value described in {@link ServerEvents}
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public synchronized Map<String, Object> poll(String clientId, long since,
+      int maxEvents, long timeoutInMillis) throws InterruptedException {
+    Preconditions.checkNotNull(clientId);
+    Preconditions.checkArgument(maxEvents > 0);
+    Map<String, Object> result = Maps.newLinkedHashMap();
+    if (since < 0) {
+      result.put(ServerEvents.EVENTS, Collections.emptyList());
+      result.put(ServerEvents.NEXT, lastSequence);
+      result.put(ServerEvents.MISSED, false);
+      return result;
+    }
+
+    long end = System.currentTimeMillis() + timeoutInMillis;
+    while (lastSequence <= since) {
+      long remaining = end - System.currentTimeMillis();
+      if (remaining <= 0) {
+        break;
+      }
+      wait(remaining);
+    }
+
+    List<Map<String, Object>> found = Lists.newArrayList();
+    long next = Math.max(since, 0);
+    boolean missed = false;
+    for (Map<String, Object> event : events) {
+      long sequence = (Long) event.get(ServerEvents.SEQUENCE);
+      if (sequence <= since) {
+        continue;
+      }
+      if (found.isEmpty() && sequence > since + 1) {
+        missed = true;
+      }
+      if (found.size() == maxEvents) {
+        break;
+      }
+      // Copied, since coalescing may still change the recorded event.
+      found.add(Maps.newLinkedHashMap(event));
+      next = sequence;
+    }
+    cursors.put(clientId, next);
+
+    result.put(ServerEvents.EVENTS, found);
+    result.put(ServerEvents.NEXT, next);
+    result.put(ServerEvents.MISSED, missed);
+    return result;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.SessionId;
+import org.openqa.selenium.remote.server.DriverSessions;
+import org.openqa.selenium.remote.server.Session;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.android.testing.nativedriver.server.util.JSONUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Answers {@code /session/:sessionId/events} requests from an
+ * {@link EventLog}, waiting for new events for up to the requested timeout.
+ *
+ * <p>The request is handled on the servlet thread rather than by a
+ * {@code Handler}, so that a waiting poll does not hold up the commands of
+ * the session, which all run on a single thread. Requests for unknown
+ * sessions are rejected. Before each poll, the windows currently shown are
+ * observed, so that their layout and focus events are recorded even if the
+ * session has not searched for an element yet.
+ *
+ * @see ServerEvents
+ */
+class EventRequestHandler {
+  /** The longest time a poll may wait, in milliseconds. */
+  static final long MAX_TIMEOUT = 60000;
+
+  static final int DEFAULT_MAX_EVENTS = 100;
+
+  private static final Pattern EVENTS_PATH
+      = Pattern.compile("/session/([^/]+)/events/?");
+  private static final ObjectMapper MAPPER = JSONUtil.getObjectMapper();
+
+  private final EventLog eventLog;
+  private final DriverSessions sessions;
+
+  EventRequestHandler(EventLog eventLog, DriverSessions sessions) {
+    this.eventLog = Preconditions.checkNotNull(eventLog);
+    this.sessions = Preconditions.checkNotNull(sessions);
+  }
+
+  /**
+   * Returns the session id if the request is an events request, or
+   * {@code null} otherwise.
+   */
+  @Nullable
+  static String getEventsSessionId(HttpServletRequest request) {
+    String path = request.getPathInfo();
+    if (path == null) {
+      return null;
+    }
+    Matcher matcher = EVENTS_PATH.matcher(path);
+    return matcher.matches() ? matcher.group(1) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  void handle(HttpServletRequest request, HttpServletResponse response,
+      String sessionId) throws IOException {
+    Session session = sessions.get(new SessionId(sessionId));
+    if (session == null) {
+      writeResponse(response, HttpServletResponse.SC_NOT_FOUND, sessionId,
+          ErrorCodes.UNHANDLED_ERROR,
+          ImmutableMap.of("message", "Unknown session: " + sessionId));
+      return;
+    }
+    observeWindows(session);
+
+    Map<String, Object> parameters
+        = MAPPER.readValue(request.getReader(), Map.class);
+    long since = getLong(parameters, ServerEvents.SINCE, 0);
+    long timeout = Math.max(0, Math.min(MAX_TIMEOUT,
+        getLong(parameters, ServerEvents.TIMEOUT, 0)));
+    int maxEvents = (int) Math.max(1,
+        getLong(parameters, ServerEvents.MAX_EVENTS, DEFAULT_MAX_EVENTS));
+
+    Set<String> liveSessionIds = Sets.newHashSet();
+    for (SessionId liveSessionId : sessions.getSessions()) {
+      liveSessionIds.add(liveSessionId.toString());
+    }
+    eventLog.retainClients(liveSessionIds);
+
+    Map<String, Object> value;
+    try {
+      value = eventLog.poll(sessionId, since, maxEvents, timeout);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      // The server is stopping; answer with what is there without waiting.
+      value = pollWithoutWaiting(sessionId, since, maxEvents);
+    }
+    writeResponse(response, HttpServletResponse.SC_OK, sessionId, 0, value);
+  }
+
+  private static void observeWindows(Session session) {
+    WebDriver driver = session.getDriver();
+    while (driver instanceof WrapsDriver) {
+      driver = ((WrapsDriver) driver).getWrappedDriver();
+    }
+    if (driver instanceof AndroidNativeDriver<?>) {
+      ((AndroidNativeDriver<?>) driver).observeWindows();
+    }
+  }
+
+  private static void writeResponse(HttpServletResponse response,
+      int httpStatus, String sessionId, int status, Object value)
+      throws IOException {
+    Map<String, Object> body = Maps.newLinkedHashMap();
+    body.put("sessionId", sessionId);
+    body.put("status", status);
+    body.put("value", value);
+    response.setStatus(httpStatus);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    MAPPER.writeValue(response.getOutputStream(), body);
+  }
+
+  private Map<String, Object> pollWithoutWaiting(String sessionId, long since,
+      int maxEvents) {
+    try {
+      return eventLog.poll(sessionId, since, maxEvents, 0);
+    } catch (InterruptedException exception) {
+      // Never happens, since poll does not wait with a zero timeout.
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private static long getLong(
+      Map<String, Object> parameters, String name, long defaultValue) {
+    Object value = parameters.get(name);
+    return (value instanceof Number)
+        ? ((Number) value).longValue() : defaultValue;
+  }
+}
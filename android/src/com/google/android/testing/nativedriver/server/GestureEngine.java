@@ -0,0 +1,282 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.Clock;
+
+import android.app.Instrumentation;
+import android.util.Log;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Performs {@link Gesture}s by injecting the {@code MotionEvent}s of their
+ * pointers.
+ *
+ * <p>The paths are sampled every {@link #EVENT_INTERVAL_MILLIS}, and at the
+ * times the pointers go down or up. Each event carries the time it was
+ * planned for, and is injected when that time has come, so velocities
+ * computed by the application, such as for flings, match the gesture. If the
+ * application is slow to handle the events, moves which are already late are
+ * skipped rather than delaying the rest of the gesture; downs and ups are
+ * never skipped.
+ *
+ * <p>The events are injected on a dedicated thread, one gesture at a time
+ * across all sessions. Unlike {@link AndroidNativeTouch#tap}, this waits for
+ * the application to be idle only once before the gesture, not before every
+ * event.
+ */
+public class GestureEngine {
+  /**
+   * The time in milliseconds between two samples of a moving pointer.
+   */
+  public static final long EVENT_INTERVAL_MILLIS = 10;
+
+  private static final String LOG_TAG = GestureEngine.class.getSimpleName();
+
+  // Shared by all engines, since there is only one touch screen.
+  private static final ExecutorService injector
+      = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("GestureEngine-%d")
+          .build());
+
+  private final Clock clock;
+  private final Instrumentation instrumentation;
+
+  public GestureEngine(Clock clock, Instrumentation instrumentation) {
+    this.clock = clock;
+    this.instrumentation = instrumentation;
+  }
+
+  /**
+   * Performs the given gesture and returns when its last pointer went up.
+   *
+   * @throws WebDriverException if an event could not be injected. The pointers
+   *         which were down are cancelled.
+   */
+  public void perform(final Gesture gesture) {
+    Future<?> injection = injector.submit(new Runnable() {
+      @Override
+      public void run() {
+        inject(gesture);
+      }
+    });
+    try {
+      injection.get();
+    } catch (InterruptedException exception) {
+      injection.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(exception);
+    } catch (ExecutionException exception) {
+      throw Throwables.propagate(exception.getCause());
+    }
+  }
+
+  private void inject(Gesture gesture) {
+    List<Gesture.Path> paths = gesture.getPaths();
+    SortedSet<Long> boundaries = Sets.newTreeSet();
+    for (Gesture.Path path : paths) {
+      boundaries.add(path.getDelay());
+      boundaries.add(path.getDelay() + path.getDuration());
+    }
+
+    instrumentation.waitForIdleSync();
+    Stream stream = new Stream(paths, clock.now());
+    long duration = gesture.getDuration();
+    long sample = 0;
+    int frames = 0;
+    try {
+      while (!boundaries.isEmpty() || sample <= duration) {
+        long time;
+        boolean boundary;
+        if (!boundaries.isEmpty() && boundaries.first() <= sample) {
+          time = boundaries.first();
+          boundary = true;
+          boundaries.remove(time);
+          if (time == sample) {
+            sample += EVENT_INTERVAL_MILLIS;
+          }
+        } else {
+          time = sample;
+          boundary = false;
+          sample += EVENT_INTERVAL_MILLIS;
+          if (clock.now() > stream.startTime + time + EVENT_INTERVAL_MILLIS) {
+            continue;
+          }
+        }
+        sleepUntil(stream.startTime + time);
+        stream.advanceTo(time, boundary);
+        frames++;
+      }
+    } catch (RuntimeException exception) {
+      stream.cancel();
+      throw new WebDriverException("Could not inject gesture: " + gesture,
+          exception);
+    }
+    Log.d(LOG_TAG, String.format("Injected %d pointers in %d frames over %d ms",
+        paths.size(), frames, duration));
+  }
+
+  private void sleepUntil(long uptime) {
+    long delay = uptime - clock.now();
+    if (delay <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(exception);
+    }
+  }
+
+  /**
+   * The state of the injected {@code MotionEvent} stream of one gesture.
+   */
+  private class Stream {
+    final List<Gesture.Path> paths;
+    final long startTime;
+    // Ids of the pointers which are down, in increasing order. The id of a
+    // pointer is the index of its path.
+    final List<Integer> down = Lists.newArrayList();
+    final float[][] lastPositions;
+    long downTime;
+    long eventTime;
+
+    Stream(List<Gesture.Path> paths, long startTime) {
+      this.paths = paths;
+      this.startTime = startTime;
+      this.lastPositions = new float[paths.size()][];
+    }
+
+    /**
+     * Moves the pointers which are down to their positions at the given time
+     * since the start of the gesture, then puts down and lifts the pointers
+     * whose paths start or end at that time.
+     */
+    void advanceTo(long time, boolean boundary) {
+      eventTime = startTime + time;
+      boolean moved = false;
+      for (int id : down) {
+        moved |= updatePosition(id, time);
+      }
+      if (moved) {
+        send(MotionEvent.ACTION_MOVE);
+      }
+      if (!boundary) {
+        return;
+      }
+      for (int id = 0; id < paths.size(); id++) {
+        if (paths.get(id).getDelay() == time && !down.contains(id)) {
+          if (down.isEmpty()) {
+            downTime = eventTime;
+          }
+          int index = insertionIndex(id);
+          down.add(index, id);
+          updatePosition(id, time);
+          send(down.size() == 1 ? MotionEvent.ACTION_DOWN
+              : pointerAction(MotionEvent.ACTION_POINTER_DOWN, index));
+        }
+      }
+      for (int index = 0; index < down.size(); ) {
+        Gesture.Path path = paths.get(down.get(index));
+        if (path.getDelay() + path.getDuration() <= time) {
+          send(down.size() == 1 ? MotionEvent.ACTION_UP
+              : pointerAction(MotionEvent.ACTION_POINTER_UP, index));
+          down.remove(index);
+        } else {
+          index++;
+        }
+      }
+    }
+
+    /**
+     * Cancels the pointers which are down, if any. Errors are logged, since
+     * this is called after an event could not be injected.
+     */
+    void cancel() {
+      if (down.isEmpty()) {
+        return;
+      }
+      try {
+        send(MotionEvent.ACTION_CANCEL);
+      } catch (RuntimeException exception) {
+        Log.w(LOG_TAG, "Could not cancel gesture", exception);
+      }
+      down.clear();
+    }
+
+    private boolean updatePosition(int id, long time) {
+      Gesture.Path path = paths.get(id);
+      float[] position = path.getPositionAt(time - path.getDelay());
+      float[] last = lastPositions[id];
+      lastPositions[id] = position;
+      return last == null || last[0] != position[0] || last[1] != position[1];
+    }
+
+    private int insertionIndex(int id) {
+      int index = 0;
+      while (index < down.size() && down.get(index) < id) {
+        index++;
+      }
+      return index;
+    }
+
+    private int pointerAction(int action, int index) {
+      return action | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    }
+
+    private void send(int action) {
+      int count = down.size();
+      int[] ids = new int[count];
+      MotionEvent.PointerCoords[] coords
+          = new MotionEvent.PointerCoords[count];
+      for (int i = 0; i < count; i++) {
+        ids[i] = down.get(i);
+        coords[i] = new MotionEvent.PointerCoords();
+        coords[i].x = lastPositions[ids[i]][0];
+        coords[i].y = lastPositions[ids[i]][1];
+        coords[i].pressure = 1;
+        coords[i].size = 1;
+      }
+      MotionEvent event = MotionEvent.obtain(downTime, eventTime, action,
+          count, ids, coords, AndroidNativeTouch.DEFAULT_META_STATE, 1, 1, 0,
+          0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+      try {
+        instrumentation.sendPointerSync(event);
+      } finally {
+        event.recycle();
+      }
+    }
+  }
+}
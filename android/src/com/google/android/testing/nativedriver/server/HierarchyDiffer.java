@@ -0,0 +1,104 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps the last dump of the element hierarchy and computes the differences
+ * of each new dump against it, as described by {@link HierarchyDiff}.
+ *
+ * <p>Elements are matched by UID, so an element which moves to another index
+ * of its parent is reported as removed from the old UID and added at the new
+ * one.
+ */
+public class HierarchyDiffer {
+  private final String nonce = UUID.randomUUID().toString();
+  private long counter;
+  @Nullable private String lastVersion;
+  @Nullable private Map<String, Map<String, Object>> lastNodes;
+
+  /**
+   * Dumps the hierarchy of the given {@code Activity} element, and returns it
+   * as a diff against the last dump if that is {@code baseVersion}, or as a
+   * full dump otherwise. The new dump becomes the last dump.
+   */
+  public synchronized Map<String, Object> dump(
+      AndroidNativeElement activityElement, @Nullable String baseVersion) {
+    Map<String, Map<String, Object>> nodes = Maps.newLinkedHashMap();
+    new ActivityDumper().collectElements(activityElement, "", nodes);
+
+    Map<String, Map<String, Object>> base
+        = (baseVersion != null && baseVersion.equals(lastVersion))
+            ? lastNodes : null;
+    List<Map<String, Object>> added = Lists.newArrayList();
+    List<Map<String, Object>> changed = Lists.newArrayList();
+    List<String> removed = Lists.newArrayList();
+
+    for (Map.Entry<String, Map<String, Object>> node : nodes.entrySet()) {
+      Map<String, Object> previous
+          = (base == null) ? null : base.get(node.getKey());
+      if (previous == null) {
+        added.add(withUid(node.getKey(), node.getValue()));
+      } else if (!previous.equals(node.getValue())) {
+        changed.add(withUid(node.getKey(), node.getValue()));
+      }
+    }
+    if (base != null) {
+      for (String uid : base.keySet()) {
+        if (!nodes.containsKey(uid)) {
+          removed.add(uid);
+        }
+      }
+    }
+
+    lastNodes = nodes;
+    lastVersion = nonce + ":" + (++counter);
+
+    Map<String, Object> diff = Maps.newHashMap();
+    diff.put(HierarchyDiff.VERSION, lastVersion);
+    diff.put(HierarchyDiff.FULL, base == null);
+    diff.put(HierarchyDiff.ADDED, added);
+    diff.put(HierarchyDiff.CHANGED, changed);
+    diff.put(HierarchyDiff.REMOVED, removed);
+    return diff;
+  }
+
+  /**
+   * Forgets the last dump, so that the next one is a full dump.
+   */
+  public synchronized void reset() {
+    lastNodes = null;
+    lastVersion = null;
+  }
+
+  private static Map<String, Object> withUid(
+      String uid, Map<String, Object> fields) {
+    Map<String, Object> node = Maps.newHashMap(fields);
+    node.put(HierarchyDiff.UID, uid);
+    return node;
+  }
+}
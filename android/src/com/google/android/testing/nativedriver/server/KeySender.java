@@ -19,11 +19,18 @@ package com.google.android.testing.nativedriver.server;
 
 import com.google.android.testing.nativedriver.common.AndroidKeys;
 
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 
 import android.app.Instrumentation;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.Selection;
 import android.view.KeyEvent;
+import android.widget.TextView;
+
+import javax.annotation.Nullable;
 
 import org.openqa.selenium.Keyboard;
 import org.openqa.selenium.Keys;
@@ -40,9 +47,37 @@ import org.openqa.selenium.WebDriverException;
  * item in a list. If you are trying to type into a certain widget, be sure it
  * has focus before using this class.
  *
+ * <p>By default, runs of normal characters sent to a given text field with
+ * {@link #send(CharSequence, TextView)} are entered into it directly, see
+ * {@link TextEntryMode#DIRECT}. Keys sent without a field, such as through
+ * {@link #getKeyboard()}, and special keys are always sent as key events.
+ *
  * @author Matt DeVore
  */
 public class KeySender {
+  /**
+   * How runs of normal characters are sent.
+   */
+  public enum TextEntryMode {
+    /**
+     * Replaces the selection of the given text field with the whole run in
+     * one step on the main thread, through its {@code Editable}. The
+     * {@code TextWatcher}s and {@code InputFilter}s of the field see a single
+     * change, and no key events are sent. If the field is not editable, or
+     * loses focus to a special key such as TAB or ENTER, the rest of the text
+     * is sent as key events, like the special key.
+     */
+    DIRECT,
+
+    /**
+     * Sends one key event per character, as if typed on a hardware keyboard.
+     * This is slower, but needed for fields which react to the key events
+     * themselves, such as through an {@code OnKeyListener}.
+     */
+    KEY_EVENTS
+  }
+
+
   private class KeyboardImpl implements Keyboard {
     @Override
     public void pressKey(Keys keyToPress){
@@ -61,16 +96,40 @@ public class KeySender {
   }
 
   private final Instrumentation instrumentation;
+  private final Runner onMainSyncRunner;
   private final KeyboardImpl keyboardImpl;
+  private volatile TextEntryMode textEntryMode = TextEntryMode.DIRECT;
   
   /**
    * Creates a new instance which sends keys to the given
    * {@code Instrumentation}.
    */
   public KeySender(Instrumentation instrumentation) {
+    this(instrumentation, new OnMainSyncRunner(instrumentation));
+  }
+
+  /**
+   * Creates a new instance which sends keys to the given
+   * {@code Instrumentation}, and accesses the text fields given to
+   * {@link #send(CharSequence, TextView)} with the given runner.
+   */
+  public KeySender(Instrumentation instrumentation, Runner onMainSyncRunner) {
     this.instrumentation = Preconditions.checkNotNull(instrumentation);
+    this.onMainSyncRunner = Preconditions.checkNotNull(onMainSyncRunner);
     this.keyboardImpl = new KeyboardImpl();
   }
+
+  public TextEntryMode getTextEntryMode() {
+    return textEntryMode;
+  }
+
+  /**
+   * Sets how runs of normal characters sent to a given text field are sent.
+   * The default is {@link TextEntryMode#DIRECT}.
+   */
+  public void setTextEntryMode(TextEntryMode textEntryMode) {
+    this.textEntryMode = Preconditions.checkNotNull(textEntryMode);
+  }
   
   /**
    * Returns a {@code Keyboard} object which sends key using this
@@ -126,9 +185,28 @@ public class KeySender {
    * @param string the keys to send to the {@code Instrumentation}.
    */
   public void send(CharSequence string) {
+    send(string, null);
+  }
+
+  /**
+   * Equivalent to {@link #send(CharSequence)}, but in
+   * {@link TextEntryMode#DIRECT} mode enters the text into the given field,
+   * which should have focus, rather than typing it.
+   *
+   * @param string the keys to send
+   * @param field the field to enter text into, or {@code null} to send all
+   *        keys as key events
+   */
+  public void send(CharSequence string, @Nullable TextView field) {
     int currentIndex = 0;
     
     instrumentation.waitForIdleSync();
+
+    TextView editor = null;
+    if (field != null && textEntryMode == TextEntryMode.DIRECT
+        && string.length() > 0) {
+      editor = onMainSyncRunner.run(findEditor(false), field);
+    }
     
     while (currentIndex < string.length()) {
       char currentCharacter = string.charAt(currentIndex);
@@ -137,16 +215,81 @@ public class KeySender {
         instrumentation.sendKeyDownUpSync(
             AndroidKeys.keyCodeFor(currentCharacter));
         currentIndex++;
+        if (editor != null) {
+          // Keys such as TAB or ENTER may have moved the focus elsewhere, and
+          // the following text must then be typed where the focus went.
+          instrumentation.waitForIdleSync();
+          editor = onMainSyncRunner.run(findEditor(true), editor);
+        }
       } else {
         // There is at least one "normal" character, that is a character
         // represented by a plain Unicode character that can be sent with
         // sendStringSync. So send as many such consecutive normal characters
         // as possible in a single String.
         int nextSpecialKey = indexOfSpecialKey(string, currentIndex);
-        instrumentation.sendStringSync(
-            string.subSequence(currentIndex, nextSpecialKey).toString());
+        CharSequence text = string.subSequence(currentIndex, nextSpecialKey);
+        if (editor != null) {
+          onMainSyncRunner.run(doReplaceSelection(editor, text));
+        } else {
+          instrumentation.sendStringSync(text.toString());
+        }
         currentIndex = nextSpecialKey;
       }
     }
   }
+
+  /**
+   * Creates a {@code Function} which returns the given field as long as its
+   * text can be edited directly, and, if {@code requireFocus} is set, it
+   * still has focus. Otherwise the {@code Function} returns {@code null}. It
+   * should always be run on the main application thread.
+   */
+  private static Function<TextView, TextView> findEditor(
+      final boolean requireFocus) {
+    return new Function<TextView, TextView>() {
+      @Override
+      public TextView apply(TextView field) {
+        boolean editable = field.isEnabled()
+            && field.getInputType() != InputType.TYPE_NULL
+            && field.getEditableText() != null
+            && (!requireFocus || field.isFocused());
+        return editable ? field : null;
+      }
+    };
+  }
+
+  /**
+   * Creates a {@code Runnable} which replaces the selection of the given field
+   * with the given text and moves the cursor after it, as committing the text
+   * from an input method would. This {@code Runnable} should always be run on
+   * the main application thread.
+   */
+  private static Runnable doReplaceSelection(
+      final TextView editor, final CharSequence text) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        Editable editable = editor.getEditableText();
+        int start = Selection.getSelectionStart(editable);
+        int end = Selection.getSelectionEnd(editable);
+        if (start < 0 || end < 0) {
+          start = end = editable.length();
+        } else if (start > end) {
+          int swap = start;
+          start = end;
+          end = swap;
+        }
+        int lengthBefore = editable.length();
+        editor.beginBatchEdit();
+        try {
+          editable.replace(start, end, text);
+          // Input filters may have shortened the text.
+          int inserted = editable.length() - lengthBefore + (end - start);
+          Selection.setSelection(editable, start + inserted);
+        } finally {
+          editor.endBatchEdit();
+        }
+      }
+    };
+  }
 }
@@ -0,0 +1,177 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.internal.Coordinates;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * Stands for an element in the {@code KnownElements} of a session, which keep
+ * their entries until the session is deleted. The handle only holds the id of
+ * the element, and looks it up through
+ * {@link AndroidNativeDriver#getKnownElement} on every call, so the
+ * {@code View} is only retained by {@link AndroidKnownElements}, weakly and
+ * within its maximum size. Once the {@code View} is detached or collected,
+ * the entry is evicted or the driver is closed, the handle throws
+ * {@code StaleElementReferenceException}; the query which found the element
+ * is not run again.
+ */
+class KnownElementHandle implements WebElement, Locatable, WrapsElement {
+  private final AndroidNativeDriver<?> driver;
+  private volatile String elementId;
+
+  KnownElementHandle(AndroidNativeDriver<?> driver) {
+    this.driver = driver;
+  }
+
+  /**
+   * Returns the id of the element if it is a handle, possibly wrapped, or
+   * {@code null} otherwise.
+   */
+  @Nullable
+  static String getId(@Nullable WebElement element) {
+    while (element instanceof WrapsElement) {
+      if (element instanceof KnownElementHandle) {
+        return ((KnownElementHandle) element).elementId;
+      }
+      element = ((WrapsElement) element).getWrappedElement();
+    }
+    return null;
+  }
+
+  /**
+   * Sets the id, which is only known once the handle has been added to the
+   * {@code KnownElements}.
+   */
+  void setElementId(String elementId) {
+    this.elementId = elementId;
+  }
+
+  @Override
+  public WebElement getWrappedElement() {
+    return driver.getKnownElement(elementId);
+  }
+
+  private Locatable getLocatable() {
+    WebElement element = getWrappedElement();
+    if (!(element instanceof Locatable)) {
+      throw new WebDriverException("Element has no location: " + element);
+    }
+    return (Locatable) element;
+  }
+
+  @Override
+  public void click() {
+    getWrappedElement().click();
+  }
+
+  @Override
+  public void submit() {
+    getWrappedElement().submit();
+  }
+
+  @Override
+  public void sendKeys(CharSequence... keysToSend) {
+    getWrappedElement().sendKeys(keysToSend);
+  }
+
+  @Override
+  public void clear() {
+    getWrappedElement().clear();
+  }
+
+  @Override
+  public String getTagName() {
+    return getWrappedElement().getTagName();
+  }
+
+  @Override
+  public String getAttribute(String name) {
+    return getWrappedElement().getAttribute(name);
+  }
+
+  @Override
+  public boolean isSelected() {
+    return getWrappedElement().isSelected();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return getWrappedElement().isEnabled();
+  }
+
+  @Override
+  public String getText() {
+    return getWrappedElement().getText();
+  }
+
+  @Override
+  public List<WebElement> findElements(By by) {
+    return getWrappedElement().findElements(by);
+  }
+
+  @Override
+  public WebElement findElement(By by) {
+    return getWrappedElement().findElement(by);
+  }
+
+  @Override
+  public boolean isDisplayed() {
+    return getWrappedElement().isDisplayed();
+  }
+
+  @Override
+  public Point getLocation() {
+    return getWrappedElement().getLocation();
+  }
+
+  @Override
+  public Dimension getSize() {
+    return getWrappedElement().getSize();
+  }
+
+  @Override
+  public String getCssValue(String propertyName) {
+    return getWrappedElement().getCssValue(propertyName);
+  }
+
+  @Override
+  public Point getLocationOnScreenOnceScrolledIntoView() {
+    return getLocatable().getLocationOnScreenOnceScrolledIntoView();
+  }
+
+  @Override
+  public Coordinates getCoordinates() {
+    return getLocatable().getCoordinates();
+  }
+
+  @Override
+  public String toString() {
+    return "[known element " + elementId + "]";
+  }
+}
@@ -17,10 +17,14 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.server;
 
+import com.google.common.base.Function;
 import com.google.common.collect.AbstractIterator;
+import android.database.Cursor;
 import android.view.View;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 import java.util.Iterator;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -79,4 +83,122 @@ public class ListViewElement<V extends ListView> extends ViewElement<V> {
 
     return childrenIterable;
   }
+
+  /**
+   * Returns the adapter position of the first item whose data has the given
+   * text, or -1 if there is none. The data is read from the
+   * {@code ListAdapter} without creating any views, so items which are not
+   * shown are found as well. An item has the text if:
+   * <ul>
+   *   <li>it is a {@code CharSequence} equal to the text
+   *   <li>it is a {@code Cursor}, as returned by {@code CursorAdapter}, and
+   *   one of the columns of its row is equal to the text
+   *   <li>it is a {@code Map}, as used by {@code SimpleAdapter}, and one of
+   *   its values is equal to the text
+   *   <li>otherwise, its {@code toString} value, which {@code ArrayAdapter}
+   *   shows, is equal to the text
+   * </ul>
+   */
+  public int findItemPositionByText(final String text) {
+    return context.getOnMainSyncRunner().run(new Function<Void, Integer>() {
+      @Override
+      public Integer apply(Void ignoredArgument) {
+        ListAdapter adapter = getView().getAdapter();
+        int count = (adapter == null) ? 0 : adapter.getCount();
+        for (int position = 0; position < count; position++) {
+          if (itemHasText(adapter.getItem(position), text)) {
+            return position;
+          }
+        }
+        return -1;
+      }
+    });
+  }
+
+  /**
+   * Returns the adapter position of the first item with the given ID, as
+   * returned by {@code ListAdapter.getItemId}, or -1 if there is none.
+   */
+  public int findItemPositionById(final long itemId) {
+    return context.getOnMainSyncRunner().run(new Function<Void, Integer>() {
+      @Override
+      public Integer apply(Void ignoredArgument) {
+        ListAdapter adapter = getView().getAdapter();
+        int count = (adapter == null) ? 0 : adapter.getCount();
+        for (int position = 0; position < count; position++) {
+          if (adapter.getItemId(position) == itemId) {
+            return position;
+          }
+        }
+        return -1;
+      }
+    });
+  }
+
+  private static boolean itemHasText(@Nullable Object item, String text) {
+    if (item == null) {
+      return false;
+    } else if (item instanceof CharSequence) {
+      return TextMatching.equals((CharSequence) item, text, false);
+    } else if (item instanceof Cursor) {
+      Cursor cursor = (Cursor) item;
+      for (int column = 0; column < cursor.getColumnCount(); column++) {
+        try {
+          if (text.equals(cursor.getString(column))) {
+            return true;
+          }
+        } catch (RuntimeException exception) {
+          // The column holds a blob, which has no text.
+        }
+      }
+      return false;
+    } else if (item instanceof Map) {
+      for (Object value : ((Map<?, ?>) item).values()) {
+        if (value != null && text.equals(value.toString())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return text.equals(item.toString());
+  }
+
+  /**
+   * Returns the element wrapping the row of the item at the given adapter
+   * position. If the row is not laid out, jumps to the item with
+   * {@code ListView.setSelection} first, and returns {@code null} if the row
+   * is still not laid out after that, so that the caller can try again.
+   */
+  @Nullable
+  public ViewElement<?> showItem(final int position) {
+    View row = context.getOnMainSyncRunner().run(doGetRow(position));
+    if (row == null) {
+      context.getOnMainSyncRunner().run(new Function<Void, Void>() {
+        @Override
+        public Void apply(Void ignoredArgument) {
+          getView().setSelection(position);
+          return null;
+        }
+      });
+      // The layout requested by setSelection usually runs before this.
+      row = context.getOnMainSyncRunner().run(doGetRow(position));
+    }
+    return (row == null) ? null : context.newViewElement(row);
+  }
+
+  private Function<Void, View> doGetRow(final int position) {
+    return new Function<Void, View>() {
+      @Override
+      public View apply(Void ignoredArgument) {
+        ListView listView = getView();
+        if (listView.isLayoutRequested()) {
+          return null;
+        }
+        int first = listView.getFirstVisiblePosition();
+        int last = listView.getLastVisiblePosition();
+        return (position < first || position > last)
+            ? null : listView.getChildAt(position - first);
+      }
+    };
+  }
 }
@@ -18,8 +18,14 @@ limitations under the License.
 package com.google.android.testing.nativedriver.server;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 
@@ -35,10 +41,29 @@ import javax.annotation.Nullable;
  * than one R class in sequence. The value is returned from the first R class in
  * which the value is found.
  *
+ * <p>The fields of each inner class are read once, on the first lookup in
+ * that inner class, into an index from field names to values and one from
+ * values to field names. Later lookups, including those of names which do not
+ * exist, are map lookups.
+ *
  * @author Matt DeVore
  */
 public class RClassReader {
   private final List<String> rClassNames;
+  private final ConcurrentMap<String, Index> indexes
+      = Maps.newConcurrentMap();
+
+  /** The fields of one inner class of all R classes. */
+  private static class Index {
+    final Map<String, Integer> valuesByName;
+    final Map<Integer, String> namesByValue;
+
+    Index(Map<String, Integer> valuesByName,
+        Map<Integer, String> namesByValue) {
+      this.valuesByName = ImmutableMap.copyOf(valuesByName);
+      this.namesByValue = ImmutableMap.copyOf(namesByValue);
+    }
+  }
 
   /**
    * Constructs a new instance which reads the fields of the inner classes of
@@ -66,42 +91,73 @@ public class RClassReader {
    */
   @Nullable
   public Integer getRField(String innerClass, String fieldName) {
-    for (String rClassName : rClassNames) {
-      String fullClassName = rClassName + "$" + innerClass;
-
-      Integer fieldValue = getRFieldFromClass(fullClassName, fieldName);
-
-      if (fieldValue != null) {
-        return fieldValue;
-      }
-    }
+    return getIndex(innerClass).valuesByName.get(fieldName);
+  }
 
-    return null;
+  /**
+   * Returns the name of the field of the given inner class which has the given
+   * value, or {@code null} if there is none. If several fields have the value,
+   * the one in the first R class is returned.
+   *
+   * @param innerClass the inner class to search, for instance "id".
+   * @param value the value of the field
+   */
+  @Nullable
+  public String getRFieldName(String innerClass, int value) {
+    return getIndex(innerClass).namesByValue.get(value);
   }
 
   public List<String> getRClassNames() {
     return rClassNames;
   }
 
-  @Nullable
-  private static Integer getRFieldFromClass(String fullClassName,
-      String fieldName) {
-    try {
-      Class<?> r = Class.forName(fullClassName);
+  private Index getIndex(String innerClass) {
+    Index index = indexes.get(innerClass);
+    if (index == null) {
+      // Building the same index twice concurrently is harmless.
+      index = buildIndex(innerClass);
+      indexes.put(innerClass, index);
+    }
+    return index;
+  }
 
-      Object fieldValue = r.getField(fieldName).get(null);
+  private Index buildIndex(String innerClass) {
+    Map<String, Integer> valuesByName = Maps.newHashMap();
+    Map<Integer, String> namesByValue = Maps.newHashMap();
 
-      if (!(fieldValue instanceof Integer)) {
-        return null;
+    for (String rClassName : rClassNames) {
+      Class<?> r;
+      try {
+        r = Class.forName(rClassName + "$" + innerClass);
+      } catch (ClassNotFoundException exception) {
+        continue;
       }
 
-      return (Integer) fieldValue;
-    } catch (NullPointerException exception) {
-      return null;
-    } catch (ClassNotFoundException exception) {
-      return null;
-    } catch (NoSuchFieldException exception) {
+      for (Field field : r.getFields()) {
+        Integer value = getIntValue(field);
+        if (value == null) {
+          continue;
+        }
+        if (!valuesByName.containsKey(field.getName())) {
+          valuesByName.put(field.getName(), value);
+        }
+        if (!namesByValue.containsKey(value)) {
+          namesByValue.put(value, field.getName());
+        }
+      }
+    }
+
+    return new Index(valuesByName, namesByValue);
+  }
+
+  @Nullable
+  private static Integer getIntValue(Field field) {
+    if (!Modifier.isStatic(field.getModifiers())
+        || field.getType() != int.class) {
       return null;
+    }
+    try {
+      return field.getInt(null);
     } catch (IllegalAccessException exception) {
       return null;
     }
@@ -27,6 +27,7 @@ import org.openqa.selenium.WebDriverException;
 
 import android.view.View;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
 /**
@@ -44,7 +45,10 @@ public class RootSearchScope implements ElementSearchScope {
       = "Android NativeDriver only supports Android 2.2 (Froyo)."
           + " Check your environment.";
 
+  @Nullable private static volatile WindowManagerViews windowManagerViews;
+
   private final ElementContext context;
+  private volatile ViewHierarchySnapshot snapshot;
 
   public RootSearchScope(ElementContext context) {
     this.context = context;
@@ -62,7 +66,21 @@ public class RootSearchScope implements ElementSearchScope {
       return android.os.Build.VERSION.SDK_INT >= 17;
   }
 
-  protected View[] getTopLevelViews() {
+  /**
+   * Returns the accessor of the window manager's views, resolving it on first
+   * use. It is shared by all instances, since there is a single window
+   * manager per process.
+   */
+  private WindowManagerViews getWindowManagerViews() {
+    WindowManagerViews resolved = windowManagerViews;
+    if (resolved == null) {
+      resolved = resolveWindowManagerViews();
+      windowManagerViews = resolved;
+    }
+    return resolved;
+  }
+
+  private WindowManagerViews resolveWindowManagerViews() {
     try {
       Object wm;
       Field views;
@@ -76,9 +94,7 @@ public class RootSearchScope implements ElementSearchScope {
         views            = wmClass.getDeclaredField("mViews");
       }
       views.setAccessible(true);
-      synchronized (wm) {
-        return ((View[]) views.get(wm)).clone();
-      }
+      return new WindowManagerViews(wm, views);
     } catch (ClassNotFoundException exception) {
       throw new WebDriverException(REFLECTION_ERROR_MESSAGE, exception);
     } catch (NoSuchMethodException exception) {
@@ -96,6 +112,22 @@ public class RootSearchScope implements ElementSearchScope {
     }
   }
 
+  /**
+   * Returns a snapshot of the root views of all windows, the last one being
+   * the frontmost. The array is a copy which the caller may keep.
+   */
+  protected View[] getTopLevelViews() {
+    try {
+      return getWindowManagerViews().getViews();
+    } catch (IllegalArgumentException exception) {
+      throw new WebDriverException(REFLECTION_ERROR_MESSAGE, exception);
+    } catch (ClassCastException exception) {
+      throw new WebDriverException(REFLECTION_ERROR_MESSAGE, exception);
+    } catch (IllegalAccessException exception) {
+      throw new WebDriverException(REFLECTION_ERROR_MESSAGE, exception);
+    }
+  }
+
   @Override
   public Iterable<AndroidNativeElement> getChildren() {
     View[] views = getTopLevelViews();
@@ -120,15 +152,60 @@ public class RootSearchScope implements ElementSearchScope {
     return null;
   }
 
+  /**
+   * Returns a snapshot of the whole element hierarchy. The last snapshot taken
+   * is reused as long as the same windows are shown and the
+   * {@code ViewTreeChangeMonitor} reports no structural change, so
+   * consecutive searches only walk the hierarchy once. Frames drawn in the
+   * meantime, such as those of an animation, only cause the indexed texts to
+   * be compared.
+   */
+  public ViewHierarchySnapshot getSnapshot() {
+    ViewHierarchySnapshot current = snapshot;
+    ViewTreeChangeMonitor monitor = context.getViewTreeChangeMonitor();
+    if (current == null || !current.isCurrent(getTopLevelViews(),
+        monitor.getGeneration(), monitor.getDrawGeneration())) {
+      current = context.getOnMainSyncRunner().run(doCaptureSnapshot());
+      snapshot = current;
+    }
+    return current;
+  }
+
+  /**
+   * Starts observing the windows currently shown with the
+   * {@code ViewTreeChangeMonitor}, which otherwise only happens when a
+   * snapshot is taken.
+   */
+  public void observeWindows() {
+    context.getOnMainSyncRunner().run(new Function<Void, Void>() {
+      @Override
+      public Void apply(Void ignoredArgument) {
+        context.getViewTreeChangeMonitor().observe(getTopLevelViews());
+        return null;
+      }
+    });
+  }
+
+  private Function<Void, ViewHierarchySnapshot> doCaptureSnapshot() {
+    return new Function<Void, ViewHierarchySnapshot>() {
+      @Override
+      public ViewHierarchySnapshot apply(Void ignoredArgument) {
+        ViewTreeChangeMonitor monitor = context.getViewTreeChangeMonitor();
+        View[] views = getTopLevelViews();
+        monitor.observe(views);
+        return ViewHierarchySnapshot.capture(context, views,
+            monitor.getGeneration(), monitor.getDrawGeneration());
+      }
+    };
+  }
+
   /**
    * Current Activity is Last Element of Roots Children.
    */
+  @Nullable
   public AndroidNativeElement getCurrentActivityElement() {
-    Iterable<? extends AndroidNativeElement> iterable = getChildren();
-    AndroidNativeElement activity = null;
-    for (AndroidNativeElement el : iterable) {
-      activity = el;
-    }
-    return activity;
+    View[] views = getTopLevelViews();
+    return (views.length == 0)
+        ? null : context.newViewElement(views[views.length - 1]);
   }
 }
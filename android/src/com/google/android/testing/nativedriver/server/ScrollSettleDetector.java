@@ -0,0 +1,221 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.openqa.selenium.WebDriverException;
+
+import android.util.Log;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+import android.widget.HorizontalScrollView;
+import android.widget.ScrollView;
+
+import com.google.common.base.Function;
+
+/**
+ * Detects when a scroll which brings a {@code View} on screen has settled.
+ * The position of the {@code View} on screen and the scroll offset of its
+ * nearest scrolling ancestor are sampled when the detector is started and
+ * then in a pre-draw callback, and the scroll is settled as soon as two
+ * consecutive samples report the same position. If a scroll was requested,
+ * the position must also have changed at least once, since a smooth scroll
+ * only starts moving on a later frame. While the position is unchanged,
+ * another frame is requested, so a scroll which completes at once settles
+ * after a frame or two rather than after a fixed delay.
+ *
+ * <p>Usage:
+ * <pre>
+ * ScrollSettleDetector detector = ScrollSettleDetector.start(view, runner);
+ * // start the scroll
+ * detector.awaitSettled(timeoutInMillis, scrollRequested);
+ * </pre>
+ *
+ * The measured settle time is logged for diagnostics and returned.
+ */
+public class ScrollSettleDetector {
+  private static final String LOG_TAG = ScrollSettleDetector.class.getName();
+
+  private final View view;
+  private final View scrollingAncestor;
+  private final Runner onMainSyncRunner;
+  private final CountDownLatch settled = new CountDownLatch(1);
+  @Nullable private ViewTreeObserver observer;
+  // Only accessed by the thread which awaits the scroll.
+  private boolean stopped;
+
+  // Only accessed on the main application thread.
+  private boolean armed;
+  private boolean scrollRequested;
+  private boolean moved;
+  private int[] lastPosition;
+  private int frames;
+
+  private final ViewTreeObserver.OnPreDrawListener preDrawListener
+      = new ViewTreeObserver.OnPreDrawListener() {
+    @Override
+    public boolean onPreDraw() {
+      if (armed) {
+        onFrame();
+      }
+      return true;
+    }
+  };
+
+  private ScrollSettleDetector(View view, Runner onMainSyncRunner) {
+    this.view = view;
+    this.scrollingAncestor = findScrollingAncestor(view);
+    this.onMainSyncRunner = onMainSyncRunner;
+  }
+
+  /**
+   * Creates a detector for the given {@code View} and starts observing its
+   * window. Call {@link #awaitSettled} once the scroll has been started.
+   *
+   * @param onMainSyncRunner the runner used to access the hierarchy on the
+   *        main application thread
+   */
+  public static ScrollSettleDetector start(View view, Runner onMainSyncRunner) {
+    final ScrollSettleDetector detector
+        = new ScrollSettleDetector(view, onMainSyncRunner);
+    onMainSyncRunner.run(new Function<Void, Void>() {
+      @Override
+      public Void apply(Void ignoredArgument) {
+        detector.lastPosition = detector.samplePosition();
+        detector.observer = detector.view.getViewTreeObserver();
+        detector.observer.addOnPreDrawListener(detector.preDrawListener);
+        return null;
+      }
+    });
+    return detector;
+  }
+
+  /**
+   * Returns the nearest ancestor of the {@code View} which scrolls its
+   * children, or the root of its hierarchy if there is none.
+   */
+  private static View findScrollingAncestor(View view) {
+    ViewParent parent = view.getParent();
+    while (parent instanceof View) {
+      View ancestor = (View) parent;
+      if (ancestor instanceof ScrollView
+          || ancestor instanceof HorizontalScrollView
+          || ancestor instanceof AbsListView) {
+        return ancestor;
+      }
+      parent = ancestor.getParent();
+    }
+    return view.getRootView();
+  }
+
+  // Called on the main application thread.
+  private void onFrame() {
+    frames++;
+    int[] position = samplePosition();
+    if (!Arrays.equals(position, lastPosition)) {
+      moved = true;
+    } else if (moved || !scrollRequested) {
+      settled.countDown();
+      return;
+    }
+    lastPosition = position;
+    // Make sure there is another frame to compare with, even if nothing else
+    // changes.
+    scrollingAncestor.invalidate();
+  }
+
+  private int[] samplePosition() {
+    int[] location = new int[2];
+    view.getLocationOnScreen(location);
+    return new int[] {location[0], location[1],
+        scrollingAncestor.getScrollX(), scrollingAncestor.getScrollY()};
+  }
+
+  /**
+   * Blocks until the scroll has settled, or until the given time has elapsed,
+   * and stops observing the window.
+   *
+   * @param scrollRequested whether a scroll was actually requested, in which
+   *        case the scroll only settles after the position has changed
+   * @return the time in milliseconds it took the scroll to settle, or -1 if
+   *         it did not settle in time
+   */
+  public long awaitSettled(
+      long timeoutInMillis, final boolean scrollRequested) {
+    long start = System.nanoTime();
+    boolean hasSettled;
+    try {
+      onMainSyncRunner.run(new Function<Void, Void>() {
+        @Override
+        public Void apply(Void ignoredArgument) {
+          ScrollSettleDetector.this.scrollRequested = scrollRequested;
+          armed = true;
+          scrollingAncestor.invalidate();
+          return null;
+        }
+      });
+      hasSettled = settled.await(timeoutInMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(exception);
+    } finally {
+      stop();
+    }
+
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(
+        System.nanoTime() - start);
+    if (hasSettled) {
+      Log.d(LOG_TAG, String.format("Scroll settled in %d ms after %d frames",
+          elapsedMillis, frames));
+      return elapsedMillis;
+    }
+    Log.w(LOG_TAG, String.format(
+        "Scroll did not settle within %d ms (%d frames)",
+        timeoutInMillis, frames));
+    return -1;
+  }
+
+  /**
+   * Stops observing the window without waiting, for example if the scroll
+   * could not be started. Does nothing if the detector is already stopped.
+   */
+  public void stop() {
+    if (stopped) {
+      return;
+    }
+    stopped = true;
+    onMainSyncRunner.run(new Function<Void, Void>() {
+      @Override
+      public Void apply(Void ignoredArgument) {
+        armed = false;
+        if (observer != null && observer.isAlive()) {
+          observer.removeOnPreDrawListener(preDrawListener);
+        }
+        observer = null;
+        return null;
+      }
+    });
+  }
+}
@@ -0,0 +1,243 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import android.os.Bundle;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+
+/**
+ * The configuration of the Jetty server started by
+ * {@link ServerInstrumentation}. It is read from the arguments of the
+ * instrumentation, which are given with the {@code -e} option of
+ * {@code am instrument}, for example:
+ *
+ * <pre>
+ * adb shell am instrument -e connector nio -e maxThreads 8 \
+ *     com.example.app/&lt;instrumentation class&gt;
+ * </pre>
+ *
+ * <p>The following arguments are supported:
+ * <ul>
+ *   <li>{@code port}: the port to listen on, 54129 by default
+ *   <li>{@code connector}: {@code bio} for the blocking
+ *   {@code SocketConnector}, which is the default, or {@code nio} for the
+ *   non-blocking {@code SelectChannelConnector}. With {@code nio}, idle
+ *   keep-alive connections do not hold a thread of the pool.
+ *   <li>{@code acceptors}: the number of threads accepting connections
+ *   <li>{@code minThreads}, {@code maxThreads}: the bounds of the thread
+ *   pool which handles the requests. The acceptors, and with {@code nio} the
+ *   selector, also take threads of the pool, so {@code maxThreads} must be
+ *   greater than their number
+ *   <li>{@code maxIdleTime}: the time in milliseconds after which an idle
+ *   keep-alive connection is closed
+ * </ul>
+ */
+public class ServerConfiguration {
+  /** The connector types of Jetty. */
+  public enum ConnectorType { BIO, NIO }
+
+  public static final int DEFAULT_PORT = 54129;
+
+  static final String PORT = "port";
+  static final String CONNECTOR = "connector";
+  static final String ACCEPTORS = "acceptors";
+  static final String MIN_THREADS = "minThreads";
+  static final String MAX_THREADS = "maxThreads";
+  static final String MAX_IDLE_TIME = "maxIdleTime";
+
+  private final int port;
+  private final ConnectorType connectorType;
+  private final int acceptors;
+  private final int minThreads;
+  private final int maxThreads;
+  private final int maxIdleTime;
+
+  private ServerConfiguration(Builder builder) {
+    this.port = builder.port;
+    this.connectorType = builder.connectorType;
+    this.acceptors = builder.acceptors;
+    this.minThreads = builder.minThreads;
+    this.maxThreads = builder.maxThreads;
+    this.maxIdleTime = builder.maxIdleTime;
+  }
+
+  /**
+   * Builds {@code ServerConfiguration}s. The defaults match the server of
+   * previous versions: a blocking connector with one acceptor, and the
+   * default thread pool and idle time of Jetty.
+   */
+  public static class Builder {
+    private int port = DEFAULT_PORT;
+    private ConnectorType connectorType = ConnectorType.BIO;
+    private int acceptors = 1;
+    private int minThreads = 2;
+    private int maxThreads = 250;
+    private int maxIdleTime = 200000;
+
+    public Builder withPort(int port) {
+      Preconditions.checkArgument(port > 0 && port < 65536,
+          "Invalid port: %s", port);
+      this.port = port;
+      return this;
+    }
+
+    public Builder withConnectorType(ConnectorType connectorType) {
+      this.connectorType = Preconditions.checkNotNull(connectorType);
+      return this;
+    }
+
+    public Builder withAcceptors(int acceptors) {
+      Preconditions.checkArgument(acceptors >= 1,
+          "Invalid number of acceptors: %s", acceptors);
+      this.acceptors = acceptors;
+      return this;
+    }
+
+    public Builder withThreads(int minThreads, int maxThreads) {
+      Preconditions.checkArgument(minThreads >= 1 && maxThreads >= minThreads,
+          "Invalid thread pool bounds: %s, %s", minThreads, maxThreads);
+      this.minThreads = minThreads;
+      this.maxThreads = maxThreads;
+      return this;
+    }
+
+    /**
+     * @param maxIdleTime the time in milliseconds after which an idle
+     *        connection is closed
+     */
+    public Builder withMaxIdleTime(int maxIdleTime) {
+      Preconditions.checkArgument(maxIdleTime > 0,
+          "Invalid idle time: %s", maxIdleTime);
+      this.maxIdleTime = maxIdleTime;
+      return this;
+    }
+
+    /**
+     * Reads the arguments of the instrumentation. Missing arguments keep
+     * their current values.
+     *
+     * @throws IllegalArgumentException if an argument is invalid
+     */
+    public Builder withArguments(@Nullable Bundle arguments) {
+      if (arguments == null) {
+        return this;
+      }
+      if (arguments.containsKey(PORT)) {
+        withPort(getInt(arguments, PORT));
+      }
+      if (arguments.containsKey(CONNECTOR)) {
+        String connector = arguments.getString(CONNECTOR);
+        if ("nio".equalsIgnoreCase(connector)) {
+          withConnectorType(ConnectorType.NIO);
+        } else if ("bio".equalsIgnoreCase(connector)) {
+          withConnectorType(ConnectorType.BIO);
+        } else {
+          throw new IllegalArgumentException(
+              "Unknown connector: " + connector);
+        }
+      }
+      if (arguments.containsKey(ACCEPTORS)) {
+        withAcceptors(getInt(arguments, ACCEPTORS));
+      }
+      if (arguments.containsKey(MIN_THREADS)
+          || arguments.containsKey(MAX_THREADS)) {
+        int min = arguments.containsKey(MIN_THREADS)
+            ? getInt(arguments, MIN_THREADS) : minThreads;
+        int max = arguments.containsKey(MAX_THREADS)
+            ? getInt(arguments, MAX_THREADS) : Math.max(min, maxThreads);
+        withThreads(Math.min(min, max), max);
+      }
+      if (arguments.containsKey(MAX_IDLE_TIME)) {
+        withMaxIdleTime(getInt(arguments, MAX_IDLE_TIME));
+      }
+      return this;
+    }
+
+    private static int getInt(Bundle arguments, String key) {
+      // Arguments given with "am instrument -e" are strings.
+      Object value = arguments.get(key);
+      if (value instanceof Integer) {
+        return (Integer) value;
+      }
+      try {
+        return Integer.parseInt(String.valueOf(value).trim());
+      } catch (NumberFormatException exception) {
+        throw new IllegalArgumentException(
+            "Invalid value of " + key + ": " + value, exception);
+      }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the thread pool leaves no thread to
+     *         handle requests, after the acceptors and the selector
+     */
+    public ServerConfiguration build() {
+      int connectorThreads = acceptors
+          + ((connectorType == ConnectorType.NIO) ? 1 : 0);
+      Preconditions.checkArgument(maxThreads > connectorThreads,
+          "maxThreads (%s) must be greater than the number of threads used "
+          + "by the %s connector (%s)", maxThreads, connectorType,
+          connectorThreads);
+      return new ServerConfiguration(this);
+    }
+  }
+
+  /**
+   * Returns the configuration read from the arguments of the
+   * instrumentation.
+   *
+   * @throws IllegalArgumentException if an argument is invalid
+   */
+  public static ServerConfiguration fromArguments(@Nullable Bundle arguments) {
+    return new Builder().withArguments(arguments).build();
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public ConnectorType getConnectorType() {
+    return connectorType;
+  }
+
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  public int getMinThreads() {
+    return minThreads;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public int getMaxIdleTime() {
+    return maxIdleTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%s connector on port %d: acceptors(%d) "
+        + "threads(%d-%d) maxIdleTime(%dms)]", connectorType, port, acceptors,
+        minThreads, maxThreads, maxIdleTime);
+  }
+}
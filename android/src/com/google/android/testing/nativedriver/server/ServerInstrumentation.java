@@ -25,6 +25,7 @@ import android.os.Bundle;
 import android.os.PowerManager;
 import android.util.Log;
 
+import org.mortbay.jetty.AbstractConnector;
 import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.HttpGenerator;
@@ -32,7 +33,10 @@ import org.mortbay.jetty.Server;
 import org.mortbay.jetty.bio.SocketConnector;
 import org.mortbay.jetty.handler.DefaultHandler;
 import org.mortbay.jetty.handler.HandlerList;
+import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.thread.QueuedThreadPool;
+import org.mortbay.thread.ThreadPool;
 
 import javax.annotation.Nullable;
 
@@ -58,7 +62,6 @@ import javax.annotation.Nullable;
  */
 public class ServerInstrumentation extends Instrumentation {
   private static final String LOG_TAG = ServerInstrumentation.class.getName();
-  private static final int PORT = 54129;
 
   @Nullable private static ServerInstrumentation instance;
 
@@ -66,13 +69,25 @@ public class ServerInstrumentation extends Instrumentation {
   @Nullable private PowerManager.WakeLock wakeLock;
   @Nullable private KeyguardManager.KeyguardLock keyguardLock;
   private final ActivitiesReporter activitiesReporter;
+  private final ViewTreeChangeMonitor viewTreeChangeMonitor;
+  private final EventLog eventLog;
+  private ServerConfiguration configuration
+      = new ServerConfiguration.Builder().build();
 
   public ServerInstrumentation() {
-    activitiesReporter = new ActivitiesReporter();
+    eventLog = new EventLog();
+    viewTreeChangeMonitor = new ViewTreeChangeMonitor(eventLog);
+    activitiesReporter
+        = new ActivitiesReporter(viewTreeChangeMonitor, eventLog);
   }
 
+  /**
+   * Reads the {@link ServerConfiguration} from the arguments and starts the
+   * instrumentation.
+   */
   @Override
   public void onCreate(Bundle arguments) {
+    configuration = ServerConfiguration.fromArguments(arguments);
     start();
   }
 
@@ -194,6 +209,22 @@ public class ServerInstrumentation extends Instrumentation {
     return activitiesReporter.getActivities();
   }
 
+  /**
+   * Returns the monitor which reports changes to the {@code View} hierarchy
+   * and {@code Activity} transitions of the application under test.
+   */
+  public ViewTreeChangeMonitor getViewTreeChangeMonitor() {
+    return viewTreeChangeMonitor;
+  }
+
+  /**
+   * Returns the log of the events reported to clients, such as
+   * {@code Activity} transitions and layout changes.
+   */
+  public EventLog getEventLog() {
+    return eventLog;
+  }
+
   /**
    * Called by the Android runtime to clean up the {@code Instrumentation}.
    * This implementation releases the locks obtained in {@code onStart} and
@@ -248,14 +279,16 @@ public class ServerInstrumentation extends Instrumentation {
     return server;
   }
 
+  public ServerConfiguration getConfiguration() {
+    return configuration;
+  }
+
   /**
-   * Returns the port on which the Jetty server listens. This is not currently
-   * overrideable, and is set to 54129.
-   *
-   * @return 54129
+   * Returns the port on which the Jetty server listens. It is set with the
+   * {@code port} argument, and is 54129 by default.
    */
   public int getPort() {
-    return PORT;
+    return configuration.getPort();
   }
 
   protected Server createServer() {
@@ -263,10 +296,22 @@ public class ServerInstrumentation extends Instrumentation {
   }
 
   protected Connector createConnector() {
-    SocketConnector socketConnector = new SocketConnector();
-    socketConnector.setPort(PORT);
-    socketConnector.setAcceptors(1);
-    return socketConnector;
+    AbstractConnector connector
+        = (configuration.getConnectorType()
+            == ServerConfiguration.ConnectorType.NIO)
+        ? new SelectChannelConnector() : new SocketConnector();
+    connector.setPort(configuration.getPort());
+    connector.setAcceptors(configuration.getAcceptors());
+    connector.setMaxIdleTime(configuration.getMaxIdleTime());
+    return connector;
+  }
+
+  protected ThreadPool createThreadPool() {
+    QueuedThreadPool threadPool = new QueuedThreadPool();
+    threadPool.setName("NativeDriver");
+    threadPool.setMinThreads(configuration.getMinThreads());
+    threadPool.setMaxThreads(configuration.getMaxThreads());
+    return threadPool;
   }
 
   protected Handler createHandler() {
@@ -293,6 +338,7 @@ public class ServerInstrumentation extends Instrumentation {
     System.setProperty("org.mortbay.log.class", "org.mortbay.log.AndroidLog");
     server = createServer();
 
+    server.setThreadPool(createThreadPool());
     server.addConnector(createConnector());
     server.setHandler(createHandler());
 
@@ -306,6 +352,6 @@ public class ServerInstrumentation extends Instrumentation {
 
     HttpGenerator.setServerVersion("Android NativeDriver jetty");
 
-    Log.i(LOG_TAG, "Jetty started on port " + getPort());
+    Log.i(LOG_TAG, "Jetty started: " + configuration);
   }
 }
@@ -0,0 +1,155 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.openqa.selenium.InvalidSelectorException;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Matches element text for the text search strategies. Text is matched as a
+ * {@code CharSequence}, such as the one held by a {@code TextView}, without
+ * copying it into a {@code String}, and each comparison first rejects texts
+ * which cannot match by their length or first character.
+ *
+ * <p>Searches are repeated until they succeed or time out, so the compiled
+ * regular expressions are cached.
+ */
+final class TextMatching {
+  private static final ConcurrentMap<String, TextPattern> patterns
+      = new MapMaker().maximumSize(64).makeMap();
+
+  private TextMatching() {}
+
+  /**
+   * A compiled regular expression, which must match the whole text.
+   */
+  static final class TextPattern {
+    private final Pattern pattern;
+    private final boolean hasRequiredFirstChar;
+    private final char requiredFirstChar;
+
+    private TextPattern(String regex) {
+      try {
+        pattern = Pattern.compile(regex);
+      } catch (PatternSyntaxException exception) {
+        throw new InvalidSelectorException(
+            "Invalid regular expression: " + exception.getMessage());
+      }
+      // A regular expression starting with a letter or digit which is not
+      // optional, and without alternatives, only matches texts starting with
+      // that character.
+      hasRequiredFirstChar = regex.length() > 0
+          && Character.isLetterOrDigit(regex.charAt(0))
+          && (regex.length() == 1 || "?*{".indexOf(regex.charAt(1)) == -1)
+          && regex.indexOf('|') == -1;
+      requiredFirstChar = hasRequiredFirstChar ? regex.charAt(0) : 0;
+    }
+
+    boolean matches(CharSequence text) {
+      if (hasRequiredFirstChar
+          && (text.length() == 0 || text.charAt(0) != requiredFirstChar)) {
+        return false;
+      }
+      return pattern.matcher(text).matches();
+    }
+
+    @Override
+    public String toString() {
+      return pattern.pattern();
+    }
+  }
+
+  /**
+   * Returns the compiled form of the given regular expression.
+   *
+   * @throws InvalidSelectorException if the regular expression is invalid
+   */
+  static TextPattern compile(String regex) {
+    TextPattern pattern = patterns.get(regex);
+    if (pattern == null) {
+      pattern = new TextPattern(regex);
+      patterns.put(regex, pattern);
+    }
+    return pattern;
+  }
+
+  /**
+   * Indicates whether the text equals the expected string. With
+   * {@code ignoreCase}, characters are compared the way
+   * {@link String#equalsIgnoreCase} compares them.
+   */
+  static boolean equals(CharSequence text, String expected,
+      boolean ignoreCase) {
+    int length = expected.length();
+    if (text.length() != length) {
+      return false;
+    }
+    return regionMatches(text, 0, expected, ignoreCase);
+  }
+
+  /**
+   * Indicates whether the text contains the given part. With
+   * {@code ignoreCase}, characters are compared the way
+   * {@link String#equalsIgnoreCase} compares them.
+   */
+  static boolean contains(CharSequence text, String part,
+      boolean ignoreCase) {
+    int partLength = part.length();
+    if (partLength == 0) {
+      return true;
+    }
+    char first = part.charAt(0);
+    for (int start = 0; start <= text.length() - partLength; start++) {
+      if (charEquals(text.charAt(start), first, ignoreCase)
+          && regionMatches(text, start, part, ignoreCase)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean regionMatches(CharSequence text, int start,
+      String expected, boolean ignoreCase) {
+    for (int i = 0; i < expected.length(); i++) {
+      if (!charEquals(text.charAt(start + i), expected.charAt(i),
+          ignoreCase)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean charEquals(char first, char second,
+      boolean ignoreCase) {
+    if (first == second) {
+      return true;
+    } else if (!ignoreCase) {
+      return false;
+    }
+    char firstUpper = Character.toUpperCase(first);
+    char secondUpper = Character.toUpperCase(second);
+    return firstUpper == secondUpper
+        || Character.toLowerCase(firstUpper)
+            == Character.toLowerCase(secondUpper);
+  }
+}
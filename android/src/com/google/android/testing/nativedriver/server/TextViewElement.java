@@ -47,4 +47,9 @@ public class TextViewElement<V extends TextView> extends ViewElement<V> {
   public String getText() {
     return getView().getText().toString();
   }
+
+  @Override
+  public CharSequence getTextSequence() {
+    return getView().getText();
+  }
 }
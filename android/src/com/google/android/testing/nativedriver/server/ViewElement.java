@@ -68,6 +68,11 @@ public class ViewElement<V extends View>
    */
   public static final String LITERALID_FOCUSEDACTIVITY = "$focusedActivity";
 
+  /**
+   * The longest time {@link #click} waits for a scroll to settle.
+   */
+  private static final long SCROLL_SETTLE_TIMEOUT_MILLIS = 2000;
+
   /**
    * A {@code ViewElementType} that represents this class.
    */
@@ -143,14 +148,7 @@ public class ViewElement<V extends View>
    */
   @Override
   public boolean supportsClass(String className) {
-    Class<?> searchedForClass;
-    try {
-      searchedForClass = Class.forName(className);
-    } catch (ClassNotFoundException exception) {
-      return false;
-    }
-
-    return searchedForClass.isAssignableFrom(view.getClass());
+    return ClassLookup.isAssignableFrom(className, view.getClass());
   }
 
   /**
@@ -180,6 +178,14 @@ public class ViewElement<V extends View>
     return (viewId == View.NO_ID) ? null : viewId;
   }
 
+  /**
+   * Returns the resource entry name of the ID of the wrapped {@code View}, or
+   * {@code null} if it does not have an ID. The name is looked up in the
+   * {@code id} fields of the R classes first, which needs no
+   * {@code Resources} lookup, and then in the resources of the current
+   * {@code Activity}.
+   */
+  @Override
   public String getResourceEntryName() {
     int viewId = view.getId();
     final int MAX_INVALID_ID = 1000;
@@ -187,7 +193,14 @@ public class ViewElement<V extends View>
     // Minimum resourceId like less than MAX_INVALID_ID causes ResourceNotFoundException.
     // Therefor return null.
     // If inconvenient corresponding by try~catch.
-    return (viewId == View.NO_ID || viewId < 1000) ? null : context.getActivities().current().getResources().getResourceEntryName(view.getId());
+    if (viewId == View.NO_ID || viewId < MAX_INVALID_ID) {
+      return null;
+    }
+    String name = context.getElementFinder().getRClassReader()
+        .getRFieldName("id", viewId);
+    return (name != null) ? name
+        : context.getActivities().current().getResources()
+            .getResourceEntryName(viewId);
   }
 
   /**
@@ -210,36 +223,30 @@ public class ViewElement<V extends View>
     // ViewElement. But the coordinates should be located in the overlap area
     // of current View and the actual View that consumes the click.
     waitUntilIsDisplayed();
-    Point p = getCoordinates().getLocationOnScreen();
-    boolean isOutside = isScreenOutside(p);
-    if ( isOutside ) {
-      scrollIntoScreenIfNeeded();
-      int count  = 0;
-      while(count != 10) {
-        Point currentPoint = getCoordinates().getLocationOnScreen();
-        if ( currentPoint.getX() != p.getX() || currentPoint.getY() != p.getY() ) {
-          waitStopScroll(currentPoint);
-          break;
-        }
-        sleep(100);
-        count++;
-      }
+    if (isScreenOutside()) {
+      scrollIntoScreenAndSettle();
     }
     Touch touch = context.getTouch();
     touch.tap(getCoordinates());
   }
 
-  private void waitStopScroll(Point currentPoint){
-    int checkCount = 0;
-    Point checkPoint = currentPoint;
-    while (checkCount != 5) {
-      sleep(50);
-      Point diffCheckPoint = getCoordinates().getLocationOnScreen();
-      if ( diffCheckPoint.getX() == checkPoint.getX() && diffCheckPoint.getY() == checkPoint.getY() ) {
-        break;
-      }
-      checkPoint = diffCheckPoint;
-      checkCount++;
+  /**
+   * Scrolls the wrapped {@code View} on screen and waits until the scroll has
+   * settled, so that the following touch hits the {@code View}.
+   *
+   * @return the time in milliseconds it took the scroll to settle, or -1 if
+   *         it did not settle in time
+   * @see ScrollSettleDetector
+   */
+  protected long scrollIntoScreenAndSettle() {
+    ScrollSettleDetector detector
+        = ScrollSettleDetector.start(view, context.getOnMainSyncRunner());
+    try {
+      boolean scrollRequested = scrollIntoScreenIfNeeded();
+      return detector.awaitSettled(
+          SCROLL_SETTLE_TIMEOUT_MILLIS, scrollRequested);
+    } finally {
+      detector.stop();
     }
   }
 
@@ -256,13 +263,6 @@ public class ViewElement<V extends View>
     return p.getX() > width || p.getY() > height;
   }
 
-  private void sleep(int ms) {
-    try {
-      Thread.sleep(ms);
-    } catch (InterruptedException ignored) {
-    }
-  }
-
   @Override
   public void drag(int x, int y) {
     waitUntilIsDisplayed();
@@ -277,7 +277,7 @@ public class ViewElement<V extends View>
     waitUntilIsDisplayed();
     scrollIntoScreenIfNeeded();
     AndroidNativeTouch touch = (AndroidNativeTouch)context.getTouch();
-    ((AndroidNativeTouch)touch).drag(x1, y1, x2, y2);
+    touch.flick(x1, y1, x2, y2);
   }
 
 
@@ -376,16 +376,21 @@ public class ViewElement<V extends View>
   }
 
   protected AndroidWait newAndroidWait() {
-    return new AndroidWait();
+    return new AndroidWait(context.getViewTreeChangeMonitor());
   }
 
-  protected void scrollIntoScreenIfNeeded() {
+  /**
+   * Requests that the wrapped {@code View} be scrolled on screen.
+   *
+   * @return whether any ancestor scrolled, or started a smooth scroll
+   */
+  protected boolean scrollIntoScreenIfNeeded() {
     Point leftTopLocation = getLocation();
     int left = leftTopLocation.x;
     int top = leftTopLocation.y;
     int right = left + getViewWidth();
     int bottom = top + getViewHeight();
-    requestRectangleOnScreen(new Rect(left, top, right, bottom));
+    return requestRectangleOnScreen(new Rect(left, top, right, bottom));
   }
 
   protected int getViewWidth() {
@@ -17,24 +17,50 @@ limitations under the License.
 
 package com.google.android.testing.nativedriver.server;
 
+import java.util.concurrent.ConcurrentMap;
+
 import android.view.View;
 
+import com.google.common.collect.MapMaker;
+
 /**
  * Represents a sequence of {@code ViewElementType}, and uses the sequence to
  * wrap {@code View}s. The "best" {@code ViewElementType} is used to wrap each
  * {@code View} by trying each {@code ViewElementType} in order and using the
  * first one that supports the {@code View}.
  *
+ * <p>If no type overrides {@link ViewElementType#supportsView}, whether a type
+ * supports a {@code View} depends only on its class, so the type found for
+ * each {@code View} class is cached.
+ *
  * @author Matt DeVore
  */
 public class ViewElementFactory {
   private ViewElementType[] types;
+  private final boolean cacheable;
+  private final ConcurrentMap<Class<?>, ViewElementType> typesByViewClass
+      = new MapMaker().weakKeys().makeMap();
 
   /**
    * Constructs a new instance using the given {@code ViewElementType}s.
    */
   public ViewElementFactory(ViewElementType... types) {
     this.types = types.clone();
+    this.cacheable = supportsViewsByClass(this.types);
+  }
+
+  private static boolean supportsViewsByClass(ViewElementType[] types) {
+    for (ViewElementType type : types) {
+      try {
+        if (type.getClass().getMethod("supportsView", View.class)
+            .getDeclaringClass() != ViewElementType.class) {
+          return false;
+        }
+      } catch (NoSuchMethodException exception) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private static final ViewElementFactory INSTANCE = new ViewElementFactory(
@@ -63,8 +89,18 @@ public class ViewElementFactory {
    *        {@code View}
    */
   public ViewElement<?> newViewElement(ElementContext context, View view) {
+    if (cacheable) {
+      ViewElementType cached = typesByViewClass.get(view.getClass());
+      if (cached != null) {
+        return cached.newInstance(context, view);
+      }
+    }
+
     for (ViewElementType viewElementType : types) {
       if (viewElementType.supportsView(view)) {
+        if (cacheable) {
+          typesByViewClass.put(view.getClass(), viewElementType);
+        }
         return viewElementType.newInstance(context, view);
       }
     }
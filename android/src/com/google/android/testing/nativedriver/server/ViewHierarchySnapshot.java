@@ -0,0 +1,285 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import android.view.View;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An indexed, point-in-time copy of the element hierarchy below the
+ * {@link RootSearchScope}. The hierarchy is walked once, in the same
+ * depth-first order used by {@link ElementFinder}, and the elements are indexed
+ * by Android ID, text and {@code View} class so that repeated searches do not
+ * have to walk the whole hierarchy again.
+ *
+ * <p>A snapshot only narrows down the candidates of a search. Callers must
+ * still check each candidate against the search criteria, since the hierarchy
+ * may have changed after the snapshot was taken.
+ */
+public class ViewHierarchySnapshot {
+  private final View[] topLevelViews;
+  private final long generation;
+  // Advanced when a newer frame is found to show the same content.
+  private volatile long drawGeneration;
+  private final List<AndroidNativeElement> topLevelElements;
+  private final List<AndroidNativeElement> elements;
+  private final List<AndroidNativeElement> textElements;
+  private final List<AndroidNativeElement> otherElements;
+  private final Map<Integer, List<AndroidNativeElement>> elementsByAndroidId;
+  private final Map<String, List<AndroidNativeElement>> elementsByText;
+  private final Map<Class<?>, List<AndroidNativeElement>> elementsByViewClass;
+  @Nullable private XPathDocument document;
+
+  private ViewHierarchySnapshot(View[] topLevelViews, long generation,
+      long drawGeneration) {
+    this.topLevelViews = topLevelViews;
+    this.generation = generation;
+    this.drawGeneration = drawGeneration;
+    topLevelElements = Lists.newArrayListWithCapacity(topLevelViews.length);
+    elements = Lists.newArrayList();
+    textElements = Lists.newArrayList();
+    otherElements = Lists.newArrayList();
+    elementsByAndroidId = Maps.newHashMap();
+    elementsByText = Maps.newHashMap();
+    elementsByViewClass = Maps.newHashMap();
+  }
+
+  /**
+   * Walks the hierarchy below the given top-level views and returns a new
+   * snapshot of it. This method must be called on the main application thread
+   * so that the hierarchy does not change while it is walked.
+   *
+   * @param context the context used to wrap each {@code View}
+   * @param topLevelViews the roots of all windows currently shown
+   * @param generation the {@link ViewTreeChangeMonitor} generation at the time
+   *        the walk starts
+   * @param drawGeneration the {@link ViewTreeChangeMonitor} draw generation at
+   *        the time the walk starts
+   */
+  public static ViewHierarchySnapshot capture(ElementContext context,
+      View[] topLevelViews, long generation, long drawGeneration) {
+    ViewHierarchySnapshot snapshot = new ViewHierarchySnapshot(
+        topLevelViews, generation, drawGeneration);
+    for (View view : topLevelViews) {
+      AndroidNativeElement element = context.newViewElement(view);
+      snapshot.topLevelElements.add(element);
+      snapshot.addFromHierarchy(element);
+    }
+    return snapshot;
+  }
+
+  private void addFromHierarchy(AndroidNativeElement element) {
+    elements.add(element);
+
+    Integer androidId = element.getAndroidId();
+    if (androidId != null) {
+      addToIndex(elementsByAndroidId, androidId, element);
+    }
+
+    String text = element.getText();
+    if (text != null) {
+      addToIndex(elementsByText, text, element);
+      if (text.length() != 0) {
+        textElements.add(element);
+      }
+    }
+
+    if (element instanceof ViewElement) {
+      addToIndex(elementsByViewClass,
+          ((ViewElement<?>) element).getView().getClass(), element);
+    } else {
+      otherElements.add(element);
+    }
+
+    for (AndroidNativeElement child : element.getChildren()) {
+      addFromHierarchy(child);
+    }
+  }
+
+  private static <K> void addToIndex(Map<K, List<AndroidNativeElement>> index,
+      K key, AndroidNativeElement element) {
+    List<AndroidNativeElement> bucket = index.get(key);
+    if (bucket == null) {
+      bucket = Lists.newArrayListWithCapacity(1);
+      index.put(key, bucket);
+    }
+    bucket.add(element);
+  }
+
+  /**
+   * Indicates whether this snapshot still reflects the hierarchy, which is the
+   * case if the same windows are shown and no change was reported since the
+   * snapshot was taken.
+   *
+   * <p>If frames were drawn since, but the structure did not change, the
+   * indexed texts are compared with the current ones instead of rebuilding
+   * the snapshot, since a text may change without a layout pass. This is much
+   * cheaper than a rebuild, and happens at most once per frame.
+   *
+   * @param currentTopLevelViews the roots of all windows currently shown
+   * @param currentGeneration the current {@link ViewTreeChangeMonitor}
+   *        generation
+   * @param currentDrawGeneration the current {@link ViewTreeChangeMonitor}
+   *        draw generation
+   */
+  public boolean isCurrent(View[] currentTopLevelViews, long currentGeneration,
+      long currentDrawGeneration) {
+    if (generation != currentGeneration
+        || topLevelViews.length != currentTopLevelViews.length) {
+      return false;
+    }
+    for (int i = 0; i < topLevelViews.length; i++) {
+      if (topLevelViews[i] != currentTopLevelViews[i]) {
+        return false;
+      }
+    }
+    if (drawGeneration == currentDrawGeneration) {
+      return true;
+    }
+    if (!hasSameTexts()) {
+      return false;
+    }
+    drawGeneration = currentDrawGeneration;
+    return true;
+  }
+
+  private boolean hasSameTexts() {
+    for (Map.Entry<String, List<AndroidNativeElement>> entry
+        : elementsByText.entrySet()) {
+      for (AndroidNativeElement element : entry.getValue()) {
+        CharSequence text = element.getTextSequence();
+        if (text == null || !entry.getKey().contentEquals(text)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns all elements in the hierarchy, in depth-first order.
+   */
+  public List<AndroidNativeElement> getElements() {
+    return elements;
+  }
+
+  /**
+   * Returns the elements wrapping the top-level views. The literal IDs
+   * supported by {@link ViewElement} only refer to top-level views.
+   */
+  public List<AndroidNativeElement> getTopLevelElements() {
+    return topLevelElements;
+  }
+
+  /**
+   * Returns the XPath node model of this snapshot. It is created on first use
+   * and kept with the snapshot, so that its indexes are reused by later
+   * searches.
+   */
+  public synchronized XPathDocument getDocument() {
+    if (document == null) {
+      document = new XPathDocument(topLevelElements);
+    }
+    return document;
+  }
+
+  public List<AndroidNativeElement> getElementsByAndroidId(int androidId) {
+    return fromIndex(elementsByAndroidId, androidId);
+  }
+
+  public List<AndroidNativeElement> getElementsByText(String text) {
+    return fromIndex(elementsByText, text);
+  }
+
+  /**
+   * Returns the elements whose text is not empty.
+   */
+  public List<AndroidNativeElement> getElementsWithText() {
+    return textElements;
+  }
+
+  /**
+   * Returns the elements whose text contains the given string.
+   */
+  public List<AndroidNativeElement> getElementsByPartialText(String text) {
+    if (text.length() == 0) {
+      return elements;
+    }
+    List<AndroidNativeElement> result = Lists.newArrayList();
+    for (AndroidNativeElement element : textElements) {
+      if (element.getText().indexOf(text) != -1) {
+        result.add(element);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the elements which may support the given class name. The class is
+   * resolved only once, rather than once per element.
+   *
+   * @see AndroidNativeElement#supportsClass(String)
+   */
+  public List<AndroidNativeElement> getElementsByClassName(String className) {
+    Class<?> searchedForClass = ClassLookup.forName(className);
+    if (searchedForClass == null) {
+      return otherElements;
+    }
+
+    Set<Class<?>> matchingClasses = Sets.newHashSet();
+    for (Class<?> viewClass : elementsByViewClass.keySet()) {
+      if (searchedForClass.isAssignableFrom(viewClass)) {
+        matchingClasses.add(viewClass);
+      }
+    }
+
+    if (matchingClasses.isEmpty()) {
+      return otherElements;
+    }
+    if (matchingClasses.size() == 1 && otherElements.isEmpty()) {
+      return elementsByViewClass.get(matchingClasses.iterator().next());
+    }
+
+    List<AndroidNativeElement> result = Lists.newArrayList();
+    for (AndroidNativeElement element : elements) {
+      if (!(element instanceof ViewElement)
+          || matchingClasses.contains(
+              ((ViewElement<?>) element).getView().getClass())) {
+        result.add(element);
+      }
+    }
+    return result;
+  }
+
+  private static <K> List<AndroidNativeElement> fromIndex(
+      Map<K, List<AndroidNativeElement>> index, K key) {
+    List<AndroidNativeElement> bucket = index.get(key);
+    return (bucket == null)
+        ? ImmutableList.<AndroidNativeElement>of() : bucket;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.openqa.selenium.WebDriverException;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.util.DisplayMetrics;
+import android.view.View;
+
+import com.google.android.testing.nativedriver.common.ViewScreenshotOptions;
+import com.google.common.base.Function;
+
+/**
+ * Takes screenshots by drawing {@code View}s into a {@code Bitmap} on the
+ * device, so that no ADB connection is needed. Only the {@code View}s of the
+ * application under test are drawn; the status bar and other applications are
+ * not.
+ *
+ * <p>The {@code View}s are drawn on the main application thread, but the
+ * bitmap is compressed on the calling thread so that the UI is not blocked
+ * while the image is encoded. The bitmap is reused as long as the size of the
+ * screenshot does not change, until {@link #release} is called.
+ */
+public class ViewScreenshooter {
+  private final ElementContext context;
+  private final RootSearchScope rootSearchScope;
+  @Nullable private Bitmap bitmap;
+
+  public ViewScreenshooter(
+      ElementContext context, RootSearchScope rootSearchScope) {
+    this.context = context;
+    this.rootSearchScope = rootSearchScope;
+  }
+
+  /**
+   * Draws the screenshot and returns it compressed in the format given by the
+   * options.
+   */
+  public synchronized byte[] takeScreenshot(ViewScreenshotOptions options) {
+    Bitmap drawn = context.getOnMainSyncRunner().run(doDraw(options));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+        drawn.getWidth() * drawn.getHeight() / 4);
+    Bitmap.CompressFormat format
+        = (options.getFormat() == ViewScreenshotOptions.Format.JPEG)
+            ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+    if (!drawn.compress(format, options.getQuality(), bytes)) {
+      throw new WebDriverException("Failed to compress the screenshot.");
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Creates a {@code Function} which draws the screenshot into the reused
+   * bitmap. This {@code Function} should always be run on the main
+   * application thread.
+   */
+  private Function<Void, Bitmap> doDraw(
+      final ViewScreenshotOptions options) {
+    return new Function<Void, Bitmap>() {
+      @Override
+      public Bitmap apply(Void ignoredArgument) {
+        View[] views = getViewsToDraw(options.isAllWindows());
+        Rect area = getArea(views, options);
+        double scale = options.getScale();
+        int width = Math.max(1, (int) Math.ceil(area.width() * scale));
+        int height = Math.max(1, (int) Math.ceil(area.height() * scale));
+
+        Bitmap target = getBitmap(width, height);
+        target.eraseColor(Color.BLACK);
+        Canvas canvas = new Canvas();
+        canvas.setBitmap(target);
+        canvas.scale((float) scale, (float) scale);
+        canvas.translate(-area.left, -area.top);
+
+        int[] location = new int[2];
+        for (View view : views) {
+          if (view.getVisibility() != View.VISIBLE || view.getWidth() == 0) {
+            continue;
+          }
+          view.getLocationOnScreen(location);
+          int saveCount = canvas.save();
+          canvas.translate(location[0], location[1]);
+          view.draw(canvas);
+          canvas.restoreToCount(saveCount);
+        }
+        return target;
+      }
+    };
+  }
+
+  private View[] getViewsToDraw(boolean allWindows) {
+    if (allWindows) {
+      return rootSearchScope.getTopLevelViews();
+    }
+    Activity activity = context.getActivities().current();
+    if (activity == null) {
+      throw new WebDriverException(
+          "Current focused activity does not exist.");
+    }
+    return new View[] {activity.getWindow().getDecorView()};
+  }
+
+  /**
+   * Returns the area of the screen to draw: the crop rectangle of the options
+   * if one is given, otherwise the whole screen when all windows are drawn, or
+   * the bounds of the decor view.
+   */
+  private Rect getArea(View[] views, ViewScreenshotOptions options) {
+    Rect area;
+    if (options.isAllWindows()) {
+      DisplayMetrics metrics = context.getInstrumentation().getTargetContext()
+          .getResources().getDisplayMetrics();
+      area = new Rect(0, 0, metrics.widthPixels, metrics.heightPixels);
+    } else {
+      int[] location = new int[2];
+      views[0].getLocationOnScreen(location);
+      area = new Rect(location[0], location[1],
+          location[0] + views[0].getWidth(),
+          location[1] + views[0].getHeight());
+    }
+
+    int[] crop = options.getCrop();
+    if (crop != null && !area.intersect(
+        crop[0], crop[1], crop[0] + crop[2], crop[1] + crop[3])) {
+      throw new WebDriverException(
+          "The crop rectangle is outside of the screen: " + options);
+    }
+    return area;
+  }
+
+  /**
+   * Frees the memory of the reused bitmap. The next screenshot allocates a
+   * new one.
+   */
+  public synchronized void release() {
+    if (bitmap != null) {
+      bitmap.recycle();
+      bitmap = null;
+    }
+  }
+
+  private Bitmap getBitmap(int width, int height) {
+    if (bitmap == null || bitmap.getWidth() != width
+        || bitmap.getHeight() != height) {
+      if (bitmap != null) {
+        bitmap.recycle();
+      }
+      bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+    return bitmap;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.openqa.selenium.WebElement;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+/**
+ * Searches the element hierarchy below some elements for matches, without
+ * recursion. The nodes still to be visited are kept in an explicit stack, for
+ * depth-first order, or queue, for breadth-first order, and the search stops
+ * as soon as the result limit is reached.
+ *
+ * <p>Below a {@link ViewElement}, the traversal walks the raw {@code View}s
+ * and {@code ViewGroup} children, which is what the children of the built-in
+ * {@code ViewElement} types are. If a {@code View} filter is given, it is
+ * evaluated on each {@code View} directly, and an element is created only for
+ * the {@code View}s which match. Other elements are visited through
+ * {@link AndroidNativeElement#getChildren} and checked with the element
+ * filter.
+ */
+public class ViewTraversal {
+  /**
+   * The order in which the hierarchy is visited. Both visit a parent before
+   * its children.
+   */
+  public enum Order {
+    /** Visits each subtree completely before its next sibling. */
+    DEPTH_FIRST,
+
+    /** Visits all nodes of a depth before any deeper node. */
+    BREADTH_FIRST
+  }
+
+  private final Order order;
+  @Nullable private final Predicate<? super View> viewFilter;
+  private final Predicate<? super AndroidNativeElement> elementFilter;
+
+  /**
+   * @param order the order in which to visit the hierarchy
+   * @param viewFilter the condition a {@code View} must satisfy, equivalent
+   *        to {@code elementFilter} for the built-in {@code ViewElement}
+   *        types, or {@code null} to create an element for each visited
+   *        {@code View} and check it with {@code elementFilter}
+   * @param elementFilter the condition an element must satisfy
+   */
+  public ViewTraversal(Order order, @Nullable Predicate<? super View> viewFilter,
+      Predicate<? super AndroidNativeElement> elementFilter) {
+    this.order = Preconditions.checkNotNull(order);
+    this.viewFilter = viewFilter;
+    this.elementFilter = Preconditions.checkNotNull(elementFilter);
+  }
+
+  /**
+   * Adds the matching elements among the given elements and their
+   * descendants to {@code destination}, until it holds {@code maxResults}
+   * elements. Elements which should be omitted from find results are skipped.
+   *
+   * @return {@code destination}
+   */
+  public List<WebElement> addMatches(List<WebElement> destination,
+      Iterable<? extends AndroidNativeElement> topLevelElements,
+      int maxResults) {
+    if (destination.size() >= maxResults) {
+      return destination;
+    }
+
+    // Holds AndroidNativeElements and, below ViewElements, raw Views.
+    ArrayDeque<Object> pending = new ArrayDeque<Object>();
+    addAll(pending, topLevelElements);
+    @Nullable ElementContext viewContext = null;
+
+    while (!pending.isEmpty()) {
+      Object node = pending.pollFirst();
+
+      if (node instanceof ViewElement<?> && viewFilter != null) {
+        ViewElement<?> element = (ViewElement<?>) node;
+        viewContext = element.context;
+        node = element.getView();
+      }
+
+      if (node instanceof View) {
+        View view = (View) node;
+        if (viewFilter.apply(view) && view.hasWindowFocus()) {
+          destination.add(viewContext.newViewElement(view));
+          if (destination.size() >= maxResults) {
+            break;
+          }
+        }
+        if (view instanceof ViewGroup) {
+          addChildren(pending, (ViewGroup) view);
+        }
+      } else {
+        AndroidNativeElement element = (AndroidNativeElement) node;
+        if (elementFilter.apply(element)
+            && !element.shouldOmitFromFindResults()) {
+          destination.add(element);
+          if (destination.size() >= maxResults) {
+            break;
+          }
+        }
+        addAll(pending, element.getChildren());
+      }
+    }
+
+    return destination;
+  }
+
+  private void addChildren(ArrayDeque<Object> pending, ViewGroup group) {
+    int count = group.getChildCount();
+    if (order == Order.DEPTH_FIRST) {
+      // Pushed in reverse so that the first child is visited first.
+      for (int i = count - 1; i >= 0; i--) {
+        pending.addFirst(group.getChildAt(i));
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        pending.addLast(group.getChildAt(i));
+      }
+    }
+  }
+
+  private void addAll(ArrayDeque<Object> pending,
+      Iterable<? extends AndroidNativeElement> elements) {
+    if (order == Order.DEPTH_FIRST) {
+      List<AndroidNativeElement> reversed = Lists.newArrayList(elements);
+      for (int i = reversed.size() - 1; i >= 0; i--) {
+        pending.addFirst(reversed.get(i));
+      }
+    } else {
+      for (AndroidNativeElement element : elements) {
+        pending.addLast(element);
+      }
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.support.ui.Clock;
+
+import javax.annotation.Nullable;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps track of changes to the {@code View} hierarchy of the top-level
+ * windows. Every global layout reported by the {@code ViewTreeObserver} of an
+ * observed window, every change to the set of observed windows, and every
+ * {@code Activity} transition reported by {@link ActivitiesReporter},
+ * increments a generation counter. Callers can tell whether the structure of
+ * the hierarchy may have changed since they last looked at it by comparing
+ * generations, or block until that happens with {@link #awaitChange}.
+ *
+ * <p>Pre-draw passes only increment a separate draw generation, and do not
+ * wake up {@link #awaitChange}. A frame is drawn for every step of an
+ * animation, such as a {@code ProgressBar} or a blinking cursor, so treating
+ * frames as changes would invalidate everything on every frame. Content which
+ * changes without a layout pass, such as the text of a fixed-size
+ * {@code TextView}, is detected by comparing draw generations and checking
+ * the content itself; see {@link ViewHierarchySnapshot#isCurrent}.
+ *
+ * <p>If an {@link EventLog} is given, layout passes, focus changes and
+ * changes to the set of observed windows are also recorded there. Windows
+ * are only noticed when {@link #observe(View[])} is called, which happens
+ * whenever the hierarchy is searched.
+ *
+ * <p>{@link #observe(View[])} must be called on the main application thread.
+ * The other methods may be called from any thread.
+ */
+public class ViewTreeChangeMonitor {
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong drawGeneration = new AtomicLong();
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final Object lock = new Object();
+  @Nullable private final EventLog eventLog;
+
+  // Only accessed on the main application thread.
+  private final Map<View, ViewTreeObserver> observedRoots
+      = Maps.newIdentityHashMap();
+
+  private final ViewTreeObserver.OnGlobalLayoutListener layoutListener
+      = new ViewTreeObserver.OnGlobalLayoutListener() {
+    @Override
+    public void onGlobalLayout() {
+      notifyChanged();
+      if (eventLog != null) {
+        eventLog.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+      }
+    }
+  };
+
+  private final ViewTreeObserver.OnGlobalFocusChangeListener focusListener
+      = new ViewTreeObserver.OnGlobalFocusChangeListener() {
+    @Override
+    public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+      if (eventLog != null) {
+        eventLog.record(ServerEvents.FOCUS_CHANGED, (newFocus == null) ? null
+            : Collections.singletonMap(
+                ServerEvents.VIEW, newFocus.getClass().getName()));
+      }
+    }
+  };
+
+  private final ViewTreeObserver.OnPreDrawListener preDrawListener
+      = new ViewTreeObserver.OnPreDrawListener() {
+    @Override
+    public boolean onPreDraw() {
+      drawGeneration.incrementAndGet();
+      return true;
+    }
+  };
+
+  public ViewTreeChangeMonitor() {
+    this(null);
+  }
+
+  /**
+   * Constructs a monitor which also records events in the given log, if it is
+   * not {@code null}.
+   */
+  public ViewTreeChangeMonitor(@Nullable EventLog eventLog) {
+    this.eventLog = eventLog;
+  }
+
+  /**
+   * Returns the current generation. The value increases every time a change
+   * to the observed hierarchy is reported.
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Returns the current draw generation. The value increases every time an
+   * observed window is about to be drawn, whether or not anything changed.
+   */
+  public long getDrawGeneration() {
+    return drawGeneration.get();
+  }
+
+  /**
+   * Records that the observed hierarchy may have changed.
+   */
+  public void notifyChanged() {
+    generation.incrementAndGet();
+
+    if (waiters.get() > 0) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Blocks until the generation differs from the given one, or until the
+   * given time has elapsed.
+   *
+   * @param sinceGeneration the generation last seen by the caller
+   * @param timeoutInMillis maximum time to wait in milliseconds
+   * @param clock the clock the timeout is measured with
+   * @return {@code true} if a change was reported, {@code false} if the wait
+   *         timed out
+   * @throws InterruptedException if the current thread is interrupted
+   */
+  public boolean awaitChange(long sinceGeneration, long timeoutInMillis,
+      Clock clock) throws InterruptedException {
+    long end = clock.laterBy(timeoutInMillis);
+    waiters.incrementAndGet();
+    try {
+      synchronized (lock) {
+        while (generation.get() == sinceGeneration) {
+          long remaining = end - clock.now();
+          if (remaining <= 0) {
+            return false;
+          }
+          lock.wait(remaining);
+        }
+        return true;
+      }
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * Starts observing the given top-level views, and stops observing any
+   * previously-observed view which is not among them. This method must be
+   * called on the main application thread.
+   *
+   * @param topLevelViews the roots of all windows currently shown
+   */
+  public void observe(View[] topLevelViews) {
+    boolean rootsChanged = false;
+
+    for (View root : topLevelViews) {
+      ViewTreeObserver observer = root.getViewTreeObserver();
+      ViewTreeObserver registered = observedRoots.get(root);
+
+      if (registered == observer) {
+        continue;
+      }
+      if (registered != null) {
+        removeListeners(registered);
+      }
+      observer.addOnGlobalLayoutListener(layoutListener);
+      observer.addOnPreDrawListener(preDrawListener);
+      if (eventLog != null) {
+        observer.addOnGlobalFocusChangeListener(focusListener);
+      }
+      observedRoots.put(root, observer);
+      rootsChanged = true;
+    }
+
+    Set<View> current = Sets.newIdentityHashSet();
+    for (View root : topLevelViews) {
+      current.add(root);
+    }
+    Iterator<Map.Entry<View, ViewTreeObserver>> iterator
+        = observedRoots.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<View, ViewTreeObserver> entry = iterator.next();
+      if (!current.contains(entry.getKey())) {
+        removeListeners(entry.getValue());
+        iterator.remove();
+        rootsChanged = true;
+      }
+    }
+
+    if (rootsChanged) {
+      notifyChanged();
+      if (eventLog != null) {
+        eventLog.record(ServerEvents.WINDOWS_CHANGED, null);
+      }
+    }
+  }
+
+  private void removeListeners(ViewTreeObserver observer) {
+    if (observer.isAlive()) {
+      observer.removeGlobalOnLayoutListener(layoutListener);
+      observer.removeOnPreDrawListener(preDrawListener);
+      observer.removeOnGlobalFocusChangeListener(focusListener);
+    }
+  }
+}
@@ -0,0 +1,1115 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.openqa.selenium.InvalidSelectorException;
+
+import com.google.android.testing.nativedriver.server.XPathDocument.Node;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+/**
+ * A compiled XPath 1.0 expression which is evaluated against an
+ * {@link XPathDocument}. The supported subset is:
+ * <ul>
+ *   <li>absolute and relative location paths with {@code /}, {@code //},
+ *   {@code .}, {@code ..} and unions with {@code |}
+ *   <li>the {@code child}, {@code descendant}, {@code descendant-or-self},
+ *   {@code self}, {@code parent}, {@code ancestor},
+ *   {@code ancestor-or-self}, {@code following-sibling} and
+ *   {@code preceding-sibling} axes
+ *   <li>the name test (see {@link XPathDocument} for tag names), {@code *}
+ *   and {@code node()}
+ *   <li>predicates with attributes such as {@code @id}, string and number
+ *   literals, {@code and}, {@code or}, the comparison operators, nested
+ *   location paths and positions
+ *   <li>the functions {@code text}, {@code contains}, {@code starts-with},
+ *   {@code not}, {@code position}, {@code last}, {@code count},
+ *   {@code string}, {@code normalize-space}, {@code string-length},
+ *   {@code name}, {@code true} and {@code false}
+ * </ul>
+ *
+ * <p>Steps on the descendant axis of the document node whose predicates do
+ * not depend on the position, such as {@code //Button[@text='OK']}, take
+ * their candidates from the indexes of the document instead of walking it.
+ *
+ * <p>Instances are immutable, and the last compiled expressions are cached,
+ * since a search is repeated until it succeeds or times out.
+ */
+public final class ViewXPath {
+  private static final Map<String, ViewXPath> compiled
+      = new MapMaker().maximumSize(64).makeMap();
+
+  private static final Comparator<Node> DOCUMENT_ORDER
+      = new Comparator<Node>() {
+        @Override
+        public int compare(Node first, Node second) {
+          return first.compareDocumentOrder(second);
+        }
+      };
+
+  private final String expression;
+  private final Expr root;
+
+  private ViewXPath(String expression, Expr root) {
+    this.expression = expression;
+    this.root = root;
+  }
+
+  /**
+   * Compiles the given expression, or returns the cached result of a previous
+   * compilation.
+   *
+   * @throws InvalidSelectorException if the expression is malformed or uses
+   *         an unsupported feature
+   */
+  public static ViewXPath compile(String expression) {
+    ViewXPath xpath = compiled.get(expression);
+    if (xpath == null) {
+      xpath = new ViewXPath(
+          expression, new Parser(expression).parseExpression());
+      compiled.put(expression, xpath);
+    }
+    return xpath;
+  }
+
+  /**
+   * Returns the nodes this expression selects, in document order.
+   *
+   * @param document the document to evaluate against
+   * @param context the context node, which is usually the document node
+   * @throws InvalidSelectorException if the expression does not select nodes
+   */
+  public List<Node> selectNodes(XPathDocument document, Node context) {
+    Object result = root.evaluate(new Context(document, context, 1, 1));
+    if (!(result instanceof NodeSet)) {
+      throw new InvalidSelectorException(
+          "XPath does not select elements: " + expression);
+    }
+    return ((NodeSet) result).nodes;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  private static class Context {
+    final XPathDocument document;
+    final Node node;
+    final int position;
+    final int size;
+
+    Context(XPathDocument document, Node node, int position, int size) {
+      this.document = document;
+      this.node = node;
+      this.position = position;
+      this.size = size;
+    }
+  }
+
+  /**
+   * The result of a location path, in document order.
+   */
+  private static class NodeSet {
+    final List<Node> nodes;
+
+    NodeSet(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+  }
+
+  /**
+   * The result of an attribute or {@code text()} test, which has at most one
+   * value per node.
+   */
+  private static class StringSet {
+    final List<String> values;
+
+    StringSet(List<String> values) {
+      this.values = values;
+    }
+  }
+
+  private abstract static class Expr {
+    /**
+     * Returns a {@code Boolean}, {@code Double}, {@code String},
+     * {@code NodeSet} or {@code StringSet}.
+     */
+    abstract Object evaluate(Context context);
+
+    /**
+     * Indicates whether this expression calls {@code position()} or
+     * {@code last()}.
+     */
+    boolean isPositional() {
+      return false;
+    }
+
+    /**
+     * Indicates whether this expression, when used as a predicate, may depend
+     * on the position of the node, either directly or by being a number.
+     */
+    boolean isPositionalPredicate() {
+      return isPositional() || (this instanceof Literal
+          && ((Literal) this).value instanceof Double)
+          || (this instanceof Function && ((Function) this).isNumeric());
+    }
+  }
+
+  // Value conversions of XPath 1.0.
+
+  private static List<String> stringsOf(Object value) {
+    if (value instanceof StringSet) {
+      return ((StringSet) value).values;
+    }
+    List<String> strings = Lists.newArrayList();
+    for (Node node : ((NodeSet) value).nodes) {
+      strings.add(node.getStringValue());
+    }
+    return strings;
+  }
+
+  private static boolean isSet(Object value) {
+    return (value instanceof NodeSet) || (value instanceof StringSet);
+  }
+
+  private static boolean toBoolean(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof Double) {
+      double number = (Double) value;
+      return number != 0 && !Double.isNaN(number);
+    } else if (value instanceof String) {
+      return ((String) value).length() != 0;
+    } else if (value instanceof NodeSet) {
+      return !((NodeSet) value).nodes.isEmpty();
+    }
+    return !((StringSet) value).values.isEmpty();
+  }
+
+  private static String toStringValue(Object value) {
+    if (value instanceof String) {
+      return (String) value;
+    } else if (value instanceof Boolean) {
+      return value.toString();
+    } else if (value instanceof Double) {
+      double number = (Double) value;
+      return (number == Math.rint(number) && !Double.isInfinite(number))
+          ? String.valueOf((long) number) : String.valueOf(number);
+    }
+    List<String> strings = stringsOf(value);
+    return strings.isEmpty() ? "" : strings.get(0);
+  }
+
+  private static double toNumber(Object value) {
+    if (value instanceof Double) {
+      return (Double) value;
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1 : 0;
+    }
+    try {
+      return Double.parseDouble(toStringValue(value).trim());
+    } catch (NumberFormatException exception) {
+      return Double.NaN;
+    }
+  }
+
+  // Expressions.
+
+  private static class Literal extends Expr {
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      return value;
+    }
+  }
+
+  private static class Attribute extends Expr {
+    private final String name;
+
+    Attribute(String name) {
+      this.name = name;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      String value = context.node.getAttribute(name);
+      return new StringSet((value == null)
+          ? ImmutableList.<String>of() : ImmutableList.of(value));
+    }
+  }
+
+  private static class Logical extends Expr {
+    private final boolean isAnd;
+    private final Expr left;
+    private final Expr right;
+
+    Logical(boolean isAnd, Expr left, Expr right) {
+      this.isAnd = isAnd;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      boolean leftValue = toBoolean(left.evaluate(context));
+      if (leftValue != isAnd) {
+        return leftValue;
+      }
+      return toBoolean(right.evaluate(context));
+    }
+
+    @Override
+    boolean isPositional() {
+      return left.isPositional() || right.isPositional();
+    }
+  }
+
+  private static class Comparison extends Expr {
+    private final String operator;
+    private final Expr left;
+    private final Expr right;
+
+    Comparison(String operator, Expr left, Expr right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * Returns the attribute name and value if this is a comparison of an
+     * attribute or {@code text()} with a string literal, which can be
+     * answered from an index of the document.
+     */
+    @Nullable
+    String[] asIndexedEquality() {
+      if (!operator.equals("=") || !(right instanceof Literal)
+          || !(((Literal) right).value instanceof String)) {
+        return null;
+      }
+      String value = (String) ((Literal) right).value;
+      if (left instanceof Attribute) {
+        return new String[] {((Attribute) left).name, value};
+      } else if (left instanceof Function
+          && ((Function) left).name.equals("text")) {
+        return new String[] {XPathDocument.ATTRIBUTE_TEXT, value};
+      }
+      return null;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      Object leftValue = left.evaluate(context);
+      Object rightValue = right.evaluate(context);
+      if (isSet(leftValue) && isSet(rightValue)) {
+        for (String leftString : stringsOf(leftValue)) {
+          for (String rightString : stringsOf(rightValue)) {
+            if (compareAtoms(leftString, rightString)) {
+              return true;
+            }
+          }
+        }
+        return false;
+      } else if (isSet(leftValue) || isSet(rightValue)) {
+        boolean setOnLeft = isSet(leftValue);
+        Object set = setOnLeft ? leftValue : rightValue;
+        Object other = setOnLeft ? rightValue : leftValue;
+        if (other instanceof Boolean) {
+          return compareAtoms(setOnLeft ? toBoolean(set) : other,
+              setOnLeft ? other : toBoolean(set));
+        }
+        for (String string : stringsOf(set)) {
+          if (compareAtoms(setOnLeft ? string : other,
+              setOnLeft ? other : string)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return compareAtoms(leftValue, rightValue);
+    }
+
+    private boolean compareAtoms(Object leftValue, Object rightValue) {
+      boolean isEquality = operator.equals("=") || operator.equals("!=");
+      boolean equal;
+      if (!isEquality) {
+        double leftNumber = toNumber(leftValue);
+        double rightNumber = toNumber(rightValue);
+        if (operator.equals("<")) {
+          return leftNumber < rightNumber;
+        } else if (operator.equals("<=")) {
+          return leftNumber <= rightNumber;
+        } else if (operator.equals(">")) {
+          return leftNumber > rightNumber;
+        }
+        return leftNumber >= rightNumber;
+      } else if (leftValue instanceof Boolean
+          || rightValue instanceof Boolean) {
+        equal = toBoolean(leftValue) == toBoolean(rightValue);
+      } else if (leftValue instanceof Double || rightValue instanceof Double) {
+        equal = toNumber(leftValue) == toNumber(rightValue);
+      } else {
+        equal = toStringValue(leftValue).equals(toStringValue(rightValue));
+      }
+      return equal == operator.equals("=");
+    }
+
+    @Override
+    boolean isPositional() {
+      return left.isPositional() || right.isPositional();
+    }
+  }
+
+  private static class Function extends Expr {
+    private final String name;
+    private final List<Expr> arguments;
+
+    Function(String name, List<Expr> arguments) {
+      this.name = name;
+      this.arguments = arguments;
+      int[] arity = arityOf(name);
+      if (arguments.size() < arity[0] || arguments.size() > arity[1]) {
+        throw new InvalidSelectorException(
+            "Wrong number of arguments for XPath function: " + name);
+      }
+    }
+
+    private static int[] arityOf(String name) {
+      if (name.equals("contains") || name.equals("starts-with")) {
+        return new int[] {2, 2};
+      } else if (name.equals("not") || name.equals("count")) {
+        return new int[] {1, 1};
+      } else if (name.equals("string") || name.equals("normalize-space")
+          || name.equals("string-length")) {
+        return new int[] {0, 1};
+      } else if (name.equals("text") || name.equals("position")
+          || name.equals("last") || name.equals("name")
+          || name.equals("true") || name.equals("false")) {
+        return new int[] {0, 0};
+      }
+      throw new InvalidSelectorException(
+          "Unsupported XPath function: " + name);
+    }
+
+    boolean isNumeric() {
+      return name.equals("position") || name.equals("last")
+          || name.equals("count") || name.equals("string-length");
+    }
+
+    private String stringArgument(Context context) {
+      return arguments.isEmpty() ? context.node.getStringValue()
+          : toStringValue(arguments.get(0).evaluate(context));
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      if (name.equals("text")) {
+        String text = context.node.getAttribute(XPathDocument.ATTRIBUTE_TEXT);
+        return new StringSet((text == null || text.length() == 0)
+            ? ImmutableList.<String>of() : ImmutableList.of(text));
+      } else if (name.equals("contains")) {
+        return toStringValue(arguments.get(0).evaluate(context))
+            .contains(toStringValue(arguments.get(1).evaluate(context)));
+      } else if (name.equals("starts-with")) {
+        return toStringValue(arguments.get(0).evaluate(context))
+            .startsWith(toStringValue(arguments.get(1).evaluate(context)));
+      } else if (name.equals("not")) {
+        return !toBoolean(arguments.get(0).evaluate(context));
+      } else if (name.equals("position")) {
+        return (double) context.position;
+      } else if (name.equals("last")) {
+        return (double) context.size;
+      } else if (name.equals("count")) {
+        Object value = arguments.get(0).evaluate(context);
+        if (!isSet(value)) {
+          throw new InvalidSelectorException(
+              "The argument of count() must be a node-set");
+        }
+        return (double) stringsOf(value).size();
+      } else if (name.equals("string")) {
+        return stringArgument(context);
+      } else if (name.equals("normalize-space")) {
+        return stringArgument(context).trim().replaceAll("\\s+", " ");
+      } else if (name.equals("string-length")) {
+        return (double) stringArgument(context).length();
+      } else if (name.equals("name")) {
+        return (context.node.getElement() == null)
+            ? "" : context.node.getTag();
+      }
+      return name.equals("true");
+    }
+
+    @Override
+    boolean isPositional() {
+      if (name.equals("position") || name.equals("last")) {
+        return true;
+      }
+      for (Expr argument : arguments) {
+        if (argument.isPositional()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class Union extends Expr {
+    private final List<Expr> paths;
+
+    Union(List<Expr> paths) {
+      this.paths = paths;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      Set<Node> union = new LinkedHashSet<Node>();
+      for (Expr path : paths) {
+        Object value = path.evaluate(context);
+        if (!(value instanceof NodeSet)) {
+          throw new InvalidSelectorException(
+              "The operands of | must be node-sets");
+        }
+        union.addAll(((NodeSet) value).nodes);
+      }
+      List<Node> nodes = Lists.newArrayList(union);
+      Collections.sort(nodes, DOCUMENT_ORDER);
+      return new NodeSet(nodes);
+    }
+  }
+
+  private static class LocationPath extends Expr {
+    private final boolean absolute;
+    private final List<Step> steps;
+
+    LocationPath(boolean absolute, List<Step> steps) {
+      this.absolute = absolute;
+      this.steps = steps;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      List<Node> nodes = ImmutableList.of(
+          absolute ? context.document.getRoot() : context.node);
+      for (Step step : steps) {
+        nodes = step.select(context.document, nodes);
+      }
+      return new NodeSet(nodes);
+    }
+  }
+
+  /**
+   * A parenthesized node-set filtered by predicates, with the position taken
+   * in document order, and followed by location steps.
+   */
+  private static class FilterPath extends Expr {
+    private final Expr base;
+    private final Step filter;
+    private final List<Step> steps;
+
+    FilterPath(Expr base, List<Expr> predicates, List<Step> steps) {
+      this.base = base;
+      this.filter = new Step(Axis.SELF, null, predicates, false);
+      this.steps = steps;
+    }
+
+    @Override
+    Object evaluate(Context context) {
+      Object value = base.evaluate(context);
+      if (!(value instanceof NodeSet)) {
+        throw new InvalidSelectorException(
+            "Only node-sets may be followed by predicates or steps");
+      }
+      List<Node> nodes
+          = filter.applyPredicates(context.document, ((NodeSet) value).nodes);
+      for (Step step : steps) {
+        nodes = step.select(context.document, nodes);
+      }
+      return new NodeSet(nodes);
+    }
+  }
+
+  private static enum Axis {
+    CHILD("child", false),
+    DESCENDANT("descendant", false),
+    DESCENDANT_OR_SELF("descendant-or-self", false),
+    SELF("self", false),
+    PARENT("parent", true),
+    ANCESTOR("ancestor", true),
+    ANCESTOR_OR_SELF("ancestor-or-self", true),
+    FOLLOWING_SIBLING("following-sibling", false),
+    PRECEDING_SIBLING("preceding-sibling", true);
+
+    final String axisName;
+    final boolean reverse;
+
+    Axis(String axisName, boolean reverse) {
+      this.axisName = axisName;
+      this.reverse = reverse;
+    }
+
+    static Axis forName(String name) {
+      for (Axis axis : values()) {
+        if (axis.axisName.equals(name)) {
+          return axis;
+        }
+      }
+      throw new InvalidSelectorException("Unsupported XPath axis: " + name);
+    }
+
+    /**
+     * Returns the nodes on this axis of the given node, in proximity order.
+     */
+    List<Node> nodesFrom(Node node) {
+      List<Node> nodes = Lists.newArrayList();
+      switch (this) {
+        case CHILD:
+          return node.getChildren();
+        case SELF:
+          return ImmutableList.of(node);
+        case DESCENDANT_OR_SELF:
+          nodes.add(node);
+          addDescendants(nodes, node);
+          return nodes;
+        case DESCENDANT:
+          addDescendants(nodes, node);
+          return nodes;
+        case ANCESTOR_OR_SELF:
+          nodes.add(node);
+          addAncestors(nodes, node);
+          return nodes;
+        case ANCESTOR:
+          addAncestors(nodes, node);
+          return nodes;
+        case PARENT:
+          return (node.getParent() == null)
+              ? ImmutableList.<Node>of() : ImmutableList.of(node.getParent());
+        case FOLLOWING_SIBLING:
+        case PRECEDING_SIBLING:
+          if (node.getParent() == null) {
+            return nodes;
+          }
+          List<Node> siblings = node.getParent().getChildren();
+          if (this == FOLLOWING_SIBLING) {
+            return siblings.subList(node.getIndex() + 1, siblings.size());
+          }
+          nodes.addAll(siblings.subList(0, node.getIndex()));
+          Collections.reverse(nodes);
+          return nodes;
+        default:
+          throw new AssertionError(this);
+      }
+    }
+
+    private static void addDescendants(List<Node> nodes, Node node) {
+      Deque<Node> pending = new ArrayDeque<Node>();
+      pushChildren(pending, node);
+      while (!pending.isEmpty()) {
+        Node next = pending.pop();
+        nodes.add(next);
+        pushChildren(pending, next);
+      }
+    }
+
+    private static void addAncestors(List<Node> nodes, Node node) {
+      for (Node parent = node.getParent(); parent != null;
+          parent = parent.getParent()) {
+        nodes.add(parent);
+      }
+    }
+
+    private static void pushChildren(Deque<Node> pending, Node node) {
+      List<Node> children = node.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        pending.push(children.get(i));
+      }
+    }
+  }
+
+  private static class Step {
+    private final Axis axis;
+    /** The name test, {@code "*"}, or {@code null} for {@code node()}. */
+    @Nullable private final String nameTest;
+    private final List<Expr> predicates;
+    /** Whether this step follows {@code //}. */
+    private final boolean afterDoubleSlash;
+    private final boolean positional;
+
+    Step(Axis axis, @Nullable String nameTest, List<Expr> predicates,
+        boolean afterDoubleSlash) {
+      this.axis = axis;
+      this.nameTest = nameTest;
+      this.predicates = predicates;
+      this.afterDoubleSlash = afterDoubleSlash;
+      boolean anyPositional = false;
+      for (Expr predicate : predicates) {
+        anyPositional |= predicate.isPositionalPredicate();
+      }
+      this.positional = anyPositional;
+    }
+
+    boolean matchesTest(Node node) {
+      if (nameTest == null) {
+        return true;
+      } else if (node.getElement() == null) {
+        return false;
+      }
+      return nameTest.equals("*") || node.hasName(nameTest);
+    }
+
+    List<Node> select(XPathDocument document, List<Node> contextNodes) {
+      Axis stepAxis = axis;
+      if (afterDoubleSlash) {
+        if (axis == Axis.CHILD && !positional) {
+          // a//b is a/descendant::b unless b has positional predicates.
+          stepAxis = Axis.DESCENDANT;
+        } else {
+          contextNodes = selectAll(Axis.DESCENDANT_OR_SELF, contextNodes);
+        }
+      }
+
+      if (stepAxis == Axis.DESCENDANT && !positional
+          && contextNodes.size() == 1
+          && contextNodes.get(0) == document.getRoot()) {
+        return filter(document, candidatesFromIndex(document));
+      }
+
+      Set<Node> result = new LinkedHashSet<Node>();
+      for (Node contextNode : contextNodes) {
+        List<Node> candidates = Lists.newArrayList();
+        for (Node node : stepAxis.nodesFrom(contextNode)) {
+          if (matchesTest(node)) {
+            candidates.add(node);
+          }
+        }
+        result.addAll(applyPredicates(document, candidates));
+      }
+      List<Node> nodes = Lists.newArrayList(result);
+      if (contextNodes.size() > 1 || stepAxis.reverse) {
+        Collections.sort(nodes, DOCUMENT_ORDER);
+      }
+      return nodes;
+    }
+
+    private static List<Node> selectAll(Axis axis, List<Node> contextNodes) {
+      Set<Node> result = new LinkedHashSet<Node>();
+      for (Node contextNode : contextNodes) {
+        result.addAll(axis.nodesFrom(contextNode));
+      }
+      List<Node> nodes = Lists.newArrayList(result);
+      Collections.sort(nodes, DOCUMENT_ORDER);
+      return nodes;
+    }
+
+    /**
+     * Returns the smallest list of descendants of the document node which
+     * may match this step, using the {@code id} or {@code text} index if a
+     * predicate compares them with a literal, or else the tag index.
+     */
+    private List<Node> candidatesFromIndex(XPathDocument document) {
+      for (Expr predicate : predicates) {
+        if (predicate instanceof Comparison) {
+          String[] equality = ((Comparison) predicate).asIndexedEquality();
+          if (equality == null) {
+            continue;
+          }
+          if (equality[0].equals(XPathDocument.ATTRIBUTE_ID)) {
+            return document.getDescendantsById(equality[1]);
+          } else if (equality[0].equals(XPathDocument.ATTRIBUTE_TEXT)) {
+            return document.getDescendantsByText(equality[1]);
+          }
+        }
+      }
+      if (nameTest != null && !nameTest.equals("*")) {
+        return document.getDescendantsByName(nameTest);
+      }
+      return document.getDescendants();
+    }
+
+    private List<Node> filter(XPathDocument document, List<Node> candidates) {
+      List<Node> nodes = Lists.newArrayList();
+      for (Node node : candidates) {
+        if (matchesTest(node)) {
+          nodes.add(node);
+        }
+      }
+      return applyPredicates(document, nodes);
+    }
+
+    private List<Node> applyPredicates(
+        XPathDocument document, List<Node> nodes) {
+      for (Expr predicate : predicates) {
+        List<Node> matching = Lists.newArrayList();
+        int size = nodes.size();
+        for (int i = 0; i < size; i++) {
+          Object value = predicate.evaluate(
+              new Context(document, nodes.get(i), i + 1, size));
+          if ((value instanceof Double)
+              ? ((Double) value) == i + 1 : toBoolean(value)) {
+            matching.add(nodes.get(i));
+          }
+        }
+        nodes = matching;
+      }
+      return nodes;
+    }
+  }
+
+  // Parsing.
+
+  private static enum TokenKind {
+    SLASH, DOUBLE_SLASH, LEFT_BRACKET, RIGHT_BRACKET, LEFT_PAREN,
+    RIGHT_PAREN, AT, COMMA, PIPE, OPERATOR, DOT, DOUBLE_DOT, AXIS_SEPARATOR,
+    STAR, LITERAL, NUMBER, NAME, END
+  }
+
+  private static class Token {
+    final TokenKind kind;
+    final String text;
+
+    Token(TokenKind kind, String text) {
+      this.kind = kind;
+      this.text = text;
+    }
+
+    boolean is(TokenKind expectedKind, String expectedText) {
+      return kind == expectedKind && text.equals(expectedText);
+    }
+
+    @Override
+    public String toString() {
+      return (kind == TokenKind.END) ? "end of expression" : "'" + text + "'";
+    }
+  }
+
+  private static class Parser {
+    private final String expression;
+    private final List<Token> tokens;
+    private int next;
+
+    Parser(String expression) {
+      this.expression = expression;
+      this.tokens = tokenize(expression);
+    }
+
+    private InvalidSelectorException error(String message) {
+      return new InvalidSelectorException(
+          message + " in XPath: " + expression);
+    }
+
+    private List<Token> tokenize(String input) {
+      List<Token> result = Lists.newArrayList();
+      int i = 0;
+      while (i < input.length()) {
+        char c = input.charAt(i);
+        if (Character.isWhitespace(c)) {
+          i++;
+          continue;
+        }
+        int start = i;
+        TokenKind kind;
+        if (c == '/') {
+          kind = input.startsWith("//", i) ? TokenKind.DOUBLE_SLASH
+              : TokenKind.SLASH;
+          i += (kind == TokenKind.DOUBLE_SLASH) ? 2 : 1;
+        } else if (c == '.' && input.startsWith("..", i)) {
+          kind = TokenKind.DOUBLE_DOT;
+          i += 2;
+        } else if (c == '.' && !(i + 1 < input.length()
+            && Character.isDigit(input.charAt(i + 1)))) {
+          kind = TokenKind.DOT;
+          i++;
+        } else if (c == ':' && input.startsWith("::", i)) {
+          kind = TokenKind.AXIS_SEPARATOR;
+          i += 2;
+        } else if (c == '!' || c == '<' || c == '>' || c == '=') {
+          kind = TokenKind.OPERATOR;
+          i += (i + 1 < input.length() && input.charAt(i + 1) == '='
+              && c != '=') ? 2 : 1;
+          if (c == '!' && i - start == 1) {
+            throw error("Unexpected '!'");
+          }
+        } else if (c == '\'' || c == '"') {
+          int end = input.indexOf(c, i + 1);
+          if (end < 0) {
+            throw error("Unterminated string literal");
+          }
+          result.add(new Token(TokenKind.LITERAL, input.substring(i + 1, end)));
+          i = end + 1;
+          continue;
+        } else if (Character.isDigit(c) || c == '.') {
+          while (i < input.length() && (Character.isDigit(input.charAt(i))
+              || input.charAt(i) == '.')) {
+            i++;
+          }
+          kind = TokenKind.NUMBER;
+        } else if (Character.isLetter(c) || c == '_') {
+          while (i < input.length() && isNameChar(input.charAt(i))) {
+            i++;
+          }
+          kind = TokenKind.NAME;
+        } else {
+          switch (c) {
+            case '[': kind = TokenKind.LEFT_BRACKET; break;
+            case ']': kind = TokenKind.RIGHT_BRACKET; break;
+            case '(': kind = TokenKind.LEFT_PAREN; break;
+            case ')': kind = TokenKind.RIGHT_PAREN; break;
+            case '@': kind = TokenKind.AT; break;
+            case ',': kind = TokenKind.COMMA; break;
+            case '|': kind = TokenKind.PIPE; break;
+            case '*': kind = TokenKind.STAR; break;
+            default: throw error("Unexpected character '" + c + "'");
+          }
+          i++;
+        }
+        result.add(new Token(kind, input.substring(start, i)));
+      }
+      result.add(new Token(TokenKind.END, ""));
+      return result;
+    }
+
+    private static boolean isNameChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '.' || c == '-'
+          || c == '_';
+    }
+
+    private Token peek() {
+      return tokens.get(next);
+    }
+
+    private Token peek(int offset) {
+      return tokens.get(Math.min(next + offset, tokens.size() - 1));
+    }
+
+    private Token take() {
+      return tokens.get(next++);
+    }
+
+    private Token expect(TokenKind kind) {
+      if (peek().kind != kind) {
+        throw error("Unexpected " + peek());
+      }
+      return take();
+    }
+
+    Expr parseExpression() {
+      Expr expr = parseOr();
+      if (peek().kind != TokenKind.END) {
+        throw error("Unexpected " + peek());
+      }
+      return expr;
+    }
+
+    private Expr parseOr() {
+      Expr expr = parseAnd();
+      while (peek().is(TokenKind.NAME, "or")) {
+        take();
+        expr = new Logical(false, expr, parseAnd());
+      }
+      return expr;
+    }
+
+    private Expr parseAnd() {
+      Expr expr = parseComparison();
+      while (peek().is(TokenKind.NAME, "and")) {
+        take();
+        expr = new Logical(true, expr, parseComparison());
+      }
+      return expr;
+    }
+
+    private Expr parseComparison() {
+      Expr expr = parseUnion();
+      while (peek().kind == TokenKind.OPERATOR) {
+        String operator = take().text;
+        expr = new Comparison(operator, expr, parseUnion());
+      }
+      return expr;
+    }
+
+    private Expr parseUnion() {
+      Expr expr = parsePrimary();
+      if (peek().kind != TokenKind.PIPE) {
+        return expr;
+      }
+      List<Expr> paths = Lists.newArrayList(expr);
+      while (peek().kind == TokenKind.PIPE) {
+        take();
+        paths.add(parsePrimary());
+      }
+      return new Union(paths);
+    }
+
+    private Expr parsePrimary() {
+      Token token = peek();
+      switch (token.kind) {
+        case LITERAL:
+          take();
+          return new Literal(token.text);
+        case NUMBER:
+          take();
+          try {
+            return new Literal(Double.valueOf(token.text));
+          } catch (NumberFormatException exception) {
+            throw error("Invalid number " + token);
+          }
+        case LEFT_PAREN:
+          take();
+          Expr expr = parseOr();
+          expect(TokenKind.RIGHT_PAREN);
+          return parseFilter(expr);
+        case AT:
+          take();
+          return new Attribute(expect(TokenKind.NAME).text);
+        case NAME:
+          if (peek(1).kind == TokenKind.LEFT_PAREN
+              && !token.text.equals("node")) {
+            return parseFunction();
+          }
+          return parseLocationPath();
+        default:
+          return parseLocationPath();
+      }
+    }
+
+    /**
+     * Parses the predicates and steps which may follow a parenthesized
+     * expression, as in {@code (//Button)[1]}.
+     */
+    private Expr parseFilter(Expr base) {
+      List<Expr> predicates = Lists.newArrayList();
+      while (peek().kind == TokenKind.LEFT_BRACKET) {
+        take();
+        predicates.add(parseOr());
+        expect(TokenKind.RIGHT_BRACKET);
+      }
+      List<Step> steps = Lists.newArrayList();
+      while (peek().kind == TokenKind.SLASH
+          || peek().kind == TokenKind.DOUBLE_SLASH) {
+        boolean afterDoubleSlash = (take().kind == TokenKind.DOUBLE_SLASH);
+        steps.add(parseStep(afterDoubleSlash));
+      }
+      return (predicates.isEmpty() && steps.isEmpty())
+          ? base : new FilterPath(base, predicates, steps);
+    }
+
+    private Expr parseFunction() {
+      String name = take().text;
+      expect(TokenKind.LEFT_PAREN);
+      List<Expr> arguments = Lists.newArrayList();
+      if (peek().kind != TokenKind.RIGHT_PAREN) {
+        arguments.add(parseOr());
+        while (peek().kind == TokenKind.COMMA) {
+          take();
+          arguments.add(parseOr());
+        }
+      }
+      expect(TokenKind.RIGHT_PAREN);
+      return new Function(name, arguments);
+    }
+
+    private Expr parseLocationPath() {
+      List<Step> steps = Lists.newArrayList();
+      boolean absolute = false;
+      boolean afterDoubleSlash = false;
+      if (peek().kind == TokenKind.SLASH) {
+        take();
+        absolute = true;
+        if (!startsStep(peek())) {
+          return new LocationPath(true, steps);
+        }
+      } else if (peek().kind == TokenKind.DOUBLE_SLASH) {
+        take();
+        absolute = true;
+        afterDoubleSlash = true;
+      }
+
+      steps.add(parseStep(afterDoubleSlash));
+      while (peek().kind == TokenKind.SLASH
+          || peek().kind == TokenKind.DOUBLE_SLASH) {
+        afterDoubleSlash = (take().kind == TokenKind.DOUBLE_SLASH);
+        steps.add(parseStep(afterDoubleSlash));
+      }
+      return new LocationPath(absolute, steps);
+    }
+
+    private static boolean startsStep(Token token) {
+      return token.kind == TokenKind.NAME || token.kind == TokenKind.STAR
+          || token.kind == TokenKind.DOT || token.kind == TokenKind.DOUBLE_DOT;
+    }
+
+    private Step parseStep(boolean afterDoubleSlash) {
+      Token token = take();
+      List<Expr> predicates = Lists.newArrayList();
+      if (token.kind == TokenKind.DOT) {
+        return new Step(Axis.SELF, null, predicates, afterDoubleSlash);
+      } else if (token.kind == TokenKind.DOUBLE_DOT) {
+        return new Step(Axis.PARENT, null, predicates, afterDoubleSlash);
+      }
+
+      Axis axis = Axis.CHILD;
+      if (token.kind == TokenKind.NAME
+          && peek().kind == TokenKind.AXIS_SEPARATOR) {
+        axis = Axis.forName(token.text);
+        take();
+        token = take();
+      }
+
+      String nameTest;
+      if (token.kind == TokenKind.STAR) {
+        nameTest = "*";
+      } else if (token.kind == TokenKind.NAME) {
+        nameTest = token.text;
+        if (peek().kind == TokenKind.LEFT_PAREN) {
+          if (!nameTest.equals("node")) {
+            throw error("Unsupported node test " + token);
+          }
+          take();
+          expect(TokenKind.RIGHT_PAREN);
+          nameTest = null;
+        }
+      } else {
+        throw error("Unexpected " + token);
+      }
+
+      while (peek().kind == TokenKind.LEFT_BRACKET) {
+        take();
+        predicates.add(parseOr());
+        expect(TokenKind.RIGHT_BRACKET);
+      }
+      return new Step(axis, nameTest, predicates, afterDoubleSlash);
+    }
+  }
+}
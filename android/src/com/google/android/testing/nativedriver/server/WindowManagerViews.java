@@ -0,0 +1,72 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import android.view.View;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads the root views of all windows from the {@code mViews} field of the
+ * window manager. The window manager instance and the field are resolved
+ * once, so that reading the views is a synchronized copy and no reflective
+ * lookup.
+ *
+ * <p>Before API level 17, the field belongs to {@code WindowManagerImpl} and
+ * is an array. From API level 17 it belongs to {@code WindowManagerGlobal};
+ * from API level 19 it is an {@code ArrayList}. Both forms are supported.
+ */
+class WindowManagerViews {
+  private static final View[] NO_VIEWS = new View[0];
+
+  private final Object windowManager;
+  private final Field views;
+
+  /**
+   * @param windowManager the window manager instance
+   * @param views the {@code mViews} field of the window manager, which must
+   *        already be accessible
+   */
+  WindowManagerViews(Object windowManager, Field views) {
+    this.windowManager = Preconditions.checkNotNull(windowManager);
+    this.views = Preconditions.checkNotNull(views);
+  }
+
+  /**
+   * Returns a copy of the root views, in the order the windows were added.
+   *
+   * @throws IllegalAccessException if the field is not accessible
+   */
+  View[] getViews() throws IllegalAccessException {
+    // The window manager guards mViews with its own monitor.
+    synchronized (windowManager) {
+      Object value = views.get(windowManager);
+      if (value == null) {
+        return NO_VIEWS;
+      }
+      if (value instanceof List<?>) {
+        List<?> list = (List<?>) value;
+        return list.toArray(new View[list.size()]);
+      }
+      return ((View[]) value).clone();
+    }
+  }
+}
@@ -0,0 +1,428 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A lightweight, read-only node model of the element hierarchy which XPath
+ * expressions are evaluated against, and which is rendered as the page source.
+ * Unlike a {@code org.w3c.dom} copy, nodes are only created when an axis
+ * reaches them, and their attributes are only read when a test asks for them.
+ *
+ * <p>The tag name of a node is the name of the wrapped {@code View} class
+ * with {@code $} replaced by {@code .}, such as {@code android.widget.Button}.
+ * Node tests also match the simple class name, such as {@code Button}. The
+ * attributes are:
+ * <ul>
+ *   <li>{@code class}: the tag name
+ *   <li>{@code id}: the resource entry name of the Android ID, if any
+ *   <li>{@code text}: the text of the element
+ *   <li>{@code index}: the position among the siblings, counting from 0
+ *   <li>{@code enabled}, {@code selected}: {@code true} or {@code false}
+ * </ul>
+ *
+ * <p>Searches on the descendant axis of the document are answered from
+ * indexes of tag, {@code id} and {@code text}, each of which is built by one
+ * walk the first time it is needed. A document of the whole hierarchy is kept
+ * with each {@link ViewHierarchySnapshot}, so the indexes are reused until
+ * the hierarchy changes.
+ */
+public class XPathDocument {
+  public static final String ATTRIBUTE_CLASS = "class";
+  public static final String ATTRIBUTE_ID = "id";
+  public static final String ATTRIBUTE_TEXT = "text";
+  public static final String ATTRIBUTE_INDEX = "index";
+  public static final String ATTRIBUTE_ENABLED = "enabled";
+  public static final String ATTRIBUTE_SELECTED = "selected";
+
+  private static final String ROOT_TAG = "hierarchy";
+  private static final List<String> RENDERED_ATTRIBUTES = ImmutableList.of(
+      ATTRIBUTE_INDEX, ATTRIBUTE_ID, ATTRIBUTE_TEXT, ATTRIBUTE_ENABLED,
+      ATTRIBUTE_SELECTED);
+
+  /**
+   * A node of the document, which is either the document node or wraps an
+   * element. Nodes are created once, so they may be compared by identity.
+   */
+  public static final class Node {
+    @Nullable private final AndroidNativeElement element;
+    @Nullable private final Node parent;
+    private final int index;
+    private final int depth;
+    @Nullable private List<Node> children;
+    @Nullable private String tag;
+    @Nullable private Map<String, String> attributes;
+    @Nullable private int[] path;
+
+    private Node(@Nullable AndroidNativeElement element, @Nullable Node parent,
+        int index) {
+      this.element = element;
+      this.parent = parent;
+      this.index = index;
+      this.depth = (parent == null) ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Returns the wrapped element, or {@code null} for the document node.
+     */
+    @Nullable
+    public AndroidNativeElement getElement() {
+      return element;
+    }
+
+    @Nullable
+    public Node getParent() {
+      return parent;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public synchronized List<Node> getChildren() {
+      if (children == null) {
+        children = Lists.newArrayList();
+        if (element != null) {
+          for (AndroidNativeElement child : element.getChildren()) {
+            children.add(new Node(child, this, children.size()));
+          }
+        }
+      }
+      return children;
+    }
+
+    void setTopLevelElements(
+        Iterable<? extends AndroidNativeElement> topLevelElements) {
+      children = Lists.newArrayList();
+      for (AndroidNativeElement child : topLevelElements) {
+        children.add(new Node(child, this, children.size()));
+      }
+    }
+
+    public String getTag() {
+      if (tag == null) {
+        if (element == null) {
+          tag = ROOT_TAG;
+        } else if (element instanceof ViewElement) {
+          tag = ((ViewElement<?>) element).getView().getClass().getName()
+              .replace('$', '.');
+        } else {
+          tag = element.getTagName();
+        }
+      }
+      return tag;
+    }
+
+    /**
+     * Indicates whether the given name test matches this node, either by the
+     * full tag name or by the simple class name.
+     */
+    public boolean hasName(String name) {
+      String tagName = getTag();
+      return tagName.equals(name) || (tagName.endsWith(name)
+          && tagName.charAt(tagName.length() - name.length() - 1) == '.');
+    }
+
+    /**
+     * Returns the value of the given attribute, or {@code null} if the node
+     * does not have it.
+     */
+    @Nullable
+    public synchronized String getAttribute(String name) {
+      if (element == null) {
+        return null;
+      }
+      if (attributes == null) {
+        attributes = Maps.newHashMap();
+      }
+      if (!attributes.containsKey(name)) {
+        attributes.put(name, readAttribute(name));
+      }
+      return attributes.get(name);
+    }
+
+    @Nullable
+    private String readAttribute(String name) {
+      if (ATTRIBUTE_CLASS.equals(name)) {
+        return getTag();
+      } else if (ATTRIBUTE_ID.equals(name)) {
+        return getResourceEntryName();
+      } else if (ATTRIBUTE_TEXT.equals(name)) {
+        return element.getText();
+      } else if (ATTRIBUTE_INDEX.equals(name)) {
+        return String.valueOf(index);
+      } else if (ATTRIBUTE_ENABLED.equals(name)) {
+        return String.valueOf(element.isEnabled());
+      } else if (ATTRIBUTE_SELECTED.equals(name)) {
+        return String.valueOf(element.isSelected());
+      }
+      return null;
+    }
+
+    // Like ActivityDumper, treats ids which are not resources, and ids which
+    // cannot be looked up without a current Activity, as no id.
+    @Nullable
+    private String getResourceEntryName() {
+      try {
+        return element.getResourceEntryName();
+      } catch (RuntimeException exception) {
+        return null;
+      }
+    }
+
+    /**
+     * Returns the string value of this node in XPath expressions, which is
+     * its text.
+     */
+    public String getStringValue() {
+      String text = getAttribute(ATTRIBUTE_TEXT);
+      return (text == null) ? "" : text;
+    }
+
+    /**
+     * Returns the indexes of this node and its ancestors among their
+     * siblings, starting from the top, which orders nodes in document order.
+     */
+    private synchronized int[] getPath() {
+      if (path == null) {
+        path = new int[depth];
+        for (Node node = this; node.parent != null; node = node.parent) {
+          path[node.depth - 1] = node.index;
+        }
+      }
+      return path;
+    }
+
+    /**
+     * Compares the position of this node and another node of the same
+     * document in document order.
+     */
+    public int compareDocumentOrder(Node other) {
+      int[] thisPath = getPath();
+      int[] otherPath = other.getPath();
+      int length = Math.min(thisPath.length, otherPath.length);
+      for (int i = 0; i < length; i++) {
+        if (thisPath[i] != otherPath[i]) {
+          return (thisPath[i] < otherPath[i]) ? -1 : 1;
+        }
+      }
+      return thisPath.length - otherPath.length;
+    }
+  }
+
+  private final Node root;
+  @Nullable private List<Node> descendants;
+  @Nullable private Map<String, List<Node>> nodesByTag;
+  @Nullable private Map<String, List<Node>> nodesById;
+  @Nullable private Map<String, List<Node>> nodesByText;
+
+  /**
+   * Creates a document whose document node has the given elements as
+   * children.
+   */
+  public XPathDocument(
+      Iterable<? extends AndroidNativeElement> topLevelElements) {
+    root = new Node(null, null, 0);
+    root.setTopLevelElements(topLevelElements);
+  }
+
+  public Node getRoot() {
+    return root;
+  }
+
+  /**
+   * Returns all nodes below the document node, in document order.
+   */
+  public synchronized List<Node> getDescendants() {
+    if (descendants == null) {
+      descendants = Lists.newArrayList();
+      Deque<Node> pending = new ArrayDeque<Node>();
+      pending.push(root);
+      while (!pending.isEmpty()) {
+        Node node = pending.pop();
+        if (node != root) {
+          descendants.add(node);
+        }
+        List<Node> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+          pending.push(children.get(i));
+        }
+      }
+    }
+    return descendants;
+  }
+
+  /**
+   * Returns the nodes below the document node which match the given name
+   * test, in document order.
+   */
+  public synchronized List<Node> getDescendantsByName(String name) {
+    if (nodesByTag == null) {
+      nodesByTag = Maps.newHashMap();
+      for (Node node : getDescendants()) {
+        String tag = node.getTag();
+        addToIndex(nodesByTag, tag, node);
+        int simpleNameStart = tag.lastIndexOf('.') + 1;
+        if (simpleNameStart > 0) {
+          addToIndex(nodesByTag, tag.substring(simpleNameStart), node);
+        }
+      }
+    }
+    return fromIndex(nodesByTag, name);
+  }
+
+  /**
+   * Returns the nodes below the document node whose {@code id} attribute is
+   * the given value, in document order.
+   */
+  public synchronized List<Node> getDescendantsById(String id) {
+    if (nodesById == null) {
+      nodesById = indexByAttribute(ATTRIBUTE_ID);
+    }
+    return fromIndex(nodesById, id);
+  }
+
+  /**
+   * Returns the nodes below the document node whose {@code text} attribute is
+   * the given value, in document order.
+   */
+  public synchronized List<Node> getDescendantsByText(String text) {
+    if (nodesByText == null) {
+      nodesByText = indexByAttribute(ATTRIBUTE_TEXT);
+    }
+    return fromIndex(nodesByText, text);
+  }
+
+  private Map<String, List<Node>> indexByAttribute(String name) {
+    Map<String, List<Node>> index = Maps.newHashMap();
+    for (Node node : getDescendants()) {
+      String value = node.getAttribute(name);
+      if (value != null) {
+        addToIndex(index, value, node);
+      }
+    }
+    return index;
+  }
+
+  private static void addToIndex(
+      Map<String, List<Node>> index, String key, Node node) {
+    List<Node> bucket = index.get(key);
+    if (bucket == null) {
+      bucket = Lists.newArrayListWithCapacity(1);
+      index.put(key, bucket);
+    }
+    bucket.add(node);
+  }
+
+  private static List<Node> fromIndex(
+      Map<String, List<Node>> index, String key) {
+    List<Node> bucket = index.get(key);
+    return (bucket == null) ? ImmutableList.<Node>of() : bucket;
+  }
+
+  /**
+   * Writes the document as XML, one node at a time, without building any
+   * other copy of it.
+   */
+  public void writeXml(Writer writer) throws IOException {
+    writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    writer.write('<');
+    writer.write(ROOT_TAG);
+    writer.write('>');
+    for (Node child : root.getChildren()) {
+      writeNode(writer, child);
+    }
+    writer.write("</");
+    writer.write(ROOT_TAG);
+    writer.write('>');
+  }
+
+  // Writes each node in document order, with an explicit stack of the open
+  // elements so that deep hierarchies do not overflow the thread's stack.
+  private static void writeNode(Writer writer, Node top) throws IOException {
+    Deque<Object> pending = new ArrayDeque<Object>();
+    pending.push(top);
+    while (!pending.isEmpty()) {
+      Object next = pending.pop();
+      if (next instanceof String) {
+        writer.write("</");
+        writer.write((String) next);
+        writer.write('>');
+        continue;
+      }
+
+      Node node = (Node) next;
+      writer.write('<');
+      writer.write(node.getTag());
+      for (String name : RENDERED_ATTRIBUTES) {
+        String value = node.getAttribute(name);
+        if (value != null) {
+          writer.write(' ');
+          writer.write(name);
+          writer.write("=\"");
+          writeEscaped(writer, value);
+          writer.write('"');
+        }
+      }
+
+      List<Node> children = node.getChildren();
+      if (children.isEmpty()) {
+        writer.write("/>");
+      } else {
+        writer.write('>');
+        pending.push(node.getTag());
+        for (int i = children.size() - 1; i >= 0; i--) {
+          pending.push(children.get(i));
+        }
+      }
+    }
+  }
+
+  private static void writeEscaped(Writer writer, String value)
+      throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '<': writer.write("&lt;"); break;
+        case '>': writer.write("&gt;"); break;
+        case '&': writer.write("&amp;"); break;
+        case '"': writer.write("&quot;"); break;
+        case '\n': writer.write("&#10;"); break;
+        case '\r': writer.write("&#13;"); break;
+        case '\t': writer.write("&#9;"); break;
+        default:
+          // Characters which are not allowed in XML 1.0 are dropped.
+          if (c >= 0x20 || c == 0x9) {
+            writer.write(c);
+          }
+      }
+    }
+  }
+}
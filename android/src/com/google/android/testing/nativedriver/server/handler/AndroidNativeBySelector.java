@@ -18,11 +18,16 @@ limitations under the License.
 package com.google.android.testing.nativedriver.server.handler;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
 import org.openqa.selenium.remote.server.handler.BySelector;
 
 import com.google.android.testing.nativedriver.common.AndroidNativeBy;
+import com.google.android.testing.nativedriver.common.FindsByListItem;
+import com.google.android.testing.nativedriver.common.FindsBySelector;
 import com.google.android.testing.nativedriver.common.FindsByText;
+import com.google.android.testing.nativedriver.common.FindsByTextPattern;
 import com.google.android.testing.nativedriver.common.FindsByUID;
+import com.google.android.testing.nativedriver.server.CompiledSelector;
 
 /**
  * A {@code BySelector} which supports Android Native-specific search strategies
@@ -37,8 +42,25 @@ public class AndroidNativeBySelector extends BySelector {
       return AndroidNativeBy.text(selector);
     } else if (FindsByText.USING_PARTIALTEXT.equals(method)) {
       return AndroidNativeBy.partialText(selector);
+    } else if (FindsByTextPattern.USING_TEXT_MATCHING.equals(method)) {
+      return AndroidNativeBy.textMatching(selector);
+    } else if (FindsByTextPattern.USING_TEXT_IGNORING_CASE.equals(method)) {
+      return AndroidNativeBy.textIgnoringCase(selector);
+    } else if (
+        FindsByTextPattern.USING_PARTIALTEXT_IGNORING_CASE.equals(method)) {
+      return AndroidNativeBy.partialTextIgnoringCase(selector);
+    } else if (FindsByListItem.USING_LISTITEM_TEXT.equals(method)) {
+      return AndroidNativeBy.listItemText(selector);
+    } else if (FindsByListItem.USING_LISTITEM_ID.equals(method)) {
+      try {
+        return AndroidNativeBy.listItemId(Long.parseLong(selector));
+      } catch (NumberFormatException exception) {
+        throw new InvalidSelectorException("Invalid list item ID: " + selector);
+      }
     } else if (FindsByUID.USING_UID.equals(method)) {
       return AndroidNativeBy.uid(selector);
+    } else if (FindsBySelector.USING_SELECTOR.equals(method)) {
+      return CompiledSelector.parse(selector).toBy();
     } else {
       return super.pickFrom(method, selector);
     }
@@ -27,7 +27,7 @@ import org.openqa.selenium.remote.server.Session;
 import org.openqa.selenium.remote.server.handler.WebElementHandler;
 import org.openqa.selenium.remote.server.rest.ResultType;
 
-import com.google.android.testing.nativedriver.server.AndroidKnownElements;
+import com.google.android.testing.nativedriver.server.AndroidNativeDriver;
 import com.google.common.collect.ImmutableMap;
 
 // TODO(matvore): Rewrite this class to extend the corresponding handler in
@@ -65,13 +65,18 @@ public class AndroidNativeFindChildElement extends WebElementHandler
   @Override
   public ResultType call() throws Exception {
     response = newResponse();
-    WebElement element = getElement().findElement(by);
-    String elementId = getKnownElements().add(element);
-    AndroidKnownElements.add(elementId, by, 0);
+    WebElement parent = getElement();
+    WebElement element = parent.findElement(by);
+    String elementId = getAndroidNativeDriver().addKnownElement(
+        getKnownElements(), by, 0, element, parent);
     response.setValue(ImmutableMap.of("ELEMENT", elementId));
     return ResultType.SUCCESS;
   }
 
+  private AndroidNativeDriver<?> getAndroidNativeDriver() {
+    return (AndroidNativeDriver<?>) getUnwrappedDriver();
+  }
+
   public Response getResponse() {
     return response;
   }
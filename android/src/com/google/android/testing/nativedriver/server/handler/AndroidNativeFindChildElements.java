@@ -19,7 +19,6 @@ package com.google.android.testing.nativedriver.server.handler;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
@@ -29,11 +28,9 @@ import org.openqa.selenium.remote.server.Session;
 import org.openqa.selenium.remote.server.handler.WebElementHandler;
 import org.openqa.selenium.remote.server.rest.ResultType;
 
-import com.google.android.testing.nativedriver.server.AndroidKnownElements;
-import com.google.common.base.Function;
+import com.google.android.testing.nativedriver.server.AndroidNativeDriver;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 
 // TODO(matvore): Rewrite this class to extend the corresponding handler in
 // WebDriver, and simply override the newBySelector() method and delete all the
@@ -68,26 +65,22 @@ public class AndroidNativeFindChildElements extends WebElementHandler
   public ResultType call() throws Exception {
     response = newResponse();
 
-    List<WebElement> elements = getElement().findElements(by);
-    Function<WebElement, Map<String, String>> transform
-        = new Function<WebElement, Map<String, String>>() {
-      public Map<String, String> apply(WebElement element) {
-        return ImmutableMap.of("ELEMENT", getKnownElements().add(element));
-      }
-    };
-
-    Set<Map<String, String>> elementIds
-        = Sets.newLinkedHashSet(Iterables.transform(elements, transform));
-    
-    int i = 0;
-    for (Map<String, String> map: elementIds) {
-      AndroidKnownElements.add(map.get("ELEMENT"), by, i);
-      i++;
+    WebElement parent = getElement();
+    List<WebElement> elements = parent.findElements(by);
+    List<Map<String, String>> elementIds = Lists.newArrayList();
+    for (int i = 0; i < elements.size(); i++) {
+      elementIds.add(ImmutableMap.of("ELEMENT", getAndroidNativeDriver()
+          .addKnownElement(getKnownElements(), by, i, elements.get(i),
+              parent)));
     }
     response.setValue(elementIds);
     return ResultType.SUCCESS;
   }
 
+  private AndroidNativeDriver<?> getAndroidNativeDriver() {
+    return (AndroidNativeDriver<?>) getUnwrappedDriver();
+  }
+
   public Response getResponse() {
     return response;
   }
@@ -27,7 +27,7 @@ import org.openqa.selenium.remote.server.Session;
 import org.openqa.selenium.remote.server.handler.WebDriverHandler;
 import org.openqa.selenium.remote.server.rest.ResultType;
 
-import com.google.android.testing.nativedriver.server.AndroidKnownElements;
+import com.google.android.testing.nativedriver.server.AndroidNativeDriver;
 import com.google.common.collect.ImmutableMap;
 
 // TODO(matvore): Rewrite this class to extend the corresponding handler in
@@ -58,8 +58,8 @@ public class AndroidNativeFindElement
   public ResultType call() throws Exception {
     response = newResponse();
     WebElement element = getDriver().findElement(by);
-    String elementId = getKnownElements().add(element);
-    AndroidKnownElements.add(elementId, by, 0);
+    String elementId = getAndroidNativeDriver().addKnownElement(
+        getKnownElements(), by, 0, element, null);
     response.setValue(ImmutableMap.of("ELEMENT", elementId));
     return ResultType.SUCCESS;
   }
@@ -74,6 +74,10 @@ public class AndroidNativeFindElement
     
   }
 
+  private AndroidNativeDriver<?> getAndroidNativeDriver() {
+    return (AndroidNativeDriver<?>) getUnwrappedDriver();
+  }
+
   public Response getResponse() {
     return response;
   }
@@ -0,0 +1,79 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.openqa.selenium.remote.server.JsonParametersAware;
+import org.openqa.selenium.remote.server.Session;
+import org.openqa.selenium.remote.server.handler.WebDriverHandler;
+import org.openqa.selenium.remote.server.rest.ResultType;
+
+import com.google.android.testing.nativedriver.common.DumpOptions;
+import com.google.android.testing.nativedriver.server.ActivityDumper;
+import com.google.android.testing.nativedriver.server.AndroidNativeDriver;
+import com.google.android.testing.nativedriver.server.BufferedJsonResult;
+
+/**
+ * Handler of {@code /session/:sessionId/viewHierarchy}. The dump is written
+ * into the buffered response when the command is executed, and rendered by
+ * {@link BufferedJsonResult}.
+ */
+public class DumpViewHierarchy extends WebDriverHandler
+    implements JsonParametersAware, BufferedJsonResult.Source {
+  private volatile DumpOptions options = DumpOptions.all();
+  private volatile ByteArrayOutputStream encodedResponse;
+
+  public DumpViewHierarchy(Session session) {
+    super(session);
+  }
+
+  @Override
+  public void setJsonParameters(Map<String, Object> allParameters)
+      throws Exception {
+    options = DumpOptions.fromParameters(allParameters);
+  }
+
+  @Override
+  public ResultType call() throws Exception {
+    AndroidNativeDriver<?> driver
+        = (AndroidNativeDriver<?>) getUnwrappedDriver();
+    final ActivityDumper dumper = driver.newActivityDumper(options);
+    encodedResponse = BufferedJsonResult.encode(newResponse(),
+        new BufferedJsonResult.ValueWriter() {
+          @Override
+          public void writeValue(JsonGenerator generator) throws IOException {
+            dumper.writeTo(generator);
+          }
+        });
+    return ResultType.SUCCESS;
+  }
+
+  @Override
+  public ByteArrayOutputStream getEncodedResponse() {
+    return encodedResponse;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[dump view hierarchy: %s]", options);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server.handler;
+
+import java.util.Map;
+
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.JsonParametersAware;
+import org.openqa.selenium.remote.server.Session;
+import org.openqa.selenium.remote.server.handler.WebDriverHandler;
+import org.openqa.selenium.remote.server.rest.ResultType;
+
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.android.testing.nativedriver.server.AndroidNativeDriver;
+
+/**
+ * Handler of {@code /session/:sessionId/viewHierarchy/diff}. Responds with
+ * the differences between the current hierarchy and the last dump of the
+ * session.
+ */
+public class DumpViewHierarchyDiff extends WebDriverHandler
+    implements JsonParametersAware {
+  private volatile String baseVersion;
+  private volatile Response response;
+
+  public DumpViewHierarchyDiff(Session session) {
+    super(session);
+  }
+
+  @Override
+  public void setJsonParameters(Map<String, Object> allParameters)
+      throws Exception {
+    Object version = allParameters.get(HierarchyDiff.BASE_VERSION);
+    baseVersion = (version == null) ? null : version.toString();
+  }
+
+  @Override
+  public ResultType call() throws Exception {
+    response = newResponse();
+    response.setValue(((AndroidNativeDriver<?>) getUnwrappedDriver())
+        .dumpViewHierarchyDiff(baseVersion));
+    return ResultType.SUCCESS;
+  }
+
+  public Response getResponse() {
+    return response;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[dump view hierarchy diff: base(%s)]", baseVersion);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server.handler;
+
+import java.util.Map;
+
+import org.openqa.selenium.remote.server.JsonParametersAware;
+import org.openqa.selenium.remote.server.Session;
+import org.openqa.selenium.remote.server.handler.WebDriverHandler;
+import org.openqa.selenium.remote.server.rest.ResultType;
+
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.android.testing.nativedriver.common.PerformsGestures;
+
+/**
+ * Handler of {@code /session/:sessionId/gesture}. Performs the whole
+ * {@link Gesture} described by the parameters.
+ */
+public class PerformGesture extends WebDriverHandler
+    implements JsonParametersAware {
+  private volatile Gesture gesture;
+
+  public PerformGesture(Session session) {
+    super(session);
+  }
+
+  @Override
+  public void setJsonParameters(Map<String, Object> allParameters)
+      throws Exception {
+    gesture = Gesture.fromParameters(allParameters);
+  }
+
+  @Override
+  public ResultType call() throws Exception {
+    ((PerformsGestures) getDriver()).perform(gesture);
+    return ResultType.SUCCESS;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[perform gesture: %s]", gesture);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server.handler;
+
+import java.util.Map;
+
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.JsonParametersAware;
+import org.openqa.selenium.remote.server.Session;
+import org.openqa.selenium.remote.server.handler.WebDriverHandler;
+import org.openqa.selenium.remote.server.rest.ResultType;
+
+import android.util.Base64;
+
+import com.google.android.testing.nativedriver.common.TakesViewScreenshot;
+import com.google.android.testing.nativedriver.common.ViewScreenshotOptions;
+
+/**
+ * Handler of {@code /session/:sessionId/viewScreenshot}. Responds with the
+ * Base64-encoded image drawn on the device.
+ */
+public class TakeViewScreenshot extends WebDriverHandler
+    implements JsonParametersAware {
+  private volatile ViewScreenshotOptions options = ViewScreenshotOptions.png();
+  private volatile Response response;
+
+  public TakeViewScreenshot(Session session) {
+    super(session);
+  }
+
+  @Override
+  public void setJsonParameters(Map<String, Object> allParameters)
+      throws Exception {
+    options = ViewScreenshotOptions.fromParameters(allParameters);
+  }
+
+  @Override
+  public ResultType call() throws Exception {
+    response = newResponse();
+    byte[] image = ((TakesViewScreenshot) getDriver()).takeViewScreenshot(
+        options);
+    response.setValue(Base64.encodeToString(image, Base64.NO_WRAP));
+    return ResultType.SUCCESS;
+  }
+
+  public Response getResponse() {
+    return response;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[take view screenshot: %s]", options);
+  }
+}
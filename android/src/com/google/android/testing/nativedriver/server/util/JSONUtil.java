@@ -1,18 +1,52 @@
 package com.google.android.testing.nativedriver.server.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 
+/**
+ * The {@code ObjectMapper} and {@code JsonFactory} shared by the server.
+ *
+ * <p>Building an {@code ObjectMapper} is expensive, and it caches the
+ * serializers it finds for each class. A mapper is thread-safe once
+ * configured, so a single instance is used everywhere. Methods which write
+ * to or read from a stream leave it open; the caller owns it.
+ */
 public class JSONUtil {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    MAPPER.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    MAPPER.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+  }
+
+  /**
+   * Returns the shared mapper. It must not be reconfigured.
+   */
+  public static ObjectMapper getObjectMapper() {
+    return MAPPER;
+  }
+
+  /**
+   * Returns the factory of the shared mapper, for writing or reading JSON
+   * one token at a time.
+   */
+  public static JsonFactory getJsonFactory() {
+    return MAPPER.getJsonFactory();
+  }
+
   public static String toJSON(Object obj) {
 //    String json = JSON.encode(obj);
-    ObjectMapper objectMapper = new ObjectMapper();
     String json = "";
     try {
-      json = objectMapper.writeValueAsString(obj);
+      json = MAPPER.writeValueAsString(obj);
     } catch (JsonGenerationException e) {
       e.printStackTrace();
     } catch (JsonMappingException e) {
@@ -22,4 +56,21 @@ public class JSONUtil {
     }
     return json;
   }
+
+  /**
+   * Writes the given value as UTF-8 encoded JSON, without building it as a
+   * {@code String} first.
+   */
+  public static void writeJSON(Object obj, OutputStream output)
+      throws IOException {
+    MAPPER.writeValue(output, obj);
+  }
+
+  /**
+   * Writes the given value as JSON, without building it as a {@code String}
+   * first.
+   */
+  public static void writeJSON(Object obj, Writer writer) throws IOException {
+    MAPPER.writeValue(writer, obj);
+  }
 }
@@ -0,0 +1,61 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver;
+
+import java.util.Arrays;
+
+/**
+ * The timing helpers shared by the benchmarks of the test tree.
+ */
+public final class Benchmarks {
+  /**
+   * A single run of a benchmarked operation.
+   */
+  public interface Case {
+    void run() throws Exception;
+  }
+
+  private Benchmarks() {
+  }
+
+  /**
+   * Runs the case the given number of times to warm up, then the same number
+   * of times again, and returns the median time of the timed runs in
+   * nanoseconds.
+   */
+  public static long median(int iterations, Case benchmark) throws Exception {
+    for (int i = 0; i < iterations; i++) {
+      benchmark.run();
+    }
+    long[] times = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      benchmark.run();
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+    return times[iterations / 2];
+  }
+
+  /**
+   * Prints the given time, in nanoseconds, in milliseconds after the name.
+   */
+  public static void report(String name, long nanos) {
+    System.out.println(String.format("%-40s %10.3f ms", name, nanos / 1e6));
+  }
+}
@@ -0,0 +1,292 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link AdbHostClient} against a fake ADB server which speaks the host
+ * protocol on a local port.
+ */
+public class AdbHostClientTest extends TestCase {
+  private static final String SERIAL = "emulator-5554";
+
+  private FakeAdbServer server;
+
+  /**
+   * A minimal ADB server. It accepts {@code host:version}, transport requests
+   * for {@link #SERIAL}, {@code shell:} commands (echoing the command line)
+   * and {@code sync:} pulls of files registered in {@link #files}. A command
+   * ending with {@code echo $?} also prints an exit value, which is 1 if the
+   * command contains "fail".
+   */
+  private static class FakeAdbServer implements Runnable {
+    private final ServerSocket serverSocket;
+    private final List<String> requests
+        = Collections.synchronizedList(Lists.<String>newArrayList());
+    private final Map<String, byte[]> files
+        = Collections.synchronizedMap(Maps.<String, byte[]>newHashMap());
+
+    FakeAdbServer() throws IOException {
+      serverSocket = new ServerSocket(0);
+      Thread thread = new Thread(this, "FakeAdbServer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (IOException exception) {
+          return;
+        }
+        // Pooled connections stay idle until they are used, so each
+        // connection is served on its own thread.
+        Thread connectionThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              serve(socket);
+            } catch (IOException exception) {
+              // The client closed the connection early.
+            } finally {
+              try {
+                socket.close();
+              } catch (IOException ignored) {
+              }
+            }
+          }
+        });
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+      }
+    }
+
+    private void serve(Socket socket) throws IOException {
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      OutputStream output = socket.getOutputStream();
+
+      while (true) {
+        byte[] lengthBytes = new byte[4];
+        if (ByteStreams.read(input, lengthBytes, 0, 4) < 4) {
+          // An idle pooled connection which was closed without a request.
+          return;
+        }
+        byte[] payload = new byte[Integer.parseInt(
+            new String(lengthBytes, Charsets.US_ASCII), 16)];
+        input.readFully(payload);
+        String request = new String(payload, Charsets.UTF_8);
+        requests.add(request);
+
+        if (request.equals("host:version")) {
+          output.write("OKAY0004001f".getBytes(Charsets.US_ASCII));
+          return;
+        } else if (request.equals("host:transport:" + SERIAL)) {
+          output.write("OKAY".getBytes(Charsets.US_ASCII));
+        } else if (request.startsWith("host:transport:")) {
+          fail(output, "device not found");
+          return;
+        } else if (request.startsWith("shell:")) {
+          String command = request.substring(6);
+          output.write("OKAY".getBytes(Charsets.US_ASCII));
+          if (command.endsWith("; echo $?")) {
+            command = command.substring(0, command.length() - 9) + "\r\n"
+                + (command.contains("fail") ? 1 : 0) + "\r\n";
+          }
+          output.write(command.getBytes(Charsets.UTF_8));
+          return;
+        } else if (request.equals("sync:")) {
+          output.write("OKAY".getBytes(Charsets.US_ASCII));
+          serveSync(input, output);
+          return;
+        } else {
+          fail(output, "unknown request");
+          return;
+        }
+      }
+    }
+
+    private void serveSync(DataInputStream input, OutputStream output)
+        throws IOException {
+      byte[] header = new byte[8];
+      input.readFully(header);
+      assertEquals("RECV", new String(header, 0, 4, Charsets.US_ASCII));
+      byte[] path = new byte[littleEndianInt(header, 4)];
+      input.readFully(path);
+      byte[] contents = files.get(new String(path, Charsets.UTF_8));
+
+      if (contents == null) {
+        byte[] message = "No such file".getBytes(Charsets.US_ASCII);
+        output.write(syncHeader("FAIL", message.length));
+        output.write(message);
+        return;
+      }
+
+      for (int offset = 0; offset < contents.length; offset += 64 * 1024) {
+        int length = Math.min(64 * 1024, contents.length - offset);
+        output.write(syncHeader("DATA", length));
+        output.write(contents, offset, length);
+      }
+      output.write(syncHeader("DONE", 0));
+      output.flush();
+
+      input.readFully(header);
+      requests.add(new String(header, 0, 4, Charsets.US_ASCII));
+    }
+
+    private static void fail(OutputStream output, String message)
+        throws IOException {
+      output.write(String.format("FAIL%04x%s", message.length(), message)
+          .getBytes(Charsets.US_ASCII));
+    }
+
+    private static byte[] syncHeader(String id, int length) {
+      byte[] header = Arrays.copyOf(id.getBytes(Charsets.US_ASCII), 8);
+      header[4] = (byte) length;
+      header[5] = (byte) (length >>> 8);
+      header[6] = (byte) (length >>> 16);
+      header[7] = (byte) (length >>> 24);
+      return header;
+    }
+
+    private static int littleEndianInt(byte[] buffer, int offset) {
+      return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8)
+          | ((buffer[offset + 2] & 0xff) << 16)
+          | ((buffer[offset + 3] & 0xff) << 24);
+    }
+  }
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new FakeAdbServer();
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    server.close();
+  }
+
+  private AdbHostClient newClient(String serialNo, int poolSize) {
+    return new AdbHostClient(
+        "127.0.0.1", server.getPort(), serialNo, poolSize, 10000);
+  }
+
+  public void testGetServerVersion() {
+    assertEquals(31, newClient(SERIAL, 0).getServerVersion());
+  }
+
+  public void testExecuteShell_switchesTransportFirst() {
+    byte[] output = newClient(SERIAL, 0).executeShell("input keyevent 4");
+
+    assertEquals("input keyevent 4", new String(output, Charsets.UTF_8));
+    assertEquals(Arrays.asList("host:transport:" + SERIAL,
+        "shell:input keyevent 4"), server.requests);
+  }
+
+  public void testExecuteShell_unknownDeviceThrowsAdbException() {
+    try {
+      newClient("unknown", 0).executeShell("ls");
+      fail();
+    } catch (AdbException exception) {
+      assertTrue(exception.getMessage().contains("device not found"));
+    }
+  }
+
+  public void testPull_readsAllChunks() throws IOException {
+    byte[] contents = new byte[150 * 1024];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte) i;
+    }
+    server.files.put("/dev/graphics/fb0", contents);
+
+    InputStream input = newClient(SERIAL, 0).pull("/dev/graphics/fb0");
+    byte[] pulled = ByteStreams.toByteArray(input);
+    input.close();
+
+    assertTrue(Arrays.equals(contents, pulled));
+  }
+
+  public void testPull_missingFileThrowsAdbException() throws IOException {
+    InputStream input = newClient(SERIAL, 0).pull("/missing");
+    try {
+      input.read();
+      fail();
+    } catch (AdbException exception) {
+      assertTrue(exception.getMessage().contains("No such file"));
+    } finally {
+      input.close();
+    }
+  }
+
+  public void testAdbConnection_checksExitValueOfShellCommands() {
+    AdbConnection adb = new AdbConnection("adb", null, null, null, null,
+        SERIAL, newClient(SERIAL, 0));
+    try {
+      adb.sendKeyEvent(4);
+      assertTrue(server.requests.contains("shell:input keyevent 4; echo $?"));
+
+      try {
+        adb.sendText("fail");
+        fail();
+      } catch (AdbException exception) {
+        assertTrue(exception.getMessage().contains("was 1"));
+      }
+    } finally {
+      adb.close();
+    }
+  }
+
+  public void testPooledSockets_areUsedForConsecutiveCommands() {
+    AdbHostClient client = newClient(SERIAL, 2);
+    try {
+      for (int i = 0; i < 5; i++) {
+        assertEquals("echo " + i,
+            new String(client.executeShell("echo " + i), Charsets.UTF_8));
+      }
+    } finally {
+      client.close();
+    }
+  }
+}
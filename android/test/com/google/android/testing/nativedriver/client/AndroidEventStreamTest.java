@@ -0,0 +1,174 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand;
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+
+/**
+ * Tests {@link AndroidEventStream} against a fake command executor.
+ */
+public class AndroidEventStreamTest extends TestCase {
+  /**
+   * Starts a session, answers baseline polls with sequence number 10, and
+   * answers other polls with the values queued in {@link #polls}, or with no
+   * events after a short wait.
+   */
+  private static class FakeExecutor implements CommandExecutor {
+    private final BlockingQueue<Object> polls
+        = new LinkedBlockingQueue<Object>();
+    private final List<Object> sinceValues
+        = new CopyOnWriteArrayList<Object>();
+
+    @Override
+    public Response execute(Command command) throws IOException {
+      Response response = new Response();
+      response.setSessionId("session");
+      response.setStatus(ErrorCodes.SUCCESS);
+      if (command.getName().equals(DriverCommand.NEW_SESSION)) {
+        response.setValue(Collections.emptyMap());
+      } else if (command.getName().equals(
+          AndroidNativeDriverCommand.POLL_EVENTS)) {
+        Object since = command.getParameters().get(ServerEvents.SINCE);
+        sinceValues.add(since);
+        if (((Number) since).longValue() < 0) {
+          response.setValue(value(10, false));
+        } else {
+          Object polled;
+          try {
+            polled = polls.poll(20, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException exception) {
+            throw new IOException(exception);
+          }
+          if (polled instanceof RuntimeException) {
+            throw (RuntimeException) polled;
+          }
+          response.setValue((polled != null) ? polled
+              : value(((Number) since).longValue(), false));
+        }
+      }
+      return response;
+    }
+  }
+
+  private static Map<String, Object> value(long next, boolean missed,
+      Map<?, ?>... events) {
+    return ImmutableMap.<String, Object>of(ServerEvents.EVENTS,
+        Lists.newArrayList(events), ServerEvents.NEXT, next,
+        ServerEvents.MISSED, missed);
+  }
+
+  private static Map<String, Object> event(long sequence, String type,
+      String activity) {
+    return ImmutableMap.<String, Object>of(ServerEvents.SEQUENCE, sequence,
+        ServerEvents.TYPE, type, ServerEvents.TIME, 1000L,
+        ServerEvents.ACTIVITY, activity);
+  }
+
+  private FakeExecutor executor;
+  private AndroidEventStream stream;
+
+  @Override
+  @SuppressWarnings("deprecation")
+  protected void setUp() {
+    executor = new FakeExecutor();
+    stream = AndroidNativeDriver.withExecutor(executor).events();
+  }
+
+  @Override
+  protected void tearDown() {
+    stream.close();
+  }
+
+  public void testActivityResumed_completesWithMatchingEvent()
+      throws Exception {
+    Future<AndroidEvent> resumed = stream.activityResumed("com.example.B");
+    executor.polls.add(value(12, false,
+        event(11, ServerEvents.ACTIVITY_RESUMED, "com.example.A"),
+        event(12, ServerEvents.ACTIVITY_RESUMED, "com.example.B")));
+
+    AndroidEvent event = resumed.get(5, TimeUnit.SECONDS);
+    assertEquals(12, event.getSequence());
+    assertEquals("com.example.B", event.getActivityClass());
+    assertEquals(-1L, executor.sinceValues.get(0));
+    assertEquals(10L, executor.sinceValues.get(1));
+  }
+
+  public void testListener_receivesEventsInOrder() throws Exception {
+    final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+    stream.addListener(new AndroidEventListener() {
+      @Override
+      public void onEvent(AndroidEvent event) {
+        received.add(event.getSequence());
+      }
+
+      @Override
+      public void onEventsMissed() {
+        received.add("missed");
+      }
+    });
+    executor.polls.add(value(21, true,
+        event(20, ServerEvents.ACTIVITY_CREATED, "A"),
+        event(21, ServerEvents.ACTIVITY_RESUMED, "A")));
+
+    assertEquals("missed", received.poll(5, TimeUnit.SECONDS));
+    assertEquals(20L, received.poll(5, TimeUnit.SECONDS));
+    assertEquals(21L, received.poll(5, TimeUnit.SECONDS));
+  }
+
+  public void testFailedPoll_failsPendingFutures() throws Exception {
+    Future<AndroidEvent> resumed = stream.activityResumed("A");
+    executor.polls.add(new WebDriverException("session ended"));
+
+    try {
+      resumed.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof WebDriverException);
+    }
+  }
+
+  public void testClose_cancelsPendingFutures() {
+    Future<AndroidEvent> resumed = stream.activityResumed("A");
+    stream.close();
+
+    assertTrue(resumed.isCancelled());
+  }
+}
@@ -0,0 +1,136 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.AndroidNativeDriverCommand;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+
+/**
+ * Tests {@link CommandBatch} against a fake command executor.
+ */
+public class CommandBatchTest extends TestCase {
+  /**
+   * Starts a session, and answers batch commands with {@link #results}.
+   */
+  private static class FakeExecutor implements CommandExecutor {
+    private final List<Command> batches = Lists.newArrayList();
+    private List<Map<String, Object>> results = Collections.emptyList();
+
+    @Override
+    public Response execute(Command command) {
+      Response response = new Response();
+      response.setSessionId("session");
+      response.setStatus(ErrorCodes.SUCCESS);
+      if (command.getName().equals(DriverCommand.NEW_SESSION)) {
+        response.setValue(Collections.emptyMap());
+      } else if (command.getName().equals(AndroidNativeDriverCommand.BATCH)) {
+        batches.add(command);
+        response.setValue(results);
+      }
+      return response;
+    }
+  }
+
+  private static Map<String, Object> result(int status, Object value) {
+    return ImmutableMap.<String, Object>of("status", status, "value", value);
+  }
+
+  private FakeExecutor executor;
+  private CommandBatch batch;
+
+  @Override
+  @SuppressWarnings("deprecation")
+  protected void setUp() {
+    executor = new FakeExecutor();
+    batch = AndroidNativeDriver.withExecutor(executor).newBatch();
+  }
+
+  public void testRef_rendersIndexAndItem() {
+    CommandBatch.Ref first = batch.findElements("id", "list");
+    CommandBatch.Ref second = batch.findElement("id", "button");
+
+    assertEquals("@0", first.toString());
+    assertEquals("@0.2", first.item(2).toString());
+    assertEquals("@1", second.toString());
+    assertEquals(1, second.getIndex());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testExecute_sendsCommandsWithReferences() {
+    CommandBatch.Ref field = batch.findElement("id", "name");
+    batch.sendKeys(field, "abc", "def");
+    batch.withStopOnError(false).execute();
+
+    Map<String, ?> parameters = executor.batches.get(0).getParameters();
+    assertEquals(false, parameters.get("stopOnError"));
+    List<Map<String, Object>> commands
+        = (List<Map<String, Object>>) parameters.get("commands");
+    assertEquals(2, commands.size());
+    assertEquals("POST", commands.get(1).get("method"));
+    assertEquals("/session/:sessionId/element/:id/value",
+        commands.get(1).get("path"));
+    assertEquals(ImmutableMap.of("id", "@0",
+        "value", Arrays.asList("abc", "def")),
+        commands.get(1).get("parameters"));
+  }
+
+  public void testExecute_convertsElements() {
+    executor.results = Arrays.asList(
+        result(0, ImmutableMap.of("ELEMENT", "7")), result(0, "text"));
+    batch.getText(batch.findElement("id", "label"));
+
+    List<Object> values = batch.execute();
+
+    assertEquals(2, values.size());
+    assertTrue(values.get(0) instanceof AndroidNativeElement);
+    assertEquals("7", ((AndroidNativeElement) values.get(0)).getId());
+    assertEquals("text", values.get(1));
+  }
+
+  public void testExecute_throwsFirstFailure() {
+    executor.results = Arrays.asList(result(ErrorCodes.NO_SUCH_ELEMENT,
+        ImmutableMap.of("message", "Could not find element")));
+    batch.click(batch.findElement("id", "missing"));
+
+    try {
+      batch.execute();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  public void testExecute_emptyBatchSendsNothing() {
+    assertTrue(batch.execute().isEmpty());
+    assertTrue(executor.batches.isEmpty());
+  }
+}
@@ -0,0 +1,80 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.ElementSelector;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Tests the JSON form of {@link ElementSelector}.
+ */
+public class ElementSelectorTest extends TestCase {
+  private static Map<String, Object> condition(String using, String value) {
+    return ImmutableMap.<String, Object>of("using", using, "value", value);
+  }
+
+  public void testBasicCondition() {
+    assertEquals(condition("text", "OK"), ElementSelector.text("OK").toMap());
+    assertEquals(condition("class name", ClassNames.BUTTON),
+        ElementSelector.className(ClassNames.BUTTON).toMap());
+    assertEquals(condition("text matching", "O.*"),
+        ElementSelector.textMatching("O.*").toMap());
+    assertEquals(condition("partial text ignoring case", "ok"),
+        ElementSelector.partialTextIgnoringCase("ok").toMap());
+  }
+
+  public void testCompositeConditions() {
+    ElementSelector selector = ElementSelector.id("ok")
+        .or(ElementSelector.partialText("Cancel"))
+        .childOf(ElementSelector.className("android.widget.LinearLayout"))
+        .nth(2);
+
+    assertEquals(ImmutableMap.of("nth", 2, "of", ImmutableMap.of("and",
+        ImmutableList.of(
+            ImmutableMap.of("or", ImmutableList.of(
+                condition("id", "ok"), condition("partial text", "Cancel"))),
+            ImmutableMap.of("parent",
+                condition("class name", "android.widget.LinearLayout"))))),
+        selector.toMap());
+  }
+
+  public void testToJson() throws Exception {
+    JSONObject json = new JSONObject(ElementSelector.not(
+        ElementSelector.text("OK")).inside(ElementSelector.id("dialog"))
+        .toJson());
+
+    JSONObject ancestor = json.getJSONArray("and").getJSONObject(1)
+        .getJSONObject("ancestor");
+    assertEquals("dialog", ancestor.getString("value"));
+  }
+
+  public void testOnlyOutermostSelectorMayHaveIndex() {
+    try {
+      ElementSelector.text("OK").nth(0).and(ElementSelector.id("ok"));
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import static com.google.android.testing.nativedriver.Benchmarks.median;
+import static com.google.android.testing.nativedriver.Benchmarks.report;
+
+import com.google.android.testing.nativedriver.Benchmarks.Case;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the time taken to convert a WVGA frame of each supported bit depth
+ * with the per-pixel conversion of {@link FrameBufferFormat}, with a
+ * {@link FrameBufferConverter} on the calling thread, and with one converting
+ * in parallel on all processors.
+ *
+ * <p>Run with {@code java FrameBufferConverterBenchmark [iterations]}; the
+ * median time of each case is printed.
+ */
+public class FrameBufferConverterBenchmark {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  public static void main(String[] args) throws Exception {
+    int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+    int processors = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(processors);
+    try {
+      for (int bitsPerPixel : new int[] {15, 16, 32}) {
+        final FrameBufferFormat format
+            = new FrameBufferFormat(WIDTH, HEIGHT, bitsPerPixel);
+        final byte[] frame
+            = new byte[WIDTH * HEIGHT * ((bitsPerPixel == 32) ? 4 : 2)];
+        new Random(bitsPerPixel).nextBytes(frame);
+        final BufferedImage image
+            = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        final FrameBufferConverter serial = new FrameBufferConverter(format);
+        final FrameBufferConverter parallel
+            = new FrameBufferConverter(format, executor, processors);
+
+        report(bitsPerPixel + " bpp: per pixel", median(iterations,
+            new Case() {
+              @Override
+              public void run() {
+                format.copyFrameBufferToImagePerPixel(
+                    new ByteArrayInputStream(frame), image);
+              }
+            }));
+        report(bitsPerPixel + " bpp: converter", median(iterations,
+            new Case() {
+              @Override
+              public void run() {
+                serial.convert(new ByteArrayInputStream(frame), image);
+              }
+            }));
+        report(bitsPerPixel + " bpp: converter x" + processors,
+            median(iterations, new Case() {
+              @Override
+              public void run() {
+                parallel.convert(new ByteArrayInputStream(frame), image);
+              }
+            }));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Verifies that {@link FrameBufferConverter} produces the same pixels as the
+ * per-pixel conversion of {@link FrameBufferFormat}.
+ */
+public class FrameBufferConverterTest extends TestCase {
+  private static final int WIDTH = 120;
+  private static final int HEIGHT = 300;
+
+  private static byte[] randomFrame(int bitsPerPixel, long seed) {
+    byte[] frame = new byte[WIDTH * HEIGHT * ((bitsPerPixel == 32) ? 4 : 2)];
+    new Random(seed).nextBytes(frame);
+    return frame;
+  }
+
+  private static int[] pixelsOf(BufferedImage image) {
+    return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+  }
+
+  private void assertSameAsPerPixel(int bitsPerPixel,
+      FrameBufferConverter converter, int imageType) {
+    FrameBufferFormat format = converter.getFormat();
+    byte[] frame = randomFrame(bitsPerPixel, 1);
+
+    BufferedImage expected
+        = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    format.copyFrameBufferToImagePerPixel(
+        new ByteArrayInputStream(frame), expected);
+
+    BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, imageType);
+    // Convert twice to make sure the reused buffer does not leak old data.
+    converter.convert(
+        new ByteArrayInputStream(randomFrame(bitsPerPixel, 2)), actual);
+    converter.convert(new ByteArrayInputStream(frame), actual);
+
+    int[] expectedPixels = pixelsOf(expected);
+    int[] actualPixels = pixelsOf(actual);
+    // Images without alpha drop the alpha channel of 32-bit frames.
+    int mask = (imageType == BufferedImage.TYPE_INT_ARGB) ? -1 : 0xffffff;
+    for (int i = 0; i < expectedPixels.length; i++) {
+      assertEquals("pixel " + i, expectedPixels[i] & mask,
+          actualPixels[i] & mask);
+    }
+  }
+
+  public void testConvert_matchesPerPixelConversion() {
+    for (int bitsPerPixel : new int[] {15, 16, 32}) {
+      FrameBufferFormat format
+          = new FrameBufferFormat(WIDTH, HEIGHT, bitsPerPixel);
+      assertSameAsPerPixel(bitsPerPixel, new FrameBufferConverter(format),
+          BufferedImage.TYPE_INT_ARGB);
+    }
+  }
+
+  public void testConvert_inParallelMatchesPerPixelConversion() {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (int bitsPerPixel : new int[] {15, 16, 32}) {
+        FrameBufferFormat format
+            = new FrameBufferFormat(WIDTH, HEIGHT, bitsPerPixel);
+        assertSameAsPerPixel(bitsPerPixel,
+            new FrameBufferConverter(format, executor, 3),
+            BufferedImage.TYPE_INT_ARGB);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testConvert_toImageWithoutIntArray() {
+    FrameBufferFormat format = new FrameBufferFormat(WIDTH, HEIGHT, 16);
+    assertSameAsPerPixel(16, new FrameBufferConverter(format),
+        BufferedImage.TYPE_3BYTE_BGR);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.Gesture;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+import org.openqa.selenium.remote.BeanToJsonConverter;
+import org.openqa.selenium.remote.JsonToBeanConverter;
+
+/**
+ * Tests the paths and the JSON form of {@link Gesture}.
+ */
+public class GestureTest extends TestCase {
+  private static void assertPosition(float x, float y, float[] position) {
+    assertEquals(x, position[0], 0.001f);
+    assertEquals(y, position[1], 0.001f);
+  }
+
+  public void testPositionIsInterpolatedAlongPath() {
+    Gesture.Path path = Gesture.path(0, 0)
+        .moveTo(100, 0, 100)
+        .hold(50)
+        .moveTo(100, 200, 0);
+
+    assertEquals(150, path.getDuration());
+    assertPosition(0, 0, path.getPositionAt(-10));
+    assertPosition(25, 0, path.getPositionAt(25));
+    assertPosition(100, 0, path.getPositionAt(100));
+    assertPosition(100, 0, path.getPositionAt(120));
+    assertPosition(100, 200, path.getPositionAt(150));
+    assertPosition(100, 200, path.getPositionAt(1000));
+  }
+
+  public void testDurationIncludesDelays() {
+    Gesture gesture = Gesture.of(
+        Gesture.path(0, 0).moveTo(10, 10, 100),
+        Gesture.path(50, 50).after(80).hold(40));
+
+    assertEquals(120, gesture.getDuration());
+  }
+
+  public void testPinchMovesTwoPointersAroundCenter() {
+    Gesture gesture = Gesture.pinch(200, 300, 100, 300, 250);
+
+    assertEquals(2, gesture.getPaths().size());
+    Gesture.Path left = gesture.getPaths().get(0);
+    Gesture.Path right = gesture.getPaths().get(1);
+    assertPosition(150, 300, left.getPositionAt(0));
+    assertPosition(50, 300, left.getPositionAt(250));
+    assertPosition(250, 300, right.getPositionAt(0));
+    assertPosition(350, 300, right.getPositionAt(250));
+  }
+
+  public void testParameters() {
+    Gesture gesture = Gesture.of(
+        Gesture.path(1, 2).moveTo(3, 4, 50),
+        Gesture.path(5, 6).after(20));
+
+    assertEquals(ImmutableMap.of("pointers", ImmutableList.of(
+        ImmutableMap.of("delay", 0L, "x", 1, "y", 2, "moves",
+            ImmutableList.of(ImmutableMap.of("x", 3, "y", 4, "duration", 50L))),
+        ImmutableMap.of("delay", 20L, "x", 5, "y", 6, "moves",
+            ImmutableList.of()))),
+        gesture.toParameters());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testFromParameters_readsJsonForm() {
+    Gesture gesture = Gesture.of(
+        Gesture.path(10, 20).after(30).moveTo(40, 50, 60).hold(70));
+    String json = new BeanToJsonConverter().convert(gesture.toParameters());
+
+    Gesture read = Gesture.fromParameters(
+        new JsonToBeanConverter().convert(Map.class, json));
+
+    assertEquals(gesture.toParameters(), read.toParameters());
+  }
+
+  public void testFromParameters_rejectsInvalidGestures() {
+    for (Map<String, Object> parameters : ImmutableList.of(
+        ImmutableMap.<String, Object>of(),
+        ImmutableMap.<String, Object>of("pointers", ImmutableList.of()),
+        ImmutableMap.<String, Object>of("pointers", ImmutableList.of(
+            ImmutableMap.of("x", 1))),
+        ImmutableMap.<String, Object>of("pointers", ImmutableList.of(
+            ImmutableMap.of("x", 1, "y", 2, "moves", ImmutableList.of(
+                ImmutableMap.of("x", 1, "y", 2, "duration", -1))))))) {
+      try {
+        Gesture.fromParameters(parameters);
+        fail("Expected IllegalArgumentException: " + parameters);
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
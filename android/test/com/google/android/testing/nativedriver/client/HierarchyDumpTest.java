@@ -0,0 +1,120 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.common.HierarchyDiff;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link HierarchyDump}.
+ */
+public class HierarchyDumpTest extends TestCase {
+  private static Map<String, Object> node(String uid, String tag, String m) {
+    return ImmutableMap.<String, Object>of(
+        HierarchyDiff.UID, uid, "tag", tag, "m", m);
+  }
+
+  private static Map<String, Object> diff(String version, boolean full,
+      List<?> added, List<?> changed, List<?> removed) {
+    Map<String, Object> diff = Maps.newHashMap();
+    diff.put(HierarchyDiff.VERSION, version);
+    diff.put(HierarchyDiff.FULL, full);
+    diff.put(HierarchyDiff.ADDED, added);
+    diff.put(HierarchyDiff.CHANGED, changed);
+    diff.put(HierarchyDiff.REMOVED, removed);
+    return diff;
+  }
+
+  private HierarchyDump newFullDump() {
+    HierarchyDump dump = new HierarchyDump();
+    dump.applyDiff(diff("v1", true, ImmutableList.of(
+        node("", "Activity", "uid"),
+        node("/0", "LinearLayout", "uid"),
+        node("/0/0", "TextView", "text"),
+        node("/0/1", "Button", "id")),
+        Collections.emptyList(), Collections.emptyList()));
+    return dump;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> children(Map<String, Object> tree) {
+    return (List<Map<String, Object>>) tree.get("children");
+  }
+
+  public void testFullDump_buildsTree() {
+    HierarchyDump dump = newFullDump();
+    assertEquals("v1", dump.getVersion());
+
+    Map<String, Object> tree = dump.toTree();
+    assertEquals("Activity", tree.get("tag"));
+    assertEquals("", tree.get("uid"));
+    Map<String, Object> layout = children(tree).get(0);
+    assertEquals("/0", layout.get("uid"));
+    assertEquals("TextView", children(layout).get(0).get("tag"));
+    assertFalse(children(layout).get(0).containsKey("uid"));
+    assertEquals("Button", children(layout).get(1).get("tag"));
+  }
+
+  public void testApplyDiff_patchesNodes() {
+    HierarchyDump dump = newFullDump();
+    dump.applyDiff(diff("v2", false,
+        ImmutableList.of(node("/0/2", "CheckBox", "uid")),
+        ImmutableList.of(node("/0/0", "EditText", "text")),
+        ImmutableList.of("/0/1")));
+
+    assertEquals("v2", dump.getVersion());
+    List<Map<String, Object>> items = children(children(dump.toTree()).get(0));
+    assertEquals(2, items.size());
+    assertEquals("EditText", items.get(0).get("tag"));
+    assertEquals("CheckBox", items.get(1).get("tag"));
+  }
+
+  public void testFullDiff_replacesCopy() {
+    HierarchyDump dump = newFullDump();
+    dump.applyDiff(diff("v3", true,
+        ImmutableList.of(node("", "OtherActivity", "uid")),
+        Collections.emptyList(), Collections.emptyList()));
+
+    assertEquals(1, dump.getNodes().size());
+    assertTrue(children(dump.toTree()).isEmpty());
+  }
+
+  public void testSiblings_areOrderedByIndex() {
+    HierarchyDump dump = new HierarchyDump();
+    ImmutableList.Builder<Object> added = ImmutableList.builder();
+    added.add(node("", "Activity", "uid"));
+    for (int i = 11; i >= 0; i--) {
+      added.add(node("/" + i, "View" + i, "uid"));
+    }
+    dump.applyDiff(diff("v1", true, added.build(),
+        Collections.emptyList(), Collections.emptyList()));
+
+    List<Map<String, Object>> views = children(dump.toTree());
+    for (int i = 0; i < 12; i++) {
+      assertEquals("View" + i, views.get(i).get("tag"));
+    }
+  }
+}
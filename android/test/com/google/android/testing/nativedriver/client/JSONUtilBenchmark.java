@@ -0,0 +1,169 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import static com.google.android.testing.nativedriver.Benchmarks.median;
+import static com.google.android.testing.nativedriver.Benchmarks.report;
+
+import com.google.android.testing.nativedriver.Benchmarks.Case;
+import com.google.android.testing.nativedriver.client.util.JSONUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares writing and reading a view hierarchy dump of 5000 elements with a
+ * new {@code ObjectMapper} per call, as {@link JSONUtil} used to, against the
+ * shared mapper, with and without building a {@code String}. The dump has the
+ * fields and the shape of the dumps of {@code AndroidNativeDriver.getDump}.
+ *
+ * <p>Run with {@code java JSONUtilBenchmark [iterations]}; the median time of
+ * each case is printed.
+ */
+public class JSONUtilBenchmark {
+  private static final int NODES = 5000;
+  private static final int CHILDREN_PER_NODE = 6;
+  private static final String[] TAGS = {"LinearLayout", "TextView",
+      "ImageView", "Button", "EditText", "FrameLayout"};
+
+  private static final OutputStream NULL_OUTPUT = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
+
+  private static int created;
+
+  /**
+   * Returns a dump of the given number of elements, filled breadth first so
+   * that the hierarchy is as deep as in a typical list-heavy screen.
+   */
+  static Map<String, Object> newDump(int nodes) {
+    List<Map<String, Object>> queue = Lists.newLinkedList();
+    created = 0;
+    Map<String, Object> root = newNode("", 0);
+    queue.add(root);
+    while (created < nodes) {
+      Map<String, Object> parent = queue.remove(0);
+      @SuppressWarnings("unchecked")
+      List<Object> children = (List<Object>) parent.get("children");
+      for (int i = 0; i < CHILDREN_PER_NODE && created < nodes; i++) {
+        Map<String, Object> child
+            = newNode(parent.get("uid") + "/" + i, children.size());
+        children.add(child);
+        queue.add(child);
+      }
+    }
+    return root;
+  }
+
+  private static Map<String, Object> newNode(String uid, int index) {
+    int n = created++;
+    Map<String, Object> node = Maps.newLinkedHashMap();
+    if (n % 3 == 0) {
+      node.put("id", "item_" + (n % 50) + "[" + (n / 50) + "]");
+    }
+    if (n % 2 == 0) {
+      node.put("text", "Row " + n + ": the quick brown fox jumps");
+    }
+    node.put("tag", TAGS[n % TAGS.length] + "Element");
+    node.put("x", (index * 80) % 480);
+    node.put("y", (n * 48) % 800);
+    node.put("height", 48);
+    node.put("width", 480 - index * 10);
+    node.put("method", node.containsKey("id") ? "id" : "uid");
+    node.put("uid", uid);
+    node.put("children", Lists.newArrayList());
+    return node;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+    final Map<String, Object> dump = newDump(NODES);
+    final String json = JSONUtil.toJSON(dump);
+    final byte[] bytes = json.getBytes("UTF-8");
+    System.out.println(String.format("%d nodes, %d bytes of JSON", NODES,
+        bytes.length));
+
+    report("write: new ObjectMapper, String", median(iterations, new Case() {
+      @Override
+      public void run() throws IOException {
+        new ObjectMapper().writeValueAsString(dump);
+      }
+    }));
+    report("write: shared, String", median(iterations, new Case() {
+      @Override
+      public void run() {
+        JSONUtil.toJSON(dump);
+      }
+    }));
+    report("write: shared, OutputStream", median(iterations, new Case() {
+      @Override
+      public void run() throws IOException {
+        JSONUtil.writeJSON(dump, NULL_OUTPUT);
+      }
+    }));
+    report("read: new ObjectMapper, String", median(iterations, new Case() {
+      @Override
+      public void run() throws IOException {
+        new ObjectMapper().readValue(json, Map.class);
+      }
+    }));
+    report("read: shared, String", median(iterations, new Case() {
+      @Override
+      public void run() {
+        JSONUtil.fromJSON(json, Map.class);
+      }
+    }));
+    report("read: shared, InputStream", median(iterations, new Case() {
+      @Override
+      public void run() throws IOException {
+        JSONUtil.readJSON(new ByteArrayInputStream(bytes), Map.class);
+      }
+    }));
+    report("write+read: new ObjectMapper, String",
+        median(iterations, new Case() {
+          @Override
+          public void run() throws IOException {
+            new ObjectMapper().readValue(
+                new ObjectMapper().writeValueAsString(dump), Map.class);
+          }
+        }));
+    report("write+read: shared, stream", median(iterations, new Case() {
+      @Override
+      public void run() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+        JSONUtil.writeJSON(dump, output);
+        JSONUtil.readJSON(
+            new ByteArrayInputStream(output.toByteArray()), Map.class);
+      }
+    }));
+  }
+}
@@ -0,0 +1,82 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import com.google.android.testing.nativedriver.client.util.JSONUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * Tests the shared JSON serialization of the client {@link JSONUtil}.
+ */
+public class JSONUtilTest extends TestCase {
+  private static final Map<String, Object> DUMP
+      = ImmutableMap.<String, Object>of(
+          "tag", "LinearLayout", "x", 0, "children", ImmutableList.of(
+              ImmutableMap.of("id", "ok", "text", "\u00c9t\u00e9",
+                  "children", ImmutableList.of())));
+
+  private static class CloseTrackingOutputStream extends ByteArrayOutputStream {
+    boolean closed;
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+
+  public void testWriteAndRead_roundTripThroughStreams() throws IOException {
+    CloseTrackingOutputStream output = new CloseTrackingOutputStream();
+
+    JSONUtil.writeJSON(DUMP, output);
+
+    assertFalse(output.closed);
+    assertEquals(JSONUtil.toJSON(DUMP), output.toString("UTF-8"));
+    assertEquals(DUMP, JSONUtil.readJSON(
+        new ByteArrayInputStream(output.toByteArray()), Map.class));
+  }
+
+  public void testWriteAndRead_roundTripThroughCharacterStreams()
+      throws IOException {
+    StringWriter writer = new StringWriter();
+
+    JSONUtil.writeJSON(DUMP, writer);
+
+    assertEquals(DUMP, JSONUtil.readJSON(
+        new StringReader(writer.toString()), Map.class));
+    assertEquals(DUMP, JSONUtil.fromJSON(writer.toString(), Object.class));
+  }
+
+  public void testFromJson_rejectsInvalidJson() {
+    try {
+      JSONUtil.fromJSON("{\"children\": [", Map.class);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.client;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Tests the screenshot formats written by {@link ScreenshotFormat}.
+ */
+public class ScreenshotFormatTest extends TestCase {
+  private static final int WIDTH = 70;
+  private static final int HEIGHT = 40;
+
+  private BufferedImage image;
+
+  @Override
+  protected void setUp() {
+    image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Random random = new Random(0);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+  }
+
+  private byte[] write(ScreenshotFormat format) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    format.write(image, bytes);
+    return bytes.toByteArray();
+  }
+
+  public void testPng_isReadableByImageIo() throws IOException {
+    for (int level : new int[] {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED,
+        Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(
+          write(ScreenshotFormat.png(level))));
+
+      assertEquals(WIDTH, decoded.getWidth());
+      assertEquals(HEIGHT, decoded.getHeight());
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < WIDTH; x++) {
+          assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+        }
+      }
+    }
+  }
+
+  public void testRaw_writesSizeAndArgbPixels() throws IOException {
+    DataInputStream raw = new DataInputStream(
+        new ByteArrayInputStream(write(ScreenshotFormat.raw())));
+
+    assertEquals(WIDTH, raw.readInt());
+    assertEquals(HEIGHT, raw.readInt());
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        assertEquals(image.getRGB(x, y), raw.readInt());
+      }
+    }
+    assertEquals(-1, raw.read());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import com.google.android.testing.nativedriver.common.ServerEvents;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the cursors, coalescing and overflow of {@link EventLog}.
+ */
+public class EventLogTest extends TestCase {
+  private EventLog log;
+
+  @Override
+  protected void setUp() {
+    log = new EventLog(3);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> events(Map<String, Object> poll) {
+    return (List<Map<String, Object>>) poll.get(ServerEvents.EVENTS);
+  }
+
+  private static List<Long> sequences(Map<String, Object> poll) {
+    List<Long> sequences = Lists.newArrayList();
+    for (Map<String, Object> event : events(poll)) {
+      sequences.add((Long) event.get(ServerEvents.SEQUENCE));
+    }
+    return sequences;
+  }
+
+  private Map<String, Object> poll(String clientId, long since)
+      throws InterruptedException {
+    return log.poll(clientId, since, 10, 0);
+  }
+
+  public void testClients_haveSeparateCursors() throws Exception {
+    log.record(ServerEvents.ACTIVITY_CREATED, null);
+    log.record(ServerEvents.ACTIVITY_RESUMED, null);
+
+    Map<String, Object> first = poll("a", 0);
+    assertEquals(Lists.newArrayList(1L, 2L), sequences(first));
+    assertEquals(2L, first.get(ServerEvents.NEXT));
+    assertEquals(Lists.newArrayList(1L, 2L), sequences(poll("b", 0)));
+
+    log.record(ServerEvents.ACTIVITY_STOPPED, null);
+    assertEquals(Lists.newArrayList(3L), sequences(poll("a", 2)));
+    assertEquals(Lists.newArrayList(3L), sequences(poll("b", 2)));
+    assertEquals(Lists.<Long>newArrayList(), sequences(poll("a", 3)));
+  }
+
+  public void testPoll_limitsNumberOfEvents() throws Exception {
+    log.record(ServerEvents.ACTIVITY_CREATED, null);
+    log.record(ServerEvents.ACTIVITY_RESUMED, null);
+
+    Map<String, Object> result = log.poll("a", 0, 1, 0);
+    assertEquals(Lists.newArrayList(1L), sequences(result));
+    assertEquals(1L, result.get(ServerEvents.NEXT));
+    assertEquals(Boolean.FALSE, result.get(ServerEvents.MISSED));
+  }
+
+  public void testRecordCoalesced_mergesUndeliveredEvents() throws Exception {
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+
+    List<Map<String, Object>> found = events(poll("a", 0));
+    assertEquals(1, found.size());
+    assertEquals(3, found.get(0).get(ServerEvents.COUNT));
+    assertEquals(1L, log.getLastSequence());
+  }
+
+  public void testRecordCoalesced_stopsOnceAnyClientReceivedEvent()
+      throws Exception {
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+    // Only one of the two clients has received the event.
+    Map<String, Object> delivered = poll("a", 0);
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+
+    assertEquals(2L, log.getLastSequence());
+    assertEquals(1, events(delivered).get(0).get(ServerEvents.COUNT));
+    Map<String, Object> result = poll("b", 0);
+    assertEquals(Lists.newArrayList(1L, 2L), sequences(result));
+    assertEquals(1, events(result).get(1).get(ServerEvents.COUNT));
+  }
+
+  public void testRecordCoalesced_mergesAgainOnceClientIsGone()
+      throws Exception {
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+    poll("a", 0);
+    log.retainClients(ImmutableSet.of("b"));
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+
+    assertEquals(1L, log.getLastSequence());
+    assertEquals(2, events(poll("b", 0)).get(0).get(ServerEvents.COUNT));
+  }
+
+  public void testRecordCoalesced_doesNotMergeOtherTypes() throws Exception {
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+    log.record(ServerEvents.FOCUS_CHANGED, null);
+    log.recordCoalesced(ServerEvents.LAYOUT_CHANGED);
+
+    assertEquals(3L, log.getLastSequence());
+  }
+
+  public void testPoll_reportsMissedEventsWhenLogOverflows()
+      throws Exception {
+    for (int i = 0; i < 5; i++) {
+      log.record(ServerEvents.FOCUS_CHANGED, null);
+    }
+
+    Map<String, Object> result = poll("a", 0);
+    assertEquals(Lists.newArrayList(3L, 4L, 5L), sequences(result));
+    assertEquals(Boolean.TRUE, result.get(ServerEvents.MISSED));
+
+    assertEquals(Boolean.FALSE, poll("a", 5).get(ServerEvents.MISSED));
+    assertEquals(Boolean.FALSE, poll("b", 2).get(ServerEvents.MISSED));
+  }
+
+  public void testPoll_returnsAtOnceWithZeroTimeout() throws Exception {
+    long start = System.currentTimeMillis();
+    Map<String, Object> result = poll("a", 0);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertTrue(events(result).isEmpty());
+    assertEquals(0L, result.get(ServerEvents.NEXT));
+
+    result = log.poll("a", -1, 10, 60000);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertTrue(events(result).isEmpty());
+  }
+
+  public void testPoll_waitsForNextEvent() throws Exception {
+    Thread recorder = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException exception) {
+          return;
+        }
+        log.record(ServerEvents.WINDOWS_CHANGED, null);
+      }
+    };
+    recorder.start();
+
+    Map<String, Object> result = log.poll("a", 0, 10, 10000);
+    recorder.join();
+    assertEquals(Lists.newArrayList(1L), sequences(result));
+  }
+}
@@ -0,0 +1,186 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import static com.google.android.testing.nativedriver.Benchmarks.median;
+import static com.google.android.testing.nativedriver.Benchmarks.report;
+
+import com.google.android.testing.nativedriver.Benchmarks.Case;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compares lookups of view ids with {@link RClassReader} against reflection
+ * on every lookup, as it used to do. The lookups go to two generated R
+ * classes shaped like {@code android.R} and the R class of an application,
+ * with {@value #FRAMEWORK_IDS} and {@value #APPLICATION_IDS} ids. A quarter
+ * of the names looked up do not exist.
+ *
+ * <p>The cold case creates a reader and makes its first lookup, which reads
+ * the fields of the {@code id} classes; the classes themselves are already
+ * loaded. The other cases make {@value #LOOKUPS} lookups each.
+ *
+ * <p>Run with {@code java RClassReaderBenchmark [iterations]}; the median
+ * time of each case is printed. A JDK is needed to compile the R classes.
+ */
+public class RClassReaderBenchmark {
+  private static final int FRAMEWORK_IDS = 500;
+  private static final int APPLICATION_IDS = 3000;
+  private static final int LOOKUPS = 1000;
+  private static final String FRAMEWORK_R = "benchmark.framework.R";
+  private static final String APPLICATION_R = "benchmark.app.R";
+
+  /**
+   * Writes the source of an R class with an {@code id} and a {@code layout}
+   * class, whose fields are numbered from the given base value.
+   */
+  private static void writeRClass(File directory, String className,
+      String prefix, int ids, int base) throws IOException {
+    int dot = className.lastIndexOf('.');
+    StringBuilder source = new StringBuilder();
+    source.append("package ").append(className.substring(0, dot))
+        .append(";\npublic final class R {\n")
+        .append("  public static final class id {\n");
+    for (int i = 0; i < ids; i++) {
+      source.append("    public static final int ").append(prefix)
+          .append(i).append(" = ").append(base + i).append(";\n");
+    }
+    source.append("  }\n  public static final class layout {\n");
+    for (int i = 0; i < ids / 10; i++) {
+      source.append("    public static final int screen_").append(i)
+          .append(" = ").append(base + 0x10000 + i).append(";\n");
+    }
+    source.append("  }\n}\n");
+
+    File file = new File(directory,
+        className.replace('.', File.separatorChar) + ".java");
+    Files.createParentDirs(file);
+    Files.write(source, file, Charsets.UTF_8);
+  }
+
+  private static URL locationOf(Class<?> type) {
+    return type.getProtectionDomain().getCodeSource().getLocation();
+  }
+
+  /**
+   * Returns the value of the field as {@code RClassReader} did before it
+   * indexed the fields: by loading the inner class and reading the field.
+   */
+  private static Integer reflect(ClassLoader loader, String innerClass,
+      String fieldName) {
+    for (String rClassName : new String[] {APPLICATION_R, FRAMEWORK_R}) {
+      try {
+        return Class.forName(rClassName + "$" + innerClass, true, loader)
+            .getField(fieldName).getInt(null);
+      } catch (ClassNotFoundException exception) {
+        continue;
+      } catch (NoSuchFieldException exception) {
+        continue;
+      } catch (IllegalAccessException exception) {
+        continue;
+      }
+    }
+    return null;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      System.err.println("A JDK is needed to compile the R classes.");
+      return;
+    }
+
+    File directory = Files.createTempDir();
+    writeRClass(directory, FRAMEWORK_R, "framework_", FRAMEWORK_IDS,
+        0x01020000);
+    writeRClass(directory, APPLICATION_R, "item_", APPLICATION_IDS,
+        0x7f050000);
+    if (compiler.run(null, null, null,
+        new File(directory, "benchmark/framework/R.java").getPath(),
+        new File(directory, "benchmark/app/R.java").getPath()) != 0) {
+      System.err.println("Could not compile the R classes.");
+      return;
+    }
+
+    // RClassReader loads the R classes with its own class loader, so it is
+    // loaded again by one which also sees the generated classes.
+    final ClassLoader loader = new URLClassLoader(new URL[] {
+        directory.toURI().toURL(), locationOf(RClassReader.class),
+        locationOf(ImmutableList.class)}, null);
+    Class<?> readerClass = loader.loadClass(RClassReader.class.getName());
+    final Constructor<?> newReader
+        = readerClass.getConstructor(String[].class);
+    final Method getRField
+        = readerClass.getMethod("getRField", String.class, String.class);
+    final Object[] rClassNames
+        = new Object[] {new String[] {APPLICATION_R, FRAMEWORK_R}};
+
+    final String[] names = new String[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      switch (i % 4) {
+        case 0:
+          names[i] = "framework_" + (i * 7 % FRAMEWORK_IDS);
+          break;
+        case 1:
+          names[i] = "missing_" + i;
+          break;
+        default:
+          names[i] = "item_" + (i * 13 % APPLICATION_IDS);
+      }
+    }
+    final Object warmReader = newReader.newInstance(rClassNames);
+    getRField.invoke(warmReader, "id", names[0]);
+
+    report("cold: new reader, first lookup", median(iterations, new Case() {
+      @Override
+      public void run() throws Exception {
+        getRField.invoke(newReader.newInstance(rClassNames), "id", "item_0");
+      }
+    }));
+    report("warm: " + LOOKUPS + " lookups", median(iterations, new Case() {
+      @Override
+      public void run() throws Exception {
+        for (String name : names) {
+          getRField.invoke(warmReader, "id", name);
+        }
+      }
+    }));
+    report("reflection per lookup: " + LOOKUPS + " lookups",
+        median(iterations, new Case() {
+          @Override
+          public void run() {
+            for (String name : names) {
+              reflect(loader, "id", name);
+            }
+          }
+        }));
+    Files.deleteRecursively(directory);
+  }
+}
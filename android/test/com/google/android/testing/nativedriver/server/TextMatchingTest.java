@@ -0,0 +1,160 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import com.google.android.testing.nativedriver.server.TextMatching.TextPattern;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.InvalidSelectorException;
+
+/**
+ * Tests the regular expression, equality and substring matching of
+ * {@link TextMatching}.
+ */
+public class TextMatchingTest extends TestCase {
+  // Umlauts and sharp s, Greek sigmas, Turkish dotless and dotted i, the
+  // title case DZ digraph, Cyrillic, and pairs which differ.
+  private static final String[][] CASE_PAIRS = {
+      {"abc", "ABC"},
+      {"\u00e4\u00f6\u00fc\u00df", "\u00c4\u00d6\u00dc\u00df"},
+      {"\u03c3\u03c2", "\u03a3\u03a3"},
+      {"\u0131", "I"},
+      {"\u0130", "i"},
+      {"\u01c5", "\u01c6"},
+      {"\u0430\u0431\u0432", "\u0410\u0411\u0412"},
+      {"\u00e9", "E"},
+      {"\u00df", "SS"},
+  };
+
+  private static void assertMatches(String regex, String text) {
+    assertTrue(regex + " should match " + text,
+        TextMatching.compile(regex).matches(new StringBuilder(text)));
+  }
+
+  private static void assertNotMatches(String regex, String text) {
+    assertFalse(regex + " should not match " + text,
+        TextMatching.compile(regex).matches(new StringBuilder(text)));
+  }
+
+  public void testCompile_matchesWholeText() {
+    assertMatches("a+", "a");
+    assertMatches("a+", "aaa");
+    assertNotMatches("a+", "");
+    assertNotMatches("a+", "ba");
+    assertNotMatches("a+", "aab");
+
+    assertMatches("a?b", "b");
+    assertMatches("a?b", "ab");
+    assertNotMatches("a?b", "aab");
+    assertNotMatches("a?b", "cb");
+
+    assertMatches("ab|cd", "ab");
+    assertMatches("ab|cd", "cd");
+    assertNotMatches("ab|cd", "ad");
+    assertNotMatches("ab|cd", "abcd");
+
+    assertMatches("(?i)abc", "abc");
+    assertMatches("(?i)abc", "ABC");
+    assertMatches("(?i)abc", "aBc");
+    assertNotMatches("(?i)abc", "abd");
+
+    assertMatches("a*b", "b");
+    assertMatches("x{0,2}y", "y");
+    assertMatches("\\d+ items", "12 items");
+    assertNotMatches("Row \\d+", "row 1");
+  }
+
+  public void testCompile_firstCharacterCheckAgreesWithPattern() {
+    String[] regexes = {"a+", "a?b", "a*", "a{0,3}b", "ab|cd", "a(b|c)",
+        "(?i)abc", "abc", "a.c", "\\w+", "[ab]c", "1\\d", ""};
+    String[] texts = {"", "a", "aa", "ab", "b", "cd", "abc", "ABC", "xbc",
+        "bc", "12", "a1c"};
+    for (String regex : regexes) {
+      for (String text : texts) {
+        assertEquals(regex + " / " + text, Pattern.matches(regex, text),
+            TextMatching.compile(regex).matches(text));
+      }
+    }
+  }
+
+  public void testCompile_rejectsInvalidExpressions() {
+    try {
+      TextMatching.compile("a(b");
+      fail();
+    } catch (InvalidSelectorException expected) {
+    }
+  }
+
+  public void testCompile_returnsUsablePatternAfterEviction() {
+    TextPattern first = TextMatching.compile("evicted \\d");
+    assertSame(first, TextMatching.compile("evicted \\d"));
+    for (int i = 0; i < 500; i++) {
+      TextMatching.compile("filler " + i);
+    }
+
+    TextPattern again = TextMatching.compile("evicted \\d");
+    assertTrue(again.matches("evicted 7"));
+    assertFalse(again.matches("evicted x"));
+    assertEquals("evicted \\d", again.toString());
+  }
+
+  public void testEquals_ignoringCaseAgreesWithString() {
+    for (String[] pair : CASE_PAIRS) {
+      assertEquals(pair[0] + " / " + pair[1],
+          pair[0].equalsIgnoreCase(pair[1]),
+          TextMatching.equals(new StringBuilder(pair[0]), pair[1], true));
+      assertEquals(pair[1] + " / " + pair[0],
+          pair[1].equalsIgnoreCase(pair[0]),
+          TextMatching.equals(new StringBuilder(pair[1]), pair[0], true));
+      assertEquals(pair[0].equals(pair[1]),
+          TextMatching.equals(new StringBuilder(pair[0]), pair[1], false));
+    }
+  }
+
+  public void testEquals() {
+    assertTrue(TextMatching.equals("OK", "OK", false));
+    assertFalse(TextMatching.equals("OK", "ok", false));
+    assertTrue(TextMatching.equals("OK", "ok", true));
+    assertFalse(TextMatching.equals("OK ", "OK", true));
+    assertTrue(TextMatching.equals("", "", false));
+  }
+
+  public void testContains_ignoringCaseAgreesWithString() {
+    for (String[] pair : CASE_PAIRS) {
+      String text = "<" + pair[0] + ">";
+      boolean expected = pair[0].equalsIgnoreCase(pair[1]);
+      assertEquals(text + " / " + pair[1], expected,
+          TextMatching.contains(new StringBuilder(text), pair[1], true));
+      assertEquals(text + " / " + pair[1], text.contains(pair[1]),
+          TextMatching.contains(new StringBuilder(text), pair[1], false));
+    }
+  }
+
+  public void testContains() {
+    assertTrue(TextMatching.contains("Save as draft", "as", false));
+    assertTrue(TextMatching.contains("Save as draft", "DRAFT", true));
+    assertFalse(TextMatching.contains("Save as draft", "DRAFT", false));
+    assertFalse(TextMatching.contains("Save", "Saved", true));
+    assertTrue(TextMatching.contains("", "", false));
+    assertTrue(TextMatching.contains("anything", "", true));
+    assertTrue(TextMatching.contains("aab", "ab", false));
+  }
+}
@@ -0,0 +1,293 @@
+/*
+Copyright 2011 NativeDriver committers
+Copyright 2011 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.google.android.testing.nativedriver.server;
+
+import com.google.android.testing.nativedriver.server.XPathDocument.Node;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.Point;
+
+/**
+ * Tests the parsing and evaluation of {@link ViewXPath} expressions against
+ * an {@link XPathDocument} of fake elements.
+ */
+public class ViewXPathTest extends TestCase {
+  private static class FakeElement extends AndroidNativeElement {
+    private final String tagName;
+    private final String id;
+    private final String text;
+    private final List<FakeElement> children;
+    private boolean enabled = true;
+
+    FakeElement(String tagName, String id, String text,
+        FakeElement... children) {
+      super(null);
+      this.tagName = tagName;
+      this.id = id;
+      this.text = text;
+      this.children = ImmutableList.copyOf(children);
+    }
+
+    FakeElement disabled() {
+      enabled = false;
+      return this;
+    }
+
+    @Override
+    public String getTagName() {
+      return tagName;
+    }
+
+    @Override
+    public String getText() {
+      return text;
+    }
+
+    @Override
+    public String getResourceEntryName() {
+      return id;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    @Override
+    public Iterable<? extends AndroidNativeElement> getChildren() {
+      return children;
+    }
+
+    @Override
+    public boolean isDisplayed() {
+      return true;
+    }
+
+    @Override
+    public Point getLocation() {
+      return new Point(0, 0);
+    }
+
+    @Override
+    public Dimension getSize() {
+      return new Dimension(0, 0);
+    }
+
+    @Override
+    public String getCssValue(String propertyName) {
+      return "";
+    }
+
+    @Override
+    public void drag(int x, int y) {
+    }
+
+    @Override
+    public void flick(int x1, int y1, int x2, int y2) {
+    }
+
+    @Override
+    public boolean supportsClass(String className) {
+      return false;
+    }
+  }
+
+  private static class CountingDocument extends XPathDocument {
+    int indexLookups;
+
+    CountingDocument(Iterable<? extends AndroidNativeElement> elements) {
+      super(elements);
+    }
+
+    @Override
+    public synchronized List<Node> getDescendantsByName(String name) {
+      indexLookups++;
+      return super.getDescendantsByName(name);
+    }
+
+    @Override
+    public synchronized List<Node> getDescendantsById(String id) {
+      indexLookups++;
+      return super.getDescendantsById(id);
+    }
+
+    @Override
+    public synchronized List<Node> getDescendantsByText(String text) {
+      indexLookups++;
+      return super.getDescendantsByText(text);
+    }
+  }
+
+  private CountingDocument document;
+
+  @Override
+  protected void setUp() {
+    document = new CountingDocument(ImmutableList.of(
+        new FakeElement("android.widget.LinearLayout", "root", "",
+            new FakeElement("android.widget.TextView", "title", "Title"),
+            new FakeElement("android.widget.LinearLayout", "list", "",
+                new FakeElement("android.widget.Button", "b1", "B1"),
+                new FakeElement("android.widget.Button", "b2", "B2")
+                    .disabled(),
+                new FakeElement("android.widget.Button", "b3", "B3")),
+            new FakeElement("android.widget.LinearLayout", "footer", "",
+                new FakeElement("android.widget.Button", "ok", "OK"),
+                new FakeElement("android.widget.TextView", "status",
+                    "Status")))));
+  }
+
+  private List<String> selectIds(String expression) {
+    List<String> ids = Lists.newArrayList();
+    for (Node node : ViewXPath.compile(expression)
+        .selectNodes(document, document.getRoot())) {
+      ids.add(node.getAttribute(XPathDocument.ATTRIBUTE_ID));
+    }
+    return ids;
+  }
+
+  private static void assertInvalid(String expression) {
+    try {
+      ViewXPath.compile(expression);
+      fail("Expected InvalidSelectorException: " + expression);
+    } catch (InvalidSelectorException expected) {
+    }
+  }
+
+  public void testParse_acceptsAbbreviatedAndFullSyntax() {
+    assertEquals(ImmutableList.of("b1", "b2", "b3", "ok"),
+        selectIds("//Button"));
+    assertEquals(ImmutableList.of("b1", "b2", "b3", "ok"),
+        selectIds("/descendant-or-self::node()/child::android.widget.Button"));
+    assertEquals(ImmutableList.of("title"),
+        selectIds("/LinearLayout/TextView"));
+    assertEquals(ImmutableList.of("list"),
+        selectIds("//Button[@id='b1']/.."));
+    assertEquals(ImmutableList.of("b2"),
+        selectIds("//Button[ @id = \"b2\" ]/self::*"));
+  }
+
+  public void testParse_rejectsMalformedExpressions() {
+    assertInvalid("");
+    assertInvalid("//Button[");
+    assertInvalid("//Button[@text='OK'");
+    assertInvalid("//Button[@text='OK]");
+    assertInvalid("//Button[unknown()]");
+    assertInvalid("//following::Button");
+    assertInvalid("//Button]");
+  }
+
+  public void testSelectNodes_rejectsNonNodeResults() {
+    try {
+      ViewXPath.compile("count(//Button)")
+          .selectNodes(document, document.getRoot());
+      fail();
+    } catch (InvalidSelectorException expected) {
+    }
+  }
+
+  public void testPredicates() {
+    assertEquals(ImmutableList.of("b2"),
+        selectIds("//Button[@enabled='false']"));
+    assertEquals(ImmutableList.of("b2", "b3"),
+        selectIds("//*[contains(@text, 'B') and not(@id='b1')]"));
+    assertEquals(ImmutableList.of("title", "ok"),
+        selectIds("//*[text()='OK' or @id='title']"));
+    assertEquals(ImmutableList.of("b3"),
+        selectIds("//Button[starts-with(text(), 'B')][last()]"));
+    assertEquals(ImmutableList.of("list"),
+        selectIds("//LinearLayout[count(Button) > 1]"));
+    assertEquals(ImmutableList.of("b2", "status"),
+        selectIds("//*[@index='1'][@text!='']"));
+  }
+
+  public void testPositions_countFromContextOnReverseAxes() {
+    assertEquals(ImmutableList.of("b2"),
+        selectIds("//Button[@id='b3']/preceding-sibling::*[1]"));
+    assertEquals(ImmutableList.of("b1"),
+        selectIds("//Button[@id='b3']/preceding-sibling::*[last()]"));
+    assertEquals(ImmutableList.of("list"),
+        selectIds("//Button[@id='b3']/ancestor::*[1]"));
+    assertEquals(ImmutableList.of("root"),
+        selectIds("//Button[@id='b3']/ancestor::LinearLayout[2]"));
+    assertEquals(ImmutableList.of("b3"),
+        selectIds("//Button[@id='b1']/following-sibling::*[2]"));
+  }
+
+  public void testPositions_ofParenthesizedPathAreGlobal() {
+    assertEquals(ImmutableList.of("b1", "ok"), selectIds("//Button[1]"));
+    assertEquals(ImmutableList.of("b2"), selectIds("//Button[2]"));
+    assertEquals(ImmutableList.of("ok"), selectIds("(//Button)[4]"));
+    assertEquals(ImmutableList.of("ok"), selectIds("(//Button)[last()]"));
+    assertEquals(ImmutableList.<String>of(), selectIds("(//Button)[5]"));
+  }
+
+  public void testUnion_isInDocumentOrderWithoutDuplicates() {
+    assertEquals(ImmutableList.of("title", "b3", "ok", "status"),
+        selectIds("//Button[@id='ok'] | //TextView | //Button[@id='b3']"
+            + " | //*[@text='Status']"));
+  }
+
+  public void testIndexFastPath_isUsedForPositionIndependentSteps() {
+    assertEquals(ImmutableList.of("ok"), selectIds("//Button[@text='OK']"));
+    assertTrue(document.indexLookups > 0);
+
+    document.indexLookups = 0;
+    assertEquals(ImmutableList.of("b2"), selectIds("//*[@id='b2']"));
+    assertTrue(document.indexLookups > 0);
+
+    document.indexLookups = 0;
+    assertEquals(ImmutableList.of("b1", "b2", "b3", "ok"),
+        selectIds("//Button"));
+    assertTrue(document.indexLookups > 0);
+  }
+
+  public void testIndexFastPath_isNotUsedForPositionalSteps() {
+    assertEquals(ImmutableList.of("b1", "ok"), selectIds("//Button[1]"));
+    assertEquals(ImmutableList.of("b2", "b3"),
+        selectIds("//Button[position() > 1]"));
+    assertEquals(ImmutableList.<String>of(),
+        selectIds("//Button[last()][2]"));
+    assertEquals(0, document.indexLookups);
+  }
+
+  public void testIdAttribute_isMissingWhenLookupFails() {
+    document = new CountingDocument(ImmutableList.of(
+        new FakeElement("android.widget.LinearLayout", "root", "",
+            new FakeElement("android.widget.Button", null, "OK") {
+              @Override
+              public String getResourceEntryName() {
+                throw new IllegalStateException("No resources");
+              }
+            })));
+
+    assertEquals(ImmutableList.of("root"), selectIds("//*[@id]"));
+    List<Node> withoutId = ViewXPath.compile("//Button[not(@id)]")
+        .selectNodes(document, document.getRoot());
+    assertEquals(1, withoutId.size());
+    assertEquals("OK", withoutId.get(0).getAttribute(
+        XPathDocument.ATTRIBUTE_TEXT));
+    assertEquals(ImmutableList.<String>of(), selectIds("//*[@id='OK']"));
+  }
+}